@@ -0,0 +1,53 @@
+package service.bank;
+
+import service.core.Money;
+
+/** Account
+ * Purpose:
+ * - BankService's internal record of one client's account
+ * - The balance is a count of Money minor units (cents), so repeated deposits and withdrawals never drift
+ * - held is the sum of the account's active funds holds; the available balance is balance - held
+ * Threading:
+ * - Only modified while holding the account's stripe lock in BankService
+ * - The balance and held amount are volatile so reads never need the lock
+ */
+final class Account {
+    private final int number;
+    private final String name;
+    private volatile long balance;
+    private volatile long held;
+
+    Account(int number, String name, long balance) {
+        this.number = number;
+        this.name = name;
+        this.balance = balance;
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getBalance() {
+        return balance;
+    }
+
+    void setBalance(long balance) {
+        this.balance = balance;
+    }
+
+    long getHeld() {
+        return held;
+    }
+
+    void setHeld(long held) {
+        this.held = held;
+    }
+
+    long getAvailable() {
+        return Money.minusMinor(balance, held);
+    }
+}
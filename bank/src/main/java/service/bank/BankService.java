@@ -1,62 +1,542 @@
 package service.bank;
 import service.core.*;
+import service.dto.BankBatchRequest;
+import service.dto.BankBatchResponse;
+import service.dto.BankOperation;
+import service.dto.BankOperationResult;
+import service.dto.BankOperationResult.Status;
+import service.dto.FundsHold;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
+/** BankService
+ * Purpose:
+ * - Holds every client's bank account and moves money in and out of them
+ * Threading:
+ * - Accounts live in a ConcurrentHashMap keyed by client ID
+ * - Each client ID maps to one of a fixed set of stripe locks; every change to an account
+ *   (including create/remove) runs under its stripe lock, so check-and-withdraw is atomic
+ *   and clients on different stripes never contend
+ * - Balances are kept as Money minor units (cents) and can be read without locking
+ * - ALL_OR_NOTHING batches lock every stripe they touch in ascending order (no deadlocks),
+ *   validate the whole batch against those balances, then apply it
+ * Funds holds:
+ * - reserveFunds sets an amount aside until the hold is committed (withdrawn), released, or its TTL passes
+ * - Each account keeps the sum of its active holds, so the available balance (balance - held) is O(1);
+ *   withdrawals, debits and checks are made against the available balance
+ * - Holds are placed and finished under the account's stripe lock; HoldExpiryWheel expires them
+ * - A finished hold is kept, in its final state, for bank.holds.finished-retention-ms: a repeated
+ *   commit/release (a retry whose first reply was lost) gets the hold as it ended instead of "not
+ *   found", whether or not the Idempotency-Key filter still has the first reply
+ * Metrics:
+ * - bank.accounts / bank.holds: accounts open and holds active
+ * - bank.holds.finished: finished holds kept for repeated commits/releases
+ * Config:
+ * - bank.accounts.lock-stripes: number of stripe locks, rounded up to a power of two (0 = 4 per CPU)
+ * - bank.holds.default-ttl-ms / bank.holds.max-ttl-ms: TTL when none is given, and the longest allowed
+ * - bank.holds.tick-ms / bank.holds.wheel-size: expiry wheel resolution and number of slots
+ * - bank.holds.finished-retention-ms / bank.holds.max-finished: how long, and how many, finished
+ *   holds are kept (the oldest go first)
+ */
 @Service
-public class BankService {
+public class BankService implements MeterBinder {
     private float interestRate = 0.05f; // 5% interest rate
-    private int accountNumberCounter = 0; 
-    private HashMap<Integer, BankAccount> clientIdToAccounts = new HashMap<Integer, BankAccount>(); // map of clientId to BankAccount	
+    private final AtomicInteger accountNumberCounter = new AtomicInteger();
+    private final Map<Integer, Account> clientIdToAccounts = new ConcurrentHashMap<>(); // map of clientId to Account
+    private final ReentrantLock[] stripes;
+    private final AtomicLong holdIdCounter = new AtomicLong();
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>(); // active holds by hold ID
+    private final LinkedHashMap<Long, Hold> finishedHolds = new LinkedHashMap<>(); // oldest finished first
+    private final ReentrantLock finishedLock = new ReentrantLock(); // guards finishedHolds; taken inside a stripe lock
+    private final HoldExpiryWheel expiryWheel;
+    private final long defaultHoldTtlMillis;
+    private final long maxHoldTtlMillis;
+    private final long finishedRetentionMillis;
+    private final int maxFinishedHolds;
 
-	public BankAccount createAccount(int clientId, String accountName, double funds) {
-        BankAccount account = new BankAccount(accountNumberCounter++, accountName, funds);
-        clientIdToAccounts.put(clientId, account);
-        return account;
+    public BankService(@Value("${bank.accounts.lock-stripes:0}") int stripeCount,
+                       @Value("${bank.holds.default-ttl-ms:30000}") long defaultHoldTtlMillis,
+                       @Value("${bank.holds.max-ttl-ms:600000}") long maxHoldTtlMillis,
+                       @Value("${bank.holds.tick-ms:100}") long holdTickMillis,
+                       @Value("${bank.holds.wheel-size:512}") int holdWheelSize,
+                       @Value("${bank.holds.finished-retention-ms:3600000}") long finishedRetentionMillis,
+                       @Value("${bank.holds.max-finished:100000}") int maxFinishedHolds) {
+        int count = stripeCount > 0 ? stripeCount : 4 * Runtime.getRuntime().availableProcessors();
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, count - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.defaultHoldTtlMillis = defaultHoldTtlMillis;
+        this.maxHoldTtlMillis = maxHoldTtlMillis;
+        this.finishedRetentionMillis = finishedRetentionMillis;
+        this.maxFinishedHolds = maxFinishedHolds;
+        this.expiryWheel = new HoldExpiryWheel(holdTickMillis, holdWheelSize,
+                hold -> finishHold(hold.getId(), FundsHold.State.EXPIRED));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("bank.accounts", clientIdToAccounts, Map::size)
+                .description("Bank accounts open")
+                .register(registry);
+        Gauge.builder("bank.holds", holds, Map::size)
+                .description("Funds holds not yet committed, released or expired")
+                .register(registry);
+        Gauge.builder("bank.holds.finished", this, BankService::finishedHoldCount)
+                .description("Finished funds holds kept for repeated commits and releases")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        expiryWheel.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        expiryWheel.stop();
+    }
+
+	public BankAccount createAccount(int clientId, String accountName, Money funds) {
+        Account account = new Account(accountNumberCounter.getAndIncrement(), accountName,
+                funds == null ? 0 : funds.getMinorUnits());
+        ReentrantLock lock = stripeFor(clientId);
+        lock.lock();
+        try {
+            clientIdToAccounts.put(clientId, account);
+        } finally {
+            lock.unlock();
+        }
+        return toBankAccount(account);
     }
 
 	public void removeAccount(int clientId) {
-        clientIdToAccounts.remove(clientId);
+        ReentrantLock lock = stripeFor(clientId);
+        lock.lock();
+        try {
+            clientIdToAccounts.remove(clientId);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public void depositFunds(int clientId, double amount) {
-        BankAccount account = clientIdToAccounts.get(clientId);
+    public void depositFunds(int clientId, Money amount) {
+        long cents = toAmountCents(amount);
+        update(clientId, account -> Money.plusMinor(account.getBalance(), cents));
+    }
+
+    public void withdrawFunds(int clientId, Money amount) {
+        long cents = toAmountCents(amount);
+        update(clientId, account -> {
+            if (account.getAvailable() < cents) {
+                throw new IllegalArgumentException("Request denied due to insufficient funds");
+            }
+            return Money.minusMinor(account.getBalance(), cents);
+        });
+    }
+
+    public Money getBalance(int clientId) {
+        Account account = clientIdToAccounts.get(clientId);
         if (account != null) {
-            account.balance += amount;
+            return Money.ofMinor(account.getBalance());
         } else {
             throw new IllegalArgumentException("Account not found");
         }
     }
 
-    public void withdrawFunds(int clientId, double amount) {
-        BankAccount account = clientIdToAccounts.get(clientId);
-        if (account != null && account.balance >= amount) {
-            account.balance -= amount;
-        } else if (account != null && account.balance < amount){
-            throw new IllegalArgumentException("Request denied due to insufficient funds");
+    // balance minus the amount held by active holds
+    public Money getAvailableBalance(int clientId) {
+        Account account = clientIdToAccounts.get(clientId);
+        if (account != null) {
+            return Money.ofMinor(account.getAvailable());
         } else {
             throw new IllegalArgumentException("Account not found");
         }
     }
 
-    public double getBalance(int clientId) {
-        BankAccount account = clientIdToAccounts.get(clientId);
-        if (account != null) {
-            return account.balance;
-        } else {
-            throw new IllegalArgumentException("Account not found");
+    /**
+     * Hold an amount of the client's available balance until it is committed, released or expires.
+     * @param ttlMillis - null for the default TTL
+     * @throws IllegalArgumentException - unknown account, invalid amount/TTL or insufficient funds
+     */
+    public FundsHold reserveFunds(int clientId, Money amount, Long ttlMillis) {
+        long cents = toAmountCents(amount);
+        long ttl = ttlMillis != null ? ttlMillis : defaultHoldTtlMillis;
+        if (ttl <= 0 || ttl > maxHoldTtlMillis) {
+            throw new IllegalArgumentException("Hold TTL must be between 1 and " + maxHoldTtlMillis + " ms");
+        }
+        ReentrantLock lock = stripeFor(clientId);
+        lock.lock();
+        try {
+            Account account = clientIdToAccounts.get(clientId);
+            if (account == null) {
+                throw new IllegalArgumentException("Account not found");
+            }
+            if (account.getAvailable() < cents) {
+                throw new IllegalArgumentException("Request denied due to insufficient funds");
+            }
+            return placeHold(clientId, account, cents, ttl).toFundsHold();
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * Withdraw the amount of an active hold.
+     * @return - the hold as it ended: COMMITTED (now, or by an earlier commit), or RELEASED/EXPIRED
+     *           if it had already ended that way; null if unknown or finished longer ago than kept
+     */
+    public FundsHold commitHold(long holdId) {
+        Hold hold = finishHold(holdId, FundsHold.State.COMMITTED);
+        return hold == null ? null : hold.toFundsHold();
+    }
+
+    /**
+     * Drop an active hold, making its amount available again.
+     * @return - the hold as it ended: RELEASED (now, or by an earlier release), or COMMITTED/EXPIRED
+     *           if it had already ended that way; null if unknown or finished longer ago than kept
+     */
+    public FundsHold releaseHold(long holdId) {
+        Hold hold = finishHold(holdId, FundsHold.State.RELEASED);
+        return hold == null ? null : hold.toFundsHold();
+    }
+
+    // an active hold, or a finished one still kept; null if unknown
+    public FundsHold getHold(long holdId) {
+        Hold hold = holds.get(holdId);
+        if (hold == null) {
+            hold = finishedHold(holdId);
+        }
+        return hold == null ? null : hold.toFundsHold();
+    }
+
     public void updateInterest() {
-        // update the interest on all accounts
-        for (BankAccount account : clientIdToAccounts.values()) {
-            account.balance += account.balance * interestRate;
+        // update the interest on all accounts, one stripe lock at a time
+        for (Integer clientId : clientIdToAccounts.keySet()) {
+            try {
+                update(clientId, account -> Money.ofMinor(account.getBalance()).times(1.0 + interestRate).getMinorUnits());
+            } catch (IllegalArgumentException e) {
+                // removed while interest was being applied
+            }
         }
     }
 
     public BankAccount getAccount(int clientId) {
-        return clientIdToAccounts.get(clientId);
+        Account account = clientIdToAccounts.get(clientId);
+        return account == null ? null : toBankAccount(account);
+    }
+
+    /**
+     * Apply a batch of checks, debits and credits.
+     * @return - one result per operation, in request order
+     */
+    public BankBatchResponse applyBatch(BankBatchRequest.Mode mode, List<BankOperation> operations) {
+        if (mode == BankBatchRequest.Mode.ALL_OR_NOTHING) {
+            return applyAllOrNothing(operations);
+        }
+        List<BankOperationResult> results = new ArrayList<>(operations.size());
+        for (BankOperation operation : operations) {
+            results.add(applyOne(operation));
+        }
+        return new BankBatchResponse(true, results);
+    }
+
+    // sum of every balance, for checking that concurrent transfers conserve money
+    public Money getTotalFunds() {
+        long total = 0;
+        for (Account account : clientIdToAccounts.values()) {
+            total = Money.plusMinor(total, account.getBalance());
+        }
+        return Money.ofMinor(total);
+    }
+
+    private BankOperationResult applyOne(BankOperation operation) {
+        if (operation != null && operation.type() != null) {
+            switch (operation.type()) {
+                case RESERVE -> {
+                    return applyReserve(operation);
+                }
+                case COMMIT, RELEASE -> {
+                    return applyFinish(operation);
+                }
+                default -> { }
+            }
+        }
+        if (operation == null || operation.clientId() == null) {
+            return new BankOperationResult(Status.INVALID_OPERATION, null);
+        }
+        ReentrantLock lock = stripeFor(operation.clientId());
+        lock.lock();
+        try {
+            Account account = clientIdToAccounts.get(operation.clientId());
+            if (account == null) {
+                return new BankOperationResult(Status.ACCOUNT_NOT_FOUND, null);
+            }
+            Outcome outcome = evaluate(operation, account.getBalance(), account.getHeld());
+            if (outcome.status() != Status.OK) {
+                return new BankOperationResult(outcome.status(), null);
+            }
+            account.setBalance(outcome.balance());
+            return new BankOperationResult(Status.OK, Money.ofMinor(outcome.balance()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BankBatchResponse applyAllOrNothing(List<BankOperation> operations) {
+        int[] stripeIndexes = operations.stream()
+                .filter(operation -> operation != null && operation.clientId() != null)
+                .mapToInt(operation -> stripeIndex(operation.clientId()))
+                .distinct()
+                .sorted()
+                .toArray();
+        for (int index : stripeIndexes) {
+            stripes[index].lock();
+        }
+        try {
+            // balances as they would be after each operation, applied only if every operation passes
+            Map<Integer, Long> pending = new HashMap<>();
+            Map<Integer, Account> touched = new HashMap<>();
+            List<BankOperationResult> results = new ArrayList<>(operations.size());
+            for (int i = 0; i < operations.size(); i++) {
+                BankOperation operation = operations.get(i);
+                Status failure = null;
+                Outcome outcome = null;
+                if (operation == null || operation.clientId() == null) {
+                    failure = Status.INVALID_OPERATION;
+                } else {
+                    Account account = touched.computeIfAbsent(operation.clientId(), clientIdToAccounts::get);
+                    if (account == null) {
+                        failure = Status.ACCOUNT_NOT_FOUND;
+                    } else {
+                        long balance = pending.getOrDefault(operation.clientId(), account.getBalance());
+                        outcome = evaluate(operation, balance, account.getHeld());
+                        if (outcome.status() != Status.OK) {
+                            failure = outcome.status();
+                        }
+                    }
+                }
+                if (failure != null) {
+                    return rejected(operations.size(), i, failure);
+                }
+                pending.put(operation.clientId(), outcome.balance());
+                results.add(new BankOperationResult(Status.OK, Money.ofMinor(outcome.balance())));
+            }
+            pending.forEach((clientId, balance) -> touched.get(clientId).setBalance(balance));
+            return new BankBatchResponse(true, results);
+        } finally {
+            for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+                stripes[stripeIndexes[i]].unlock();
+            }
+        }
     }
 
+    // every operation NOT_APPLIED except the one that failed the batch
+    private static BankBatchResponse rejected(int size, int failedIndex, Status failure) {
+        BankOperationResult[] results = new BankOperationResult[size];
+        Arrays.fill(results, new BankOperationResult(Status.NOT_APPLIED, null));
+        results[failedIndex] = new BankOperationResult(failure, null);
+        return new BankBatchResponse(false, Collections.unmodifiableList(Arrays.asList(results)));
+    }
+
+    private BankOperationResult applyReserve(BankOperation operation) {
+        if (operation.clientId() == null || operation.amount() == null || operation.amount().isNegative()) {
+            return new BankOperationResult(Status.INVALID_OPERATION, null);
+        }
+        long cents = operation.amount().getMinorUnits();
+        ReentrantLock lock = stripeFor(operation.clientId());
+        lock.lock();
+        try {
+            Account account = clientIdToAccounts.get(operation.clientId());
+            if (account == null) {
+                return new BankOperationResult(Status.ACCOUNT_NOT_FOUND, null);
+            }
+            if (account.getAvailable() < cents) {
+                return new BankOperationResult(Status.INSUFFICIENT_FUNDS, null);
+            }
+            Hold hold = placeHold(operation.clientId(), account, cents, defaultHoldTtlMillis);
+            return new BankOperationResult(Status.OK, Money.ofMinor(account.getBalance()), hold.getId());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BankOperationResult applyFinish(BankOperation operation) {
+        if (operation.holdId() == null) {
+            return new BankOperationResult(Status.INVALID_OPERATION, null);
+        }
+        FundsHold.State state = operation.type() == BankOperation.Type.COMMIT
+                ? FundsHold.State.COMMITTED
+                : FundsHold.State.RELEASED;
+        Hold hold = finishHold(operation.holdId(), state);
+        if (hold == null) {
+            return new BankOperationResult(Status.HOLD_NOT_FOUND, null, operation.holdId());
+        }
+        if (hold.getState() != state) {
+            return new BankOperationResult(Status.HOLD_CONFLICT, null, operation.holdId());
+        }
+        return new BankOperationResult(Status.OK, Money.ofMinor(hold.getAccount().getBalance()), hold.getId());
+    }
+
+    // caller holds the client's stripe lock and has checked the available balance
+    private Hold placeHold(int clientId, Account account, long cents, long ttlMillis) {
+        Hold hold = new Hold(holdIdCounter.incrementAndGet(), clientId, account, cents,
+                System.currentTimeMillis() + ttlMillis, expiryWheel.deadlineTick(ttlMillis));
+        account.setHeld(Money.plusMinor(account.getHeld(), cents));
+        holds.put(hold.getId(), hold);
+        expiryWheel.schedule(hold);
+        return hold;
+    }
+
+    /**
+     * Move an active hold to its final state.
+     * @return - the hold as it ended, which differs from state if it had already finished another
+     *           way (or its account was removed); null if it is unknown or no longer kept
+     */
+    private Hold finishHold(long holdId, FundsHold.State state) {
+        Hold hold = holds.get(holdId);
+        if (hold == null) {
+            return finishedHold(holdId);
+        }
+        ReentrantLock lock = stripeFor(hold.getClientId());
+        lock.lock();
+        try {
+            if (!hold.isActive()) {
+                return hold;
+            }
+            holds.remove(holdId);
+            Account account = hold.getAccount();
+            if (clientIdToAccounts.get(hold.getClientId()) != account) {
+                // the account was removed or replaced, so there is nothing left to hold against
+                retire(hold, FundsHold.State.RELEASED);
+                return hold;
+            }
+            account.setHeld(Money.minusMinor(account.getHeld(), hold.getAmount()));
+            if (state == FundsHold.State.COMMITTED) {
+                account.setBalance(Money.minusMinor(account.getBalance(), hold.getAmount()));
+            }
+            retire(hold, state);
+            return hold;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caller holds the hold's stripe lock: keeps the finished hold, dropping the oldest beyond
+    // the retention period or count
+    private void retire(Hold hold, FundsHold.State state) {
+        long now = System.currentTimeMillis();
+        hold.setFinishedAt(now);
+        hold.setState(state);
+        finishedLock.lock();
+        try {
+            finishedHolds.put(hold.getId(), hold);
+            Map.Entry<Long, Hold> oldest = finishedHolds.firstEntry();
+            while (oldest != null && (finishedHolds.size() > maxFinishedHolds
+                    || now - oldest.getValue().getFinishedAt() > finishedRetentionMillis)) {
+                finishedHolds.pollFirstEntry();
+                oldest = finishedHolds.firstEntry();
+            }
+        } finally {
+            finishedLock.unlock();
+        }
+    }
+
+    private Hold finishedHold(long holdId) {
+        finishedLock.lock();
+        try {
+            return finishedHolds.get(holdId);
+        } finally {
+            finishedLock.unlock();
+        }
+    }
+
+    private int finishedHoldCount() {
+        finishedLock.lock();
+        try {
+            return finishedHolds.size();
+        } finally {
+            finishedLock.unlock();
+        }
+    }
+
+    // checks one operation against a balance (and the amount held on it) without changing anything
+    private static Outcome evaluate(BankOperation operation, long balance, long held) {
+        if (operation.type() == null) {
+            return new Outcome(Status.INVALID_OPERATION, balance);
+        }
+        Money amount = operation.amount();
+        if (amount == null && operation.type() == BankOperation.Type.CHECK) {
+            return new Outcome(Status.OK, balance);
+        }
+        if (amount == null || amount.isNegative()) {
+            return new Outcome(Status.INVALID_OPERATION, balance);
+        }
+        long cents = amount.getMinorUnits();
+        long available = Money.minusMinor(balance, held);
+        return switch (operation.type()) {
+            case CHECK -> new Outcome(available >= cents ? Status.OK : Status.INSUFFICIENT_FUNDS, balance);
+            case DEBIT -> available >= cents
+                    ? new Outcome(Status.OK, Money.minusMinor(balance, cents))
+                    : new Outcome(Status.INSUFFICIENT_FUNDS, balance);
+            case CREDIT -> new Outcome(Status.OK, Money.plusMinor(balance, cents));
+            // holds are placed and finished one at a time, never as part of an all-or-nothing batch
+            case RESERVE, COMMIT, RELEASE -> new Outcome(Status.INVALID_OPERATION, balance);
+        };
+    }
+
+    private record Outcome(Status status, long balance) {}
+
+    // read-modify-write of one balance under the account's stripe lock
+    private void update(int clientId, ToLongFunction<Account> newBalance) {
+        ReentrantLock lock = stripeFor(clientId);
+        lock.lock();
+        try {
+            Account account = clientIdToAccounts.get(clientId);
+            if (account == null) {
+                throw new IllegalArgumentException("Account not found");
+            }
+            account.setBalance(newBalance.applyAsLong(account));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripeFor(int clientId) {
+        return stripes[stripeIndex(clientId)];
+    }
+
+    private int stripeIndex(int clientId) {
+        // spread sequential client IDs across stripes
+        int hash = clientId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private static BankAccount toBankAccount(Account account) {
+        return new BankAccount(account.getNumber(), account.getName(), Money.ofMinor(account.getBalance()));
+    }
+
+    private static long toAmountCents(Money amount) {
+        if (amount == null || amount.isNegative()) {
+            throw new IllegalArgumentException("Amount must be a non-negative number");
+        }
+        return amount.getMinorUnits();
+    }
 }
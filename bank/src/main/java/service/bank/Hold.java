@@ -0,0 +1,85 @@
+package service.bank;
+
+import service.core.Money;
+import service.dto.FundsHold;
+
+/** Hold
+ * Purpose:
+ * - BankService's internal record of one funds hold: an amount reserved on an account
+ *   until it is committed (withdrawn), released, or expires
+ * Threading:
+ * - The state only changes while holding the account's stripe lock in BankService
+ * - The expiry wheel reads the state without the lock to skip holds that are already done
+ * - finishedAt is set once, when the hold leaves ACTIVE (under the same lock)
+ */
+final class Hold {
+    private final long id;
+    private final int clientId;
+    private final Account account;
+    private final long amount;
+    private final long expiresAt;
+    private final long deadlineTick;
+    private volatile FundsHold.State state = FundsHold.State.ACTIVE;
+    private volatile long finishedAt;
+
+    Hold(long id, int clientId, Account account, long amount, long expiresAt, long deadlineTick) {
+        this.id = id;
+        this.clientId = clientId;
+        this.account = account;
+        this.amount = amount;
+        this.expiresAt = expiresAt;
+        this.deadlineTick = deadlineTick;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getClientId() {
+        return clientId;
+    }
+
+    // the account the amount is held on; if the client's account is replaced the hold is void
+    Account getAccount() {
+        return account;
+    }
+
+    long getAmount() {
+        return amount;
+    }
+
+    // wall-clock expiry in epoch milliseconds, as reported to clients
+    long getExpiresAt() {
+        return expiresAt;
+    }
+
+    // expiry wheel tick on which the hold lapses
+    long getDeadlineTick() {
+        return deadlineTick;
+    }
+
+    FundsHold.State getState() {
+        return state;
+    }
+
+    boolean isActive() {
+        return state == FundsHold.State.ACTIVE;
+    }
+
+    void setState(FundsHold.State state) {
+        this.state = state;
+    }
+
+    // epoch milliseconds the hold was committed, released or expired; 0 while active
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void setFinishedAt(long finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    FundsHold toFundsHold() {
+        return new FundsHold(id, clientId, Money.ofMinor(amount), expiresAt, state);
+    }
+}
@@ -0,0 +1,110 @@
+package service.bank;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/** HoldExpiryWheel
+ * Purpose:
+ * - Expires funds holds whose TTL has passed, without a timer or sorted queue per hold
+ * - Hashed timer wheel: time is cut into ticks and each hold goes in the slot for its deadline tick
+ *   (deadline mod wheel size), so scheduling is O(1) and each tick only looks at one slot
+ * - Holds further away than one turn of the wheel share a slot with nearer ones and are skipped
+ *   until the turn their deadline falls in
+ * - Committed/released holds are not removed when they finish; the wheel drops them the next
+ *   time it visits their slot
+ * Threading:
+ * - schedule() may be called from any thread; a single daemon thread advances the wheel
+ */
+final class HoldExpiryWheel {
+    private static final Logger log = LoggerFactory.getLogger(HoldExpiryWheel.class);
+
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final Queue<Hold>[] slots;
+    private final Consumer<Hold> onExpire;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long processedTick; // only touched by the worker
+
+    @SuppressWarnings("unchecked")
+    HoldExpiryWheel(long tickMillis, int wheelSize, Consumer<Hold> onExpire) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.slots = new Queue[Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.onExpire = onExpire;
+        this.worker = new Thread(this::run, "bank-hold-expiry");
+        this.worker.setDaemon(true);
+    }
+
+    void start() {
+        worker.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // first tick that starts at or after ttlMillis from now
+    long deadlineTick(long ttlMillis) {
+        long elapsed = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        return elapsed / tickNanos + 1;
+    }
+
+    void schedule(Hold hold) {
+        slots[slotIndex(hold.getDeadlineTick())].add(hold);
+    }
+
+    private void run() {
+        while (running) {
+            long now = currentTick();
+            if (processedTick >= now) {
+                LockSupport.parkNanos(startNanos + (processedTick + 1) * tickNanos - System.nanoTime());
+                continue;
+            }
+            // catch up on every tick since the last pass, so a slow pass never skips a slot
+            while (processedTick < now && running) {
+                processedTick++;
+                expireSlot(processedTick);
+            }
+        }
+    }
+
+    private void expireSlot(long tick) {
+        Iterator<Hold> it = slots[slotIndex(tick)].iterator();
+        while (it.hasNext()) {
+            Hold hold = it.next();
+            if (!hold.isActive()) {
+                it.remove();
+            } else if (hold.getDeadlineTick() <= tick) {
+                it.remove();
+                try {
+                    onExpire.accept(hold);
+                } catch (RuntimeException e) {
+                    log.error("Failed to expire funds hold {}", hold.getId(), e);
+                }
+            }
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    private int slotIndex(long tick) {
+        return (int) (tick & (slots.length - 1));
+    }
+}
@@ -4,14 +4,24 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import service.bank.BankService;
 import service.core.BankAccount;
+import service.core.Money;
 import service.dto.AccountRequest;
 import service.dto.AmountRequest;
+import service.dto.BankBatchRequest;
+import service.dto.BankBatchResponse;
+import service.dto.FundsHold;
+import service.dto.HoldRequest;
+
+import static service.core.wire.WireFormat.CBOR_VALUE;
+import static service.core.wire.WireFormat.JSON_VALUE;
+import static service.core.wire.WireFormat.SMILE_VALUE;
 
 /** Banking Service
  *
@@ -22,16 +32,27 @@ import service.dto.AmountRequest;
  * - POST /accounts/{clientId}/deposit - deposit funds into a bank account
  * - POST /accounts/{clientId}/withdraw - withdraw funds from a bank account
  * - GET /accounts/{clientId}/balance - get the balance of a bank account
+ * - GET /accounts/{clientId}/available - get the balance not held by active holds
+ * - POST /accounts/{clientId}/holds - reserve funds until committed, released or expired
+ * - GET /holds/{holdId} - get a hold, active or recently finished
+ * - POST /holds/{holdId}/commit - withdraw the held funds (409 if the hold was released or expired)
+ * - POST /holds/{holdId}/release - make the held funds available again (409 if it was committed)
+ * - POST /accounts/batch - apply many checks/debits/credits/holds in one request
  *
+ * Every endpoint but GET / also speaks CBOR and Smile (WireFormat) to services that ask for them;
+ * JSON is the default
  */
 
 @RestController
 public class BankController {
     private final BankService bankService;
+    private final int maxBatchOperations;
     
     @Autowired
-    public BankController(BankService bank) {
+    public BankController(BankService bank,
+                          @Value("${bank.batch.max-operations:1000}") int maxBatchOperations) {
         this.bankService = bank;
+        this.maxBatchOperations = maxBatchOperations;
     }
 
     @GetMapping(path="/", produces="application/json")
@@ -44,7 +65,7 @@ public class BankController {
     }
     
     // Create a new bank account
-    @PostMapping(path="/accounts", consumes="application/json", produces="application/json")
+    @PostMapping(path="/accounts", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE}, produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<BankAccount> createAccount(@RequestBody AccountRequest request) {
         return ResponseEntity
                 .status(HttpStatus.OK)
@@ -61,7 +82,7 @@ public class BankController {
     }
 
     // Get a specific bank account
-    @GetMapping(path="/accounts/{clientId}", produces="application/json")
+    @GetMapping(path="/accounts/{clientId}", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<BankAccount> getAccount(@PathVariable Integer clientId) {
         BankAccount account = bankService.getAccount(clientId);
         if (account != null) {
@@ -76,14 +97,20 @@ public class BankController {
     }
 
     // Deposit funds into a bank account
-    @PostMapping(path="/accounts/{clientId}/deposit", produces="application/json")
+    @PostMapping(path="/accounts/{clientId}/deposit", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<Void> depositFunds(@PathVariable Integer clientId, @RequestBody AmountRequest request) {
         BankAccount account = bankService.getAccount(clientId);
         if (account != null) {
-            bankService.depositFunds(clientId, request.getAmount());
-            return ResponseEntity
+            try {
+                bankService.depositFunds(clientId, request.getAmount());
+                return ResponseEntity
                     .status(HttpStatus.OK)
                     .build();
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity
+                        .status(HttpStatus.BAD_REQUEST)
+                        .build();
+            }
         } else {
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
@@ -92,7 +119,7 @@ public class BankController {
     }
     
     // Withdraw funds from a bank account
-    @PostMapping(path="/accounts/{clientId}/withdraw", produces="application/json")
+    @PostMapping(path="/accounts/{clientId}/withdraw", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<Void> withdrawFunds(@PathVariable Integer clientId, @RequestBody AmountRequest request) {
         BankAccount account = bankService.getAccount(clientId);
         if (account != null) {
@@ -114,17 +141,109 @@ public class BankController {
     }
     
     // Get the balance of a bank account
-    @GetMapping(path="/accounts/{clientId}/balance", produces="application/json")
-    public ResponseEntity<Double> getBalance(@PathVariable Integer clientId) {
+    @GetMapping(path="/accounts/{clientId}/balance", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<Money> getBalance(@PathVariable Integer clientId) {
+        BankAccount account = bankService.getAccount(clientId);
+        if (account != null) {
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(account.getBalance());
+        } else {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .build();
+        }
+    }
+
+    // Get the balance of a bank account minus its active holds
+    @GetMapping(path="/accounts/{clientId}/available", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<Money> getAvailableBalance(@PathVariable Integer clientId) {
+        try {
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(bankService.getAvailableBalance(clientId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .build();
+        }
+    }
+
+    // Reserve funds on a bank account (ttlMs defaults to bank.holds.default-ttl-ms)
+    @PostMapping(path="/accounts/{clientId}/holds", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE}, produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<FundsHold> reserveFunds(@PathVariable Integer clientId, @RequestBody HoldRequest request) {
         BankAccount account = bankService.getAccount(clientId);
         if (account != null) {
+            try {
+                return ResponseEntity
+                        .status(HttpStatus.CREATED)
+                        .body(bankService.reserveFunds(clientId, request.getAmount(), request.getTtlMs()));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity
+                        .status(HttpStatus.BAD_REQUEST)
+                        .build();
+            }
+        } else {
+            return ResponseEntity
+                    .status(HttpStatus.NOT_FOUND)
+                    .build();
+        }
+    }
+
+    // Get a hold: active, or finished and still kept by the bank
+    @GetMapping(path="/holds/{holdId}", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<FundsHold> getHold(@PathVariable Long holdId) {
+        return holdResponse(bankService.getHold(holdId));
+    }
+
+    // Withdraw the funds of an active hold; repeating a commit returns the committed hold again
+    @PostMapping(path="/holds/{holdId}/commit", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<FundsHold> commitHold(@PathVariable Long holdId) {
+        return finishResponse(bankService.commitHold(holdId), FundsHold.State.COMMITTED);
+    }
+
+    // Release an active hold without withdrawing its funds; repeating a release returns it again
+    @PostMapping(path="/holds/{holdId}/release", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<FundsHold> releaseHold(@PathVariable Long holdId) {
+        return finishResponse(bankService.releaseHold(holdId), FundsHold.State.RELEASED);
+    }
+
+    // Apply a batch of checks, debits and credits across many accounts
+    // (mode defaults to BEST_EFFORT; results are returned in request order)
+    @PostMapping(path="/accounts/batch", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE}, produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<BankBatchResponse> applyBatch(@RequestBody BankBatchRequest request) {
+        if (request.operations() == null || request.operations().size() > maxBatchOperations) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build();
+        }
+        BankBatchRequest.Mode mode = request.mode() != null ? request.mode() : BankBatchRequest.Mode.BEST_EFFORT;
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(bankService.applyBatch(mode, request.operations()));
+    }
+
+    // a commit/release: 200 once the hold is in the state asked for, 409 with the hold when it had
+    // already ended another way, 404 when it is unknown or no longer kept
+    private static ResponseEntity<FundsHold> finishResponse(FundsHold hold, FundsHold.State requested) {
+        if (hold != null && hold.state() != requested) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .body(hold);
+        }
+        return holdResponse(hold);
+    }
+
+    // holds that were never placed, or finished longer ago than the bank keeps them, are 404
+    private static ResponseEntity<FundsHold> holdResponse(FundsHold hold) {
+        if (hold != null) {
             return ResponseEntity
                     .status(HttpStatus.OK)
-                    .body(account.balance);
+                    .body(hold);
         } else {
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
                     .build();
         }
     }
-}
\ No newline at end of file
+}
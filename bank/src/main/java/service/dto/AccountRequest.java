@@ -1,14 +1,16 @@
 package service.dto;
 
+import service.core.Money;
+
 public class AccountRequest {
     private Integer clientId;
     private String accountName;
-    private Double initialFunds;
+    private Money initialFunds;
     
     // Default constructor
     public AccountRequest() {}
     
-    public AccountRequest(Integer clientId, String accountName, Double initialFunds) {
+    public AccountRequest(Integer clientId, String accountName, Money initialFunds) {
         this.clientId = clientId;
         this.accountName = accountName;
         this.initialFunds = initialFunds;
@@ -19,6 +21,6 @@ public class AccountRequest {
     public void setClientId(Integer clientId) { this.clientId = clientId; }
     public String getAccountName() { return accountName; }
     public void setAccountName(String accountName) { this.accountName = accountName; }
-    public Double getInitialFunds() { return initialFunds; }
-    public void setInitialFunds(Double initialFunds) { this.initialFunds = initialFunds; }
+    public Money getInitialFunds() { return initialFunds; }
+    public void setInitialFunds(Money initialFunds) { this.initialFunds = initialFunds; }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package service.dto;
+
+import service.core.Money;
+
+public class HoldRequest {
+    private Money amount;
+    private Long ttlMs;
+
+    // Default constructor
+    public HoldRequest() {}
+
+    public HoldRequest(Money amount, Long ttlMs) {
+        this.amount = amount;
+        this.ttlMs = ttlMs;
+    }
+
+    // Getters and setters
+    public Money getAmount() { return amount; }
+    public void setAmount(Money amount) { this.amount = amount; }
+    public Long getTtlMs() { return ttlMs; }
+    public void setTtlMs(Long ttlMs) { this.ttlMs = ttlMs; }
+}
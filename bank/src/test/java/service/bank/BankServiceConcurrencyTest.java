@@ -0,0 +1,107 @@
+package service.bank;
+
+import org.junit.jupiter.api.Test;
+import service.core.Money;
+import service.dto.BankBatchRequest;
+import service.dto.BankOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** BankServiceConcurrencyTest
+ * - Threads move money between accounts that share stripe locks (ALL_OR_NOTHING debit + credit
+ *   batches, some refused for insufficient funds) while others deposit and withdraw on the same
+ *   accounts; afterwards every cent is accounted for and no balance ever went negative
+ */
+class BankServiceConcurrencyTest {
+    private static final int ACCOUNTS = 64;
+    private static final int STRIPES = 4; // many accounts per stripe, and transfers across stripes
+    private static final long OPENING_CENTS = 100_00;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentTransfersAndDepositsConserveMoney() throws Exception {
+        BankService bank = new BankService(STRIPES, 30_000, 600_000, 100, 512, 3_600_000, 100_000);
+        for (int clientId = 0; clientId < ACCOUNTS; clientId++) {
+            bank.createAccount(clientId, "account " + clientId, Money.ofMinor(OPENING_CENTS));
+        }
+        Money opening = bank.getTotalFunds();
+        AtomicLong depositedCents = new AtomicLong(); // deposits minus withdrawals
+        AtomicLong transfers = new AtomicLong();
+        AtomicLong refused = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean sawNegative = new AtomicBoolean();
+
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(threads.submit(() -> {
+                go.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = random.nextInt(ACCOUNTS);
+                    Money amount = Money.ofMinor(1 + random.nextLong(OPENING_CENTS / 2));
+                    if (random.nextInt(4) == 0) {
+                        bank.depositFunds(from, amount);
+                        depositedCents.addAndGet(amount.getMinorUnits());
+                        try {
+                            bank.withdrawFunds(from, amount);
+                            depositedCents.addAndGet(-amount.getMinorUnits());
+                        } catch (IllegalArgumentException e) {
+                            // a transfer took the deposit away first; it stays deposited
+                        }
+                    } else {
+                        boolean applied = bank.applyBatch(BankBatchRequest.Mode.ALL_OR_NOTHING, List.of(
+                                BankOperation.debit(from, amount),
+                                BankOperation.credit(to, amount))).applied();
+                        (applied ? transfers : refused).incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        // balances are read without locks: none may ever be seen below zero
+        Future<?> watcher = threads.submit(() -> {
+            while (running.get()) {
+                for (int clientId = 0; clientId < ACCOUNTS; clientId++) {
+                    if (bank.getBalance(clientId).isNegative()) {
+                        sawNegative.set(true);
+                    }
+                }
+            }
+            return null;
+        });
+
+        go.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        watcher.get(10, TimeUnit.SECONDS);
+        threads.shutdown();
+
+        assertEquals(opening.plus(Money.ofMinor(depositedCents.get())), bank.getTotalFunds());
+        assertFalse(sawNegative.get());
+        for (int clientId = 0; clientId < ACCOUNTS; clientId++) {
+            assertFalse(bank.getBalance(clientId).isNegative(), "account " + clientId);
+        }
+        // both outcomes of a transfer were exercised
+        assertTrue(transfers.get() > 0);
+        assertTrue(refused.get() > 0);
+    }
+}
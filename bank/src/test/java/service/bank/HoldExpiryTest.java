@@ -0,0 +1,94 @@
+package service.bank;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import service.core.Money;
+import service.dto.FundsHold;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** HoldExpiryTest
+ * - An unclaimed hold expires once its TTL has passed: its amount is available again, nothing is
+ *   withdrawn, and a late commit gets the hold as EXPIRED
+ * - A hold further away than one turn of the wheel is passed over until its own turn
+ * - A hold committed in time is never expired by the wheel
+ */
+class HoldExpiryTest {
+    private static final int CLIENT_ID = 1000;
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 4; // one turn of the wheel is 40 ms
+
+    private final BankService bank = new BankService(4, 30_000, 600_000, TICK_MS, WHEEL_SIZE, 3_600_000, 100_000);
+
+    @BeforeEach
+    void open() {
+        bank.start();
+        bank.createAccount(CLIENT_ID, "holder", Money.parse("100.00"));
+    }
+
+    @AfterEach
+    void close() {
+        bank.stop();
+    }
+
+    @Test
+    void unclaimedHoldExpiresAndFreesItsFunds() throws Exception {
+        FundsHold hold = bank.reserveFunds(CLIENT_ID, Money.parse("60.00"), 50L);
+        assertEquals(FundsHold.State.ACTIVE, hold.state());
+        assertEquals(Money.parse("40.00"), bank.getAvailableBalance(CLIENT_ID));
+        assertThrows(IllegalArgumentException.class, () -> bank.withdrawFunds(CLIENT_ID, Money.parse("50.00")));
+
+        assertEquals(FundsHold.State.EXPIRED, awaitFinished(hold.holdId()).state());
+        assertEquals(Money.parse("100.00"), bank.getAvailableBalance(CLIENT_ID));
+        assertEquals(Money.parse("100.00"), bank.getBalance(CLIENT_ID));
+
+        assertEquals(FundsHold.State.EXPIRED, bank.commitHold(hold.holdId()).state());
+        assertEquals(Money.parse("100.00"), bank.getBalance(CLIENT_ID));
+    }
+
+    @Test
+    void holdBeyondOneTurnWaitsForItsTurn() throws Exception {
+        long ttl = 500;
+        long placedAt = System.nanoTime();
+        FundsHold hold = bank.reserveFunds(CLIENT_ID, Money.parse("10.00"), ttl);
+
+        // several turns pass over the hold's slot before its deadline
+        Thread.sleep(150);
+        FundsHold early = bank.getHold(hold.holdId());
+        if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - placedAt) < ttl) {
+            assertEquals(FundsHold.State.ACTIVE, early.state());
+            assertEquals(Money.parse("90.00"), bank.getAvailableBalance(CLIENT_ID));
+        }
+
+        assertEquals(FundsHold.State.EXPIRED, awaitFinished(hold.holdId()).state());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - placedAt) >= ttl);
+        assertEquals(Money.parse("100.00"), bank.getAvailableBalance(CLIENT_ID));
+    }
+
+    @Test
+    void committedHoldIsNotExpired() throws Exception {
+        FundsHold hold = bank.reserveFunds(CLIENT_ID, Money.parse("25.00"), 50L);
+        assertEquals(FundsHold.State.COMMITTED, bank.commitHold(hold.holdId()).state());
+
+        // well past the deadline: the wheel has visited the hold's slot and dropped it
+        Thread.sleep(200);
+        assertEquals(FundsHold.State.COMMITTED, bank.getHold(hold.holdId()).state());
+        assertEquals(Money.parse("75.00"), bank.getBalance(CLIENT_ID));
+        assertEquals(Money.parse("75.00"), bank.getAvailableBalance(CLIENT_ID));
+    }
+
+    private FundsHold awaitFinished(long holdId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        FundsHold hold = bank.getHold(holdId);
+        while (hold.state() == FundsHold.State.ACTIVE && System.nanoTime() < deadline) {
+            Thread.sleep(TICK_MS);
+            hold = bank.getHold(holdId);
+        }
+        return hold;
+    }
+}
@@ -0,0 +1,76 @@
+package service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.bank.BankService;
+import service.core.Money;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** BankServiceBenchmark
+ * - Deposits and withdrawals against one shared BankService from 2 depositing and 2 withdrawing threads
+ * - `accounts` sets the contention: 1 puts every thread on the same account (and stripe lock),
+ *   1024 spreads them over the default stripes
+ * - Accounts start with enough funds that no withdrawal is refused during a run
+ */
+@State(Scope.Group)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BankServiceBenchmark {
+    private static final Money AMOUNT = Money.of(1);
+
+    @Param({"1", "16", "1024"})
+    private int accounts;
+
+    private BankService bank;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Setup(Level.Trial)
+    public void openAccounts() {
+        bank = new BankService(0, 30_000, 600_000, 100, 512, 3_600_000, 100_000);
+        bank.start();
+        for (int i = 0; i < accounts; i++) {
+            bank.createAccount(1000 + i, "Benchmark " + i, Money.of(1_000_000_000L));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeBank() {
+        bank.stop();
+    }
+
+    @Benchmark
+    @Group("depositWithdraw")
+    @GroupThreads(2)
+    public void deposit(Cursor cursor) {
+        bank.depositFunds(1000 + cursor.random.nextInt(accounts), AMOUNT);
+    }
+
+    @Benchmark
+    @Group("depositWithdraw")
+    @GroupThreads(2)
+    public void withdraw(Cursor cursor) {
+        bank.withdrawFunds(1000 + cursor.random.nextInt(accounts), AMOUNT);
+    }
+}
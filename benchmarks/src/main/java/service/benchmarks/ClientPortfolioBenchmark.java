@@ -0,0 +1,80 @@
+package service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.core.BankAccount;
+import service.core.Client;
+import service.core.Money;
+import service.core.ShareHolding;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** ClientPortfolioBenchmark
+ * - Portfolio upkeep of one Client holding `holdings` companies (10 to 1000)
+ * - addShareHolding: a fill for a company already held, spread over every holding
+ * - addNewHolding: a fill that opens a holding, then the sale that closes it again,
+ *   so the portfolio stays the same size
+ * - getPortfolioValue: valuation of the whole portfolio
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClientPortfolioBenchmark {
+    private static final int FLOW_SIZE = 1 << 12;
+
+    @Param({"10", "100", "1000"})
+    private int holdings;
+
+    private Client client;
+    private int[] companyIds;
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void buildPortfolio() {
+        client = new Client(1000, "Benchmark", new BankAccount(1, "Benchmark", Money.of(1_000_000)));
+        for (int i = 0; i < holdings; i++) {
+            client.addShareHolding(new ShareHolding(2000 + i, "Company " + i, Money.of(100), 10));
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        companyIds = new int[FLOW_SIZE];
+        for (int i = 0; i < FLOW_SIZE; i++) {
+            companyIds[i] = 2000 + random.nextInt(holdings);
+        }
+        cursor = 0;
+    }
+
+    @Benchmark
+    public Money addShareHolding() {
+        int companyId = companyIds[cursor];
+        cursor = (cursor + 1) & (FLOW_SIZE - 1);
+        client.addShareHolding(new ShareHolding(companyId, null, Money.ofMinor(1_000), 1));
+        return client.getTotalAssets();
+    }
+
+    @Benchmark
+    public Money addNewHolding() {
+        int companyId = 2000 + holdings;
+        client.addShareHolding(new ShareHolding(companyId, "New", Money.ofMinor(1_000), 1));
+        client.removeShares(companyId, 1);
+        return client.getTotalAssets();
+    }
+
+    @Benchmark
+    public Money getPortfolioValue() {
+        return client.getPortfolioValue();
+    }
+}
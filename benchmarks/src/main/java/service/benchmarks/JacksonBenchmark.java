@@ -0,0 +1,119 @@
+package service.benchmarks;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import service.core.BankAccount;
+import service.core.Client;
+import service.core.CompanyDTO;
+import service.core.Money;
+import service.core.ShareHolding;
+import service.core.Trade;
+import service.core.json.JacksonConfig;
+import service.core.json.JsonCodecs;
+
+import java.util.concurrent.TimeUnit;
+
+/** JacksonBenchmark
+ * - JSON writing and reading of the payloads the services exchange most: Trade, CompanyDTO,
+ *   and a Client with 20 holdings (the player's portfolio view)
+ * - config=shared: the services' ObjectMapper and cached readers/writers (core JacksonConfig and
+ *   JsonCodecs); config=baseline: the per-service mapper they replaced (field visibility only),
+ *   looked up per message with writeValueAsBytes/readValue as the converters did
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JacksonBenchmark {
+    @Param({"baseline", "shared"})
+    public String config;
+
+    private ObjectMapper mapper;
+    private JsonCodecs codecs;     // null = baseline
+    private ObjectWriter clientWriter;
+    private ObjectReader clientReader;
+
+    private Trade trade;
+    private CompanyDTO company;
+    private Client client;
+    private byte[] tradeJson;
+    private byte[] companyJson;
+    private byte[] clientJson;
+
+    @Setup(Level.Trial)
+    public void createPayloads() throws JsonProcessingException {
+        if (config.equals("baseline")) {
+            mapper = Jackson2ObjectMapperBuilder.json().build();
+            mapper.setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
+        } else {
+            JacksonConfig jacksonConfig = new JacksonConfig();
+            codecs = jacksonConfig.jsonCodecs(jacksonConfig.objectMapper(), "");
+            mapper = codecs.mapper();
+            // not a hot type: kept by its caller, as the player's clients do
+            clientWriter = codecs.writer(Client.class);
+            clientReader = codecs.reader(Client.class);
+        }
+
+        trade = new Trade(3000, 1000, 2000, "Acme Corporation", Money.parse("123.45"), 10, 1_700_000_000_000L);
+        company = new CompanyDTO(2000, "Acme Corporation", Money.parse("123.45"), 1_000_000);
+        client = new Client(1000, "Benchmark Player", new BankAccount(1, "Benchmark Player", Money.parse("10000.00")));
+        for (int i = 0; i < 20; i++) {
+            client.addShareHolding(new ShareHolding(2000 + i, "Company " + i, Money.parse("250.00"), 10 + i));
+        }
+
+        tradeJson = mapper.writeValueAsBytes(trade);
+        companyJson = mapper.writeValueAsBytes(company);
+        clientJson = mapper.writeValueAsBytes(client);
+    }
+
+    @Benchmark
+    public byte[] writeTrade() throws JsonProcessingException {
+        return codecs == null ? mapper.writeValueAsBytes(trade) : codecs.writer(Trade.class).writeValueAsBytes(trade);
+    }
+
+    @Benchmark
+    public Trade readTrade() throws Exception {
+        return codecs == null ? mapper.readValue(tradeJson, Trade.class) : codecs.reader(Trade.class).readValue(tradeJson);
+    }
+
+    @Benchmark
+    public byte[] writeCompany() throws JsonProcessingException {
+        return codecs == null ? mapper.writeValueAsBytes(company)
+                : codecs.writer(CompanyDTO.class).writeValueAsBytes(company);
+    }
+
+    @Benchmark
+    public CompanyDTO readCompany() throws Exception {
+        return codecs == null ? mapper.readValue(companyJson, CompanyDTO.class)
+                : codecs.reader(CompanyDTO.class).readValue(companyJson);
+    }
+
+    @Benchmark
+    public byte[] writeClient() throws JsonProcessingException {
+        return codecs == null ? mapper.writeValueAsBytes(client) : clientWriter.writeValueAsBytes(client);
+    }
+
+    @Benchmark
+    public Client readClient() throws Exception {
+        return codecs == null ? mapper.readValue(clientJson, Client.class) : clientReader.readValue(clientJson);
+    }
+}
@@ -0,0 +1,112 @@
+package service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.core.Company;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.core.Trade;
+import service.market.MarketService;
+import service.market.ledger.TradeLedger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** MarketServiceBenchmark
+ * - MarketService with a ledger already holding `trades` trades (1M by default) across 100 companies
+ *   and 10,000 clients, rebuilt from the same snapshot before every iteration so appends don't pile up
+ * - addTrade: one more trade appended (ledger columns + company/client indexes)
+ * - getAllTrades: every trade materialized as a Trade, i.e. GET /trades with no filter
+ * - getCompanies: the company listing
+ * - addTrade logs a sample of the trades (one in 1000) through the async appender in logback.xml,
+ *   so the cost of logging is measured as it is paid in the service
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MarketServiceBenchmark {
+    private static final int COMPANIES = 100;
+    private static final int CLIENTS = 10_000;
+    private static final int FLOW_SIZE = 1 << 16;
+
+    @Param({"1000000"})
+    private int trades;
+
+    private Map<Integer, Company> companies;
+    private TradeLedger.Snapshot preloaded;
+    private MarketService market;
+    private Trade[] flow;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void preload() {
+        companies = new ConcurrentHashMap<>();
+        for (int i = 0; i < COMPANIES; i++) {
+            companies.put(2000 + i, new PublicCompany(2000 + i, "Company " + i, Money.ofMinor(1_000 + i), 1.0, 1_000_000));
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        TradeLedger ledger = new TradeLedger();
+        for (int i = 0; i < trades; i++) {
+            ledger.append(randomTrade(random, 3000 + i));
+        }
+        preloaded = ledger.snapshot();
+
+        flow = new Trade[FLOW_SIZE];
+        for (int i = 0; i < FLOW_SIZE; i++) {
+            flow[i] = randomTrade(random, 3000 + trades + i);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreLedger() {
+        TradeLedger ledger = new TradeLedger();
+        ledger.restore(preloaded);
+        market = new MarketService(companies, ledger);
+        cursor = 0;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int addTrade() {
+        Trade trade = flow[cursor];
+        cursor = (cursor + 1) & (FLOW_SIZE - 1);
+        return market.addTrade(trade);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Trade> getAllTrades() {
+        return market.getAllTrades();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public List<Company> getCompanies() {
+        return market.getCompanies();
+    }
+
+    private Trade randomTrade(SplittableRandom random, int id) {
+        int companyId = 2000 + random.nextInt(COMPANIES);
+        int quantity = 1 + random.nextInt(100);
+        return new Trade(id, 1000 + random.nextInt(CLIENTS), companyId, companies.get(companyId).getName(),
+                Money.ofMinor(900 + random.nextInt(200)), random.nextBoolean() ? quantity : -quantity,
+                1_700_000_000_000L + id);
+    }
+}
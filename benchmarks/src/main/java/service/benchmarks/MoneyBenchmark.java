@@ -0,0 +1,76 @@
+package service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import service.core.Money;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** MoneyBenchmark
+ * - The arithmetic of a batch of 1024 fills, as the bank and portfolio paths do it: value the fill
+ *   (price * quantity), take it off one balance, add it to a running total
+ * - objects: with Money values (plus/minus/times), a new Money per step unless escape analysis
+ *   removes it; run with -prof gc to see the allocation rate
+ * - minorUnits: the same on longs with Money.plusMinor/minusMinor/timesMinor, as BankService,
+ *   Account, Client and RevaluationEngine keep their amounts
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+    private static final int FILLS = 1024;
+
+    private Money[] prices;
+    private long[] priceMinorUnits;
+    private int[] quantities;
+
+    @Setup(Level.Trial)
+    public void createFills() {
+        SplittableRandom random = new SplittableRandom(42);
+        prices = new Money[FILLS];
+        priceMinorUnits = new long[FILLS];
+        quantities = new int[FILLS];
+        for (int i = 0; i < FILLS; i++) {
+            priceMinorUnits[i] = 1 + random.nextLong(100_000);
+            prices[i] = Money.ofMinor(priceMinorUnits[i]);
+            quantities[i] = 1 + random.nextInt(100);
+        }
+    }
+
+    @Benchmark
+    public Money objects() {
+        Money balance = Money.of(1_000_000_000);
+        Money total = Money.ZERO;
+        for (int i = 0; i < FILLS; i++) {
+            Money value = prices[i].times(quantities[i]);
+            balance = balance.minus(value);
+            total = total.plus(value);
+        }
+        return balance.plus(total);
+    }
+
+    @Benchmark
+    public Money minorUnits() {
+        long balance = Money.of(1_000_000_000).getMinorUnits();
+        long total = 0;
+        for (int i = 0; i < FILLS; i++) {
+            long value = Money.timesMinor(priceMinorUnits[i], quantities[i]);
+            balance = Money.minusMinor(balance, value);
+            total = Money.plusMinor(total, value);
+        }
+        return Money.ofMinor(Money.plusMinor(balance, total));
+    }
+}
@@ -0,0 +1,120 @@
+package service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import service.market.orderbook.Fill;
+import service.market.orderbook.Order;
+import service.market.orderbook.OrderBook;
+import service.market.orderbook.OrderSide;
+import service.market.orderbook.OrderType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/** OrderBookBenchmark
+ * - Single-threaded matching throughput and latency of one OrderBook
+ * - Order flow is a pre-generated mix of crossing/non-crossing limit orders, market orders
+ *   and cancels around a mid price of 100.00, so the book stays roughly stable in size
+ * - Throughput answers "orders per second on one core", SampleTime gives the p99/p99.9 per order
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OrderBookBenchmark {
+    private static final int COMPANY_ID = 2000;
+    private static final long MID = 10_000;
+    private static final int FLOW_SIZE = 1 << 16;
+
+    private OrderBook book;
+    private final List<Fill> fills = new ArrayList<>();
+
+    private byte[] ops;          // 0 = limit, 1 = market, 2 = cancel
+    private OrderSide[] sides;
+    private long[] prices;
+    private int[] quantities;
+    private int cursor;
+    private long nextOrderId;
+    private long oldestLiveId;
+
+    @Setup(Level.Trial)
+    public void generateFlow() {
+        SplittableRandom random = new SplittableRandom(42);
+        ops = new byte[FLOW_SIZE];
+        sides = new OrderSide[FLOW_SIZE];
+        prices = new long[FLOW_SIZE];
+        quantities = new int[FLOW_SIZE];
+        for (int i = 0; i < FLOW_SIZE; i++) {
+            int roll = random.nextInt(100);
+            ops[i] = (byte) (roll < 80 ? 0 : roll < 85 ? 1 : 2);
+            sides[i] = random.nextBoolean() ? OrderSide.BUY : OrderSide.SELL;
+            // buys skew below mid and sells above, with enough overlap that ~1/3 of limits cross
+            long offset = random.nextInt(-5, 20);
+            prices[i] = sides[i] == OrderSide.BUY ? MID - offset : MID + offset;
+            quantities[i] = 1 + random.nextInt(100);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetBook() {
+        book = new OrderBook(COMPANY_ID);
+        nextOrderId = 1;
+        oldestLiveId = 1;
+        cursor = 0;
+        // seed 50 levels a side with 4 orders each
+        for (int level = 1; level <= 50; level++) {
+            for (int n = 0; n < 4; n++) {
+                book.submit(new Order(nextOrderId++, 1, COMPANY_ID, OrderSide.BUY, OrderType.LIMIT,
+                        MID - level, 100), fills);
+                book.submit(new Order(nextOrderId++, 2, COMPANY_ID, OrderSide.SELL, OrderType.LIMIT,
+                        MID + level, 100), fills);
+            }
+        }
+        fills.clear();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void throughput(Blackhole blackhole) {
+        blackhole.consume(step());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void latency(Blackhole blackhole) {
+        blackhole.consume(step());
+    }
+
+    private int step() {
+        int i = cursor;
+        cursor = (cursor + 1) & (FLOW_SIZE - 1);
+        fills.clear();
+
+        switch (ops[i]) {
+            case 0 -> book.submit(new Order(nextOrderId++, i, COMPANY_ID, sides[i], OrderType.LIMIT,
+                    prices[i], quantities[i]), fills);
+            case 1 -> book.submit(new Order(nextOrderId++, i, COMPANY_ID, sides[i], OrderType.MARKET,
+                    0, quantities[i]), fills);
+            default -> {
+                // cancel the oldest order that may still be resting, bounding the book size
+                book.cancel(oldestLiveId);
+                oldestLiveId += 5;
+            }
+        }
+        return fills.size();
+    }
+}
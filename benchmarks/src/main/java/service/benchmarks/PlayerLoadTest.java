@@ -0,0 +1,197 @@
+package service.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** PlayerLoadTest
+ * - Closed-loop HTTP load test of the player service: every simulated player alternately buys and
+ *   sells one share through POST /players/{id}/buy and /sell, sending its next order as soon as the
+ *   last one is answered
+ * - Used to compare the services' execution modes (spring.threads.virtual.enabled): run it once
+ *   against services started with platform threads and once with virtual threads, same arguments
+ * - Reports orders per second and p50/p99/p99.9/max latency over the measured window; a warmup
+ *   window before it is not counted
+ * - Not a JMH suite, since the work under test is in other processes; run with
+ *     mvn -Pbenchmarks -pl benchmarks -am test-compile exec:exec@load-test -Dload.args="--players=5000"
+ * Options (--name=value):
+ * - url (http://localhost:8083), players (5000), company (2000, must exist in the market),
+ *   initial-funds (1000000), warmup-seconds (10), duration-seconds (30), label (printed with the results)
+ */
+public class PlayerLoadTest {
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String url = options.getOrDefault("url", "http://localhost:8083");
+        int players = Integer.parseInt(options.getOrDefault("players", "5000"));
+        int companyId = Integer.parseInt(options.getOrDefault("company", "2000"));
+        String initialFunds = options.getOrDefault("initial-funds", "1000000");
+        long warmupNanos = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup-seconds", "10"))).toNanos();
+        long measureNanos = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration-seconds", "30"))).toNanos();
+        String label = options.getOrDefault("label", "");
+
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .executor(threads)
+                    .build();
+
+            List<Integer> ids = register(http, url, players, initialFunds);
+            System.out.printf("Registered %d players, running %ds warmup + %ds measured%n",
+                    ids.size(), warmupNanos / 1_000_000_000, measureNanos / 1_000_000_000);
+
+            long start = System.nanoTime();
+            long measureFrom = start + warmupNanos;
+            long measureUntil = measureFrom + measureNanos;
+            List<Future<Samples>> results = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                results.add(threads.submit(() -> trade(http, url, id, companyId, measureFrom, measureUntil)));
+            }
+            Samples total = new Samples();
+            for (Future<Samples> result : results) {
+                total.addAll(result.get());
+            }
+            report(label, ids.size(), total, measureNanos);
+        }
+    }
+
+    // one simulated player: buy, sell, buy, ... until the measured window ends
+    private static Samples trade(HttpClient http, String url, int playerId, int companyId,
+                                 long measureFrom, long measureUntil) {
+        Samples samples = new Samples();
+        String body = "{\"companyId\":" + companyId + ",\"quantity\":1}";
+        boolean buy = true;
+        while (true) {
+            long sent = System.nanoTime();
+            if (sent >= measureUntil) {
+                return samples;
+            }
+            boolean ok;
+            try {
+                HttpResponse<Void> response = http.send(post(url + "/players/" + playerId + (buy ? "/buy" : "/sell"), body),
+                        HttpResponse.BodyHandlers.discarding());
+                ok = response.statusCode() == 200;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return samples;
+            }
+            long answered = System.nanoTime();
+            if (sent >= measureFrom && answered <= measureUntil) {
+                if (ok) {
+                    samples.add(answered - sent);
+                } else {
+                    samples.errors++;
+                }
+            }
+            // a failed buy leaves nothing to sell, so buy again
+            buy = !buy || !ok;
+        }
+    }
+
+    // registers players one at a time; the player service derives IDs from the clock, so a
+    // clashing ID is refused and retried
+    private static List<Integer> register(HttpClient http, String url, int players, String initialFunds)
+            throws IOException, InterruptedException {
+        Set<Integer> ids = new LinkedHashSet<>();
+        int failures = 0;
+        while (ids.size() < players) {
+            HttpResponse<String> response = http.send(
+                    post(url + "/players", "{\"name\":\"load-" + ids.size() + "\",\"initialFunds\":" + initialFunds + "}"),
+                    HttpResponse.BodyHandlers.ofString());
+            Matcher id = ID.matcher(response.body());
+            if (response.statusCode() != 201 || !id.find() || !ids.add(Integer.parseInt(id.group(1)))) {
+                if (++failures > players) {
+                    throw new IllegalStateException("Could not register players: " + response.statusCode() + " " + response.body());
+                }
+                Thread.sleep(1);
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private static void report(String label, int players, Samples samples, long measureNanos) {
+        long[] latencies = samples.sorted();
+        double seconds = measureNanos / 1e9;
+        System.out.printf("%s players=%d orders=%d errors=%d throughput=%.1f/s p50=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms%n",
+                label.isEmpty() ? "result" : label, players, latencies.length, samples.errors, latencies.length / seconds,
+                millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)),
+                millis(percentile(latencies, 0.999)), millis(latencies.length == 0 ? 0 : latencies[latencies.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    // latencies (ns) of answered orders, owned by one player's thread until it returns them
+    private static final class Samples {
+        private long[] values = new long[256];
+        private int size;
+        private long errors;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+            errors += other.errors;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package service.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import service.core.Money;
+import service.core.Trade;
+import service.core.TradeResponse;
+import service.core.json.JacksonConfig;
+import service.core.json.JsonCodecs;
+import service.core.wire.WireFormat;
+import service.core.wire.WireFormats;
+import service.dto.BuyRequest;
+import service.dto.FundsHold;
+import service.dto.HoldRequest;
+import service.dto.ShareRequest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** WireFormatBenchmark
+ * - Encoding and decoding of the messages one settled buy sends between the services, per format:
+ *     player -> market   BuyRequest, answered with the Trade
+ *     market -> bank     HoldRequest, answered with the FundsHold
+ *     market -> company  ShareRequest, answered with a TradeResponse
+ * - writeTrade/readTrade encode/decode all six, with the writers and readers the clients keep, so
+ *   the results are the serialization CPU per trade; the bytes per trade are printed at setup
+ * - Uses the codecs the services get from WireFormats, built on JacksonConfig's ObjectMapper
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatBenchmark {
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    private Object[] messages;
+    private ObjectWriter[] writers;
+    private ObjectReader[] readers;
+    private byte[][] encoded;
+
+    @Setup(Level.Trial)
+    public void createMessages() throws IOException {
+        JacksonConfig config = new JacksonConfig();
+        JsonCodecs codecs = new WireFormats(config.jsonCodecs(config.objectMapper(), ""), Map.of(), WireFormat.JSON)
+                .codecs(WireFormat.parse(format));
+
+        Money price = Money.parse("123.45");
+        Money value = price.times(10);
+        messages = new Object[] {
+                new BuyRequest(1000, 10),
+                new HoldRequest(value, 30_000L),
+                new FundsHold(5000, 1000, value, 1_700_000_030_000L, FundsHold.State.ACTIVE),
+                new ShareRequest(1000, 10),
+                new TradeResponse(true, 10, value),
+                new Trade(3000, 1000, 2000, "Acme Corporation", price, 10, 1_700_000_000_000L)
+        };
+        writers = new ObjectWriter[messages.length];
+        readers = new ObjectReader[messages.length];
+        encoded = new byte[messages.length][];
+        int bytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            writers[i] = codecs.writer(messages[i].getClass());
+            readers[i] = codecs.reader(messages[i].getClass());
+            encoded[i] = writers[i].writeValueAsBytes(messages[i]);
+            bytes += encoded[i].length;
+        }
+        System.out.printf("%s: %d bytes per trade in %d messages%n", format, bytes, messages.length);
+    }
+
+    @Benchmark
+    public void writeTrade(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < messages.length; i++) {
+            blackhole.consume(writers[i].writeValueAsBytes(messages[i]));
+        }
+    }
+
+    @Benchmark
+    public void readTrade(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < encoded.length; i++) {
+            blackhole.consume(readers[i].readValue(encoded[i]));
+        }
+    }
+}
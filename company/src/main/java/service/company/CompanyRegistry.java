@@ -0,0 +1,213 @@
+package service.company;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import service.core.Company;
+import service.core.Money;
+import service.dto.CompanyLoadResult;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** CompanyRegistry
+ * Purpose:
+ * - Every company the Company Service trades, with the shares each one has left
+ * - Companies are registered one at a time, or bulk-loaded from CSV (a request body, or a file at startup)
+ * Threading:
+ * - Companies live in a ConcurrentHashMap keyed by company ID; share counts are atomic per company,
+ *   so buys and sells take no locks
+ * CSV format:
+ * - one company per line: id,name,sharePrice,shareMultiplier,numShares
+ * - id may be left empty to have one assigned; the name may contain commas
+ * - blank lines, lines starting with '#' and a header line starting with "id" are skipped
+ * Metrics:
+ * - company.registry.companies: companies registered
+ * Config:
+ * - company.registry.load-file: CSV file loaded at startup (empty = none)
+ */
+@Service
+public class CompanyRegistry implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(CompanyRegistry.class);
+
+    // rejected lines beyond this many are counted but not described
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final Map<Integer, ListedCompany> companies = new ConcurrentHashMap<>();
+    private final AtomicInteger idCounter = new AtomicInteger(1);
+    private final String loadFile;
+
+    public CompanyRegistry(@Value("${company.registry.load-file:}") String loadFile) {
+        this.loadFile = loadFile;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("company.registry.companies", companies, Map::size)
+                .description("Companies registered with the Company Service")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void loadInitialCompanies() throws IOException {
+        if (loadFile == null || loadFile.isBlank()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(loadFile), StandardCharsets.UTF_8)) {
+            CompanyLoadResult result = load(reader);
+            log.info("Loaded {} companies from {} ({} rejected)", result.loaded(), loadFile, result.rejected());
+        }
+    }
+
+    /**
+     * Register a company.
+     * @param id - null to have an ID assigned
+     * @throws IllegalArgumentException - missing name, negative price or share count
+     * @throws IllegalStateException - a company with the ID is already registered
+     */
+    public Company register(Integer id, String name, Money sharePrice, double shareMultiplier, int numShares) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Company name is required");
+        }
+        if (sharePrice == null || sharePrice.isNegative()) {
+            throw new IllegalArgumentException("Share price must be a non-negative number");
+        }
+        if (numShares < 0) {
+            throw new IllegalArgumentException("Number of shares must not be negative");
+        }
+        int companyId = id != null ? id : nextFreeId();
+        ListedCompany company = new ListedCompany(companyId, name, sharePrice, shareMultiplier, numShares);
+        if (companies.putIfAbsent(companyId, company) != null) {
+            throw new IllegalStateException("Company " + companyId + " is already registered");
+        }
+        idCounter.accumulateAndGet(companyId + 1, Math::max);
+        return company.toCompany();
+    }
+
+    /**
+     * Register every company in a CSV stream, line by line.
+     * Bad or duplicate lines are rejected without stopping the load.
+     */
+    public CompanyLoadResult load(Reader csv) throws IOException {
+        BufferedReader reader = csv instanceof BufferedReader buffered ? buffered : new BufferedReader(csv);
+        int loaded = 0;
+        int rejected = 0;
+        List<String> errors = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || (lineNumber == 1 && isHeader(trimmed))) {
+                continue;
+            }
+            try {
+                registerLine(trimmed);
+                loaded++;
+            } catch (RuntimeException e) {
+                rejected++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return new CompanyLoadResult(loaded, rejected, errors);
+    }
+
+    // null if no company has the ID
+    public Company getCompany(int companyId) {
+        ListedCompany company = companies.get(companyId);
+        return company == null ? null : company.toCompany();
+    }
+
+    public boolean isRegistered(int companyId) {
+        return companies.containsKey(companyId);
+    }
+
+    public List<Company> getCompanies() {
+        List<Company> result = new ArrayList<>(companies.size());
+        for (ListedCompany company : companies.values()) {
+            result.add(company.toCompany());
+        }
+        return result;
+    }
+
+    /**
+     * Take shares from a company.
+     * @return - the trade value, or null if the company has fewer than quantity shares left
+     * @throws IllegalArgumentException - unknown company or non-positive quantity
+     */
+    public Money buyShares(int companyId, int quantity) {
+        ListedCompany company = find(companyId, quantity);
+        return company.takeShares(quantity) ? company.getSharePrice().times(quantity) : null;
+    }
+
+    /**
+     * Give shares back to a company.
+     * @return - the trade value, or null if the company's share count would overflow
+     * @throws IllegalArgumentException - unknown company or non-positive quantity
+     */
+    public Money sellShares(int companyId, int quantity) {
+        ListedCompany company = find(companyId, quantity);
+        return company.returnShares(quantity) ? company.getSharePrice().times(quantity) : null;
+    }
+
+    private ListedCompany find(int companyId, int quantity) {
+        ListedCompany company = companies.get(companyId);
+        if (company == null) {
+            throw new IllegalArgumentException("Company not found");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        return company;
+    }
+
+    private int nextFreeId() {
+        int id;
+        do {
+            id = idCounter.getAndIncrement();
+        } while (companies.containsKey(id));
+        return id;
+    }
+
+    // id,name,sharePrice,shareMultiplier,numShares - the name is everything between the first comma and the last three
+    private void registerLine(String line) {
+        int idEnd = line.indexOf(',');
+        int multiplierEnd = line.lastIndexOf(',');
+        int priceEnd = multiplierEnd < 0 ? -1 : line.lastIndexOf(',', multiplierEnd - 1);
+        int nameEnd = priceEnd < 0 ? -1 : line.lastIndexOf(',', priceEnd - 1);
+        if (idEnd < 0 || nameEnd < idEnd) {
+            throw new IllegalArgumentException("expected id,name,sharePrice,shareMultiplier,numShares");
+        }
+        String id = line.substring(0, idEnd).strip();
+        try {
+            register(
+                    id.isEmpty() ? null : Integer.valueOf(id),
+                    line.substring(idEnd + 1, nameEnd).strip(),
+                    Money.parse(line.substring(nameEnd + 1, priceEnd)),
+                    Double.parseDouble(line.substring(priceEnd + 1, multiplierEnd).strip()),
+                    Integer.parseInt(line.substring(multiplierEnd + 1).strip()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number: " + e.getMessage());
+        }
+    }
+
+    private static boolean isHeader(String line) {
+        return line.regionMatches(true, 0, "id,", 0, 3);
+    }
+}
@@ -0,0 +1,72 @@
+package service.company;
+
+import service.core.Company;
+import service.core.Money;
+import service.core.PublicCompany;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** ListedCompany
+ * Purpose:
+ * - CompanyRegistry's internal record of one company and the shares it still has to sell
+ * Threading:
+ * - The share count is an AtomicInteger changed by compare-and-set, so concurrent buys never
+ *   oversell and never block each other
+ * - Everything else is fixed at registration
+ */
+final class ListedCompany {
+    private final int id;
+    private final String name;
+    private final Money sharePrice;
+    private final double shareMultiplier;
+    private final AtomicInteger shares;
+
+    ListedCompany(int id, String name, Money sharePrice, double shareMultiplier, int shares) {
+        this.id = id;
+        this.name = name;
+        this.sharePrice = sharePrice;
+        this.shareMultiplier = shareMultiplier;
+        this.shares = new AtomicInteger(shares);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    Money getSharePrice() {
+        return sharePrice;
+    }
+
+    int getShares() {
+        return shares.get();
+    }
+
+    // takes quantity shares if that many are left; false (and no change) otherwise
+    boolean takeShares(int quantity) {
+        int current;
+        do {
+            current = shares.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!shares.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    // gives quantity shares back; false (and no change) if the count would overflow
+    boolean returnShares(int quantity) {
+        int current;
+        do {
+            current = shares.get();
+            if (current > Integer.MAX_VALUE - quantity) {
+                return false;
+            }
+        } while (!shares.compareAndSet(current, current + quantity));
+        return true;
+    }
+
+    // point-in-time copy for responses
+    Company toCompany() {
+        return new PublicCompany(id, name, sharePrice, shareMultiplier, shares.get());
+    }
+}
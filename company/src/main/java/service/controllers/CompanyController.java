@@ -1,20 +1,46 @@
 package service.controllers;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import service.company.CompanyRegistry;
 import service.core.Company;
-import service.core.PublicCompany;
+import service.core.Money;
 import service.core.TradeResponse;
+import service.dto.CompanyLoadResult;
+import service.dto.CompanyRequest;
+
+import java.io.IOException;
+import java.util.List;
+
+import static service.core.wire.WireFormat.CBOR_VALUE;
+import static service.core.wire.WireFormat.JSON_VALUE;
+import static service.core.wire.WireFormat.SMILE_VALUE;
+
+/** Company Service
+ *
+ * Endpoints:
+ * - GET /companies - list every registered company
+ * - POST /companies - register a company
+ * - POST /companies/bulk - register every company in a CSV request body
+ * - GET /companies/{companyId} - get a company and its remaining shares
+ * - POST /companies/{companyId}/buy - take shares from a company
+ * - POST /companies/{companyId}/sell - give shares back to a company
+ *
+ * The endpoints the market calls also speak CBOR and Smile (WireFormat) when asked to; JSON is
+ * the default
+ */
 
 @RestController
 public class CompanyController {
     private final boolean TRADE_SUCCESS = true;
     private final boolean TRADE_FAILURE = false;
 
-    // by default spring uses empty constructor for controllers
-    // with no dependencies here for clarity
-    public CompanyController() {
+    private final CompanyRegistry registry;
+
+    public CompanyController(CompanyRegistry registry) {
+        this.registry = registry;
     }
 
     /**
@@ -27,39 +53,77 @@ public class CompanyController {
                 .body("Company Service is running");
     }
 
+    /**
+     * List every registered company
+     * @return - companies with their remaining shares
+     */
+    @GetMapping(path="/companies", produces="application/json")
+    public ResponseEntity<List<Company>> getCompanies() {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(registry.getCompanies());
+    }
+
+    /**
+     * Register a company
+     * @param request - company details; id may be omitted to have one assigned
+     * @return - the registered company
+     */
+    @PostMapping(path="/companies", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE}, produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<Company> registerCompany(@RequestBody CompanyRequest request) {
+        try {
+            Company company = registry.register(request.getId(), request.getName(), request.getSharePrice(),
+                    request.getShareMultiplier(), request.getNumShares());
+            return ResponseEntity
+                    .status(HttpStatus.CREATED)
+                    .body(company);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity
+                    .status(HttpStatus.CONFLICT)
+                    .build();
+        }
+    }
+
+    /**
+     * Register every company in a CSV body (id,name,sharePrice,shareMultiplier,numShares per line)
+     * The body is read line by line, so large files are never held in memory at once
+     * @return - how many companies were loaded and why any lines were rejected
+     */
+    @PostMapping(path="/companies/bulk", consumes="text/csv", produces="application/json")
+    public ResponseEntity<CompanyLoadResult> loadCompanies(HttpServletRequest request) throws IOException {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(registry.load(request.getReader()));
+    }
+
     /**
      * Buy shares from a company
      * @param companyId - ID of company selling shares
      * @param request - contains clientId and quantity
      * @return - TradeResponse with trade details
      */
-    @PostMapping(path="/companies/{companyId}/buy", consumes="application/json")
+    @PostMapping(path="/companies/{companyId}/buy", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<TradeResponse> buyShares(@PathVariable Integer companyId, 
                                                  @RequestBody ShareRequest request) {
         try {
-            // In a real implementation, you would look up the company by ID
-            // For now, we'll create a dummy company
-            Company company = createDummyCompany(companyId);
-            
-            // Check if company has enough shares
-            if (company.getNumShares() < request.getQuantity()) {
+            // Take the shares if the company has enough left
+            Money tradeValue = registry.buyShares(companyId, quantityOf(request));
+            if (tradeValue == null) {
                 return ResponseEntity
                     .status(HttpStatus.BAD_REQUEST)
-                    .body(new TradeResponse(TRADE_FAILURE, 0, 0.0));
+                    .body(new TradeResponse(TRADE_FAILURE, 0, Money.ZERO));
             }
             
-            double tradeValue = request.getQuantity() * company.getSharePrice();
-            company.decreaseShares(request.getQuantity());
-            
             TradeResponse tradeData = new TradeResponse(TRADE_SUCCESS, request.getQuantity(), tradeValue);
             return ResponseEntity
                     .status(HttpStatus.OK)
                     .body(tradeData);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new TradeResponse(TRADE_FAILURE, 0, 0.0));
+        } catch (IllegalArgumentException e) {
+            return failure(companyId);
         }
     }
 
@@ -69,27 +133,23 @@ public class CompanyController {
      * @param request - contains clientId and quantity
      * @return - TradeResponse with trade details
      */
-    @PostMapping(path="/companies/{companyId}/sell", consumes="application/json")
+    @PostMapping(path="/companies/{companyId}/sell", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<TradeResponse> sellShares(@PathVariable Integer companyId, 
                                                  @RequestBody ShareRequest request) {
         try {
-            // In a real implementation, you would look up the company by ID
-            // For now, we'll create a dummy company
-            Company company = createDummyCompany(companyId);
-            
-            // calculate trade value before updating shares
-            double tradeValue = request.getQuantity() * company.getSharePrice();
-            company.increaseShares(request.getQuantity());
+            Money tradeValue = registry.sellShares(companyId, quantityOf(request));
+            if (tradeValue == null) {
+                return ResponseEntity
+                    .status(HttpStatus.BAD_REQUEST)
+                    .body(new TradeResponse(TRADE_FAILURE, 0, Money.ZERO));
+            }
             
             TradeResponse tradeData = new TradeResponse(TRADE_SUCCESS, request.getQuantity(), tradeValue);
             return ResponseEntity
                     .status(HttpStatus.OK)
                     .body(tradeData);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(new TradeResponse(TRADE_FAILURE, 0, 0.0));
+        } catch (IllegalArgumentException e) {
+            return failure(companyId);
         }
     }
     
@@ -100,39 +160,31 @@ public class CompanyController {
      */
     @GetMapping(path="/companies/{companyId}")
     public ResponseEntity<Company> getCompany(@PathVariable Integer companyId) {
-        try {
-            Company company = createDummyCompany(companyId);
+        Company company = registry.getCompany(companyId);
+        if (company != null) {
             return ResponseEntity
                     .status(HttpStatus.OK)
                     .body(company);
-        } catch (Exception e) {
-            e.printStackTrace();
+        } else {
             return ResponseEntity
                     .status(HttpStatus.NOT_FOUND)
                     .build();
         }
     }
-    
-    // Helper method to create a dummy company for testing
-    private Company createDummyCompany(Integer companyId) {
-        // In a real implementation, you would look up the company in a database
-        // For now, just create a dummy company with the requested ID
-        PublicCompany company = new PublicCompany(
-            "Tech Corp " + companyId,  // Name with ID to make it identifiable
-            100.0,                    // Share price
-            1.2,                      // Share multiplier
-            1000                      // Number of shares
-        );
-        
-        // We'd normally set this from the database, but for testing we'll use reflection
-        try {
-            java.lang.reflect.Field idField = Company.class.getDeclaredField("id");
-            idField.setAccessible(true);
-            idField.set(company, companyId);
-        } catch (Exception e) {
-            e.printStackTrace();
+
+    private static int quantityOf(ShareRequest request) {
+        if (request.getQuantity() == null) {
+            throw new IllegalArgumentException("Quantity is required");
         }
-        return company;
+        return request.getQuantity();
+    }
+
+    // unknown companies are 404, anything else wrong with the request is 400
+    private ResponseEntity<TradeResponse> failure(Integer companyId) {
+        HttpStatus status = !registry.isRegistered(companyId) ? HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+        return ResponseEntity
+                .status(status)
+                .body(new TradeResponse(TRADE_FAILURE, 0, Money.ZERO));
     }
 }
 
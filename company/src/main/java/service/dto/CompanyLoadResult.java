@@ -0,0 +1,9 @@
+package service.dto;
+
+import java.util.List;
+
+/** CompanyLoadResult
+ * - Outcome of a bulk company load (POST /companies/bulk)
+ * - errors describes the first rejected lines (line number and reason); rejected counts all of them
+ */
+public record CompanyLoadResult(int loaded, int rejected, List<String> errors) {}
@@ -5,15 +5,17 @@ import java.io.Serializable;
 public class BankAccount implements Serializable {
     public int number;
     public String name;
-    public double balance;
+    public Money balance;
 
-    public BankAccount(int number, String name, double balance) {
+    public BankAccount(int number, String name, Money balance) {
         this.number = number;
         this.name = name;
         this.balance = balance;
     }
 
-    public BankAccount() {}
+    public BankAccount() {
+        this.balance = Money.ZERO;
+    }
     
     // Getters and setters
     public int getNumber() {
@@ -32,11 +34,11 @@ public class BankAccount implements Serializable {
         this.name = name;
     }
     
-    public double getBalance() {
+    public Money getBalance() {
         return balance;
     }
     
-    public void setBalance(double balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 }
\ No newline at end of file
@@ -1,22 +1,42 @@
 package service.core;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/** Client
+ * Purpose:
+ * - A player: their bank account, their share holdings (one per company) and their total assets
+ * Portfolio:
+ * - Holdings are kept in a list (the JSON shape) plus a HoldingIndex from company ID to list position,
+ *   so finding, adding and removing a holding is O(1)
+ * - The portfolio's value is a running total updated on every fill, so valuation is O(1)
+ * - A removed holding's place is taken by the last holding, so order is not kept across removals
+ * - Holdings should only be changed through Client, or the running total goes stale
+ * - The index and total are rebuilt whenever the list is replaced (including by deserialization)
+ */
 public class Client implements Serializable {
     private static int COUNTER = 1000;
     private int id;
     private String name;
     private BankAccount bankAccount;
     private List<ShareHolding> portfolio;
-    private double totalAssets;
+    private Money totalAssets = Money.ZERO;
+    @JsonIgnore
+    private transient HoldingIndex holdingIndex;
+    @JsonIgnore
+    private transient List<ShareHolding> indexedPortfolio; // the list holdingIndex was built for
+    @JsonIgnore
+    private transient long portfolioValueMinor;
 
     public Client(String name, BankAccount bankAccount, List<ShareHolding> portfolio) {
         this.id = COUNTER++;
         this.name = name;
         this.bankAccount = bankAccount;
-        this.portfolio = portfolio != null ? portfolio : new ArrayList<>();
+        this.portfolio = portfolio != null ? new ArrayList<>(portfolio) : new ArrayList<>();
         updateTotalAssets();
     }
     
@@ -60,68 +80,106 @@ public class Client implements Serializable {
     }
     
     public List<ShareHolding> getPortfolio() {
-        return portfolio;
+        ensureIndexed();
+        return Collections.unmodifiableList(portfolio);
     }
     
     public void setPortfolio(List<ShareHolding> portfolio) {
-        this.portfolio = portfolio;
+        this.portfolio = portfolio != null ? new ArrayList<>(portfolio) : new ArrayList<>();
         updateTotalAssets();
     }
     
-    public double getTotalAssets() {
+    public Money getTotalAssets() {
         return totalAssets;
     }
     
     // Portfolio management methods
     public void addShareHolding(ShareHolding shareHolding) {
-        // Check if player already has shares of this company
-        for (ShareHolding holding : portfolio) {
-            if (holding.getCompanyId() == shareHolding.getCompanyId()) {
-                // Update existing holding
-                holding.increaseQuantity(shareHolding.getQuantity());
-                holding.addValue(shareHolding.getValue());
-                updateTotalAssets();
-                return;
-            }
+        ensureIndexed();
+        int position = holdingIndex.get(shareHolding.getCompanyId());
+        if (position >= 0) {
+            // Update existing holding
+            ShareHolding holding = portfolio.get(position);
+            holding.increaseQuantity(shareHolding.getQuantity());
+            holding.addValue(shareHolding.getValue());
+        } else {
+            // Add new holding
+            holdingIndex.put(shareHolding.getCompanyId(), portfolio.size());
+            portfolio.add(shareHolding);
         }
-        
-        // Add new holding
-        portfolio.add(shareHolding);
+        portfolioValueMinor = Money.plusMinor(portfolioValueMinor, shareHolding.getValue().getMinorUnits());
         updateTotalAssets();
     }
     
     public void removeShares(int companyId, int quantity) {
-        for (ShareHolding holding : portfolio) {
-            if (holding.getCompanyId() == companyId) {
-                holding.decreaseQuantity(quantity);
-                // If no shares left, remove the holding
-                if (holding.getQuantity() <= 0) {
-                    portfolio.remove(holding);
-                }
-                updateTotalAssets();
-                return;
-            }
+        ensureIndexed();
+        int position = holdingIndex.get(companyId);
+        if (position < 0) {
+            return;
+        }
+        ShareHolding holding = portfolio.get(position);
+        int heldQuantity = holding.getQuantity();
+        long heldValue = holding.getValue().getMinorUnits();
+        holding.decreaseQuantity(quantity);
+        if (holding.getQuantity() <= 0) {
+            // If no shares left, remove the holding
+            removeHoldingAt(position);
+            portfolioValueMinor = Money.minusMinor(portfolioValueMinor, heldValue);
+        } else if (quantity > 0) {
+            // the sold shares take their proportional part of the holding's value with them
+            long soldValue = Money.timesMinor(heldValue, quantity) / heldQuantity;
+            holding.setValue(Money.ofMinor(Money.minusMinor(heldValue, soldValue)));
+            portfolioValueMinor = Money.minusMinor(portfolioValueMinor, soldValue);
         }
+        updateTotalAssets();
     }
     
     public int getShareQuantity(int companyId) {
-        for (ShareHolding holding : portfolio) {
-            if (holding.getCompanyId() == companyId) {
-                return holding.getQuantity();
-            }
-        }
-        return 0;
+        ensureIndexed();
+        int position = holdingIndex.get(companyId);
+        return position >= 0 ? portfolio.get(position).getQuantity() : 0;
     }
     
-    public double getPortfolioValue() {
-        double value = 0.0;
-        for (ShareHolding holding : portfolio) {
-            value += holding.getValue();
-        }
-        return value;
+    public Money getPortfolioValue() {
+        ensureIndexed();
+        return Money.ofMinor(portfolioValueMinor);
     }
     
     public void updateTotalAssets() {
-        this.totalAssets = bankAccount.balance + getPortfolioValue();
+        ensureIndexed();
+        long balance = bankAccount != null ? bankAccount.getBalance().getMinorUnits() : 0;
+        this.totalAssets = Money.ofMinor(Money.plusMinor(balance, portfolioValueMinor));
+    }
+
+    // fill the gap with the last holding, so removal never shifts the list
+    private void removeHoldingAt(int position) {
+        int last = portfolio.size() - 1;
+        holdingIndex.remove(portfolio.get(position).getCompanyId());
+        if (position != last) {
+            ShareHolding moved = portfolio.get(last);
+            portfolio.set(position, moved);
+            holdingIndex.put(moved.getCompanyId(), position);
+        }
+        portfolio.remove(last);
+    }
+
+    // (re)build the index and running total if the list was replaced since they were built
+    private void ensureIndexed() {
+        if (holdingIndex != null && indexedPortfolio == portfolio) {
+            return;
+        }
+        if (portfolio == null) {
+            portfolio = new ArrayList<>();
+        }
+        HoldingIndex index = new HoldingIndex(portfolio.size());
+        long value = 0;
+        for (int i = 0; i < portfolio.size(); i++) {
+            ShareHolding holding = portfolio.get(i);
+            index.put(holding.getCompanyId(), i);
+            value = Money.plusMinor(value, holding.getValue().getMinorUnits());
+        }
+        holdingIndex = index;
+        indexedPortfolio = portfolio;
+        portfolioValueMinor = value;
     }
-}
\ No newline at end of file
+}
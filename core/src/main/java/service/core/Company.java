@@ -1,26 +1,33 @@
 package service.core;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class Company implements Serializable {
-    private static int COUNTER = 2000;
+    private static final AtomicInteger COUNTER = new AtomicInteger(2000);
     private int id;
     private String name;
-    private double sharePrice;
+    private Money sharePrice;
     private double shareMultiplier;
     private int numShares;
 
-    public Company(String name, double sharePrice, double shareMultiplier, int numShares) {
-        this.id = COUNTER++;
+    public Company(String name, Money sharePrice, double shareMultiplier, int numShares) {
+        this(COUNTER.getAndIncrement(), name, sharePrice, shareMultiplier, numShares);
+    }
+
+    // Rebuilds a company that already has an ID, e.g. when recovered from storage
+    public Company(int id, String name, Money sharePrice, double shareMultiplier, int numShares) {
+        this.id = id;
         this.name = name;
         this.sharePrice = sharePrice;
         this.shareMultiplier = shareMultiplier;
         this.numShares = numShares;
+        advanceCounterPast(id);
     }
 
     public Company() {
-        this.id = COUNTER++;
-        this.sharePrice = 30.0;
+        this.id = COUNTER.getAndIncrement();
+        this.sharePrice = Money.of(30);
         this.shareMultiplier = 1.0;
         this.numShares = 1000;
     }
@@ -28,13 +35,18 @@ public abstract class Company implements Serializable {
     public int getId() {
         return id;
     }
+
+    // make sure newly created companies never reuse an ID that already exists
+    public static void advanceCounterPast(int id) {
+        COUNTER.accumulateAndGet(id + 1, Math::max);
+    }
     
     // Add these new getter methods
     public String getName() {
         return name;
     }
     
-    public double getSharePrice() {
+    public Money getSharePrice() {
         return sharePrice;
     }
     
@@ -51,7 +63,7 @@ public abstract class Company implements Serializable {
         this.name = name;
     }
     
-    public void setSharePrice(double sharePrice) {
+    public void setSharePrice(Money sharePrice) {
         this.sharePrice = sharePrice;
     }
     
@@ -10,4 +10,4 @@ import java.io.Serializable;
  */
 
 // implementing serializable is unnecessary for record classes (already implemented) but adding it for clarity
-public record CompanyDTO(Integer id, String name, Double sharePrice, Integer numShares) implements Serializable {}
+public record CompanyDTO(Integer id, String name, Money sharePrice, Integer numShares) implements Serializable {}
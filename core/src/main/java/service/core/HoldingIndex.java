@@ -0,0 +1,108 @@
+package service.core;
+
+import java.util.Arrays;
+
+/** HoldingIndex
+ * Purpose:
+ * - Client's map from company ID to the position of that company's holding in the portfolio list
+ * - Open addressing over primitive int arrays with linear probing, so lookups never box the key
+ * - Removal shifts the following entries of the probe run back, so no tombstones build up
+ * - Not thread-safe; guarded the same way as the Client that owns it
+ */
+final class HoldingIndex {
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private int[] positions; // EMPTY marks a free slot
+    private int size;
+
+    HoldingIndex(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    // position of the company's holding, or -1
+    int get(int companyId) {
+        int mask = keys.length - 1;
+        for (int i = home(companyId, mask); positions[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == companyId) {
+                return positions[i];
+            }
+        }
+        return EMPTY;
+    }
+
+    void put(int companyId, int position) {
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = home(companyId, mask);
+        while (positions[i] != EMPTY) {
+            if (keys[i] == companyId) {
+                positions[i] = position;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = companyId;
+        positions[i] = position;
+        size++;
+    }
+
+    void remove(int companyId) {
+        int mask = keys.length - 1;
+        int i = home(companyId, mask);
+        while (positions[i] != EMPTY && keys[i] != companyId) {
+            i = (i + 1) & mask;
+        }
+        if (positions[i] == EMPTY) {
+            return;
+        }
+        positions[i] = EMPTY;
+        size--;
+        // move back any later entry of the run whose home slot is not between the gap and itself
+        for (int j = (i + 1) & mask; positions[j] != EMPTY; j = (j + 1) & mask) {
+            int h = home(keys[j], mask);
+            boolean reachable = i <= j ? (i < h && h <= j) : (i < h || h <= j);
+            if (!reachable) {
+                keys[i] = keys[j];
+                positions[i] = positions[j];
+                positions[j] = EMPTY;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldPositions = positions;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldPositions[i] != EMPTY) {
+                put(oldKeys[i], oldPositions[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, EMPTY);
+    }
+
+    private static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int home(int companyId, int mask) {
+        // spread sequential company IDs across the table
+        int hash = companyId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,147 @@
+package service.core;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/** Money
+ * Purpose:
+ * - Fixed-point amount of money: a long count of minor units (cents) with a fixed scale of 2
+ * - Used for every balance, price and trade value, so sums and price * quantity are exact
+ * Arithmetic:
+ * - plus/minus/times work on the long directly and throw ArithmeticException on overflow
+ * - plusMinor/minusMinor/timesMinor do the same on bare minor-unit counts, for hot paths that keep
+ *   amounts as longs (account balances, holds, portfolio totals) and only make a Money at the edges
+ * - Only times(double) (interest, share multipliers) rounds, half-even to the nearest cent
+ * JSON:
+ * - Written as a plain decimal number (12.50); read from numbers or decimal strings ("12.5"),
+ *   amounts with more than two decimals are rounded half-even
+ */
+@JsonSerialize(using = MoneySerializer.class)
+@JsonDeserialize(using = MoneyDeserializer.class)
+public final class Money implements Comparable<Money>, Serializable {
+    public static final int SCALE = 2;
+    public static final long MINOR_PER_UNIT = 100;
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    public static Money of(long units) {
+        return ofMinor(Math.multiplyExact(units, MINOR_PER_UNIT));
+    }
+
+    public static Money of(BigDecimal amount) {
+        return ofMinor(amount.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact());
+    }
+
+    // for amounts that only exist as doubles, e.g. legacy callers; rounds to the nearest cent
+    public static Money of(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new ArithmeticException("Not a finite amount: " + amount);
+        }
+        return of(BigDecimal.valueOf(amount));
+    }
+
+    public static Money parse(String amount) {
+        try {
+            return of(new BigDecimal(amount.trim()));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Not a money amount: " + amount);
+        }
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public static long plusMinor(long minorUnits, long otherMinorUnits) {
+        return Math.addExact(minorUnits, otherMinorUnits);
+    }
+
+    public static long minusMinor(long minorUnits, long otherMinorUnits) {
+        return Math.subtractExact(minorUnits, otherMinorUnits);
+    }
+
+    public static long timesMinor(long minorUnits, long quantity) {
+        return Math.multiplyExact(minorUnits, quantity);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(plusMinor(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(minusMinor(minorUnits, other.minorUnits));
+    }
+
+    public Money times(long quantity) {
+        return ofMinor(timesMinor(minorUnits, quantity));
+    }
+
+    public Money times(double factor) {
+        return of(toBigDecimal().multiply(BigDecimal.valueOf(factor)));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return minorUnits > other.minorUnits;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    // lossy, only for display and metrics
+    public double toDouble() {
+        return minorUnits / (double) MINOR_PER_UNIT;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money money && money.minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        long units = minorUnits / MINOR_PER_UNIT;
+        long cents = Math.abs(minorUnits % MINOR_PER_UNIT);
+        String sign = minorUnits < 0 && units == 0 ? "-" : "";
+        return sign + units + (cents < 10 ? ".0" : ".") + cents;
+    }
+}
@@ -0,0 +1,37 @@
+package service.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/** MoneyDeserializer
+ * - Reads Money from a JSON number (12, 12.5) or a decimal string ("12.50")
+ * - Decimal numbers are parsed from their text, never through a double
+ */
+public class MoneyDeserializer extends StdDeserializer<Money> {
+    public MoneyDeserializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        try {
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                return Money.of(parser.getLongValue());
+            }
+            if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                return Money.of(parser.getDecimalValue());
+            }
+            if (token == JsonToken.VALUE_STRING) {
+                return Money.parse(parser.getText());
+            }
+        } catch (NumberFormatException | ArithmeticException e) {
+            return (Money) context.handleWeirdStringValue(Money.class, parser.getText(), e.getMessage());
+        }
+        return (Money) context.handleUnexpectedToken(Money.class, parser);
+    }
+}
@@ -0,0 +1,26 @@
+package service.core;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/** MoneySerializer
+ * - Writes Money as a JSON number with two decimals, the same shape the old double fields had
+ * - Binary formats (CBOR, Smile), which cannot write a number from its text, get the decimal itself
+ */
+public class MoneySerializer extends StdSerializer<Money> {
+    public MoneySerializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public void serialize(Money value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (gen.canWriteFormattedNumbers()) {
+            gen.writeNumber(value.toString());
+        } else {
+            gen.writeNumber(value.toBigDecimal());
+        }
+    }
+}
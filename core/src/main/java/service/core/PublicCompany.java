@@ -1,10 +1,14 @@
 package service.core;
 
 public class PublicCompany extends Company {
-    public PublicCompany(String name, double sharePrice, double shareMultiplier, int numShares) {
+    public PublicCompany(String name, Money sharePrice, double shareMultiplier, int numShares) {
         super(name, sharePrice, shareMultiplier, numShares);
     }
     
+    public PublicCompany(int id, String name, Money sharePrice, double shareMultiplier, int numShares) {
+        super(id, name, sharePrice, shareMultiplier, numShares);
+    }
+    
     public PublicCompany() {
         super();
     }
@@ -31,6 +35,6 @@ public class PublicCompany extends Company {
     @Override
     public void updateSharePrice() {
         // Update share price based on multiplier
-        setSharePrice(getSharePrice() * getShareMultiplier());
+        setSharePrice(getSharePrice().times(getShareMultiplier()));
     }
 }
\ No newline at end of file
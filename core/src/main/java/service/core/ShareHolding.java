@@ -5,17 +5,19 @@ import java.io.Serializable;
 public class ShareHolding implements Serializable {
     private int companyId;
     private String companyName; // company
-    private double value; // overall value value += (quantity * sharePrice)
+    private Money value; // overall value value += (quantity * sharePrice)
     private int quantity;
 
-    public ShareHolding(int companyId, String companyName, double value, int quantity) {
+    public ShareHolding(int companyId, String companyName, Money value, int quantity) {
         this.companyId = companyId;
         this.companyName = companyName;
         this.value = value;
         this.quantity = quantity;
     }
     
-    public ShareHolding() {}
+    public ShareHolding() {
+        this.value = Money.ZERO;
+    }
     
     // Getters and setters
     public int getCompanyId() {
@@ -34,11 +36,11 @@ public class ShareHolding implements Serializable {
         this.companyName = companyName;
     }
     
-    public double getValue() {
+    public Money getValue() {
         return value;
     }
     
-    public void setValue(double value) {
+    public void setValue(Money value) {
         this.value = value;
     }
     
@@ -59,7 +61,7 @@ public class ShareHolding implements Serializable {
         this.quantity = Math.max(0, this.quantity - amount);
     }
     
-    public void addValue(double amount) {
-        this.value += amount;
+    public void addValue(Money amount) {
+        this.value = value.plus(amount);
     }
 }
\ No newline at end of file
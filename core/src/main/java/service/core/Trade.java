@@ -1,28 +1,49 @@
 package service.core;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Trade implements Serializable {
-    private static int COUNTER = 3000;
+    // trades are created concurrently by the market's sequencer shards
+    private static final AtomicInteger COUNTER = new AtomicInteger(3000);
     private int id;
     private int clientId;
     private int companyId;
     private String companyName;
-    private double sharePrice;
+    private Money sharePrice;
     private int quantityPurchased;
-    // maybe private String purchaseTime;
+    private long timestamp; // epoch millis when the trade was executed
 
-    public Trade(int clientId, int companyId, String companyName, double sharePrice, int quantityPurchased) {
-        this.id = COUNTER++;
+    public Trade(int clientId, int companyId, String companyName, Money sharePrice, int quantityPurchased) {
+        this.id = COUNTER.getAndIncrement();
         this.clientId = clientId;
         this.companyId = companyId;
         this.sharePrice = sharePrice;
         this.quantityPurchased = quantityPurchased;
         this.companyName = companyName;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    // Rebuilds a trade that already has an ID, e.g. when read back from a ledger
+    // (does not touch the ID counter; call advanceCounterPast after recovering trades)
+    public Trade(int id, int clientId, int companyId, String companyName, Money sharePrice,
+                 int quantityPurchased, long timestamp) {
+        this.id = id;
+        this.clientId = clientId;
+        this.companyId = companyId;
+        this.companyName = companyName;
+        this.sharePrice = sharePrice;
+        this.quantityPurchased = quantityPurchased;
+        this.timestamp = timestamp;
     }
     
     public Trade() {
-        this.id = COUNTER++;
+        this.id = COUNTER.getAndIncrement();
+    }
+    
+    // make sure newly created trades never reuse an ID that already exists
+    public static void advanceCounterPast(int id) {
+        COUNTER.accumulateAndGet(id + 1, Math::max);
     }
     
     // Add getter methods
@@ -42,13 +63,17 @@ public class Trade implements Serializable {
         return companyName;
     }
     
-    public double getSharePrice() {
+    public Money getSharePrice() {
         return sharePrice;
     }
     
     public int getQuantityPurchased() {
         return quantityPurchased;
     }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
     
     // Add setter methods if needed
     public void setClientId(int clientId) {
@@ -63,11 +88,15 @@ public class Trade implements Serializable {
         this.companyName = companyName;
     }
     
-    public void setSharePrice(double sharePrice) {
+    public void setSharePrice(Money sharePrice) {
         this.sharePrice = sharePrice;
     }
     
     public void setQuantityPurchased(int quantityPurchased) {
         this.quantityPurchased = quantityPurchased;
     }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
 }
\ No newline at end of file
@@ -9,5 +9,5 @@ import java.io.Serializable;
  * - Only send the data we want
  */
 public record TradeDTO(Integer id, Integer clientId, Integer companyId,
-                       String companyName, Double sharePrice,
+                       String companyName, Money sharePrice,
                        Integer quantityPurchase) implements Serializable {}
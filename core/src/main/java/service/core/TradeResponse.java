@@ -5,9 +5,9 @@ import java.io.Serializable;
 public class TradeResponse implements Serializable {
     private boolean success;
     private int quantity;
-    private double tradeValue;
+    private Money tradeValue;
     
-    public TradeResponse(boolean success, int quantity, double tradeValue) {
+    public TradeResponse(boolean success, int quantity, Money tradeValue) {
         this.success = success;
         this.quantity = quantity;
         this.tradeValue = tradeValue;
@@ -21,6 +21,6 @@ public class TradeResponse implements Serializable {
     public void setSuccess(boolean success) { this.success = success; }
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
-    public double getTradeValue() { return tradeValue; }
-    public void setTradeValue(double tradeValue) { this.tradeValue = tradeValue; }
+    public Money getTradeValue() { return tradeValue; }
+    public void setTradeValue(Money tradeValue) { this.tradeValue = tradeValue; }
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+package service.core.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import service.core.logging.CorrelationId;
+import service.core.tracing.TraceContext;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** InterServiceHttpClient
+ * Purpose:
+ * - The one HTTP client every service uses to call the others: a pool of keep-alive connections,
+ *   so calls under load reuse connections instead of paying a TCP handshake each
+ * - Bounded per route (host:port), so one slow service cannot take every connection
+ * - Connect, read and pool-wait timeouts, so a dead service fails calls instead of hanging them
+ * - Shared through InterServiceHttpConfig: every RestTemplate built by RestTemplateBuilder uses it
+ * - execute() sends a request without blocking the caller: a separate async pool with the same
+ *   limits and timeouts, driven by a few I/O threads, so thousands of calls can be in flight at once
+ * - execute() forwards the calling thread's correlation ID (see CorrelationId) and trace context
+ *   (traceparent, see TraceContext), as the RestTemplates do
+ * Note:
+ * - Speaks HTTP/1.1; the services serve cleartext HTTP/1.1, where pooled keep-alive connections
+ *   give what HTTP/2 multiplexing would
+ * Threading:
+ * - Thread-safe; one background thread closes idle and expired connections
+ * - Holds no monitors, so callers on virtual threads do not pin their carrier while blocked
+ * - The async pool and its I/O threads are only started by the first execute(); async callbacks
+ *   complete on those I/O threads and must not block
+ */
+public class InterServiceHttpClient implements AutoCloseable {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final AsyncSettings asyncSettings;
+    private final ReentrantLock asyncLock = new ReentrantLock(); // guards the async client's start and meterBindings
+    private final List<MeterBinding> meterBindings = new ArrayList<>();
+    private volatile CloseableHttpAsyncClient asyncClient;
+    private PoolingAsyncClientConnectionManager asyncConnectionManager;
+
+    /**
+     * @param routeMaxConnections - per-route overrides of maxConnectionsPerRoute, keyed by base URL
+     *                              (e.g. http://bank-service:8080)
+     * @throws IllegalArgumentException - a route is not a valid URL
+     */
+    public InterServiceHttpClient(int maxConnections, int maxConnectionsPerRoute,
+                                  Map<String, Integer> routeMaxConnections,
+                                  Duration connectTimeout, Duration readTimeout, Duration poolTimeout,
+                                  Duration idleTimeout, Duration connectionTimeToLive,
+                                  int ioThreads, Duration asyncPoolTimeout) {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                // re-check a connection that sat idle before reusing it, in case the server closed it
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .setTimeToLive(TimeValue.of(connectionTimeToLive))
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+        for (Map.Entry<String, Integer> route : routeMaxConnections.entrySet()) {
+            connectionManager.setMaxPerRoute(new HttpRoute(host(route.getKey())), route.getValue());
+        }
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .build();
+        // async callers hold no thread while queued for a connection, so they may queue longer
+        RequestConfig asyncRequestConfig = RequestConfig.copy(requestConfig)
+                .setConnectionRequestTimeout(Timeout.of(asyncPoolTimeout))
+                .build();
+        this.asyncSettings = new AsyncSettings(maxConnections, maxConnectionsPerRoute, routeMaxConnections,
+                connectionConfig, asyncRequestConfig, idleTimeout, ioThreads);
+    }
+
+    // request factory for ordinary calls
+    public ClientHttpRequestFactory requestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    // request factory without a read timeout, for long-lived streams that may sit idle
+    public ClientHttpRequestFactory streamingRequestFactory() {
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ZERO);
+        return factory;
+    }
+
+    /**
+     * Send a request without blocking.
+     * @return - completes on an I/O thread with the response (any status), or exceptionally if
+     *           the request could not be sent or timed out
+     */
+    public CompletableFuture<SimpleHttpResponse> execute(SimpleHttpRequest request) {
+        String correlationId = CorrelationId.current();
+        if (correlationId != null && !request.containsHeader(CorrelationId.HEADER)) {
+            request.setHeader(CorrelationId.HEADER, correlationId);
+        }
+        TraceContext trace = TraceContext.current();
+        if (trace != null && !request.containsHeader(TraceContext.HEADER)) {
+            request.setHeader(TraceContext.HEADER, trace.toHeader());
+        }
+        CompletableFuture<SimpleHttpResponse> result = new CompletableFuture<>();
+        asyncClient().execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    // report pool usage (httpcomponents.httpclient.pool.*) under the given pool name;
+    // the async pool is reported as poolName-async once it has started
+    public void bindTo(MeterRegistry registry, String poolName) {
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, poolName).bindTo(registry);
+        MeterBinding binding = new MeterBinding(registry, poolName + "-async");
+        asyncLock.lock();
+        try {
+            meterBindings.add(binding);
+            if (asyncConnectionManager != null) {
+                binding.bind(asyncConnectionManager);
+            }
+        } finally {
+            asyncLock.unlock();
+        }
+    }
+
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+        CloseableHttpAsyncClient async = asyncClient;
+        if (async != null) {
+            async.close(CloseMode.GRACEFUL);
+        }
+    }
+
+    private CloseableHttpAsyncClient asyncClient() {
+        CloseableHttpAsyncClient client = asyncClient;
+        if (client == null) {
+            asyncLock.lock();
+            try {
+                client = asyncClient;
+                if (client == null) {
+                    client = startAsyncClient();
+                    asyncClient = client;
+                }
+            } finally {
+                asyncLock.unlock();
+            }
+        }
+        return client;
+    }
+
+    private CloseableHttpAsyncClient startAsyncClient() {
+        AsyncSettings settings = asyncSettings;
+        asyncConnectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(settings.maxConnections())
+                .setMaxConnPerRoute(settings.maxConnectionsPerRoute())
+                .setDefaultConnectionConfig(settings.connectionConfig())
+                .build();
+        for (Map.Entry<String, Integer> route : settings.routeMaxConnections().entrySet()) {
+            asyncConnectionManager.setMaxPerRoute(new HttpRoute(host(route.getKey())), route.getValue());
+        }
+        for (MeterBinding binding : meterBindings) {
+            binding.bind(asyncConnectionManager);
+        }
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setDefaultRequestConfig(settings.requestConfig())
+                .setIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(settings.ioThreads()).build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(settings.idleTimeout()))
+                .build();
+        client.start();
+        return client;
+    }
+
+    private static HttpHost host(String url) {
+        try {
+            return HttpHost.create(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid route URL: " + url, e);
+        }
+    }
+
+    private record AsyncSettings(int maxConnections, int maxConnectionsPerRoute, Map<String, Integer> routeMaxConnections,
+                                 ConnectionConfig connectionConfig, RequestConfig requestConfig,
+                                 Duration idleTimeout, int ioThreads) {}
+
+    private record MeterBinding(MeterRegistry registry, String poolName) {
+        void bind(PoolingAsyncClientConnectionManager manager) {
+            new PoolingHttpClientConnectionManagerMetricsBinder(manager, poolName).bindTo(registry);
+        }
+    }
+}
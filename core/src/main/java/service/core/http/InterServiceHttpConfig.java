@@ -0,0 +1,81 @@
+package service.core.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** InterServiceHttpConfig
+ * Purpose:
+ * - Creates the service's InterServiceHttpClient and makes every RestTemplate built by the
+ *   RestTemplateBuilder use it, so all clients of a service share one connection pool
+ * - Pool usage is reported as metrics when the service has a MeterRegistry (actuator)
+ * Config:
+ * - services.http.max-connections: connections across all routes
+ * - services.http.max-connections-per-route: connections to any one service
+ * - services.http.route-max-connections: per-service overrides, url=limit,... (e.g.
+ *   http://bank-service:8080=100); the URL must include the port
+ * - services.http.connect-timeout-ms / read-timeout-ms: per connection attempt / per read
+ * - services.http.pool-timeout-ms: longest wait for a free connection when the route is full
+ * - services.http.idle-timeout-ms: idle connections are closed after this long
+ * - services.http.connection-ttl-ms: connections are never reused past this age
+ * - services.http.io-threads: I/O threads of the non-blocking client (InterServiceHttpClient.execute)
+ * - services.http.async-pool-timeout-ms: pool-timeout-ms for the non-blocking client, whose callers
+ *   wait for a connection without holding a thread
+ */
+@Configuration(proxyBeanMethods = false)
+public class InterServiceHttpConfig {
+
+    @Bean
+    public InterServiceHttpClient interServiceHttpClient(
+            @Value("${services.http.max-connections:200}") int maxConnections,
+            @Value("${services.http.max-connections-per-route:50}") int maxConnectionsPerRoute,
+            @Value("${services.http.route-max-connections:}") String routeMaxConnections,
+            @Value("${services.http.connect-timeout-ms:2000}") long connectTimeoutMillis,
+            @Value("${services.http.read-timeout-ms:10000}") long readTimeoutMillis,
+            @Value("${services.http.pool-timeout-ms:2000}") long poolTimeoutMillis,
+            @Value("${services.http.idle-timeout-ms:30000}") long idleTimeoutMillis,
+            @Value("${services.http.connection-ttl-ms:300000}") long connectionTtlMillis,
+            @Value("${services.http.io-threads:2}") int ioThreads,
+            @Value("${services.http.async-pool-timeout-ms:10000}") long asyncPoolTimeoutMillis,
+            ObjectProvider<MeterRegistry> registry) {
+        InterServiceHttpClient client = new InterServiceHttpClient(maxConnections, maxConnectionsPerRoute,
+                parseRouteLimits(routeMaxConnections),
+                Duration.ofMillis(connectTimeoutMillis), Duration.ofMillis(readTimeoutMillis),
+                Duration.ofMillis(poolTimeoutMillis), Duration.ofMillis(idleTimeoutMillis),
+                Duration.ofMillis(connectionTtlMillis), ioThreads, Duration.ofMillis(asyncPoolTimeoutMillis));
+        registry.ifAvailable(meters -> client.bindTo(meters, "inter-service"));
+        return client;
+    }
+
+    @Bean
+    public RestTemplateCustomizer interServiceRestTemplateCustomizer(InterServiceHttpClient client) {
+        return restTemplate -> restTemplate.setRequestFactory(client.requestFactory());
+    }
+
+    // url=limit,url=limit
+    static Map<String, Integer> parseRouteLimits(String routes) {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        for (String route : routes.split(",")) {
+            if (route.isBlank()) {
+                continue;
+            }
+            int separator = route.lastIndexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected url=limit in services.http.route-max-connections: " + route);
+            }
+            try {
+                limits.put(route.substring(0, separator).strip(), Integer.parseInt(route.substring(separator + 1).strip()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid limit in services.http.route-max-connections: " + route);
+            }
+        }
+        return limits;
+    }
+}
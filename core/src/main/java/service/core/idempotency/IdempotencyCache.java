@@ -0,0 +1,198 @@
+package service.core.idempotency;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** IdempotencyCache
+ * Purpose:
+ * - Remembers the response to each Idempotency-Key, so a repeated request gets the stored
+ *   response instead of being applied again
+ * - A key is claimed (IN_PROGRESS) before its request runs, so a duplicate sent while the first
+ *   is still running is told so instead of running alongside it
+ * - Each key is tied to a fingerprint of the request it was first used with; the same key with a
+ *   different request is refused
+ * - Bounded by an estimate of the bytes it holds: least recently used finished entries are evicted
+ *   first; entries expire after ttl (finished) or inProgressTimeout (claimed, never finished)
+ * Threading:
+ * - Thread-safe; one lock around the map, held only for map operations
+ */
+public class IdempotencyCache {
+    private static final long ENTRY_OVERHEAD_BYTES = 160; // map node, entry, arrays and record headers
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final long inProgressTimeoutMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true); // LRU order
+    private long bytes;
+
+    public IdempotencyCache(long maxBytes, long ttlMillis, long inProgressTimeoutMillis) {
+        if (maxBytes <= 0 || ttlMillis <= 0 || inProgressTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Idempotency cache size and timeouts must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.inProgressTimeoutMillis = inProgressTimeoutMillis;
+    }
+
+    /**
+     * Claim a key for a request, or find what happened to the request that claimed it first.
+     * @param fingerprint - identifies the request (method, path and body)
+     */
+    public Lookup begin(String key, byte[] fingerprint) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                remove(key, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                Entry claim = new Entry(fingerprint, now + inProgressTimeoutMillis, null);
+                entries.put(key, claim);
+                bytes += claim.size(key);
+                evict(now);
+                return Lookup.STARTED;
+            }
+            if (!Arrays.equals(entry.fingerprint, fingerprint)) {
+                return Lookup.MISMATCH;
+            }
+            return entry.response == null ? Lookup.IN_PROGRESS : new Lookup(Lookup.Kind.REPLAY, entry.response);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // store the response of a claimed key; it is replayed for repeats until it expires or is evicted
+    public void complete(String key, StoredResponse response) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Entry claim = entries.get(key);
+            if (claim == null || claim.response != null) {
+                return;
+            }
+            Entry done = new Entry(claim.fingerprint, now + ttlMillis, response);
+            bytes += done.size(key) - claim.size(key);
+            entries.put(key, done);
+            evict(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the response stored for a key, e.g. a 202 Accepted once the work it accepted is done.
+     * @param response - null forgets the key, so a retry runs the request again
+     */
+    public void replace(String key, StoredResponse response) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Entry stored = entries.get(key);
+            if (stored == null || stored.response == null) {
+                return;
+            }
+            remove(key, stored);
+            if (response != null) {
+                Entry replaced = new Entry(stored.fingerprint, now + ttlMillis, response);
+                entries.put(key, replaced);
+                bytes += replaced.size(key);
+                evict(now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // give up a claimed key without storing a response, so a retry runs the request again
+    public void abandon(String key) {
+        lock.lock();
+        try {
+            Entry claim = entries.get(key);
+            if (claim != null && claim.response == null) {
+                remove(key, claim);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long estimatedBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // drop expired entries from the LRU end, then finished entries until under maxBytes;
+    // claims in progress are kept, since dropping one would let a duplicate run
+    private void evict(long now) {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext()) {
+            Map.Entry<String, Entry> next = eldest.next();
+            Entry entry = next.getValue();
+            boolean expired = entry.expiresAt <= now;
+            if (!expired && bytes <= maxBytes) {
+                return;
+            }
+            if (expired || entry.response != null) {
+                bytes -= entry.size(next.getKey());
+                eldest.remove();
+            }
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.size(key);
+    }
+
+    /**
+     * Result of begin(): STARTED (the caller owns the key and must complete or abandon it),
+     * REPLAY (response holds the stored response), IN_PROGRESS or MISMATCH.
+     */
+    public record Lookup(Kind kind, StoredResponse response) {
+        public enum Kind { STARTED, REPLAY, IN_PROGRESS, MISMATCH }
+
+        static final Lookup STARTED = new Lookup(Kind.STARTED, null);
+        static final Lookup IN_PROGRESS = new Lookup(Kind.IN_PROGRESS, null);
+        static final Lookup MISMATCH = new Lookup(Kind.MISMATCH, null);
+    }
+
+    /**
+     * A response as it is replayed: status, headers (name, value pairs) and body.
+     */
+    public record StoredResponse(int status, List<String> headers, byte[] body) {
+        long size() {
+            long size = body.length;
+            for (String header : headers) {
+                size += 2L * header.length() + 40;
+            }
+            return size;
+        }
+    }
+
+    private record Entry(byte[] fingerprint, long expiresAt, StoredResponse response) {
+        long size(String key) {
+            return ENTRY_OVERHEAD_BYTES + 2L * key.length() + fingerprint.length
+                    + (response == null ? 0 : response.size());
+        }
+    }
+}
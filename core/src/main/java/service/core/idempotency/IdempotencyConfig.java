@@ -0,0 +1,49 @@
+package service.core.idempotency;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** IdempotencyConfig
+ * Purpose:
+ * - Registers the service's IdempotencyFilter for the paths listed in idempotency.paths; with no
+ *   paths the filter is not installed
+ * - Filter counters and cache size are reported as metrics when the service has a MeterRegistry
+ * Config:
+ * - idempotency.paths: Ant-style POST paths, comma separated (e.g. /accounts/{id}/deposit)
+ * - idempotency.max-bytes: estimated memory the stored responses may use; least recently used
+ *   responses are evicted past it
+ * - idempotency.ttl-ms: how long a stored response is replayed for its key
+ * - idempotency.in-progress-timeout-ms: a key whose request never finished (e.g. the client went
+ *   away during an async request) is released after this long
+ */
+@Configuration(proxyBeanMethods = false)
+public class IdempotencyConfig {
+
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(
+            @Value("${idempotency.paths:}") String paths,
+            @Value("${idempotency.max-bytes:16777216}") long maxBytes,
+            @Value("${idempotency.ttl-ms:600000}") long ttlMillis,
+            @Value("${idempotency.in-progress-timeout-ms:60000}") long inProgressTimeoutMillis,
+            ObjectProvider<MeterRegistry> registry) {
+        List<String> patterns = Arrays.stream(paths.split(","))
+                .map(String::strip)
+                .filter(path -> !path.isEmpty())
+                .toList();
+        IdempotencyFilter filter = new IdempotencyFilter(
+                new IdempotencyCache(maxBytes, ttlMillis, inProgressTimeoutMillis), patterns);
+        FilterRegistrationBean<IdempotencyFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(!patterns.isEmpty());
+        if (!patterns.isEmpty()) {
+            registry.ifAvailable(filter::bindTo);
+        }
+        return registration;
+    }
+}
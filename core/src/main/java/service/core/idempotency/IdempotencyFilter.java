@@ -0,0 +1,328 @@
+package service.core.idempotency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+import service.core.idempotency.IdempotencyCache.Lookup;
+import service.core.idempotency.IdempotencyCache.StoredResponse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/** IdempotencyFilter
+ * Purpose:
+ * - Makes POSTs to the configured paths safe to retry: a request carrying an Idempotency-Key
+ *   header runs once, and repeats of it get the stored response (status, headers and body),
+ *   marked with Idempotent-Replayed: true
+ * - Repeat while the first is still running: 409 with Retry-After; same key used for a different
+ *   request (method, path or body): 422; key empty or longer than 255 characters: 400
+ * - 2xx and 4xx responses are stored; 5xx responses are not, so a retry after a server-side
+ *   failure runs the request again
+ * - A 202 Accepted is replayed until the work it accepted is done, if the handler registered that
+ *   work with replaceAccepted: its final response then replaces the 202 (a 5xx one releases the key)
+ * - Requests without the header, and paths not configured, pass through untouched
+ * Threading:
+ * - Handlers that return asynchronously (CompletableFuture, DeferredResult) are supported: the
+ *   response is stored when the async dispatch finishes
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String CLAIM_ATTRIBUTE = IdempotencyFilter.class.getName() + ".KEY";
+    private static final String ACCEPTED_ATTRIBUTE = IdempotencyFilter.class.getName() + ".ACCEPTED";
+    // not replayed: they describe the original transfer, or the server sets them again
+    private static final Set<String> TRANSIENT_HEADERS = Set.of(
+            "content-type", "content-length", "transfer-encoding", "date", "connection", "keep-alive");
+
+    private final IdempotencyCache cache;
+    private final List<String> pathPatterns;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    /**
+     * @param pathPatterns - Ant-style paths this filter applies to (e.g. /accounts/{clientId}/deposit)
+     */
+    public IdempotencyFilter(IdempotencyCache cache, List<String> pathPatterns) {
+        this.cache = cache;
+        this.pathPatterns = List.copyOf(pathPatterns);
+    }
+
+    // report idempotency.requests{result=started|replayed|conflict|mismatch} and the cache's size
+    public void bindTo(MeterRegistry registry) {
+        counter(registry, "started", started);
+        counter(registry, "replayed", replayed);
+        counter(registry, "conflict", conflicts);
+        counter(registry, "mismatch", mismatches);
+        Gauge.builder("idempotency.cache.entries", cache, IdempotencyCache::size)
+                .description("Idempotency keys remembered")
+                .register(registry);
+        Gauge.builder("idempotency.cache.bytes", cache, IdempotencyCache::estimatedBytes)
+                .description("Estimated memory held by stored responses")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * For a handler that may answer 202 Accepted while the work goes on: once outcome completes,
+     * repeats of the request get finalResponse instead of the 202. Does nothing if the request has
+     * no Idempotency-Key or is not answered 202.
+     * @param finalResponse - given the outcome and the 202's Content-Type; null (or a 5xx response)
+     *                        releases the key, and if outcome fails the key is released too
+     */
+    public static <T> void replaceAccepted(HttpServletRequest request, CompletableFuture<T> outcome,
+                                           BiFunction<? super T, String, StoredResponse> finalResponse) {
+        if (request.getAttribute(CLAIM_ATTRIBUTE) != null) {
+            request.setAttribute(ACCEPTED_ATTRIBUTE, new Accepted<T>(outcome, finalResponse));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod()) || request.getHeader(HEADER) == null) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String pattern : pathPatterns) {
+            if (pathMatcher.match(pattern, path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key;
+        ContentCachingResponseWrapper recorder;
+        if (isAsyncDispatch(request)) {
+            // second half of an async request: the recorder wrapped the response on the first dispatch
+            key = (String) request.getAttribute(CLAIM_ATTRIBUTE);
+            recorder = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+            if (key == null || recorder == null) {
+                chain.doFilter(request, response);
+                return;
+            }
+        } else {
+            key = request.getHeader(HEADER);
+            if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+                writeError(response, HttpStatus.BAD_REQUEST, HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+                return;
+            }
+            byte[] body = request.getInputStream().readAllBytes();
+            Lookup lookup = cache.begin(key, fingerprint(request, body));
+            switch (lookup.kind()) {
+                case REPLAY -> {
+                    replayed.increment();
+                    replay(response, lookup.response());
+                    return;
+                }
+                case IN_PROGRESS -> {
+                    conflicts.increment();
+                    response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+                    writeError(response, HttpStatus.CONFLICT, "A request with this " + HEADER + " is still in progress");
+                    return;
+                }
+                case MISMATCH -> {
+                    mismatches.increment();
+                    writeError(response, HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+                    return;
+                }
+                case STARTED -> started.increment();
+            }
+            request.setAttribute(CLAIM_ATTRIBUTE, key);
+            request = new CachedBodyRequest(request, body);
+            recorder = new ContentCachingResponseWrapper(response);
+        }
+
+        boolean handled = false;
+        try {
+            chain.doFilter(request, recorder);
+            handled = true;
+        } finally {
+            if (!handled) {
+                cache.abandon(key);
+            } else if (!request.isAsyncStarted()) {
+                store(key, recorder, request);
+                recorder.copyBodyToResponse();
+            }
+        }
+    }
+
+    private void store(String key, ContentCachingResponseWrapper recorder, HttpServletRequest request) {
+        int status = recorder.getStatus();
+        if (status >= 500) {
+            cache.abandon(key);
+            return;
+        }
+        List<String> headers = new ArrayList<>();
+        if (recorder.getContentType() != null) {
+            headers.add(HttpHeaders.CONTENT_TYPE);
+            headers.add(recorder.getContentType());
+        }
+        for (String name : recorder.getHeaderNames()) {
+            if (!TRANSIENT_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                for (String value : recorder.getHeaders(name)) {
+                    headers.add(name);
+                    headers.add(value);
+                }
+            }
+        }
+        cache.complete(key, new StoredResponse(status, List.copyOf(headers), recorder.getContentAsByteArray()));
+        // only now, so a final response that is ready at once still finds the 202 to replace
+        if (status == HttpStatus.ACCEPTED.value() && request.getAttribute(ACCEPTED_ATTRIBUTE) instanceof Accepted<?> accepted) {
+            accepted.replaceWhenDone(cache, key, recorder.getContentType());
+        }
+    }
+
+    private static void replay(HttpServletResponse response, StoredResponse stored) throws IOException {
+        response.setStatus(stored.status());
+        List<String> headers = stored.headers();
+        for (int i = 0; i < headers.size(); i += 2) {
+            response.addHeader(headers.get(i), headers.get(i + 1));
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    private static void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        byte[] body = ("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase()
+                + "\",\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    // SHA-256 of method, path, query and body
+    private static byte[] fingerprint(HttpServletRequest request, byte[] body) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update((request.getMethod() + ' ' + request.getRequestURI() + '?' + request.getQueryString() + '\n')
+                .getBytes(StandardCharsets.UTF_8));
+        return digest.digest(body);
+    }
+
+    private static void counter(MeterRegistry registry, String result, LongAdder count) {
+        FunctionCounter.builder("idempotency.requests", count, LongAdder::sum)
+                .description("Requests with an " + HEADER + ", by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private record Accepted<T>(CompletableFuture<T> outcome, BiFunction<? super T, String, StoredResponse> finalResponse) {
+        void replaceWhenDone(IdempotencyCache cache, String key, String contentType) {
+            outcome.whenComplete((result, error) -> {
+                StoredResponse response = error == null ? finalResponse.apply(result, contentType) : null;
+                cache.replace(key, response == null || response.status() >= 500 ? null : response);
+            });
+        }
+    }
+
+    // the request with its body already read (for the fingerprint), readable again by the handler
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // the whole body is in memory, so it is all available as soon as a listener asks
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package service.core.json;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.util.ClassUtils;
+import service.core.BankAccount;
+import service.core.CompanyDTO;
+import service.core.Trade;
+import service.core.TradeResponse;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** JacksonConfig
+ * Purpose:
+ * - The one ObjectMapper every service reads and writes DTOs with (JSON, and the binary formats
+ *   of WireFormats, which copy it):
+ *     fields of any visibility are mapped, so DTOs need no getters; no default typing, so no @class
+ *     Blackbird generates the getter/setter/constructor calls instead of going through reflection
+ *     Jackson's fast number parsers and writer (Money is read as a BigDecimal)
+ *     no flush after each value: the HTTP converters and clients flush once, when done
+ * - JsonCodecs with readers/writers cached for the hot types: the core types below, plus each
+ *   service's own (json.cached-types)
+ * - The JSON message converter reads and writes the hot types with the cached readers/writers
+ * Config:
+ * - json.cached-types: fully qualified DTO classes of this service to cache readers/writers for
+ *   (e.g. service.dto.AmountRequest); each must be a concrete class without subclasses
+ */
+@Configuration(proxyBeanMethods = false)
+public class JacksonConfig {
+    // exchanged on every trade, by every service
+    static final List<Class<?>> CORE_HOT_TYPES = List.of(Trade.class, CompanyDTO.class, TradeResponse.class,
+            BankAccount.class);
+
+    @Bean
+    public ObjectMapper objectMapper() {
+        JsonFactory factory = JsonFactory.builder()
+                .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+                .enable(StreamReadFeature.USE_FAST_BIG_NUMBER_PARSER)
+                .enable(StreamWriteFeature.USE_FAST_DOUBLE_WRITER)
+                .build();
+        return Jackson2ObjectMapperBuilder.json()
+                .factory(factory)
+                .visibility(PropertyAccessor.FIELD, Visibility.ANY)
+                .featuresToDisable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .modulesToInstall(new BlackbirdModule())
+                .build();
+    }
+
+    @Bean
+    public JsonCodecs jsonCodecs(ObjectMapper objectMapper, @Value("${json.cached-types:}") String cachedTypes) {
+        Set<Class<?>> hotTypes = new LinkedHashSet<>(CORE_HOT_TYPES);
+        hotTypes.addAll(parseTypes(cachedTypes));
+        return new JsonCodecs(objectMapper, hotTypes);
+    }
+
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(JsonCodecs jsonCodecs) {
+        return new MappingJackson2HttpMessageConverter(jsonCodecs.mapper()) {
+            @Override
+            protected ObjectReader customizeReader(ObjectReader reader, JavaType javaType) {
+                return jsonCodecs.customize(reader, javaType);
+            }
+
+            @Override
+            protected ObjectWriter customizeWriter(ObjectWriter writer, JavaType javaType, MediaType contentType) {
+                return jsonCodecs.customize(writer, javaType);
+            }
+        };
+    }
+
+    // class,class
+    static Set<Class<?>> parseTypes(String types) {
+        Set<Class<?>> classes = new LinkedHashSet<>();
+        for (String type : types.split(",")) {
+            if (type.isBlank()) {
+                continue;
+            }
+            try {
+                classes.add(ClassUtils.forName(type.strip(), JacksonConfig.class.getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Unknown class in json.cached-types: " + type.strip(), e);
+            }
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,91 @@
+package service.core.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** JsonCodecs
+ * Purpose:
+ * - An ObjectMapper with ObjectReaders/ObjectWriters built once, at startup, for the DTO types
+ *   the services exchange on every trade (the hot types), instead of one per message
+ * - reader()/writer() hand out the cached one for a hot type and a new one for any other type, so
+ *   callers that keep their own (clients, streams) ask here once
+ * - The services' message converters (JacksonConfig, WireFormats) read and write hot types with
+ *   the cached readers/writers, through customize()
+ * - copyWith() gives the same hot types over another format (CBOR, Smile) of the same mapper
+ * Note:
+ * - A hot type must be a concrete DTO class without subclasses: its cached writer writes every
+ *   value as that class
+ * Threading:
+ * - Immutable once built; ObjectReader/ObjectWriter are thread-safe
+ */
+public final class JsonCodecs {
+    private final ObjectMapper mapper;
+    private final Set<Class<?>> hotTypes;
+    private final Map<Class<?>, ObjectReader> readers;
+    private final Map<Class<?>, ObjectWriter> writers;
+
+    public JsonCodecs(ObjectMapper mapper, Set<Class<?>> hotTypes) {
+        this.mapper = mapper;
+        this.hotTypes = Set.copyOf(hotTypes);
+        Map<Class<?>, ObjectReader> readers = new HashMap<>();
+        Map<Class<?>, ObjectWriter> writers = new HashMap<>();
+        for (Class<?> type : this.hotTypes) {
+            readers.put(type, mapper.readerFor(type));
+            writers.put(type, mapper.writerFor(type));
+        }
+        this.readers = Map.copyOf(readers);
+        this.writers = Map.copyOf(writers);
+    }
+
+    // the same hot types over a copy of the mapper for another format
+    public JsonCodecs copyWith(JsonFactory factory) {
+        return new JsonCodecs(mapper.copyWith(factory), hotTypes);
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    public ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        return reader != null ? reader : mapper.readerFor(type);
+    }
+
+    public ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        return writer != null ? writer : mapper.writerFor(type);
+    }
+
+    /**
+     * For a message converter's customizeReader: the cached reader when the converter reads a hot
+     * type with this mapper's plain settings (no JSON view), else the converter's own.
+     */
+    public ObjectReader customize(ObjectReader reader, JavaType type) {
+        ObjectReader cached = readers.get(type.getRawClass());
+        return cached != null && !type.hasGenericTypes() && reader.getConfig() == cached.getConfig() ? cached : reader;
+    }
+
+    /**
+     * For a message converter's customizeWriter: the cached writer when the converter writes a hot
+     * type with this mapper's plain settings (no JSON view or filters), else the converter's own.
+     * @param type - null when the converter does not know the declared type
+     */
+    public ObjectWriter customize(ObjectWriter writer, JavaType type) {
+        if (type == null) {
+            return writer;
+        }
+        ObjectWriter cached = writers.get(type.getRawClass());
+        return cached != null && !type.hasGenericTypes() && writer.getConfig() == cached.getConfig() ? cached : writer;
+    }
+
+    public Set<Class<?>> getHotTypes() {
+        return hotTypes;
+    }
+}
@@ -0,0 +1,47 @@
+package service.core.logging;
+
+import org.slf4j.MDC;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** CorrelationId
+ * Purpose:
+ * - The ID that ties together the log lines of one request across every service it reaches
+ * - Arrives and leaves in the X-Correlation-Id header; while a request is handled it sits in the
+ *   SLF4J MDC under "correlationId", so every log line written on that thread carries it
+ * - CorrelationIdFilter sets it for incoming requests; the RestTemplate interceptor (LoggingConfig)
+ *   and InterServiceHttpClient.execute() copy it onto outgoing calls
+ */
+public final class CorrelationId {
+    public static final String HEADER = "X-Correlation-Id";
+    public static final String MDC_KEY = "correlationId";
+    private static final int MAX_LENGTH = 64;
+
+    private CorrelationId() {
+    }
+
+    // the calling thread's correlation ID, or null outside a request
+    public static String current() {
+        return MDC.get(MDC_KEY);
+    }
+
+    // 16 hex digits; not a UUID, so no SecureRandom on the request path
+    public static String generate() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    // an incoming ID is kept if it is short and plain (letters, digits, '-', '_', '.'), so it is
+    // safe to log and forward; anything else is replaced
+    public static boolean isValid(String id) {
+        if (id == null || id.isEmpty() || id.length() > MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(Character.isLetterOrDigit(c) && c < 128) && c != '-' && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,38 @@
+package service.core.logging;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/** CorrelationIdFilter
+ * Purpose:
+ * - Takes the request's X-Correlation-Id (or makes one up when it is missing or unusable), puts
+ *   it in the MDC for the rest of the request, and echoes it on the response
+ * - Runs before every other filter, so their log lines carry the ID too
+ * Threading:
+ * - The MDC is per thread: work a request hands to another thread does not inherit the ID
+ *   unless it is passed along (as settlement sagas do)
+ */
+public class CorrelationIdFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String id = request.getHeader(CorrelationId.HEADER);
+        if (!CorrelationId.isValid(id)) {
+            id = CorrelationId.generate();
+        }
+        response.setHeader(CorrelationId.HEADER, id);
+        MDC.put(CorrelationId.MDC_KEY, id);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(CorrelationId.MDC_KEY);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package service.core.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** LogSampler
+ * Purpose:
+ * - Decides which occurrences of a high-volume event (e.g. every trade) get a log line: on
+ *   average one in oneIn, chosen at random, so a busy path logs a steady trickle instead of a flood
+ * - oneIn = 1 logs every occurrence, 0 (or less) logs none
+ * Threading:
+ * - Thread-safe and shares no state between threads (ThreadLocalRandom), so sampling adds no
+ *   contention to the path it guards
+ */
+public final class LogSampler {
+    private final int oneIn;
+
+    public LogSampler(int oneIn) {
+        this.oneIn = oneIn;
+    }
+
+    public boolean sample() {
+        return oneIn == 1 || (oneIn > 1 && ThreadLocalRandom.current().nextInt(oneIn) == 0);
+    }
+
+    public int getOneIn() {
+        return oneIn;
+    }
+}
@@ -0,0 +1,38 @@
+package service.core.logging;
+
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+
+/** LoggingConfig
+ * Purpose:
+ * - Installs CorrelationIdFilter ahead of every other filter, and makes every RestTemplate built
+ *   by the RestTemplateBuilder forward the current correlation ID to the service it calls
+ * - Log output itself is set up by logback-spring.xml (in core, shared by every service):
+ *   JSON lines written through a bounded asynchronous appender
+ */
+@Configuration(proxyBeanMethods = false)
+public class LoggingConfig {
+
+    @Bean
+    public FilterRegistrationBean<CorrelationIdFilter> correlationIdFilter() {
+        FilterRegistrationBean<CorrelationIdFilter> registration = new FilterRegistrationBean<>(new CorrelationIdFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Bean
+    public RestTemplateCustomizer correlationIdRestTemplateCustomizer() {
+        ClientHttpRequestInterceptor forward = (request, body, execution) -> {
+            String id = CorrelationId.current();
+            if (id != null && !request.getHeaders().containsKey(CorrelationId.HEADER)) {
+                request.getHeaders().set(CorrelationId.HEADER, id);
+            }
+            return execution.execute(request, body);
+        };
+        return restTemplate -> restTemplate.getInterceptors().add(forward);
+    }
+}
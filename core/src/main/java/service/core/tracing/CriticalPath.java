@@ -0,0 +1,101 @@
+package service.core.tracing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** CriticalPath
+ * Purpose:
+ * - Works out where a request's time went in this service: starting from the end of the root span,
+ *   it steps back through whichever child was still running at each moment (the one that ended
+ *   last), so time spent waiting on parallel work that finished earlier is not counted
+ * - Every span on that path gets the time it was the one holding the request up (its self time);
+ *   the self times add up to the root span's duration
+ * - The root is the longest span whose parent is not among the trace's spans here (normally the
+ *   server span of the request, whose parent is the caller's client span)
+ */
+public final class CriticalPath {
+
+    /**
+     * @param selfMillis - time this span held up the request, outside its children on the path
+     * @param share - selfMillis as a fraction of the root's duration
+     */
+    public record Step(String spanId, String name, Span.Kind kind, double selfMillis, double durationMillis,
+                       double share) {
+    }
+
+    private record Segment(Span span, long selfNanos) {
+    }
+
+    private CriticalPath() {
+    }
+
+    /**
+     * @param spans - the spans of one trace, not empty
+     * @return the spans on the critical path in the order they started
+     */
+    public static List<Step> of(List<Span> spans) {
+        Span root = root(spans);
+        Map<String, List<Span>> children = new HashMap<>();
+        for (Span span : spans) {
+            if (span != root && span.getParentId() != null) {
+                children.computeIfAbsent(span.getParentId(), parent -> new ArrayList<>()).add(span);
+            }
+        }
+        for (List<Span> siblings : children.values()) {
+            siblings.sort(Comparator.comparingLong(Span::endNanos).reversed());
+        }
+        List<Segment> path = new ArrayList<>();
+        walk(root, root.endNanos(), children, path);
+        path.sort(Comparator.comparingLong(segment -> segment.span().startNanos()));
+
+        double total = Math.max(root.endNanos() - root.startNanos(), 1);
+        List<Step> steps = new ArrayList<>(path.size());
+        for (Segment segment : path) {
+            Span span = segment.span();
+            steps.add(new Step(span.getSpanId(), span.getName(), span.getKind(), segment.selfNanos() / 1e6,
+                    span.getDurationMillis(), segment.selfNanos() / total));
+        }
+        return steps;
+    }
+
+    // the longest span whose parent was not recorded here
+    static Span root(List<Span> spans) {
+        Set<String> ids = new HashSet<>();
+        for (Span span : spans) {
+            ids.add(span.getSpanId());
+        }
+        Span root = null;
+        for (Span span : spans) {
+            boolean parentless = span.getParentId() == null || !ids.contains(span.getParentId());
+            if (parentless && (root == null || span.getDurationMillis() > root.getDurationMillis())) {
+                root = span;
+            }
+        }
+        return root != null ? root : spans.get(0);
+    }
+
+    // the path through span up to `until`: the last-ending child first, then whatever ran before it
+    private static void walk(Span span, long until, Map<String, List<Span>> children, List<Segment> path) {
+        long cursor = Math.min(until, span.endNanos());
+        long self = 0;
+        for (Span child : children.getOrDefault(span.getSpanId(), List.of())) {
+            if (cursor <= span.startNanos()) {
+                break;
+            }
+            if (child.startNanos() >= cursor || child.endNanos() <= span.startNanos()) {
+                continue;
+            }
+            long childEnd = Math.min(child.endNanos(), cursor);
+            self += cursor - childEnd;
+            walk(child, childEnd, children, path);
+            cursor = Math.max(child.startNanos(), span.startNanos());
+        }
+        self += Math.max(cursor - span.startNanos(), 0);
+        path.add(new Segment(span, self));
+    }
+}
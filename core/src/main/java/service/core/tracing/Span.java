@@ -0,0 +1,132 @@
+package service.core.tracing;
+
+import java.util.concurrent.TimeUnit;
+
+/** Span
+ * Purpose:
+ * - One timed piece of a request's work in this service: the request itself (SERVER), a call to
+ *   another service (CLIENT) or a local stage such as a journal write (INTERNAL)
+ * - Started by the Tracer as a child of the current context, kept by it once ended; view() is what
+ *   GET /traces/{traceId} shows
+ * - A span the tracer does not record (tracing off, or no trace to belong to) still hands on its
+ *   parent's context, so the trace stays connected across services
+ * Threading:
+ * - Started on one thread and possibly ended on another (a non-blocking call's reply); end()
+ *   publishes it to the Tracer, and it is not changed after that
+ */
+public final class Span {
+    public enum Kind { SERVER, CLIENT, INTERNAL }
+
+    private final Tracer tracer;          // null = not recorded
+    private final TraceContext context;
+    private final String parentId;
+    private final Kind kind;
+    private final long startEpochMicros;
+    private final long startNanos;
+    private String name;
+    private long endNanos;
+    private String outcome;
+
+    Span(Tracer tracer, TraceContext context, String parentId, String name, Kind kind) {
+        this.tracer = tracer;
+        this.context = context;
+        this.parentId = parentId;
+        this.name = name;
+        this.kind = kind;
+        this.startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        this.startNanos = System.nanoTime();
+    }
+
+    // an already-timed span, e.g. a stage measured before its trace was known to the caller
+    Span(Tracer tracer, TraceContext context, String parentId, String name, Kind kind,
+         long startNanos, long endNanos, String outcome) {
+        this.tracer = tracer;
+        this.context = context;
+        this.parentId = parentId;
+        this.name = name;
+        this.kind = kind;
+        this.startEpochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis())
+                - TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.outcome = outcome;
+    }
+
+    // a span that is not recorded and passes on its parent's context (possibly none)
+    static Span unrecorded(TraceContext parent) {
+        return new Span(null, parent, null, null, Kind.INTERNAL);
+    }
+
+    /**
+     * Make this span the calling thread's current context until the scope closes, so spans started
+     * and calls made meanwhile are its children.
+     */
+    public TraceContext.Scope activate() {
+        return TraceContext.activate(context);
+    }
+
+    // server spans are named once the request has been matched to a handler
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param outcome - e.g. ok/error, or the HTTP status of a server span
+     */
+    public void end(String outcome) {
+        if (tracer != null) {
+            this.endNanos = System.nanoTime();
+            this.outcome = outcome;
+            tracer.finished(this);
+        }
+    }
+
+    public SpanView view() {
+        return new SpanView(context.traceId(), context.spanId(), parentId, name, kind, startEpochMicros,
+                getDurationMillis(), outcome);
+    }
+
+    public TraceContext context() {
+        return context;
+    }
+
+    public String getTraceId() {
+        return context.traceId();
+    }
+
+    public String getSpanId() {
+        return context.spanId();
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getStartEpochMicros() {
+        return startEpochMicros;
+    }
+
+    public double getDurationMillis() {
+        return (endNanos - startNanos) / 1e6;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    long startNanos() {
+        return startNanos;
+    }
+
+    long endNanos() {
+        return endNanos;
+    }
+}
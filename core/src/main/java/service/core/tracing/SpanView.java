@@ -0,0 +1,10 @@
+package service.core.tracing;
+
+/**
+ * A recorded span as GET /traces/{traceId} shows it.
+ * @param parentId - null for the root of a trace
+ * @param outcome - ok/error, or the HTTP status of a server span
+ */
+public record SpanView(String traceId, String spanId, String parentId, String name, Span.Kind kind,
+                       long startEpochMicros, double durationMillis, String outcome) {
+}
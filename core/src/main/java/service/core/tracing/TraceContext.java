@@ -0,0 +1,111 @@
+package service.core.tracing;
+
+import org.slf4j.MDC;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/** TraceContext
+ * Purpose:
+ * - Identifies a span: the trace it belongs to and its own ID. The context of the span a thread is
+ *   working in sits in the SLF4J MDC (traceId, spanId), so log lines carry it and outgoing calls
+ *   can forward it
+ * - Travels between services in the W3C traceparent header: 00-<32 hex trace ID>-<16 hex span ID>-01
+ * - activate() makes a context the calling thread's current one until the returned Scope closes
+ */
+public record TraceContext(String traceId, String spanId) {
+    public static final String HEADER = "traceparent";
+    public static final String TRACE_ID_KEY = "traceId";
+    public static final String SPAN_ID_KEY = "spanId";
+
+    private static final Scope NO_SCOPE = () -> { };
+
+    /** Restores the thread's previous trace context when closed. */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // the calling thread's current context, or null outside a traced request
+    public static TraceContext current() {
+        String traceId = MDC.get(TRACE_ID_KEY);
+        String spanId = MDC.get(SPAN_ID_KEY);
+        return traceId == null || spanId == null ? null : new TraceContext(traceId, spanId);
+    }
+
+    // a traceparent header's context, or null when it is missing or malformed
+    public static TraceContext parse(String header) {
+        if (header == null || header.length() != 55 || header.charAt(2) != '-' || header.charAt(35) != '-'
+                || header.charAt(52) != '-' || !isHex(header)) {
+            return null;
+        }
+        String traceId = header.substring(3, 35);
+        String spanId = header.substring(36, 52);
+        if (isZero(traceId) || isZero(spanId)) {
+            return null;
+        }
+        return new TraceContext(traceId, spanId);
+    }
+
+    static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return String.format("%016x%016x", random.nextLong(), random.nextLong());
+    }
+
+    static String newSpanId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return String.format("%016x", id);
+    }
+
+    public String toHeader() {
+        return "00-" + traceId + '-' + spanId + "-01";
+    }
+
+    /**
+     * Make this the calling thread's current context (for log lines and outgoing calls).
+     * @param context - may be null, in which case nothing changes
+     */
+    public static Scope activate(TraceContext context) {
+        if (context == null) {
+            return NO_SCOPE;
+        }
+        String previousTrace = MDC.get(TRACE_ID_KEY);
+        String previousSpan = MDC.get(SPAN_ID_KEY);
+        MDC.put(TRACE_ID_KEY, context.traceId);
+        MDC.put(SPAN_ID_KEY, context.spanId);
+        return () -> {
+            restore(TRACE_ID_KEY, previousTrace);
+            restore(SPAN_ID_KEY, previousSpan);
+        };
+    }
+
+    private static void restore(String key, String value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+
+    // lowercase hex digits, apart from the three dashes
+    private static boolean isHex(String header) {
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (i != 2 && i != 35 && i != 52 && !(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
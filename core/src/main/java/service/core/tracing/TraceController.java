@@ -0,0 +1,52 @@
+package service.core.tracing;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/** TraceController
+ * Purpose:
+ * - GET /traces: the slowest traces this service still holds, by the duration of their root span
+ *   here, to pick out the requests in the latency tail
+ * - GET /traces/{traceId}: the spans this service recorded for one trace and the critical path
+ *   through them. A client span's time is broken down further by GET /traces/{traceId} on the
+ *   service it called
+ */
+@RestController
+public class TraceController {
+    private static final int MAX_LIMIT = 1000;
+
+    private final Tracer tracer;
+
+    public TraceController(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @GetMapping(path = "/traces", produces = "application/json")
+    public ResponseEntity<List<TraceSummary>> getSlowestTraces(@RequestParam(defaultValue = "20") int limit) {
+        if (limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(tracer.getSlowest(Math.min(limit, MAX_LIMIT)));
+    }
+
+    @GetMapping(path = "/traces/{traceId}", produces = "application/json")
+    public ResponseEntity<TraceView> getTrace(@PathVariable String traceId) {
+        List<Span> spans = tracer.getTrace(traceId);
+        if (spans.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Span root = CriticalPath.root(spans);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(new TraceView(traceId, root.getDurationMillis(), spans.stream().map(Span::view).toList(),
+                        CriticalPath.of(spans)));
+    }
+}
@@ -0,0 +1,9 @@
+package service.core.tracing;
+
+/**
+ * One recorded trace in the GET /traces listing, described by its root span in this service.
+ * @param spans - spans recorded here for the trace
+ */
+public record TraceSummary(String traceId, String name, Span.Kind kind, long startEpochMicros,
+                           double durationMillis, int spans) {
+}
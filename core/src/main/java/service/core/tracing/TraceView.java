@@ -0,0 +1,12 @@
+package service.core.tracing;
+
+import java.util.List;
+
+/**
+ * One trace as this service saw it (GET /traces/{traceId}).
+ * @param durationMillis - the root span's duration
+ * @param spans - every span recorded here, in the order they ended
+ * @param criticalPath - the spans that held the request up, with the time each was responsible for
+ */
+public record TraceView(String traceId, double durationMillis, List<SpanView> spans, List<CriticalPath.Step> criticalPath) {
+}
@@ -0,0 +1,149 @@
+package service.core.tracing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Tracer
+ * Purpose:
+ * - Starts spans as children of the calling thread's trace context (or of a given one) and keeps
+ *   the spans of the most recent traces in memory, for GET /traces to report on
+ * - A span outside any trace is not recorded; a request that arrives without a traceparent header
+ *   starts a new trace (TracingFilter)
+ * - Keeps at most maxTraces traces, dropping the oldest, and at most maxSpansPerTrace spans of each
+ * Threading:
+ * - Thread-safe; finished spans are added under one lock, held only to put the span in its list
+ * Metrics:
+ * - tracing.traces: traces held
+ */
+public final class Tracer {
+    private final boolean enabled;
+    private final int maxTraces;
+    private final int maxSpansPerTrace;
+    private final LinkedHashMap<String, List<Span>> traces = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * @param enabled - false = no span is recorded, but incoming trace context is still passed on
+     */
+    public Tracer(boolean enabled, int maxTraces, int maxSpansPerTrace) {
+        this.enabled = enabled;
+        this.maxTraces = maxTraces;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+    }
+
+    // a child of the calling thread's current span
+    public Span start(String name, Span.Kind kind) {
+        return start(name, kind, TraceContext.current());
+    }
+
+    /**
+     * @param parent - null = not part of a trace: the span is not recorded
+     */
+    public Span start(String name, Span.Kind kind, TraceContext parent) {
+        if (!enabled || parent == null) {
+            return Span.unrecorded(parent);
+        }
+        return new Span(this, new TraceContext(parent.traceId(), TraceContext.newSpanId()), parent.spanId(), name, kind);
+    }
+
+    /**
+     * The span of a request received from a caller.
+     * @param remoteParent - the caller's span from its traceparent header; null starts a new trace
+     */
+    public Span startServer(String name, TraceContext remoteParent) {
+        if (!enabled) {
+            return Span.unrecorded(remoteParent);
+        }
+        String traceId = remoteParent != null ? remoteParent.traceId() : TraceContext.newTraceId();
+        return new Span(this, new TraceContext(traceId, TraceContext.newSpanId()),
+                remoteParent != null ? remoteParent.spanId() : null, name, Span.Kind.SERVER);
+    }
+
+    /**
+     * Record a stage that has already been timed.
+     * @param parent - null = not part of a trace: nothing is recorded
+     */
+    public void record(String name, Span.Kind kind, TraceContext parent, long startNanos, long endNanos, String outcome) {
+        if (enabled && parent != null) {
+            finished(new Span(this, new TraceContext(parent.traceId(), TraceContext.newSpanId()), parent.spanId(),
+                    name, kind, startNanos, endNanos, outcome));
+        }
+    }
+
+    // the recorded spans of a trace, in the order they ended; empty when unknown or dropped
+    public List<Span> getTrace(String traceId) {
+        lock.lock();
+        try {
+            List<Span> spans = traces.get(traceId);
+            return spans == null ? List.of() : new ArrayList<>(spans);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the recorded traces whose first (root) span here took longest, slowest first
+    public List<TraceSummary> getSlowest(int limit) {
+        List<List<Span>> all;
+        lock.lock();
+        try {
+            all = new ArrayList<>(traces.size());
+            for (List<Span> spans : traces.values()) {
+                all.add(new ArrayList<>(spans));
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<TraceSummary> summaries = new ArrayList<>(all.size());
+        for (List<Span> spans : all) {
+            Span root = CriticalPath.root(spans);
+            summaries.add(new TraceSummary(root.getTraceId(), root.getName(), root.getKind(),
+                    root.getStartEpochMicros(), root.getDurationMillis(), spans.size()));
+        }
+        summaries.sort(Comparator.comparingDouble(TraceSummary::durationMillis).reversed());
+        return summaries.size() > limit ? new ArrayList<>(summaries.subList(0, limit)) : summaries;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return traces.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("tracing.traces", this, Tracer::size)
+                .description("Traces held in memory for GET /traces")
+                .register(registry);
+    }
+
+    void finished(Span span) {
+        lock.lock();
+        try {
+            List<Span> spans = traces.get(span.getTraceId());
+            if (spans == null) {
+                spans = new ArrayList<>();
+                traces.put(span.getTraceId(), spans);
+                if (traces.size() > maxTraces) {
+                    traces.pollFirstEntry();
+                }
+            }
+            if (spans.size() < maxSpansPerTrace) {
+                spans.add(span);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package service.core.tracing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** TracingConfig
+ * Purpose:
+ * - Creates the service's Tracer and installs TracingFilter right after CorrelationIdFilter
+ * - Makes every RestTemplate built by the RestTemplateBuilder send the current span in a traceparent
+ *   header; InterServiceHttpClient.execute() does the same for non-blocking calls
+ * - Client spans come from ServiceCallMetrics, which every service client times its calls with
+ * Config:
+ * - tracing.enabled: false = record no spans (trace context is still passed on)
+ * - tracing.max-traces: traces kept for GET /traces, the oldest dropped first
+ * - tracing.max-spans-per-trace: spans kept per trace, later ones dropped
+ * - tracing.exclude-paths: Ant-style paths whose requests are not traced, comma separated
+ */
+@Configuration(proxyBeanMethods = false)
+public class TracingConfig {
+
+    @Bean
+    public Tracer tracer(@Value("${tracing.enabled:true}") boolean enabled,
+                         @Value("${tracing.max-traces:5000}") int maxTraces,
+                         @Value("${tracing.max-spans-per-trace:200}") int maxSpansPerTrace,
+                         ObjectProvider<MeterRegistry> registry) {
+        Tracer tracer = new Tracer(enabled, maxTraces, maxSpansPerTrace);
+        registry.ifAvailable(tracer::bindTo);
+        return tracer;
+    }
+
+    @Bean
+    public FilterRegistrationBean<TracingFilter> tracingFilter(
+            Tracer tracer, @Value("${tracing.exclude-paths:/actuator/**,/traces/**}") String excludePaths) {
+        List<String> patterns = Arrays.stream(excludePaths.split(","))
+                .map(String::strip)
+                .filter(path -> !path.isEmpty())
+                .toList();
+        FilterRegistrationBean<TracingFilter> registration = new FilterRegistrationBean<>(new TracingFilter(tracer, patterns));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    @Bean
+    public RestTemplateCustomizer traceContextRestTemplateCustomizer() {
+        ClientHttpRequestInterceptor forward = (request, body, execution) -> {
+            TraceContext context = TraceContext.current();
+            if (context != null && !request.getHeaders().containsKey(TraceContext.HEADER)) {
+                request.getHeaders().set(TraceContext.HEADER, context.toHeader());
+            }
+            return execution.execute(request, body);
+        };
+        return restTemplate -> restTemplate.getInterceptors().add(forward);
+    }
+}
@@ -0,0 +1,95 @@
+package service.core.tracing;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.List;
+
+/** TracingFilter
+ * Purpose:
+ * - Gives every request a SERVER span: a child of the caller's span when the request carries a
+ *   traceparent header, otherwise the root of a new trace. The span is current while the request
+ *   is handled, so the calls it makes to other services continue the trace
+ * - The span is named after the handler's URI template (e.g. POST /players/{playerId}/buy), ends
+ *   with the response status, and its trace ID is returned in X-Trace-Id for GET /traces/{traceId}
+ * - An async request (e.g. a buy waiting for its settlement) is ended when the response completes
+ * - Requests to excludePatterns (Ant-style, e.g. /actuator/**) are not traced
+ */
+public class TracingFilter extends OncePerRequestFilter {
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final Tracer tracer;
+    private final List<String> excludePatterns;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public TracingFilter(Tracer tracer, List<String> excludePatterns) {
+        this.tracer = tracer;
+        this.excludePatterns = excludePatterns;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (String pattern : excludePatterns) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Span span = tracer.startServer(request.getMethod() + ' ' + request.getRequestURI(),
+                TraceContext.parse(request.getHeader(TraceContext.HEADER)));
+        if (span.context() != null) {
+            response.setHeader(TRACE_ID_HEADER, span.getTraceId());
+        }
+        try (TraceContext.Scope ignored = span.activate()) {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            span.end("error");
+            throw e;
+        }
+        if (!request.isAsyncStarted()) {
+            end(span, request, response);
+            return;
+        }
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                end(span, request, (HttpServletResponse) event.getSuppliedResponse());
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                event.getAsyncContext().addListener(this);
+            }
+        });
+    }
+
+    private static void end(Span span, HttpServletRequest request, HttpServletResponse response) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) {
+            span.setName(request.getMethod() + ' ' + pattern);
+        }
+        span.end(String.valueOf(response.getStatus()));
+    }
+}
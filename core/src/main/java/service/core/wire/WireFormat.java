@@ -0,0 +1,68 @@
+package service.core.wire;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+/** WireFormat
+ * Purpose:
+ * - The encodings a service can send and accept DTOs in: JSON for everyone, plus two binary forms
+ *   of the same data model for calls between services
+ *     CBOR  (application/cbor, RFC 8949)
+ *     SMILE (application/x-jackson-smile, Jackson's binary JSON)
+ * - The *_VALUE constants are for produces/consumes on endpoints that other services call
+ */
+public enum WireFormat {
+    JSON(WireFormat.JSON_VALUE),
+    CBOR(WireFormat.CBOR_VALUE),
+    SMILE(WireFormat.SMILE_VALUE);
+
+    public static final String JSON_VALUE = MediaType.APPLICATION_JSON_VALUE;
+    public static final String CBOR_VALUE = MediaType.APPLICATION_CBOR_VALUE;
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+    private final String contentType;
+    private final MediaType mediaType;
+    private final String accept;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+        this.mediaType = MediaType.parseMediaType(contentType);
+        // a service that does not speak the binary format yet answers in JSON instead of 406
+        this.accept = contentType.equals(JSON_VALUE) ? JSON_VALUE : contentType + ", " + JSON_VALUE + ";q=0.5";
+    }
+
+    // the format of a Content-Type header; JSON when missing or not one of these
+    public static WireFormat of(String contentType) {
+        if (contentType != null) {
+            for (WireFormat format : values()) {
+                if (contentType.regionMatches(true, 0, format.contentType, 0, format.contentType.length())) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    // json, cbor or smile
+    public static WireFormat parse(String name) {
+        try {
+            return valueOf(name.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown wire format (json, cbor or smile): " + name);
+        }
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    // the Accept header for a call in this format
+    public String getAccept() {
+        return accept;
+    }
+}
@@ -0,0 +1,61 @@
+package service.core.wire;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import service.core.json.JsonCodecs;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** WireFormatConfig
+ * Purpose:
+ * - Creates the service's WireFormats from its JSON codecs (JacksonConfig)
+ * - Lets every endpoint answer (and, where its mapping allows, accept) CBOR and Smile as well as
+ *   JSON. The binary converters are added after JSON, so a caller that does not ask for a binary
+ *   format in its Accept header gets JSON as before
+ * Config:
+ * - services.wire.formats: format of the calls to each service, url=format,... (e.g.
+ *   http://bank-service:8080=cbor); the URL must include the port
+ * - services.wire.default-format: format of calls to any other service (json, cbor or smile)
+ */
+@Configuration(proxyBeanMethods = false)
+public class WireFormatConfig {
+
+    @Bean
+    public WireFormats wireFormats(JsonCodecs jsonCodecs,
+                                   @Value("${services.wire.formats:}") String formats,
+                                   @Value("${services.wire.default-format:json}") String defaultFormat) {
+        return new WireFormats(jsonCodecs, parseRoutes(formats), WireFormat.parse(defaultFormat));
+    }
+
+    @Bean
+    public WebMvcConfigurer wireFormatMessageConverters(WireFormats wireFormats) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.add(wireFormats.converter(WireFormat.CBOR));
+                converters.add(wireFormats.converter(WireFormat.SMILE));
+            }
+        };
+    }
+
+    // url=format,url=format
+    static Map<String, WireFormat> parseRoutes(String routes) {
+        Map<String, WireFormat> formats = new LinkedHashMap<>();
+        for (String route : routes.split(",")) {
+            if (route.isBlank()) {
+                continue;
+            }
+            int separator = route.lastIndexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected url=format in services.wire.formats: " + route);
+            }
+            formats.put(route.substring(0, separator).strip(), WireFormat.parse(route.substring(separator + 1)));
+        }
+        return formats;
+    }
+}
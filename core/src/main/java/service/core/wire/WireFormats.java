@@ -0,0 +1,112 @@
+package service.core.wire;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+import service.core.json.JsonCodecs;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/** WireFormats
+ * Purpose:
+ * - Picks the format each call to another service is made in, by the service's base URL
+ *   (services.wire.formats), and holds the JsonCodecs of each format: the service's JSON ones and
+ *   binary copies of them, so every format maps DTOs the same way (visibility, Money, ...) and
+ *   has the same cached readers/writers
+ * - configure() makes a client's RestTemplate send request bodies in its route's format and ask for
+ *   replies in it; replies in JSON are still read
+ * - Clients that encode bodies themselves (InterServiceHttpClient.execute) use codecs(),
+ *   getContentType() and getAccept() of forUrl(), and read replies by their Content-Type
+ * - Every service answers in CBOR or Smile when asked to (WireFormatConfig); JSON stays the
+ *   default for callers that do not ask
+ */
+public final class WireFormats {
+    private final Map<WireFormat, JsonCodecs> codecs = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, AbstractJackson2HttpMessageConverter> converters = new EnumMap<>(WireFormat.class);
+    private final Map<String, WireFormat> routes;
+    private final WireFormat defaultFormat;
+
+    /**
+     * @param json - the service's JSON codecs
+     * @param routes - base URL (with port) -> format of the calls made to it
+     * @param defaultFormat - format of calls to any other URL
+     */
+    public WireFormats(JsonCodecs json, Map<String, WireFormat> routes, WireFormat defaultFormat) {
+        this.routes = Map.copyOf(routes);
+        this.defaultFormat = defaultFormat;
+        JsonCodecs cbor = json.copyWith(new CBORFactory());
+        JsonCodecs smile = json.copyWith(new SmileFactory());
+        codecs.put(WireFormat.JSON, json);
+        codecs.put(WireFormat.CBOR, cbor);
+        codecs.put(WireFormat.SMILE, smile);
+        // hot types are read and written with their cached readers/writers, as in JSON (JacksonConfig)
+        converters.put(WireFormat.CBOR, new MappingJackson2CborHttpMessageConverter(cbor.mapper()) {
+            @Override
+            protected ObjectReader customizeReader(ObjectReader reader, JavaType javaType) {
+                return cbor.customize(reader, javaType);
+            }
+
+            @Override
+            protected ObjectWriter customizeWriter(ObjectWriter writer, JavaType javaType, MediaType contentType) {
+                return cbor.customize(writer, javaType);
+            }
+        });
+        converters.put(WireFormat.SMILE, new MappingJackson2SmileHttpMessageConverter(smile.mapper()) {
+            @Override
+            protected ObjectReader customizeReader(ObjectReader reader, JavaType javaType) {
+                return smile.customize(reader, javaType);
+            }
+
+            @Override
+            protected ObjectWriter customizeWriter(ObjectWriter writer, JavaType javaType, MediaType contentType) {
+                return smile.customize(writer, javaType);
+            }
+        });
+    }
+
+    // the format of calls to url: the longest configured base URL it starts with, else the default
+    public WireFormat forUrl(String url) {
+        WireFormat format = defaultFormat;
+        int matched = -1;
+        for (Map.Entry<String, WireFormat> route : routes.entrySet()) {
+            if (url.startsWith(route.getKey()) && route.getKey().length() > matched) {
+                format = route.getValue();
+                matched = route.getKey().length();
+            }
+        }
+        return format;
+    }
+
+    public JsonCodecs codecs(WireFormat format) {
+        return codecs.get(format);
+    }
+
+    public ObjectMapper mapper(WireFormat format) {
+        return codecs.get(format).mapper();
+    }
+
+    // the message converter for a binary format (JSON's is the service's usual one)
+    public AbstractJackson2HttpMessageConverter converter(WireFormat format) {
+        return converters.get(format);
+    }
+
+    /**
+     * Make a RestTemplate that calls baseUrl use that route's format: its converter goes first, so
+     * request bodies are written in it and it heads the Accept header.
+     */
+    public void configure(RestTemplate restTemplate, String baseUrl) {
+        WireFormat format = forUrl(baseUrl);
+        if (format != WireFormat.JSON) {
+            restTemplate.getMessageConverters().add(0, converters.get(format));
+        }
+    }
+}
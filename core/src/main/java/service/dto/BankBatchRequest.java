@@ -0,0 +1,12 @@
+package service.dto;
+
+import java.util.List;
+
+/** BankBatchRequest
+ * - A list of BankOperations applied by the bank in one request, in list order
+ * - ALL_OR_NOTHING: either every operation is applied or none is (accounts are locked for the whole batch)
+ * - BEST_EFFORT: every operation is applied or rejected on its own
+ */
+public record BankBatchRequest(Mode mode, List<BankOperation> operations) {
+    public enum Mode { ALL_OR_NOTHING, BEST_EFFORT }
+}
@@ -0,0 +1,9 @@
+package service.dto;
+
+import java.util.List;
+
+/** BankBatchResponse
+ * - applied: false only when an ALL_OR_NOTHING batch was rolled back
+ * - results: one BankOperationResult per operation, in request order
+ */
+public record BankBatchResponse(boolean applied, List<BankOperationResult> results) {}
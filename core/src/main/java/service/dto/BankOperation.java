@@ -0,0 +1,44 @@
+package service.dto;
+
+import service.core.Money;
+
+/** BankOperation
+ * - One item of a bank batch (POST /accounts/batch)
+ * - CHECK: the account's available balance is at least amount (no change; amount may be omitted)
+ * - DEBIT: withdraw amount, fails without change on insufficient available funds
+ * - CREDIT: deposit amount
+ * - RESERVE: hold amount on the account for the bank's default TTL; the result carries the hold ID
+ * - COMMIT: withdraw the amount held by holdId; RELEASE: drop the hold without withdrawing
+ * - RESERVE/COMMIT/RELEASE are only accepted in BEST_EFFORT batches
+ */
+public record BankOperation(Type type, Integer clientId, Money amount, Long holdId) {
+    public enum Type { CHECK, DEBIT, CREDIT, RESERVE, COMMIT, RELEASE }
+
+    public BankOperation(Type type, Integer clientId, Money amount) {
+        this(type, clientId, amount, null);
+    }
+
+    public static BankOperation check(int clientId, Money amount) {
+        return new BankOperation(Type.CHECK, clientId, amount);
+    }
+
+    public static BankOperation debit(int clientId, Money amount) {
+        return new BankOperation(Type.DEBIT, clientId, amount);
+    }
+
+    public static BankOperation credit(int clientId, Money amount) {
+        return new BankOperation(Type.CREDIT, clientId, amount);
+    }
+
+    public static BankOperation reserve(int clientId, Money amount) {
+        return new BankOperation(Type.RESERVE, clientId, amount);
+    }
+
+    public static BankOperation commit(long holdId) {
+        return new BankOperation(Type.COMMIT, null, null, holdId);
+    }
+
+    public static BankOperation release(long holdId) {
+        return new BankOperation(Type.RELEASE, null, null, holdId);
+    }
+}
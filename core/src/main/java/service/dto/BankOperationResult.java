@@ -0,0 +1,27 @@
+package service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import service.core.Money;
+
+/** BankOperationResult
+ * - Outcome of one BankOperation, at the same index as the operation in the batch
+ * - balance is the account's balance after the operation (null when the operation was not applied)
+ * - holdId is the hold placed by a RESERVE, or the hold finished by a COMMIT/RELEASE
+ * - NOT_APPLIED: valid on its own, but an ALL_OR_NOTHING batch failed on another operation
+ * - HOLD_NOT_FOUND: the hold was never placed, or finished longer ago than the bank keeps holds
+ * - HOLD_CONFLICT: the hold had already ended another way (e.g. a commit of an expired hold); a
+ *   repeated commit or release of a hold that ended that way is OK
+ */
+public record BankOperationResult(Status status, Money balance, Long holdId) {
+    public enum Status { OK, ACCOUNT_NOT_FOUND, INSUFFICIENT_FUNDS, INVALID_OPERATION, NOT_APPLIED, HOLD_NOT_FOUND,
+        HOLD_CONFLICT }
+
+    public BankOperationResult(Status status, Money balance) {
+        this(status, balance, null);
+    }
+
+    @JsonIgnore
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+}
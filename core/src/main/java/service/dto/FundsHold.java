@@ -0,0 +1,14 @@
+package service.dto;
+
+import service.core.Money;
+
+/** FundsHold
+ * - An amount reserved on a client's account by POST /accounts/{clientId}/holds
+ * - expiresAt is in epoch milliseconds; an ACTIVE hold still unclaimed by then is released
+ * - COMMITTED: the amount was withdrawn; RELEASED/EXPIRED: the amount is available again
+ * - Returned by the bank's hold endpoints, and read by the market's settlement to learn how a hold
+ *   ended (GET /holds/{holdId} keeps finished holds for a while)
+ */
+public record FundsHold(long holdId, int clientId, Money amount, long expiresAt, State state) {
+    public enum State { ACTIVE, COMMITTED, RELEASED, EXPIRED }
+}
@@ -1,8 +1,10 @@
 package service.dto;
 
+import service.core.Money;
+
 public class PublicCompanyRequest {
     private String name;
-    private double sharePrice;
+    private Money sharePrice;
     private double shareMultiplier;
     private int numShares;
     
@@ -10,7 +12,7 @@ public class PublicCompanyRequest {
     public PublicCompanyRequest() {}
     
     // Constructor
-    public PublicCompanyRequest(String name, double sharePrice, double shareMultiplier, int numShares) {
+    public PublicCompanyRequest(String name, Money sharePrice, double shareMultiplier, int numShares) {
         this.name = name;
         this.sharePrice = sharePrice;
         this.shareMultiplier = shareMultiplier;
@@ -20,8 +22,8 @@ public class PublicCompanyRequest {
     // Getters and setters
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
-    public double getSharePrice() { return sharePrice; }
-    public void setSharePrice(double sharePrice) { this.sharePrice = sharePrice; }
+    public Money getSharePrice() { return sharePrice; }
+    public void setSharePrice(Money sharePrice) { this.sharePrice = sharePrice; }
     public double getShareMultiplier() { return shareMultiplier; }
     public void setShareMultiplier(double shareMultiplier) { this.shareMultiplier = shareMultiplier; }
     public int getNumShares() { return numShares; }
@@ -1,47 +1,215 @@
 package service.clients;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import service.core.BankAccount;
+import service.core.Money;
+import service.core.http.InterServiceHttpClient;
+import service.core.http.ServiceCallMetrics;
+import service.core.tracing.Tracer;
+import service.core.idempotency.IdempotencyFilter;
+import service.core.json.JsonCodecs;
+import service.core.wire.WireFormat;
+import service.core.wire.WireFormats;
 import service.dto.AmountRequest;
+import service.dto.BankOperationResult;
+import service.dto.BankOperationResult.Status;
+import service.dto.FundsHold;
+import service.dto.HoldRequest;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/** BankClient
+ * Purpose:
+ * - Calls the Bank Service for the market
+ * - getHold reads a hold back, without blocking, to learn how it ended
+ * - placeHold/commitHold/releaseHold/deposit with an idempotency key are sent on their own, without
+ *   blocking, and carry the key so a retry after a lost reply is not applied twice (used by
+ *   settlement sagas); 2xx is OK, 400/404 become the matching refusal status, 409 (a hold that
+ *   already ended another way) is HOLD_CONFLICT, and any other reply fails the future with a RestClientResponseException, so the caller may retry
+ * - Every request to the bank is timed and traced per operation (ServiceCallMetrics)
+ * - Calls are made in the wire format configured for the bank's URL (WireFormats); replies are
+ *   read in whatever format the bank answered in
+ * Note:
+ * - Saga steps are not sent through POST /accounts/batch: the bank's Idempotency-Key covers a
+ *   whole request, so a batch retried after a lost reply could apply its other operations twice
+ */
 @Service
 public class BankClient {
     private final RestTemplate restTemplate;
     private final String bankServiceUrl;
+    private final InterServiceHttpClient httpClient;
+    private final ObjectWriter amountWriter;
+    private final ObjectWriter holdWriter;
+    private final ObjectReader holdReader;
+    private final ObjectReader fundsHoldReader;
+    private final WireFormats wireFormats;
+    private final WireFormat wire;
+    private final ContentType contentType;
+    private final ServiceCallMetrics calls;
 
-    public BankClient(RestTemplateBuilder restTemplateBuilder, 
-                      @Value("${bank.service.url:http://localhost:8080}") String bankServiceUrl) {
+    public BankClient(RestTemplateBuilder restTemplateBuilder, InterServiceHttpClient httpClient,
+                      WireFormats wireFormats,
+                      @Value("${bank.service.url:http://localhost:8080}") String bankServiceUrl,
+                      MeterRegistry registry, Tracer tracer) {
         this.restTemplate = restTemplateBuilder.build();
+        wireFormats.configure(restTemplate, bankServiceUrl);
         this.bankServiceUrl = bankServiceUrl;
+        this.httpClient = httpClient;
+        this.wireFormats = wireFormats;
+        this.wire = wireFormats.forUrl(bankServiceUrl);
+        this.contentType = ContentType.create(wire.getContentType());
+        JsonCodecs codecs = wireFormats.codecs(wire);
+        this.amountWriter = codecs.writer(AmountRequest.class);
+        this.holdWriter = codecs.writer(HoldRequest.class);
+        this.holdReader = codecs.reader(JsonNode.class);
+        this.fundsHoldReader = codecs.reader(FundsHold.class);
+        this.calls = new ServiceCallMetrics(registry, tracer, "bank");
     }
 
     // Get account details
     public BankAccount getAccount(Integer clientId) {
         String url = bankServiceUrl + "/accounts/" + clientId;
-        return restTemplate.getForObject(url, BankAccount.class);
+        return calls.record("getAccount", () -> restTemplate.getForObject(url, BankAccount.class));
     }
 
     // Deposit funds
-    public void depositFunds(Integer clientId, Double amount) {
+    public void depositFunds(Integer clientId, Money amount) {
         String url = bankServiceUrl + "/accounts/" + clientId + "/deposit";
         AmountRequest request = new AmountRequest(amount);
-        restTemplate.postForEntity(url, request, Void.class);
+        calls.record("deposit", () -> restTemplate.postForEntity(url, request, Void.class));
     }
 
     // Withdraw funds
-    public void withdrawFunds(Integer clientId, Double amount) {
+    public void withdrawFunds(Integer clientId, Money amount) {
         String url = bankServiceUrl + "/accounts/" + clientId + "/withdraw";
         AmountRequest request = new AmountRequest(amount);
-        restTemplate.postForEntity(url, request, Void.class);
+        calls.record("withdraw", () -> restTemplate.postForEntity(url, request, Void.class));
     }
 
     // Get account balance
-    public Double getBalance(Integer clientId) {
+    public Money getBalance(Integer clientId) {
         String url = bankServiceUrl + "/accounts/" + clientId + "/balance";
-        return restTemplate.getForObject(url, Double.class);
+        return calls.record("getBalance", () -> restTemplate.getForObject(url, Money.class));
+    }
+
+    // Hold funds for ttlMillis; a repeat with the same key returns the hold placed by the first
+    public CompletableFuture<BankOperationResult> placeHold(int clientId, Money amount, long ttlMillis,
+                                                            String idempotencyKey) {
+        return post("placeHold", bankServiceUrl + "/accounts/" + clientId + "/holds",
+                holdWriter, new HoldRequest(amount, ttlMillis), idempotencyKey, Status.INSUFFICIENT_FUNDS, Status.ACCOUNT_NOT_FOUND);
+    }
+
+    // Withdraw the funds of a hold; OK again if it was already committed, HOLD_CONFLICT if it was
+    // released or expired, HOLD_NOT_FOUND if the bank no longer knows it
+    public CompletableFuture<BankOperationResult> commitHold(long holdId, String idempotencyKey) {
+        return post("commitHold", bankServiceUrl + "/holds/" + holdId + "/commit", null, null,
+                idempotencyKey, Status.INVALID_OPERATION, Status.HOLD_NOT_FOUND);
+    }
+
+    // Release a hold; OK again if it was already released, HOLD_CONFLICT if it was committed or
+    // expired, HOLD_NOT_FOUND if the bank no longer knows it
+    public CompletableFuture<BankOperationResult> releaseHold(long holdId, String idempotencyKey) {
+        return post("releaseHold", bankServiceUrl + "/holds/" + holdId + "/release", null, null,
+                idempotencyKey, Status.INVALID_OPERATION, Status.HOLD_NOT_FOUND);
+    }
+
+    // A hold as the bank has it, active or finished; null when the bank does not know it (never
+    // placed, or finished longer ago than the bank keeps holds)
+    public CompletableFuture<FundsHold> getHold(long holdId) {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(bankServiceUrl + "/holds/" + holdId)
+                .setHeader(HttpHeaders.ACCEPT, wire.getAccept())
+                .build();
+        return calls.recordAsync("getHold", () -> httpClient.execute(request))
+                .thenApply(this::readHold);
+    }
+
+    // Deposit funds; a repeat with the same key is not deposited again
+    public CompletableFuture<BankOperationResult> deposit(int clientId, Money amount, String idempotencyKey) {
+        return post("deposit", bankServiceUrl + "/accounts/" + clientId + "/deposit",
+                amountWriter, new AmountRequest(amount), idempotencyKey, Status.INVALID_OPERATION, Status.ACCOUNT_NOT_FOUND);
+    }
+
+    private CompletableFuture<BankOperationResult> post(String operation, String url, ObjectWriter writer, Object body,
+                                                        String idempotencyKey, Status badRequest, Status notFound) {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.post(url)
+                .setHeader(HttpHeaders.ACCEPT, wire.getAccept())
+                .setHeader(IdempotencyFilter.HEADER, idempotencyKey);
+        if (writer != null) {
+            try {
+                builder.setBody(writer.writeValueAsBytes(body), contentType);
+            } catch (JsonProcessingException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        SimpleHttpRequest request = builder.build();
+        return calls.recordAsync(operation, () -> httpClient.execute(request))
+                .thenApply(response -> readResult(response, badRequest, notFound));
+    }
+
+    private BankOperationResult readResult(SimpleHttpResponse response, Status badRequest, Status notFound) {
+        int code = response.getCode();
+        if (code == 400) {
+            return new BankOperationResult(badRequest, null);
+        }
+        if (code == 404) {
+            return new BankOperationResult(notFound, null);
+        }
+        if (code == 409) {
+            return new BankOperationResult(Status.HOLD_CONFLICT, null);
+        }
+        checkSuccess(response);
+        byte[] body = response.getBodyBytes();
+        if (body == null || body.length == 0) {
+            return new BankOperationResult(Status.OK, null);
+        }
+        try {
+            JsonNode hold = reader(response, holdReader, JsonNode.class).readValue(body);
+            return new BankOperationResult(Status.OK, null, hold.hasNonNull("holdId") ? hold.get("holdId").asLong() : null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
-}
\ No newline at end of file
+
+    private FundsHold readHold(SimpleHttpResponse response) {
+        if (response.getCode() == 404) {
+            return null;
+        }
+        checkSuccess(response);
+        try {
+            return reader(response, fundsHoldReader, FundsHold.class).readValue(response.getBodyBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void checkSuccess(SimpleHttpResponse response) {
+        int code = response.getCode();
+        if (code < 200 || code >= 300) {
+            throw new RestClientResponseException("Bank service replied " + code,
+                    HttpStatusCode.valueOf(code), response.getReasonPhrase(), null, response.getBodyBytes(), null);
+        }
+    }
+
+    // the reply's format is the bank's choice: normally ours, JSON if it does not speak ours
+    private ObjectReader reader(SimpleHttpResponse response, ObjectReader ours, Class<?> type) {
+        ContentType contentType = response.getContentType();
+        WireFormat format = WireFormat.of(contentType != null ? contentType.getMimeType() : null);
+        return format == wire ? ours : wireFormats.codecs(format).reader(type);
+    }}
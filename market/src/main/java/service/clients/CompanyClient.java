@@ -1,35 +1,143 @@
 package service.clients;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
-import service.core.CompanyDTO;
+import service.core.Company;
 import service.core.TradeResponse;
+import service.core.http.InterServiceHttpClient;
+import service.core.http.ServiceCallMetrics;
+import service.core.tracing.Tracer;
+import service.core.idempotency.IdempotencyFilter;
+import service.core.json.JsonCodecs;
+import service.core.wire.WireFormat;
+import service.core.wire.WireFormats;
+import service.dto.CompanyRequest;
 import service.dto.ShareRequest;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+
+/** CompanyClient
+ * Purpose:
+ * - Calls the Company Service for the market
+ * - buyShares/sellShares are sent without blocking (InterServiceHttpClient.execute); their futures
+ *   complete on the HTTP client's I/O threads, so continuations must not block
+ * - A non-2xx reply fails the future with a RestClientResponseException, as RestTemplate would
+ * - With an idempotency key, a repeat of the same call (e.g. a settlement retry after a lost reply)
+ *   gets the first call's reply instead of moving the shares again
+ * - Every call is timed and traced per operation (ServiceCallMetrics)
+ * - Calls are made in the wire format configured for the company service's URL (WireFormats);
+ *   replies are read in whatever format it answered in
+ */
 @Service
 public class CompanyClient {
     private final RestTemplate restTemplate;
+    private final InterServiceHttpClient httpClient;
+    private final ObjectWriter requestWriter;
+    private final ObjectReader tradeReader;
+    private final WireFormats wireFormats;
+    private final WireFormat wire;
+    private final ContentType contentType;
     private final String companyServiceUrl;
+    private final ServiceCallMetrics calls;
 
-    public CompanyClient(RestTemplateBuilder restTemplateBuilder,
-                         @Value("${company.service.url:http://localhost:8081}") String companyServiceUrl) {
+    public CompanyClient(RestTemplateBuilder restTemplateBuilder, InterServiceHttpClient httpClient,
+                         WireFormats wireFormats,
+                         @Value("${company.service.url:http://localhost:8081}") String companyServiceUrl,
+                         MeterRegistry registry, Tracer tracer) {
         this.restTemplate = restTemplateBuilder.build();
+        wireFormats.configure(restTemplate, companyServiceUrl);
+        this.httpClient = httpClient;
+        this.wireFormats = wireFormats;
+        this.wire = wireFormats.forUrl(companyServiceUrl);
+        this.contentType = ContentType.create(wire.getContentType());
+        JsonCodecs codecs = wireFormats.codecs(wire);
+        this.requestWriter = codecs.writer(ShareRequest.class);
+        this.tradeReader = codecs.reader(TradeResponse.class);
         this.companyServiceUrl = companyServiceUrl;
+        this.calls = new ServiceCallMetrics(registry, tracer, "company");
+    }
+
+    // Register a market company with the Company Service, under the market's company ID
+    public void registerCompany(Company company) {
+        String url = companyServiceUrl + "/companies";
+        CompanyRequest request = new CompanyRequest(company.getId(), company.getName(), company.getSharePrice(),
+                company.getShareMultiplier(), company.getNumShares());
+        calls.record("registerCompany", () -> restTemplate.postForEntity(url, request, Void.class));
     }
 
     // Buy shares from a company
-    public TradeResponse buyShares(Integer companyId, Integer clientId, Integer quantity) {
-        String url = companyServiceUrl + "/companies/" + companyId + "/buy";
-        ShareRequest request = new ShareRequest(clientId, quantity);
-        return restTemplate.postForObject(url, request, TradeResponse.class);
+    public CompletableFuture<TradeResponse> buyShares(Integer companyId, Integer clientId, Integer quantity) {
+        return buyShares(companyId, clientId, quantity, null);
+    }
+
+    // Buy shares from a company; idempotencyKey may be null
+    public CompletableFuture<TradeResponse> buyShares(Integer companyId, Integer clientId, Integer quantity,
+                                                      String idempotencyKey) {
+        return postShares("buyShares", companyServiceUrl + "/companies/" + companyId + "/buy",
+                new ShareRequest(clientId, quantity), idempotencyKey);
     }
 
     // Sell shares back to a company
-    public TradeResponse sellShares(Integer companyId, Integer clientId, Integer quantity) {
-        String url = companyServiceUrl + "/companies/" + companyId + "/sell";
-        ShareRequest request = new ShareRequest(clientId, quantity);
-        return restTemplate.postForObject(url, request, TradeResponse.class);
+    public CompletableFuture<TradeResponse> sellShares(Integer companyId, Integer clientId, Integer quantity) {
+        return sellShares(companyId, clientId, quantity, null);
+    }
+
+    // Sell shares back to a company; idempotencyKey may be null
+    public CompletableFuture<TradeResponse> sellShares(Integer companyId, Integer clientId, Integer quantity,
+                                                       String idempotencyKey) {
+        return postShares("sellShares", companyServiceUrl + "/companies/" + companyId + "/sell",
+                new ShareRequest(clientId, quantity), idempotencyKey);
+    }
+
+    private CompletableFuture<TradeResponse> postShares(String operation, String url, ShareRequest body,
+                                                        String idempotencyKey) {
+        SimpleHttpRequest request;
+        try {
+            SimpleRequestBuilder builder = SimpleRequestBuilder.post(url)
+                    .setHeader(HttpHeaders.ACCEPT, wire.getAccept())
+                    .setBody(requestWriter.writeValueAsBytes(body), contentType);
+            if (idempotencyKey != null) {
+                builder.setHeader(IdempotencyFilter.HEADER, idempotencyKey);
+            }
+            request = builder.build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return calls.recordAsync(operation, () -> httpClient.execute(request)).thenApply(this::readTrade);
+    }
+
+    private TradeResponse readTrade(SimpleHttpResponse response) {
+        if (response.getCode() < 200 || response.getCode() >= 300) {
+            throw new RestClientResponseException("Company service replied " + response.getCode(),
+                    HttpStatusCode.valueOf(response.getCode()), response.getReasonPhrase(), null,
+                    response.getBodyBytes(), null);
+        }
+        try {
+            return reader(response).readValue(response.getBodyBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the reply's format is the company service's choice: normally ours, JSON if it does not speak ours
+    private ObjectReader reader(SimpleHttpResponse response) {
+        ContentType type = response.getContentType();
+        WireFormat format = WireFormat.of(type != null ? type.getMimeType() : null);
+        return format == wire ? tradeReader : wireFormats.codecs(format).reader(TradeResponse.class);
     }
-}
\ No newline at end of file
+}
@@ -1,32 +0,0 @@
-package service.config;
-
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.annotation.PropertyAccessor;
-import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
-
-@Configuration
-public class JacksonConfig {
-    
-    @Bean
-    public ObjectMapper objectMapper() {
-        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
-        
-        // Configure visibility for all fields
-        mapper.setVisibility(PropertyAccessor.FIELD, Visibility.ANY);
-        
-        // We don't activate default typing to avoid requiring @class in JSON
-        
-        return mapper;
-    }
-    
-    @Bean
-    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter() {
-        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter();
-        converter.setObjectMapper(objectMapper());
-        return converter;
-    }
-}
\ No newline at end of file
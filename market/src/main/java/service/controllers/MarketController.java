@@ -1,44 +1,114 @@
 package service.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import service.clients.BankClient;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import service.clients.CompanyClient;
 import service.core.Company;
 import service.core.CompanyDTO;
 import service.core.PublicCompany;
 import service.core.Trade;
+import service.core.idempotency.IdempotencyCache.StoredResponse;
+import service.core.idempotency.IdempotencyFilter;
+import service.core.json.JsonCodecs;
+import service.core.wire.WireFormat;
+import service.core.wire.WireFormats;
 import service.dto.BuyRequest;
+import service.dto.OrderRequest;
 import service.dto.SellRequest;
 import service.dto.PublicCompanyRequest;
 import service.market.MarketService;
 import service.market.exception.CompanyNotFoundException;
+import service.market.exception.InvalidOrderException;
+import service.market.exception.InvalidStreamRequestException;
+import service.market.exception.InvalidTradeQueryException;
+import service.market.ledger.TradeCursor;
+import service.market.ledger.TradeQuery;
+import service.market.orderbook.MatchingEngine;
+import service.market.orderbook.OrderBookView;
+import service.market.orderbook.OrderResult;
+import service.market.orderbook.OrderType;
+import service.market.sequencer.OrderSequencer;
+import service.market.settlement.Settlement;
+import service.market.settlement.SettlementCoordinator;
+import service.market.settlement.SettlementView;
+import service.market.trade.TradeOrchestrator;
+import service.market.trade.TradeResult;
+import service.market.stream.MarketStreamHub;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static service.core.wire.WireFormat.CBOR_VALUE;
+import static service.core.wire.WireFormat.JSON_VALUE;
+import static service.core.wire.WireFormat.SMILE_VALUE;
+
 @RestController
 public class MarketController {
+    private static final Logger log = LoggerFactory.getLogger(MarketController.class);
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final String RESPOND_ASYNC = "respond-async";
+
     private final MarketService market;
-    private final BankClient bankClient;
+    private final TradeOrchestrator tradeOrchestrator;
+    private final SettlementCoordinator settlements;
     private final CompanyClient companyClient;
+    private final MatchingEngine matchingEngine;
+    private final OrderSequencer sequencer;
+    private final JsonCodecs jsonCodecs;
+    private final WireFormats wireFormats;
+    private final MarketStreamHub streamHub;
 
     @Autowired
-    public MarketController(MarketService market, BankClient bankClient, CompanyClient companyClient) {
+    public MarketController(MarketService market, TradeOrchestrator tradeOrchestrator, SettlementCoordinator settlements,
+                            CompanyClient companyClient, MatchingEngine matchingEngine, OrderSequencer sequencer,
+                            JsonCodecs jsonCodecs, WireFormats wireFormats, MarketStreamHub streamHub) {
         this.market = market;
-        this.bankClient = bankClient;
+        this.tradeOrchestrator = tradeOrchestrator;
+        this.settlements = settlements;
         this.companyClient = companyClient;
+        this.matchingEngine = matchingEngine;
+        this.sequencer = sequencer;
+        this.jsonCodecs = jsonCodecs;
+        this.wireFormats = wireFormats;
+        this.streamHub = streamHub;
     }
 
     @Value("${server.port:8082}")
     private int serverPort;
 
+    @Value("${market.settlement.response-timeout-ms:5000}")
+    private long settlementResponseTimeoutMs;
+
+    @Value("${market.trades.default-page-size:500}")
+    private int defaultPageSize;
+
+    @Value("${market.trades.max-page-size:5000}")
+    private int maxPageSize;
+
     @GetMapping(path="/")
     public ResponseEntity<String> testEndpoint() {
         return ResponseEntity
@@ -55,12 +125,12 @@ public class MarketController {
                     .header("X-Has-Polymorphic-Types", "true")
                     .body(companies);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to list companies", e);
             throw e;
         }
     }
     
-    @GetMapping(path="/company-dtos", produces="application/json")
+    @GetMapping(path="/company-dtos", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<List<CompanyDTO>> getCompanyDTOs() {
         try {
             List<Company> companies = market.getCompanies();
@@ -76,12 +146,12 @@ public class MarketController {
                     .status(HttpStatus.OK)
                     .body(companyDTOs);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to list company DTOs", e);
             throw e;
         }
     }
     
-    @GetMapping(path="/company-dtos/{companyId}", produces="application/json")
+    @GetMapping(path="/company-dtos/{companyId}", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
     public ResponseEntity<CompanyDTO> getCompanyDTO(@PathVariable Integer companyId) {
         try {
             Company company = market.getCompany(companyId);
@@ -100,7 +170,7 @@ public class MarketController {
                     .status(HttpStatus.NOT_FOUND)
                     .build();
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to get company DTO {}", companyId, e);
             throw e;
         }
     }
@@ -108,14 +178,17 @@ public class MarketController {
     @PostMapping(path="/companies", consumes="application/json")
     public ResponseEntity<Company> addCompanyToMarket(HttpServletRequest request, @RequestBody Company company) {
         try {
-            System.out.println("Received company: " + company.getClass().getName());
-            market.addCompany(company);
+            // the journal is waited for (wait-for-sync) after leaving the shard, as for trades
+            if (sequencer.execute(company.getId(), () -> market.putCompany(company))) {
+                market.awaitCompany(company.getId());
+            }
+            registerWithCompanyService(company);
             return ResponseEntity
                     .status(HttpStatus.OK)
                     .header("Content-Location", request.getRequestURI())
                     .body(company);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to add company {}", company.getId(), e);
             throw e;
         }
     }
@@ -132,15 +205,17 @@ public class MarketController {
                 companyRequest.getNumShares()
             );
             
-            System.out.println("Received public company: " + company.getName());
-            market.addCompany(company);
+            if (sequencer.execute(company.getId(), () -> market.putCompany(company))) {
+                market.awaitCompany(company.getId());
+            }
+            registerWithCompanyService(company);
             
             return ResponseEntity
                     .status(HttpStatus.CREATED)
                     .header("Content-Location", request.getRequestURI())
                     .body(company);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Failed to add public company {}", companyRequest.getName(), e);
             throw e;
         }
     }
@@ -162,7 +237,12 @@ public class MarketController {
     @DeleteMapping(path="/companies/{companyId}")
     public ResponseEntity<Void> removeCompanyFromMarket(@PathVariable Integer companyId) {
         try {
-            market.removeCompany(companyId);
+            sequencer.execute(companyId, () -> {
+                market.dropCompany(companyId);
+                matchingEngine.removeBook(companyId);
+                return null;
+            });
+            market.awaitCompany(companyId);
             return ResponseEntity
                     .noContent()
                     .build();
@@ -173,172 +253,234 @@ public class MarketController {
         }
     }
 
-    @PostMapping(path="/companies/{companyId}/buy", consumes="application/json", produces="application/json")
-    public ResponseEntity<Trade> buyCompanyShares(@RequestBody BuyRequest request, @PathVariable Integer companyId) {
+    // Buy/sell at the company's current price. The order is accepted once it is in the settlement
+    // outbox; the funds and shares then move as a saga (see SettlementCoordinator). By default the
+    // response waits for the saga: 200 with the trade, 400 (bank refused) or 500 (company refused).
+    // With "Prefer: respond-async", or when settling takes longer than
+    // market.settlement.response-timeout-ms, the answer is 202 with the settlement and its Location.
+    // A repeat with the same Idempotency-Key gets the 202 until the order settles, then its outcome
+    @PostMapping(path="/companies/{companyId}/buy", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE}, produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public CompletableFuture<ResponseEntity<?>> buyCompanyShares(HttpServletRequest httpRequest,
+                                                                 @RequestBody BuyRequest request, @PathVariable Integer companyId,
+                                                                 @RequestHeader(value = "Prefer", required = false) String prefer) {
+        requireClientAndQuantity(request.getClientId(), request.getQuantity());
         try {
-            // Verify the company exists
-            Company company = market.getCompany(companyId);
-            
-            Integer clientId = request.getClientId();
-            
-            // Try to get balance from Bank Service
-            Double balance;
-            try {
-                balance = bankClient.getBalance(clientId);
-            } catch (Exception e) {
-                // If there's an error getting the balance, return a meaningful error
-                return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body(null);
-            }
-            
-            Double totalCost = company.getSharePrice() * request.getQuantity();
-            
-            if (balance < totalCost) {
-                return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body(null);
-            }
-            
-            // Withdraw funds from bank account
-            try {
-                bankClient.withdrawFunds(clientId, totalCost);
-            } catch (Exception e) {
-                // If there's an error withdrawing funds, return a meaningful error
-                return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body(null);
-            }
-            
-            // Update company shares and purchase shares
-            try {
-                companyClient.buyShares(companyId, clientId, request.getQuantity());
-            } catch (Exception e) {
-                // If there's an error with the company client, attempt to refund the money
-                try {
-                    bankClient.depositFunds(clientId, totalCost);
-                } catch (Exception refundError) {
-                    // Log the refund error but don't change the response
-                    System.err.println("Failed to refund after company client error: " + refundError.getMessage());
-                }
-                
-                return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(null);
-            }
-            
-            // Create trade record
-            Trade trade = new Trade(
-                clientId,
-                companyId,
-                company.getName(),
-                company.getSharePrice(),
-                request.getQuantity()
-            );
-            
-            // Add trade to market history
-            market.addTrade(trade);
-            
-            return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(trade);
+            return respond(httpRequest, tradeOrchestrator.buy(companyId, request.getClientId(), request.getQuantity()), prefer);
         } catch (CompanyNotFoundException e) {
-            return ResponseEntity
-                .status(HttpStatus.NOT_FOUND)
-                .build();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
         }
     }
 
-    @PostMapping(path="/companies/{companyId}/sell", consumes="application/json", produces="application/json")
-    public ResponseEntity<Trade> sellCompanyShares(@RequestBody SellRequest request, @PathVariable Integer companyId) {
+    @PostMapping(path="/companies/{companyId}/sell", consumes={JSON_VALUE, CBOR_VALUE, SMILE_VALUE}, produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public CompletableFuture<ResponseEntity<?>> sellCompanyShares(HttpServletRequest httpRequest,
+                                                                  @RequestBody SellRequest request, @PathVariable Integer companyId,
+                                                                  @RequestHeader(value = "Prefer", required = false) String prefer) {
+        requireClientAndQuantity(request.getClientId(), request.getQuantity());
         try {
-            // Verify the company exists
-            Company company = market.getCompany(companyId);
-            
-            Integer clientId = request.getClientId();
-            
-            // Calculate funds to deposit
-            Double totalValue = company.getSharePrice() * request.getQuantity();
-            
-            // Deposit funds to bank account
-            try {
-                bankClient.depositFunds(clientId, totalValue);
-            } catch (Exception e) {
-                // If there's an error depositing funds, return a meaningful error
-                return ResponseEntity
-                    .status(HttpStatus.BAD_REQUEST)
-                    .body(null);
-            }
-            
-            // Update company shares and sell shares
-            try {
-                companyClient.sellShares(companyId, clientId, request.getQuantity());
-            } catch (Exception e) {
-                // If there's an error with the company client, attempt to reverse the deposit
+            return respond(httpRequest, tradeOrchestrator.sell(companyId, request.getClientId(), request.getQuantity()), prefer);
+        } catch (CompanyNotFoundException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        }
+    }
+
+    // Get a buy/sell settlement: its state, and once finished how it ended
+    // SettlementNotFoundException is handled by MarketExceptionHandler
+    @GetMapping(path="/settlements/{settlementId}", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<SettlementView> getSettlement(@PathVariable Long settlementId) {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(settlements.getSettlement(settlementId).view());
+    }
+
+    // InvalidOrderException is handled by MarketExceptionHandler (400); a positive quantity is
+    // checked by the TradeOrchestrator
+    private static void requireClientAndQuantity(Integer clientId, Integer quantity) {
+        if (clientId == null || quantity == null) {
+            throw new InvalidOrderException("clientId and quantity are required");
+        }
+    }
+
+    private CompletableFuture<ResponseEntity<?>> respond(HttpServletRequest request, Settlement settlement, String prefer) {
+        IdempotencyFilter.replaceAccepted(request, settlement.outcome(), this::settledResponse);
+        if (prefer != null && prefer.toLowerCase().contains(RESPOND_ASYNC)) {
+            return CompletableFuture.completedFuture(accepted(settlement));
+        }
+        // a copy, so timing out the response does not complete the settlement's own outcome
+        return settlement.outcome().copy()
+                .completeOnTimeout(null, settlementResponseTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((result, error) -> result == null && error == null
+                        ? accepted(settlement)
+                        : toTradeResponse(result, error));
+    }
+
+    private static ResponseEntity<?> accepted(Settlement settlement) {
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .header("Location", "/settlements/" + settlement.getId())
+                .body(settlement.view());
+    }
+
+    private static ResponseEntity<?> toTradeResponse(TradeResult result, Throwable error) {
+        if (error != null) {
+            log.error("Trade failed", error);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        return switch (result.status()) {
+            case COMPLETED -> ResponseEntity.status(HttpStatus.OK).body(result.trade());
+            case BANK_REJECTED -> ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+            case COMPANY_FAILED -> ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        };
+    }
+
+    // toTradeResponse as a stored response, in the format the 202 was written in; null for a 5xx
+    private StoredResponse settledResponse(TradeResult result, String contentType) {
+        return switch (result.status()) {
+            case COMPLETED -> {
+                WireFormat format = WireFormat.of(contentType);
                 try {
-                    bankClient.withdrawFunds(clientId, totalValue);
-                } catch (Exception reverseError) {
-                    // Log the reverse error but don't change the response
-                    System.err.println("Failed to reverse deposit after company client error: " + reverseError.getMessage());
+                    byte[] body = wireFormats.codecs(format).writer(Trade.class).writeValueAsBytes(result.trade());
+                    yield new StoredResponse(HttpStatus.OK.value(), List.of(HttpHeaders.CONTENT_TYPE, format.getContentType()), body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                
-                return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(null);
             }
-            
-            // Create trade record with negative quantity (indicating a sell)
-            Trade trade = new Trade(
-                clientId,
-                companyId,
-                company.getName(),
-                company.getSharePrice(),
-                -request.getQuantity() // Negative to indicate a sell
-            );
-            
-            // Add trade to market history
-            market.addTrade(trade);
-            
-            return ResponseEntity
-                .status(HttpStatus.OK)
-                .body(trade);
-        } catch (CompanyNotFoundException e) {
-            return ResponseEntity
-                .status(HttpStatus.NOT_FOUND)
-                .build();
+            case BANK_REJECTED -> new StoredResponse(HttpStatus.BAD_REQUEST.value(), List.of(), new byte[0]);
+            case COMPANY_FAILED -> null;
+        };
+    }
+
+    // the Company Service only trades companies registered with it; a company it already
+    // knows (e.g. after a market restart) is left as it is
+    private void registerWithCompanyService(Company company) {
+        try {
+            companyClient.registerCompany(company);
+        } catch (HttpClientErrorException.Conflict e) {
+            // already registered
         } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .build();
+            log.warn("Failed to register company {} with the company service: {}", company.getId(), e.getMessage());
         }
     }
 
-    @GetMapping(path="/trades", produces="application/json")
-    public ResponseEntity<List<Trade>> getTradeHistory(@RequestParam(required = false) Integer companyId) {
-        try {
-            // fetch trade history of all companies
-            if (companyId == null) {
-                return ResponseEntity
-                        .status(HttpStatus.OK)
-                        .body(market.getAllTrades());
+    // Submit a limit or market order to the company's order book. Simulation only: fills are
+    // recorded in the trade ledger and set the share price, but are not settled (see MatchingEngine)
+    // CompanyNotFoundException / InvalidOrderException are handled by MarketExceptionHandler
+    @PostMapping(path="/companies/{companyId}/orders", consumes="application/json", produces="application/json")
+    public ResponseEntity<OrderResult> submitOrder(@RequestBody OrderRequest request, @PathVariable Integer companyId) {
+        Company company = market.getCompany(companyId);
+        if (request.getClientId() == null || request.getQuantity() == null) {
+            throw new InvalidOrderException("clientId and quantity are required");
+        }
+        OrderType type = request.getType() != null ? request.getType() : OrderType.LIMIT;
+
+        OrderResult result = matchingEngine.submit(company, request.getClientId(), request.getSide(), type,
+                request.getPrice(), request.getQuantity());
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(result);
+    }
+
+    // Cancel a resting order
+    @DeleteMapping(path="/companies/{companyId}/orders/{orderId}", produces="application/json")
+    public ResponseEntity<OrderResult> cancelOrder(@PathVariable Integer companyId, @PathVariable Long orderId) {
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(matchingEngine.cancel(companyId, orderId));
+    }
+
+    // Aggregated depth of the company's order book, best price first
+    @GetMapping(path="/companies/{companyId}/orderbook", produces="application/json")
+    public ResponseEntity<OrderBookView> getOrderBook(@PathVariable Integer companyId,
+                                                      @RequestParam(defaultValue = "10") Integer depth) {
+        market.getCompany(companyId);
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(matchingEngine.getBook(companyId, depth));
+    }
+
+    // Trade history, one page at a time. Pass the X-Next-Cursor header of a response back as
+    // ?cursor= to fetch the next page; the header is absent on the last page.
+    @GetMapping(path="/trades", produces={JSON_VALUE, CBOR_VALUE, SMILE_VALUE})
+    public ResponseEntity<List<Trade>> getTradeHistory(@RequestParam(required = false) Integer companyId,
+                                                       @RequestParam(required = false) Integer clientId,
+                                                       @RequestParam(required = false) Long from,
+                                                       @RequestParam(required = false) Long to,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(required = false) Integer limit) {
+        TradeQuery query = new TradeQuery(companyId, clientId, from, to);
+        int pageSize = pageSize(limit);
+        List<Trade> page = new ArrayList<>(Math.min(pageSize, 256));
+        int next = market.scanTrades(query, startSequence(cursor), pageSize, page::add);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (next >= 0) {
+            response.header(NEXT_CURSOR_HEADER, TradeCursor.encode(next));
+        }
+        return response.body(page);
+    }
+
+    // Whole (filtered) trade history as newline-delimited JSON, written straight from the ledger
+    @GetMapping(path="/trades/stream", produces="application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamTradeHistory(@RequestParam(required = false) Integer companyId,
+                                                                    @RequestParam(required = false) Integer clientId,
+                                                                    @RequestParam(required = false) Long from,
+                                                                    @RequestParam(required = false) Long to,
+                                                                    @RequestParam(required = false) String cursor) {
+        TradeQuery query = new TradeQuery(companyId, clientId, from, to);
+        int start = startSequence(cursor);
+        ObjectWriter writer = jsonCodecs.writer(Trade.class);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = jsonCodecs.mapper().getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+                market.scanTrades(query, start, Integer.MAX_VALUE, trade -> {
+                    try {
+                        writer.writeValue(generator, trade);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeRaw('\n');
+            }
+        };
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(NDJSON)
+                .body(body);
+    }
+
+    // Live price updates and trade prints as Server-Sent Events ("price" and "trade" events).
+    // ?companyId= (repeatable) narrows the stream to those companies; ?types=price or ?types=trade
+    // narrows it to one kind of event. Price events start with a snapshot of the current prices.
+    @GetMapping(path="/events", produces="text/event-stream")
+    public SseEmitter streamEvents(@RequestParam(required = false) List<Integer> companyId,
+                                   @RequestParam(required = false) List<String> types) {
+        boolean prices = types == null;
+        boolean trades = types == null;
+        if (types != null) {
+            for (String type : types) {
+                switch (type.strip().toLowerCase()) {
+                    case "price" -> prices = true;
+                    case "trade" -> trades = true;
+                    default -> throw new InvalidStreamRequestException("Unknown event type: " + type);
+                }
             }
-    
-            // return trades for individual company
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(market.getTrades(companyId));
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity
-                .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .build();
         }
+        Set<Integer> companyIds = companyId == null || companyId.isEmpty() ? null : new HashSet<>(companyId);
+        return streamHub.subscribe(companyIds, prices, trades);
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit <= 0) {
+            throw new InvalidTradeQueryException("limit must be positive");
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private int startSequence(String cursor) {
+        return cursor != null ? TradeCursor.decode(cursor) : 0;
     }
 
     private String getHost() {
@@ -347,7 +489,7 @@ public class MarketController {
             return "%s:%d".formatted(host.getHostAddress(),
                     serverPort);
         } catch (UnknownHostException unknownHostException) {
-            unknownHostException.printStackTrace();
+            log.warn("Could not resolve the local host address", unknownHostException);
         }
 
         return null;
@@ -0,0 +1,35 @@
+package service.dto;
+
+import service.core.Money;
+
+public class CompanyRequest {
+    private Integer id;
+    private String name;
+    private Money sharePrice;
+    private double shareMultiplier;
+    private int numShares;
+
+    // Default constructor
+    public CompanyRequest() {}
+
+    // Constructor
+    public CompanyRequest(Integer id, String name, Money sharePrice, double shareMultiplier, int numShares) {
+        this.id = id;
+        this.name = name;
+        this.sharePrice = sharePrice;
+        this.shareMultiplier = shareMultiplier;
+        this.numShares = numShares;
+    }
+
+    // Getters and setters
+    public Integer getId() { return id; }
+    public void setId(Integer id) { this.id = id; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public Money getSharePrice() { return sharePrice; }
+    public void setSharePrice(Money sharePrice) { this.sharePrice = sharePrice; }
+    public double getShareMultiplier() { return shareMultiplier; }
+    public void setShareMultiplier(double shareMultiplier) { this.shareMultiplier = shareMultiplier; }
+    public int getNumShares() { return numShares; }
+    public void setNumShares(int numShares) { this.numShares = numShares; }
+}
@@ -0,0 +1,36 @@
+package service.dto;
+
+import service.core.Money;
+import service.market.orderbook.OrderSide;
+import service.market.orderbook.OrderType;
+
+public class OrderRequest {
+    private Integer clientId;
+    private OrderSide side;
+    private OrderType type;
+    private Money price;
+    private Integer quantity;
+    
+    // Default constructor
+    public OrderRequest() {}
+    
+    public OrderRequest(Integer clientId, OrderSide side, OrderType type, Money price, Integer quantity) {
+        this.clientId = clientId;
+        this.side = side;
+        this.type = type;
+        this.price = price;
+        this.quantity = quantity;
+    }
+    
+    // Getters and setters
+    public Integer getClientId() { return clientId; }
+    public void setClientId(Integer clientId) { this.clientId = clientId; }
+    public OrderSide getSide() { return side; }
+    public void setSide(OrderSide side) { this.side = side; }
+    public OrderType getType() { return type; }
+    public void setType(OrderType type) { this.type = type; }
+    public Money getPrice() { return price; }
+    public void setPrice(Money price) { this.price = price; }
+    public Integer getQuantity() { return quantity; }
+    public void setQuantity(Integer quantity) { this.quantity = quantity; }
+}
@@ -0,0 +1,27 @@
+package service.market;
+
+import service.core.Company;
+import service.core.Trade;
+
+/** MarketListener
+ * Purpose:
+ * - Observes state changes of a MarketService (e.g. journaling, publishing)
+ * Note:
+ * - tradeAdded is called while the ledger append lock is held, so calls arrive in
+ *   ledger sequence order; implementations must return quickly and never block
+ * - afterTradeAdded follows once the lock is released and may block; trades appended on a
+ *   sequencer shard get it from their caller, after the shard is done (MarketService.awaitTrade)
+ * - companyAdded/companyRemoved run on the caller's sequencer shard and must not block either;
+ *   afterCompanyChanged follows the same way, once the shard is done (MarketService.awaitCompany)
+ */
+public interface MarketListener {
+    default void companyAdded(Company company) {}
+
+    default void companyRemoved(int companyId) {}
+
+    default void afterCompanyChanged(int companyId) {}
+
+    default void tradeAdded(int sequence, Trade trade) {}
+
+    default void afterTradeAdded(int sequence) {}
+}
@@ -1,39 +1,71 @@
 package service.market;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import service.core.Company;
 import service.core.Trade;
+import service.core.logging.LogSampler;
 import service.market.exception.CompanyNotFoundException;
+import service.market.ledger.TradeLedger;
+import service.market.ledger.TradeQuery;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /** MarketService
  * Purpose:
  * - Manage which companies are in the market
  * - MarketController utilizes a MarketService to manage companies
+ * - Records every trade in an append-only TradeLedger
+ * - Notifies registered MarketListeners of every company and trade change
+ * - Reports how many companies and trades it holds (market.companies, market.trades)
+ * - Logs every company added, and a sample of the trades (market.log.trade-sample: one in N, 0 = none)
  */
 
 // Service annotates classes that handle business logic
 // makes MarketService a bean for Spring to manage
 @Service
-public class MarketService {
+public class MarketService implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(MarketService.class);
+
     private Map<Integer, Company> companies;
-    private Map<Integer, List<Trade>> trades;
+    private TradeLedger trades;
+    private final List<MarketListener> listeners = new CopyOnWriteArrayList<>();
+    private LogSampler tradeLog = new LogSampler(1000);
 
-    public MarketService(Map<Integer, Company> companies, Map<Integer, List<Trade>> trades) {
+    public MarketService(Map<Integer, Company> companies, TradeLedger trades) {
         this.companies = companies;
         this.trades = trades;
     }
 
     public MarketService() {
         this.companies = new ConcurrentHashMap<>();
-        this.trades = new ConcurrentHashMap<>();
+        this.trades = new TradeLedger();
+    }
+
+    @Value("${market.log.trade-sample:1000}")
+    public void setTradeLogSample(int oneIn) {
+        this.tradeLog = new LogSampler(oneIn);
     }
 
     public void addCompany(Company company) {
+        if (putCompany(company)) {
+            awaitCompany(company.getId());
+        }
+    }
+
+    // the in-memory half of addCompany, for callers on a sequencer shard: never blocks on the
+    // listeners; false if a company with that ID is already in the market
+    public boolean putCompany(Company company) {
         try {
             // Validate company
             if (company == null) {
@@ -42,28 +74,43 @@ public class MarketService {
             
             int companyId = company.getId();
             
-            // Log for debugging
-            System.out.println("Adding company: " + company.getClass().getName() + 
-                               ", ID: " + companyId + 
-                               ", Name: " + company.getName());
-            
             // Add to companies map
-            companies.putIfAbsent(companyId, company);
-            
-            System.out.println("Company added successfully");
+            if (companies.putIfAbsent(companyId, company) == null) {
+                for (MarketListener listener : listeners) {
+                    listener.companyAdded(company);
+                }
+                log.info("Company added: id={} name={} type={}", companyId, company.getName(),
+                        company.getClass().getSimpleName());
+                return true;
+            }
+            return false;
         } catch (Exception e) {
-            // Log the exception
-            System.err.println("Error adding company: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error adding company", e);
             throw e; // Re-throw to let Spring handle it
         }
     }
 
     public void removeCompany(int companyId) {
+        dropCompany(companyId);
+        awaitCompany(companyId);
+    }
+
+    // the in-memory half of removeCompany, for callers on a sequencer shard
+    public void dropCompany(int companyId) {
         if (!companies.containsKey(companyId)) {
             throw new CompanyNotFoundException("Company with ID " + companyId + " not found");
         }
         companies.remove(companyId);
+        for (MarketListener listener : listeners) {
+            listener.companyRemoved(companyId);
+        }
+    }
+
+    // the other half: wait until the listeners are done with the company's latest change
+    public void awaitCompany(int companyId) {
+        for (MarketListener listener : listeners) {
+            listener.afterCompanyChanged(companyId);
+        }
     }
 
     public List<Company> getCompanies() {
@@ -78,43 +125,86 @@ public class MarketService {
         return company;
     }
 
-    public void addTrade(Trade trade) {
+    // returns the trade's ledger sequence
+    public int addTrade(Trade trade) {
+        int sequence = appendTrade(trade);
+        awaitTrade(sequence);
+        return sequence;
+    }
+
+    // the in-memory half of addTrade, for callers on a sequencer shard: never blocks on the listeners
+    public int appendTrade(Trade trade) {
         try {
             if (trade == null) {
                 throw new IllegalArgumentException("Trade cannot be null");
             }
             
-            int tradeId = trade.getId();
-            
-            // Log for debugging
-            System.out.println("Adding trade: ID: " + tradeId + 
-                               ", Company: " + trade.getCompanyName() + 
-                               ", Quantity: " + trade.getQuantityPurchased());
-            
-            // computeIfAbsent returns the list if it exists already, otherwise creates new
-            trades.computeIfAbsent(tradeId, k -> new ArrayList<>()).add(trade);
-            
-            System.out.println("Trade added successfully");
+            int sequence = trades.append(trade, appended -> {
+                for (MarketListener listener : listeners) {
+                    listener.tradeAdded(appended, trade);
+                }
+            });
+            // sampled: one line per trade would cost more than recording it
+            if (tradeLog.sample() && log.isInfoEnabled()) {
+                log.info("Trade added (1 in {}): id={} sequence={} company={} client={} quantity={}",
+                        tradeLog.getOneIn(), trade.getId(), sequence, trade.getCompanyId(), trade.getClientId(),
+                        trade.getQuantityPurchased());
+            }
+            return sequence;
         } catch (Exception e) {
-            System.err.println("Error adding trade: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error adding trade", e);
             throw e;
         }
     }
 
-    public List<Trade> getTrades(Integer companyId) {
-        List<Trade> companyTrades = trades.get(companyId);
-        if (companyTrades == null) {
-            return new ArrayList<>(); // Return empty list instead of null
+    // the other half: wait until the listeners are done with the trade (e.g. it is on disk)
+    public void awaitTrade(int sequence) {
+        for (MarketListener listener : listeners) {
+            listener.afterTradeAdded(sequence);
         }
-        return companyTrades;
+    }
+
+    // trades of one company, read through the ledger's company index
+    public List<Trade> getTrades(Integer companyId) {
+        return trades.getByCompany(companyId);
+    }
+
+    // trades of one client, read through the ledger's client index
+    public List<Trade> getClientTrades(Integer clientId) {
+        return trades.getByClient(clientId);
     }
 
     public List<Trade> getAllTrades() {
-        List<Trade> allTrades = new ArrayList<>();
-        for (List<Trade> tradeList : trades.values()) {
-            allTrades.addAll(tradeList);
-        }
-        return allTrades;
+        return trades.getAll();
+    }
+
+    /**
+     * Visit up to limit trades matching the query, in sequence order, without buffering them.
+     * @return - sequence number to resume from, or -1 when the history is exhausted
+     */
+    public int scanTrades(TradeQuery query, int fromSequence, int limit, Consumer<Trade> consumer) {
+        return trades.scan(query, fromSequence, limit, consumer);
+    }
+
+    public TradeLedger getTradeLedger() {
+        return trades;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("market.companies", companies, Map::size)
+                .description("Companies listed in the market")
+                .register(registry);
+        Gauge.builder("market.trades", trades, TradeLedger::size)
+                .description("Trades recorded in the ledger")
+                .register(registry);
+    }
+
+    public void addListener(MarketListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(MarketListener listener) {
+        listeners.remove(listener);
     }
 }
\ No newline at end of file
@@ -5,4 +5,11 @@ package service.market.exception;
 public enum ErrorCode {
     COMPANY_NOT_FOUND,
     INVALID_COMPANY_ID,
+    INVALID_ORDER,
+    ORDER_NOT_FOUND,
+    MARKET_OVERLOADED,
+    INVALID_TRADE_QUERY,
+    INVALID_STREAM_REQUEST,
+    SETTLEMENT_NOT_FOUND,
+    JOURNAL_FAILED,
 }
@@ -0,0 +1,7 @@
+package service.market.exception;
+
+public class InvalidStreamRequestException extends RuntimeException {
+    public InvalidStreamRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package service.market.exception;
+
+public class InvalidTradeQueryException extends RuntimeException {
+    public InvalidTradeQueryException(String message) {
+        super(message);
+    }
+}
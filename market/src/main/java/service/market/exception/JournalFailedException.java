@@ -0,0 +1,7 @@
+package service.market.exception;
+
+public class JournalFailedException extends RuntimeException {
+    public JournalFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,7 @@
+package service.market.exception;
+
+public class MarketOverloadedException extends RuntimeException {
+    public MarketOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package service.market.exception;
+
+public class SettlementNotFoundException extends RuntimeException {
+    public SettlementNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -8,6 +8,13 @@ import service.market.exception.ApiError;
 import service.market.exception.CompanyNotFoundException;
 import service.market.exception.ErrorCode;
 import service.market.exception.InvalidCompanyIdException;
+import service.market.exception.InvalidOrderException;
+import service.market.exception.InvalidStreamRequestException;
+import service.market.exception.InvalidTradeQueryException;
+import service.market.exception.JournalFailedException;
+import service.market.exception.MarketOverloadedException;
+import service.market.exception.OrderNotFoundException;
+import service.market.exception.SettlementNotFoundException;
 
 /** MarketExceptionHandler
  * Class: global exception handler
@@ -40,4 +47,60 @@ public class MarketExceptionHandler {
                 .status(HttpStatus.BAD_REQUEST)
                 .body(error);
     }
+
+    @ExceptionHandler(InvalidOrderException.class)
+    public ResponseEntity<ApiError> handleInvalidOrder(InvalidOrderException ex) {
+        ApiError error = new ApiError(ErrorCode.INVALID_ORDER, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(error);
+    }
+
+    @ExceptionHandler(OrderNotFoundException.class)
+    public ResponseEntity<ApiError> handleOrderNotFound(OrderNotFoundException ex) {
+        ApiError error = new ApiError(ErrorCode.ORDER_NOT_FOUND, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body(error);
+    }
+
+    @ExceptionHandler(MarketOverloadedException.class)
+    public ResponseEntity<ApiError> handleMarketOverloaded(MarketOverloadedException ex) {
+        ApiError error = new ApiError(ErrorCode.MARKET_OVERLOADED, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(error);
+    }
+
+    @ExceptionHandler(InvalidTradeQueryException.class)
+    public ResponseEntity<ApiError> handleInvalidTradeQuery(InvalidTradeQueryException ex) {
+        ApiError error = new ApiError(ErrorCode.INVALID_TRADE_QUERY, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(error);
+    }
+
+    @ExceptionHandler(InvalidStreamRequestException.class)
+    public ResponseEntity<ApiError> handleInvalidStreamRequest(InvalidStreamRequestException ex) {
+        ApiError error = new ApiError(ErrorCode.INVALID_STREAM_REQUEST, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(error);
+    }
+
+    @ExceptionHandler(SettlementNotFoundException.class)
+    public ResponseEntity<ApiError> handleSettlementNotFound(SettlementNotFoundException ex) {
+        ApiError error = new ApiError(ErrorCode.SETTLEMENT_NOT_FOUND, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.NOT_FOUND)
+                .body(error);
+    }
+
+    @ExceptionHandler(JournalFailedException.class)
+    public ResponseEntity<ApiError> handleJournalFailed(JournalFailedException ex) {
+        ApiError error = new ApiError(ErrorCode.JOURNAL_FAILED, ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(error);
+    }
 }
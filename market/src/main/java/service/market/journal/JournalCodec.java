@@ -0,0 +1,104 @@
+package service.market.journal;
+
+import service.core.Company;
+import service.core.Trade;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/** JournalCodec
+ * Purpose:
+ * - Binary layout of journal records, shared by the writer and recovery
+ * Record layout:
+ * - [int payload length][byte type][payload][int CRC32C of type + payload]
+ * - COMPANY_ADDED: int id, long share price (cents), double multiplier, int shares, int name length, name (UTF-8)
+ * - COMPANY_REMOVED: int id
+ * - TRADE: int sequence, int trade id, int client id, int company id, long price (ticks), int quantity, long timestamp
+ */
+final class JournalCodec {
+    static final byte COMPANY_ADDED = 1;
+    static final byte COMPANY_REMOVED = 2;
+    static final byte TRADE = 3;
+
+    static final int HEADER_BYTES = Integer.BYTES + Byte.BYTES;
+    static final int TRAILER_BYTES = Integer.BYTES;
+    static final int TRADE_PAYLOAD_BYTES = 4 * Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+    // company names longer than this are truncated, so one record always fits the write buffer
+    static final int MAX_NAME_BYTES = 1 << 12;
+
+    private JournalCodec() {}
+
+    static int encodedSize(int payloadBytes) {
+        return HEADER_BYTES + payloadBytes + TRAILER_BYTES;
+    }
+
+    static byte[] nameBytes(Company company) {
+        byte[] name = company.getName() == null ? new byte[0] : company.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            byte[] truncated = new byte[MAX_NAME_BYTES];
+            System.arraycopy(name, 0, truncated, 0, MAX_NAME_BYTES);
+            return truncated;
+        }
+        return name;
+    }
+
+    static int companyPayloadBytes(byte[] name) {
+        return Integer.BYTES + Long.BYTES + Double.BYTES + 2 * Integer.BYTES + name.length;
+    }
+
+    static void writeCompanyAdded(ByteBuffer buffer, CRC32C crc, Company company, byte[] name) {
+        int start = begin(buffer, COMPANY_ADDED, companyPayloadBytes(name));
+        buffer.putInt(company.getId());
+        buffer.putLong(company.getSharePrice().getMinorUnits());
+        buffer.putDouble(company.getShareMultiplier());
+        buffer.putInt(company.getNumShares());
+        buffer.putInt(name.length);
+        buffer.put(name);
+        end(buffer, crc, start);
+    }
+
+    static void writeCompanyRemoved(ByteBuffer buffer, CRC32C crc, int companyId) {
+        int start = begin(buffer, COMPANY_REMOVED, Integer.BYTES);
+        buffer.putInt(companyId);
+        end(buffer, crc, start);
+    }
+
+    static void writeTrade(ByteBuffer buffer, CRC32C crc, int sequence, Trade trade) {
+        int start = begin(buffer, TRADE, TRADE_PAYLOAD_BYTES);
+        buffer.putInt(sequence);
+        buffer.putInt(trade.getId());
+        buffer.putInt(trade.getClientId());
+        buffer.putInt(trade.getCompanyId());
+        buffer.putLong(trade.getSharePrice().getMinorUnits());
+        buffer.putInt(trade.getQuantityPurchased());
+        buffer.putLong(trade.getTimestamp());
+        end(buffer, crc, start);
+    }
+
+    static String readName(ByteBuffer payload) {
+        int length = payload.getInt();
+        byte[] name = new byte[length];
+        payload.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // checksum covers the type byte and the payload
+    static int checksum(CRC32C crc, ByteBuffer buffer, int typeOffset, int payloadBytes) {
+        crc.reset();
+        crc.update(buffer.slice(typeOffset, Byte.BYTES + payloadBytes));
+        return (int) crc.getValue();
+    }
+
+    private static int begin(ByteBuffer buffer, byte type, int payloadBytes) {
+        int start = buffer.position();
+        buffer.putInt(payloadBytes);
+        buffer.put(type);
+        return start;
+    }
+
+    private static void end(ByteBuffer buffer, CRC32C crc, int start) {
+        int payloadBytes = buffer.position() - start - HEADER_BYTES;
+        buffer.putInt(checksum(crc, buffer, start + Integer.BYTES, payloadBytes));
+    }
+}
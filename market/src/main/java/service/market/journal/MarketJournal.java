@@ -0,0 +1,628 @@
+package service.market.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import service.core.Company;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.core.Trade;
+import service.market.MarketListener;
+import service.market.MarketService;
+import service.market.exception.CompanyNotFoundException;
+import service.market.exception.JournalFailedException;
+import service.market.ledger.TradeLedger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/** MarketJournal
+ * Purpose:
+ * - Makes MarketService state survive a restart: companies added/removed and every trade
+ * - Listens to MarketService and appends each change to a write-ahead journal on disk
+ * - Periodically writes a compact snapshot so startup only replays the journal's tail
+ * Write path:
+ * - Listener callbacks only enqueue; one journal writer thread encodes records into a
+ *   buffer and writes them through a FileChannel
+ * - Group commit: fsync runs at most once per flush interval and covers every record
+ *   written since the last one (flush interval 0 = fsync after every batch)
+ * - wait-for-sync makes trades and company changes wait until their record is on disk
+ * - A failed write stops the journal for good: what was written since the last fsync may not be
+ *   on disk, so the durable sequence stays where it was, waiting trades and company changes fail
+ *   (JournalFailedException), and later ones are not journaled; settled trades from then on are
+ *   recorded again from the settlement outbox after a restart, as it keeps them until durable
+ * Snapshots:
+ * - After snapshot-every-trades trades the writer rolls to a new segment C, then a background
+ *   thread writes the market's state to snapshot.bin and deletes segments before C
+ * - Recovery loads the snapshot and replays segments from C on, skipping trades the
+ *   snapshot already holds (by ledger sequence); a segment ending in a torn record (crash
+ *   mid-write) is cut back to its last whole record
+ * Config:
+ * - market.journal.enabled, market.journal.dir, market.journal.flush-interval-ms,
+ *   market.journal.wait-for-sync, market.journal.snapshot-every-trades
+ * Note:
+ * - Resting limit orders are not journaled; the order books start empty after a restart
+ */
+@Service
+public class MarketJournal implements MarketListener {
+    private static final Logger log = LoggerFactory.getLogger(MarketJournal.class);
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("journal-(\\d+)\\.log");
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_BATCH = 4096;
+    // keeps segments mappable in one piece during recovery, even with snapshots turned off
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final MarketService market;
+    private final boolean enabled;
+    private final Path directory;
+    private final long flushIntervalNanos;
+    private final boolean waitForSync;
+    private final long snapshotEveryTrades;
+    private final MeterRegistry registry;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private ExecutorService snapshotter;
+    private Thread writer;
+    private volatile boolean running;
+    // set once, by the writer, when a write fails; the journal stops there
+    private volatile IOException failure;
+    // highest trade sequence known to be on disk
+    private volatile int durableSequence = -1;
+    // with wait-for-sync: each company's latest change, until its caller has seen it on disk
+    private final Map<Integer, CompletableFuture<Void>> companyChanges = new ConcurrentHashMap<>();
+
+    // owned by the writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CRC32C crc = new CRC32C();
+    private final List<CompletableFuture<Void>> awaitingSync = new ArrayList<>();
+    private FileChannel segment;
+    private long segmentIndex;
+    private long segmentBytes;
+    private long lastSyncNanos;
+    private boolean dirty;
+    private int lastWrittenSequence = -1;
+    private long tradesSinceSnapshot;
+    private Timer syncDuration;
+
+    public MarketJournal(MarketService market,
+                         @Value("${market.journal.enabled:true}") boolean enabled,
+                         @Value("${market.journal.dir:data/market}") String directory,
+                         @Value("${market.journal.flush-interval-ms:10}") long flushIntervalMs,
+                         @Value("${market.journal.wait-for-sync:false}") boolean waitForSync,
+                         @Value("${market.journal.snapshot-every-trades:1000000}") long snapshotEveryTrades,
+                         MeterRegistry registry) {
+        this.market = market;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushIntervalMs));
+        this.waitForSync = waitForSync;
+        this.snapshotEveryTrades = snapshotEveryTrades;
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        long lastSegment = recover();
+        log.info("Market journal recovered {} companies and {} trades in {} ms", market.getCompanies().size(),
+                market.getTradeLedger().size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        openSegment(lastSegment + 1);
+        lastSyncNanos = System.nanoTime();
+        durableSequence = market.getTradeLedger().size() - 1;
+        lastWrittenSequence = durableSequence;
+
+        Gauge.builder("market.journal.queue.depth", queue, BlockingQueue::size)
+                .description("Journal records waiting for the writer")
+                .register(registry);
+        this.syncDuration = Timer.builder("market.journal.sync.duration")
+                .description("Time spent forcing journal writes to disk")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+
+        snapshotter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "market-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        writer = new Thread(this::writeLoop, "market-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        market.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        market.removeListener(this);
+        // no interrupt: it would close the FileChannel under the writer; it notices within a poll
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        snapshotter.shutdown();
+        snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // highest trade sequence known to be on disk; with journaling off every trade counts, since
+    // there is nothing to wait for
+    public int getDurableSequence() {
+        return enabled ? durableSequence : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void companyAdded(Company company) {
+        enqueueCompanyChange(new Entry(JournalCodec.COMPANY_ADDED, company, company.getId(), -1, null));
+    }
+
+    @Override
+    public void companyRemoved(int companyId) {
+        enqueueCompanyChange(new Entry(JournalCodec.COMPANY_REMOVED, null, companyId, -1, null));
+    }
+
+    @Override
+    public void afterCompanyChanged(int companyId) {
+        CompletableFuture<Void> change = waitForSync ? companyChanges.get(companyId) : null;
+        if (change == null) {
+            return;
+        }
+        try {
+            change.get(10, TimeUnit.SECONDS);
+            companyChanges.remove(companyId, change);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JournalFailedException("Company " + companyId + " change not confirmed: interrupted", e);
+        } catch (ExecutionException e) {
+            companyChanges.remove(companyId, change);
+            throw new JournalFailedException("Company " + companyId + " change not journaled: the market journal failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new JournalFailedException("Company " + companyId + " change not on disk after 10 s", e);
+        }
+    }
+
+    @Override
+    public void tradeAdded(int sequence, Trade trade) {
+        if (failure != null) {
+            return;
+        }
+        // runs under the ledger lock, so records are queued in sequence order
+        queue.add(new Entry(JournalCodec.TRADE, null, trade.getCompanyId(), sequence, trade));
+    }
+
+    @Override
+    public void afterTradeAdded(int sequence) {
+        if (!waitForSync || durableSequence >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (durableSequence < sequence && running && failure == null) {
+                synced.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            syncLock.unlock();
+        }
+        if (durableSequence < sequence && failure != null) {
+            throw new JournalFailedException("Trade " + sequence + " is not on disk: the market journal failed", failure);
+        }
+    }
+
+    // changes of one company come from its sequencer shard, in order, so waiting for the latest
+    // one also covers those before it
+    private void enqueueCompanyChange(Entry entry) {
+        if (waitForSync) {
+            companyChanges.put(entry.companyId(), entry.synced());
+        }
+        if (failure == null) {
+            queue.add(entry);
+        }
+        // a writer that failed meanwhile may already have drained the queue
+        if (failure != null) {
+            entry.synced().completeExceptionally(failure);
+        }
+    }
+
+    // ---------------------------------------------------------------- writer thread
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = dirty ? Math.max(0, lastSyncNanos + flushIntervalNanos - System.nanoTime()) : IDLE_POLL_NANOS;
+                Entry first = queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (Entry entry : batch) {
+                        write(entry);
+                    }
+                    batch.clear();
+                }
+                if (dirty && System.nanoTime() - lastSyncNanos >= flushIntervalNanos) {
+                    sync();
+                }
+                maybeRollSegment();
+            } catch (InterruptedException e) {
+                // keep the flag clear so the final drain and fsync below can still use the channel
+                running = false;
+            } catch (IOException e) {
+                stopAfterFailure(e);
+                return;
+            }
+        }
+        try {
+            sync();
+            segment.close();
+        } catch (IOException e) {
+            log.error("Market journal failed to close: {}", e.getMessage());
+        }
+    }
+
+    // records written since the last fsync may or may not be on disk, and a later fsync would
+    // count them as durable, so nothing more is written or synced
+    private void stopAfterFailure(IOException cause) {
+        log.error("Market journal write failed; journaling stopped, trades after sequence {} are not durable",
+                durableSequence, cause);
+        failure = cause;
+        lastWrittenSequence = durableSequence;
+        dirty = false;
+        buffer.clear();
+        for (CompletableFuture<Void> future : awaitingSync) {
+            future.completeExceptionally(cause);
+        }
+        awaitingSync.clear();
+        List<Entry> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Entry entry : pending) {
+            if (entry.synced() != null) {
+                entry.synced().completeExceptionally(cause);
+            }
+        }
+        syncLock.lock();
+        try {
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Market journal failed to close after a write failure: {}", e.getMessage());
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        switch (entry.type()) {
+            case JournalCodec.COMPANY_ADDED -> {
+                byte[] name = JournalCodec.nameBytes(entry.company());
+                ensureRoom(JournalCodec.encodedSize(JournalCodec.companyPayloadBytes(name)));
+                JournalCodec.writeCompanyAdded(buffer, crc, entry.company(), name);
+            }
+            case JournalCodec.COMPANY_REMOVED -> {
+                ensureRoom(JournalCodec.encodedSize(Integer.BYTES));
+                JournalCodec.writeCompanyRemoved(buffer, crc, entry.companyId());
+            }
+            default -> {
+                ensureRoom(JournalCodec.encodedSize(JournalCodec.TRADE_PAYLOAD_BYTES));
+                JournalCodec.writeTrade(buffer, crc, entry.sequence(), entry.trade());
+                lastWrittenSequence = entry.sequence();
+                tradesSinceSnapshot++;
+            }
+        }
+        if (entry.synced() != null) {
+            awaitingSync.add(entry.synced());
+        }
+        dirty = true;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentBytes += segment.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // group commit: one fsync covers every record written since the previous one
+    private void sync() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        long start = System.nanoTime();
+        flushBuffer();
+        segment.force(false);
+        lastSyncNanos = System.nanoTime();
+        syncDuration.record(lastSyncNanos - start, TimeUnit.NANOSECONDS);
+        dirty = false;
+
+        for (CompletableFuture<Void> future : awaitingSync) {
+            future.complete(null);
+        }
+        awaitingSync.clear();
+        if (durableSequence != lastWrittenSequence) {
+            durableSequence = lastWrittenSequence;
+            if (waitForSync) {
+                syncLock.lock();
+                try {
+                    synced.signalAll();
+                } finally {
+                    syncLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void maybeRollSegment() throws IOException {
+        boolean snapshotDue = snapshotEveryTrades > 0 && tradesSinceSnapshot >= snapshotEveryTrades
+                && !snapshotRunning.get();
+        if (!snapshotDue && segmentBytes + buffer.position() < MAX_SEGMENT_BYTES) {
+            return;
+        }
+        sync();
+        segment.close();
+        openSegment(segmentIndex + 1);
+        if (snapshotDue) {
+            // everything before the new segment is in the market's state by now,
+            // so a snapshot taken from here on lets recovery start at this segment
+            snapshotRunning.set(true);
+            tradesSinceSnapshot = 0;
+            long firstSegment = segmentIndex;
+            snapshotter.execute(() -> writeSnapshot(firstSegment));
+        }
+    }
+
+    private void openSegment(long index) throws IOException {
+        segment = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentIndex = index;
+        segmentBytes = segment.size();
+    }
+
+    // ---------------------------------------------------------------- snapshots
+
+    private void writeSnapshot(long firstSegment) {
+        try {
+            long start = System.nanoTime();
+            TradeLedger.Snapshot ledger = market.getTradeLedger().snapshot();
+            SnapshotFile.write(directory.resolve(SNAPSHOT_FILE), firstSegment, market.getCompanies(), ledger);
+            for (long index : listSegments()) {
+                if (index < firstSegment) {
+                    Files.deleteIfExists(segmentPath(index));
+                }
+            }
+            log.info("Market snapshot of {} trades written in {} ms", ledger.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.error("Market snapshot failed", e);
+        } finally {
+            snapshotRunning.set(false);
+        }
+    }
+
+    // ---------------------------------------------------------------- recovery
+
+    /**
+     * Rebuild the market from the snapshot and the journal segments after it.
+     * @return - index of the last segment on disk (or the snapshot's first segment - 1)
+     */
+    private long recover() throws IOException {
+        TradeLedger ledger = market.getTradeLedger();
+        // journaled trades do not repeat the company name, it comes from the company records
+        Map<Integer, String> companyNames = new HashMap<>();
+        long firstSegment = 0;
+        int snapshotTrades = 0;
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            SnapshotFile.Contents snapshot = SnapshotFile.read(snapshotPath);
+            for (Company company : snapshot.companies()) {
+                market.addCompany(company);
+                companyNames.put(company.getId(), company.getName());
+            }
+            ledger.restore(snapshot.ledger());
+            companyNames.putAll(snapshot.ledger().companyNames());
+            firstSegment = snapshot.firstSegment();
+            snapshotTrades = snapshot.ledger().size();
+        }
+
+        long lastSegment = firstSegment - 1;
+        for (long index : listSegments()) {
+            if (index >= firstSegment) {
+                replaySegment(segmentPath(index), snapshotTrades, companyNames);
+            }
+            lastSegment = Math.max(lastSegment, index);
+        }
+        tradesSinceSnapshot = ledger.size() - snapshotTrades;
+        restoreDerivedState(ledger);
+        return lastSegment;
+    }
+
+    private void replaySegment(Path path, int skipBelowSequence, Map<Integer, String> companyNames)
+            throws IOException {
+        long size = Files.size(path);
+        long valid = applySegment(path, skipBelowSequence, companyNames);
+        if (valid < size) {
+            // torn write from a crash: drop the partial record. New records always go to a new
+            // segment, so this is tidying; should the platform refuse (the read mapping may not be
+            // released yet), the next recovery stops at the same record
+            log.warn("Market journal {} truncated at byte {} of {}", path.getFileName(), valid, size);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            } catch (IOException e) {
+                log.warn("Market journal {} could not be truncated: {}", path.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Apply a segment's records, through a read-only mapping, up to the first incomplete one.
+     * @return - length of the segment's whole records, in bytes
+     */
+    private long applySegment(Path path, int skipBelowSequence, Map<Integer, String> companyNames)
+            throws IOException {
+        TradeLedger ledger = market.getTradeLedger();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C checksum = new CRC32C();
+            int valid = 0;
+            while (data.remaining() >= JournalCodec.HEADER_BYTES) {
+                int start = data.position();
+                int payloadBytes = data.getInt(start);
+                if (payloadBytes < 0 || data.remaining() < JournalCodec.encodedSize(payloadBytes)) {
+                    break;
+                }
+                int stored = data.getInt(start + JournalCodec.HEADER_BYTES + payloadBytes);
+                if (stored != JournalCodec.checksum(checksum, data, start + Integer.BYTES, payloadBytes)) {
+                    break;
+                }
+                byte type = data.get(start + Integer.BYTES);
+                ByteBuffer payload = data.slice(start + JournalCodec.HEADER_BYTES, payloadBytes);
+                apply(type, payload, ledger, skipBelowSequence, companyNames);
+                data.position(start + JournalCodec.encodedSize(payloadBytes));
+                valid = data.position();
+            }
+            return valid;
+        }
+    }
+
+    private void apply(byte type, ByteBuffer payload, TradeLedger ledger, int skipBelowSequence,
+                       Map<Integer, String> companyNames) {
+        switch (type) {
+            case JournalCodec.COMPANY_ADDED -> {
+                int id = payload.getInt();
+                Money sharePrice = Money.ofMinor(payload.getLong());
+                double shareMultiplier = payload.getDouble();
+                int numShares = payload.getInt();
+                String name = JournalCodec.readName(payload);
+                market.addCompany(new PublicCompany(id, name, sharePrice, shareMultiplier, numShares));
+                companyNames.putIfAbsent(id, name);
+            }
+            case JournalCodec.COMPANY_REMOVED -> {
+                try {
+                    market.removeCompany(payload.getInt());
+                } catch (CompanyNotFoundException e) {
+                    // removed before the snapshot was taken
+                }
+            }
+            case JournalCodec.TRADE -> {
+                int sequence = payload.getInt();
+                if (sequence < skipBelowSequence) {
+                    return;
+                }
+                int tradeId = payload.getInt();
+                int clientId = payload.getInt();
+                int companyId = payload.getInt();
+                Money price = Money.ofMinor(payload.getLong());
+                int quantity = payload.getInt();
+                long timestamp = payload.getLong();
+                ledger.append(new Trade(tradeId, clientId, companyId, companyNames.get(companyId),
+                        price, quantity, timestamp));
+            }
+            default -> throw new IllegalStateException("Unknown market journal record type " + type);
+        }
+    }
+
+    // trade IDs continue after the highest recovered one, prices come from each company's last trade
+    private void restoreDerivedState(TradeLedger ledger) {
+        TradeLedger.Snapshot rows = ledger.snapshot();
+        int maxTradeId = -1;
+        for (int row = 0; row < rows.size(); row++) {
+            maxTradeId = Math.max(maxTradeId, rows.tradeIds()[row]);
+        }
+        if (maxTradeId >= 0) {
+            Trade.advanceCounterPast(maxTradeId);
+        }
+
+        Map<Integer, Company> pending = new HashMap<>();
+        for (Company company : market.getCompanies()) {
+            pending.put(company.getId(), company);
+        }
+        Set<Integer> seen = new HashSet<>();
+        for (int row = rows.size() - 1; row >= 0 && seen.size() < pending.size(); row--) {
+            int companyId = rows.companyIds()[row];
+            Company company = pending.get(companyId);
+            if (company != null && seen.add(companyId)) {
+                company.setSharePrice(Money.ofMinor(rows.prices()[row]));
+            }
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> SEGMENT_FILE.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("journal-%016d.log", index));
+    }
+
+    private record Entry(byte type, Company company, int companyId, int sequence, Trade trade,
+                         CompletableFuture<Void> synced) {
+        Entry(byte type, Company company, int companyId, int sequence, Trade trade) {
+            this(type, company, companyId, sequence, trade,
+                    type == JournalCodec.TRADE ? null : new CompletableFuture<>());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package service.market.journal;
+
+import service.core.Company;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.market.ledger.TradeLedger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** SnapshotFile
+ * Purpose:
+ * - Compact point-in-time image of the market: companies plus the trade ledger's columns
+ * - Columns are written and read as whole arrays, so loading millions of trades is a few bulk reads
+ * - Written to a temp file, forced to disk, then atomically renamed over the previous snapshot
+ * Layout:
+ * - int magic, int version, long first journal segment to replay
+ * - int company count, then per company: int id, long price (cents), double multiplier, int shares, name
+ * - int trade count, then each column in turn: trade IDs, client IDs, company IDs, prices, quantities, timestamps
+ * - int name count, then per entry: int company ID, name
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x4D4B534E;
+    private static final int VERSION = 1;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    record Contents(long firstSegment, List<Company> companies, TradeLedger.Snapshot ledger) {}
+
+    private SnapshotFile() {}
+
+    static void write(Path target, long firstSegment, Collection<Company> companies,
+                      TradeLedger.Snapshot ledger) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(firstSegment);
+
+            out.putInt(companies.size());
+            for (Company company : companies) {
+                out.putInt(company.getId());
+                out.putLong(company.getSharePrice().getMinorUnits());
+                out.putDouble(company.getShareMultiplier());
+                out.putInt(company.getNumShares());
+                out.putString(company.getName());
+            }
+
+            int count = ledger.size();
+            out.putInt(count);
+            out.putInts(ledger.tradeIds(), count);
+            out.putInts(ledger.clientIds(), count);
+            out.putInts(ledger.companyIds(), count);
+            out.putLongs(ledger.prices(), count);
+            out.putInts(ledger.quantities(), count);
+            out.putLongs(ledger.timestamps(), count);
+
+            out.putInt(ledger.companyNames().size());
+            for (Map.Entry<Integer, String> entry : ledger.companyNames().entrySet()) {
+                out.putInt(entry.getKey());
+                out.putString(entry.getValue());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Contents read(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a market snapshot: " + source);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported market snapshot version " + version + ": " + source);
+            }
+            long firstSegment = in.getLong();
+
+            int companyCount = in.getInt();
+            List<Company> companies = new ArrayList<>(companyCount);
+            for (int i = 0; i < companyCount; i++) {
+                int id = in.getInt();
+                Money sharePrice = Money.ofMinor(in.getLong());
+                double shareMultiplier = in.getDouble();
+                int numShares = in.getInt();
+                String name = in.getString();
+                companies.add(new PublicCompany(id, name, sharePrice, shareMultiplier, numShares));
+            }
+
+            int count = in.getInt();
+            int[] tradeIds = in.getInts(count);
+            int[] clientIds = in.getInts(count);
+            int[] companyIds = in.getInts(count);
+            long[] prices = in.getLongs(count);
+            int[] quantities = in.getInts(count);
+            long[] timestamps = in.getLongs(count);
+
+            int nameCount = in.getInt();
+            Map<Integer, String> companyNames = new HashMap<>();
+            for (int i = 0; i < nameCount; i++) {
+                int companyId = in.getInt();
+                companyNames.put(companyId, in.getString());
+            }
+            return new Contents(firstSegment, companies, new TradeLedger.Snapshot(
+                    count, tradeIds, clientIds, companyIds, prices, quantities, timestamps, companyNames));
+        }
+    }
+
+    // buffered writes to the channel; arrays are copied in through int/long views of the buffer
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(Integer.BYTES);
+                int chunk = Math.min(buffer.remaining() / Integer.BYTES, count - offset);
+                buffer.asIntBuffer().put(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * Integer.BYTES);
+                offset += chunk;
+            }
+        }
+
+        void putLongs(long[] values, int count) throws IOException {
+            int offset = 0;
+            while (offset < count) {
+                ensure(Long.BYTES);
+                int chunk = Math.min(buffer.remaining() / Long.BYTES, count - offset);
+                buffer.asLongBuffer().put(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * Long.BYTES);
+                offset += chunk;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+    // buffered reads from the channel, mirroring Writer
+    private static final class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        private Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        double getDouble() throws IOException {
+            ensure(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        String getString() throws IOException {
+            byte[] bytes = new byte[getInt()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int[] getInts(int count) throws IOException {
+            int[] values = new int[count];
+            int offset = 0;
+            while (offset < count) {
+                ensure(Integer.BYTES);
+                int chunk = Math.min(buffer.remaining() / Integer.BYTES, count - offset);
+                buffer.asIntBuffer().get(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * Integer.BYTES);
+                offset += chunk;
+            }
+            return values;
+        }
+
+        long[] getLongs(int count) throws IOException {
+            long[] values = new long[count];
+            int offset = 0;
+            while (offset < count) {
+                ensure(Long.BYTES);
+                int chunk = Math.min(buffer.remaining() / Long.BYTES, count - offset);
+                buffer.asLongBuffer().get(values, offset, chunk);
+                buffer.position(buffer.position() + chunk * Long.BYTES);
+                offset += chunk;
+            }
+            return values;
+        }
+
+        // refill until at least the requested bytes are buffered
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated market snapshot");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package service.market.ledger;
+
+import java.util.Arrays;
+
+/** RowList
+ * - Append-only growable list of ledger row numbers (primitive ints, no boxing)
+ * - Single writer (the ledger's append lock), any number of lock-free readers:
+ *   a row is written before the volatile size that publishes it
+ */
+class RowList {
+    private volatile int[] rows;
+    private volatile int size;
+
+    RowList(int initialCapacity) {
+        this.rows = new int[Math.max(initialCapacity, 1)];
+    }
+
+    void add(int row) {
+        int[] current = rows;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            rows = current;
+        }
+        current[size] = row;
+        size = size + 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // the array holds at least size() published rows; read size() first
+    int[] rows() {
+        return rows;
+    }
+}
@@ -0,0 +1,37 @@
+package service.market.ledger;
+
+import service.market.exception.InvalidTradeQueryException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/** TradeCursor
+ * - Opaque pagination token for trade history
+ * - Wraps the ledger sequence number to resume from, so clients cannot depend on its format
+ */
+public final class TradeCursor {
+    private static final byte VERSION = 1;
+
+    private TradeCursor() {}
+
+    public static String encode(int sequence) {
+        byte[] bytes = ByteBuffer.allocate(5).put(VERSION).putInt(sequence).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public static int decode(String cursor) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            if (buffer.remaining() != 5 || buffer.get() != VERSION) {
+                throw new InvalidTradeQueryException("Unrecognised cursor: " + cursor);
+            }
+            int sequence = buffer.getInt();
+            if (sequence < 0) {
+                throw new InvalidTradeQueryException("Unrecognised cursor: " + cursor);
+            }
+            return sequence;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTradeQueryException("Unrecognised cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package service.market.ledger;
+
+import service.core.Trade;
+import service.core.Money;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/** TradeLedger
+ * Purpose:
+ * - Append-only, in-memory record of every trade in the market
+ * - Stored column by column in primitive arrays (~40 bytes a trade including indexes)
+ *   instead of one boxed Trade per row; Trades are only materialized when read
+ * - Secondary indexes by company ID and client ID hold row numbers, so filtered reads
+ *   only touch matching rows
+ * Threading:
+ * - Appends are serialized by a short lock (trades arrive from every sequencer shard)
+ * - Reads never lock: a row is fully written before the volatile size publishes it
+ */
+public class TradeLedger {
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int INITIAL_INDEX_CAPACITY = 16;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+    private volatile int size;
+
+    private final Map<Integer, RowList> rowsByCompany = new ConcurrentHashMap<>();
+    private final Map<Integer, RowList> rowsByClient = new ConcurrentHashMap<>();
+    // company names are per company, not per trade, so they are stored once
+    private final Map<Integer, String> companyNames = new ConcurrentHashMap<>();
+
+    /**
+     * Append a trade to the ledger.
+     * @return - the trade's sequence number (its row, starting at 0)
+     */
+    public int append(Trade trade) {
+        return append(trade, null);
+    }
+
+    /**
+     * Append a trade to the ledger.
+     * @param onAppend - called with the sequence number while the append lock is still held,
+     *                   so callbacks of concurrent appends run in sequence order
+     * @return - the trade's sequence number (its row, starting at 0)
+     */
+    public int append(Trade trade, IntConsumer onAppend) {
+        appendLock.lock();
+        try {
+            int row = size;
+            Columns current = columns;
+            if (row == current.capacity()) {
+                current = current.grow();
+                columns = current;
+            }
+            current.tradeIds[row] = trade.getId();
+            current.clientIds[row] = trade.getClientId();
+            current.companyIds[row] = trade.getCompanyId();
+            current.prices[row] = trade.getSharePrice().getMinorUnits();
+            current.quantities[row] = trade.getQuantityPurchased();
+            current.timestamps[row] = trade.getTimestamp();
+            if (trade.getCompanyName() != null) {
+                companyNames.putIfAbsent(trade.getCompanyId(), trade.getCompanyName());
+            }
+
+            rowsByCompany.computeIfAbsent(trade.getCompanyId(), id -> new RowList(INITIAL_INDEX_CAPACITY)).add(row);
+            rowsByClient.computeIfAbsent(trade.getClientId(), id -> new RowList(INITIAL_INDEX_CAPACITY)).add(row);
+
+            size = row + 1;
+            if (onAppend != null) {
+                onAppend.accept(row);
+            }
+            return row;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Point-in-time view of the ledger's columns, e.g. for writing a snapshot to disk.
+     * The arrays are shared with the ledger, only the first size() rows are stable.
+     */
+    public Snapshot snapshot() {
+        int count = size;
+        Columns current = columns;
+        return new Snapshot(count, current.tradeIds, current.clientIds, current.companyIds,
+                current.prices, current.quantities, current.timestamps, Map.copyOf(companyNames));
+    }
+
+    /**
+     * Bulk-load an empty ledger from a snapshot and rebuild its indexes.
+     */
+    public void restore(Snapshot snapshot) {
+        appendLock.lock();
+        try {
+            if (size != 0) {
+                throw new IllegalStateException("Can only restore into an empty ledger");
+            }
+            int count = snapshot.size();
+            int capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(count, 1)) << 1);
+            Columns restored = new Columns(
+                    Arrays.copyOf(snapshot.tradeIds(), capacity),
+                    Arrays.copyOf(snapshot.clientIds(), capacity),
+                    Arrays.copyOf(snapshot.companyIds(), capacity),
+                    Arrays.copyOf(snapshot.prices(), capacity),
+                    Arrays.copyOf(snapshot.quantities(), capacity),
+                    Arrays.copyOf(snapshot.timestamps(), capacity));
+            for (int row = 0; row < count; row++) {
+                rowsByCompany.computeIfAbsent(restored.companyIds[row], id -> new RowList(INITIAL_INDEX_CAPACITY)).add(row);
+                rowsByClient.computeIfAbsent(restored.clientIds[row], id -> new RowList(INITIAL_INDEX_CAPACITY)).add(row);
+            }
+            companyNames.putAll(snapshot.companyNames());
+            columns = restored;
+            size = count;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Trade get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("No trade at sequence " + row);
+        }
+        return materialize(columns, row);
+    }
+
+    public List<Trade> getAll() {
+        int count = size;
+        Columns snapshot = columns;
+        List<Trade> trades = new ArrayList<>(count);
+        for (int row = 0; row < count; row++) {
+            trades.add(materialize(snapshot, row));
+        }
+        return trades;
+    }
+
+    public List<Trade> getByCompany(int companyId) {
+        return getRows(rowsByCompany.get(companyId));
+    }
+
+    public List<Trade> getByClient(int clientId) {
+        return getRows(rowsByClient.get(clientId));
+    }
+
+    /**
+     * Visit trades matching a query in sequence order, starting at a sequence number.
+     * Uses the smaller of the company/client indexes when the query names one,
+     * otherwise walks the columns directly. Nothing is buffered.
+     * @param query - filter
+     * @param fromSequence - first sequence number to consider
+     * @param limit - max trades to visit
+     * @param consumer - receives each matching trade
+     * @return - sequence number to resume from, or -1 when no rows are left
+     */
+    public int scan(TradeQuery query, int fromSequence, int limit, Consumer<Trade> consumer) {
+        RowList index = indexFor(query);
+        if (index == null && (query.companyId() != null || query.clientId() != null)) {
+            return -1; // the company or client has never traded
+        }
+
+        // read the published size before the arrays it guards
+        int rowCount = index != null ? index.size() : size;
+        int[] rows = index != null ? index.rows() : null;
+        Columns snapshot = columns;
+        int position = index != null ? firstAtOrAfter(rows, rowCount, fromSequence) : Math.max(fromSequence, 0);
+        int visited = 0;
+
+        while (position < rowCount) {
+            if (visited == limit) {
+                return index != null ? rows[position] : position;
+            }
+            int row = index != null ? rows[position] : position;
+            position++;
+            if (matches(snapshot, row, query)) {
+                consumer.accept(materialize(snapshot, row));
+                visited++;
+            }
+        }
+        return -1;
+    }
+
+    private RowList indexFor(TradeQuery query) {
+        RowList byCompany = query.companyId() != null ? rowsByCompany.get(query.companyId()) : null;
+        RowList byClient = query.clientId() != null ? rowsByClient.get(query.clientId()) : null;
+        if ((query.companyId() != null && byCompany == null) || (query.clientId() != null && byClient == null)) {
+            return null;
+        }
+        if (byCompany == null) {
+            return byClient;
+        }
+        if (byClient == null) {
+            return byCompany;
+        }
+        return byCompany.size() <= byClient.size() ? byCompany : byClient;
+    }
+
+    private boolean matches(Columns columns, int row, TradeQuery query) {
+        if (query.companyId() != null && columns.companyIds[row] != query.companyId()) {
+            return false;
+        }
+        if (query.clientId() != null && columns.clientIds[row] != query.clientId()) {
+            return false;
+        }
+        long timestamp = columns.timestamps[row];
+        return (query.from() == null || timestamp >= query.from())
+                && (query.to() == null || timestamp < query.to());
+    }
+
+    // index rows are appended in sequence order, so they are sorted
+    private static int firstAtOrAfter(int[] rows, int count, int sequence) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rows[mid] < sequence) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<Trade> getRows(RowList index) {
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        int count = index.size();
+        int[] rows = index.rows();
+        Columns snapshot = columns;
+        List<Trade> trades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            trades.add(materialize(snapshot, rows[i]));
+        }
+        return trades;
+    }
+
+    private Trade materialize(Columns columns, int row) {
+        int companyId = columns.companyIds[row];
+        return new Trade(
+                columns.tradeIds[row],
+                columns.clientIds[row],
+                companyId,
+                companyNames.get(companyId),
+                Money.ofMinor(columns.prices[row]),
+                columns.quantities[row],
+                columns.timestamps[row]);
+    }
+
+    public record Snapshot(int size, int[] tradeIds, int[] clientIds, int[] companyIds,
+                           long[] prices, int[] quantities, long[] timestamps,
+                           Map<Integer, String> companyNames) {}
+
+    // one array per column; replaced as a whole when the ledger grows
+    private static final class Columns {
+        private final int[] tradeIds;
+        private final int[] clientIds;
+        private final int[] companyIds;
+        private final long[] prices;        // Money minor units
+        private final int[] quantities;     // negative for sells
+        private final long[] timestamps;    // epoch millis
+
+        private Columns(int capacity) {
+            this(new int[capacity], new int[capacity], new int[capacity],
+                    new long[capacity], new int[capacity], new long[capacity]);
+        }
+
+        private Columns(int[] tradeIds, int[] clientIds, int[] companyIds,
+                        long[] prices, int[] quantities, long[] timestamps) {
+            this.tradeIds = tradeIds;
+            this.clientIds = clientIds;
+            this.companyIds = companyIds;
+            this.prices = prices;
+            this.quantities = quantities;
+            this.timestamps = timestamps;
+        }
+
+        private int capacity() {
+            return tradeIds.length;
+        }
+
+        private Columns grow() {
+            int capacity = capacity() * 2;
+            return new Columns(
+                    Arrays.copyOf(tradeIds, capacity),
+                    Arrays.copyOf(clientIds, capacity),
+                    Arrays.copyOf(companyIds, capacity),
+                    Arrays.copyOf(prices, capacity),
+                    Arrays.copyOf(quantities, capacity),
+                    Arrays.copyOf(timestamps, capacity));
+        }
+    }
+}
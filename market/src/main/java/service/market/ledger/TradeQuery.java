@@ -0,0 +1,12 @@
+package service.market.ledger;
+
+/** TradeQuery
+ * - Filter for reading the TradeLedger; null fields match everything
+ * - from is inclusive and to is exclusive, both in epoch millis
+ */
+public record TradeQuery(Integer companyId, Integer clientId, Long from, Long to) {
+
+    public static TradeQuery all() {
+        return new TradeQuery(null, null, null, null);
+    }
+}
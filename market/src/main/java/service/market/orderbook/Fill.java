@@ -0,0 +1,8 @@
+package service.market.orderbook;
+
+/** Fill
+ * - One execution between an incoming (aggressor) order and a resting order
+ * - price is in ticks, always the resting order's price
+ */
+public record Fill(int companyId, long buyOrderId, long sellOrderId,
+                   int buyClientId, int sellClientId, long price, int quantity) {}
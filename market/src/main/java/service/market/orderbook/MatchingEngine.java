@@ -0,0 +1,147 @@
+package service.market.orderbook;
+
+import org.springframework.stereotype.Service;
+import service.core.Company;
+import service.core.Money;
+import service.core.Trade;
+import service.market.MarketService;
+import service.market.exception.InvalidOrderException;
+import service.market.exception.OrderNotFoundException;
+import service.market.sequencer.OrderSequencer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** MatchingEngine
+ * Purpose:
+ * - Owns one OrderBook per company ID
+ * - Turns order requests into Orders, matches them and records the resulting fills
+ *   as trades in the MarketService (buyer +quantity, seller -quantity)
+ * - The last fill price becomes the company's share price
+ * Note:
+ * - A simulation book: fills are recorded and move the price, but no money or shares change hands.
+ *   Unlike /buy and /sell (SettlementCoordinator) nothing goes to the Bank or Company service; the
+ *   Company Service only holds each company's unissued shares, so there is nowhere to take a
+ *   seller's shares from. Players' portfolios and balances do not see these trades
+ * Threading:
+ * - Every book is only touched from its company's OrderSequencer shard (single writer)
+ * - Fills are appended to the ledger on the shard; the caller waits for them to be journaled after
+ */
+@Service
+public class MatchingEngine {
+    private final MarketService market;
+    private final OrderSequencer sequencer;
+    private final Map<Integer, OrderBook> books = new ConcurrentHashMap<>();
+    private final AtomicLong orderIdCounter = new AtomicLong(1);
+
+    public MatchingEngine(MarketService market, OrderSequencer sequencer) {
+        this.market = market;
+        this.sequencer = sequencer;
+    }
+
+    public OrderResult submit(Company company, int clientId, OrderSide side, OrderType type,
+                              Money price, int quantity) {
+        if (side == null) {
+            throw new InvalidOrderException("Order side is required");
+        }
+        if (quantity <= 0) {
+            throw new InvalidOrderException("Order quantity must be positive");
+        }
+        long ticks = 0;
+        if (type == OrderType.LIMIT) {
+            if (price == null || price.isNegative() || price.isZero()) {
+                throw new InvalidOrderException("Limit orders require a positive price");
+            }
+            // a tick is one Money minor unit (0.01)
+            ticks = price.getMinorUnits();
+        }
+
+        Order order = new Order(orderIdCounter.getAndIncrement(), clientId, company.getId(),
+                side, type, ticks, quantity);
+        Matched matched = sequencer.execute(company.getId(), () -> {
+            OrderBook book = books.computeIfAbsent(company.getId(), OrderBook::new);
+            List<Fill> fills = new ArrayList<>();
+            book.submit(order, fills);
+
+            List<Trade> trades = new ArrayList<>(fills.size());
+            int lastSequence = record(company, order, fills, trades);
+            return new Matched(new OrderResult(order.getId(), company.getId(), statusOf(order),
+                    order.getFilled(), order.getRemaining(), trades), lastSequence);
+        });
+        // the fills are waited for (e.g. to be on disk) here, so the shard can move on
+        if (matched.lastSequence() >= 0) {
+            market.awaitTrade(matched.lastSequence());
+        }
+        return matched.result();
+    }
+
+    public OrderResult cancel(int companyId, long orderId) {
+        return sequencer.execute(companyId, () -> {
+            OrderBook book = books.get(companyId);
+            Order order = book != null ? book.cancel(orderId) : null;
+            if (order == null) {
+                throw new OrderNotFoundException("Order with ID " + orderId + " is not resting on company " + companyId);
+            }
+            return new OrderResult(orderId, companyId, OrderStatus.CANCELLED, order.getFilled(), 0, List.of());
+        });
+    }
+
+    public OrderBookView getBook(int companyId, int depth) {
+        return sequencer.execute(companyId, () -> {
+            OrderBook book = books.get(companyId);
+            if (book == null) {
+                return new OrderBookView(companyId, List.of(), List.of());
+            }
+            return new OrderBookView(companyId,
+                    levels(book, OrderSide.BUY, depth),
+                    levels(book, OrderSide.SELL, depth));
+        });
+    }
+
+    // drop the company's book, e.g. when the company leaves the market
+    public void removeBook(int companyId) {
+        sequencer.execute(companyId, () -> books.remove(companyId));
+    }
+
+    // appends the fills to the ledger, adds the order's own side to ownTrades; returns the last
+    // ledger sequence, -1 without fills
+    private int record(Company company, Order order, List<Fill> fills, List<Trade> ownTrades) {
+        int lastSequence = -1;
+        for (Fill fill : fills) {
+            Money price = Money.ofMinor(fill.price());
+            Trade buy = new Trade(fill.buyClientId(), company.getId(), company.getName(), price, fill.quantity());
+            Trade sell = new Trade(fill.sellClientId(), company.getId(), company.getName(), price, -fill.quantity());
+            market.appendTrade(buy);
+            lastSequence = market.appendTrade(sell);
+            ownTrades.add(order.getSide() == OrderSide.BUY ? buy : sell);
+        }
+        if (!fills.isEmpty()) {
+            company.setSharePrice(Money.ofMinor(fills.get(fills.size() - 1).price()));
+        }
+        return lastSequence;
+    }
+
+    private OrderStatus statusOf(Order order) {
+        if (order.isFilled()) {
+            return OrderStatus.FILLED;
+        }
+        return order.getType() == OrderType.LIMIT ? OrderStatus.RESTING : OrderStatus.CANCELLED;
+    }
+
+    private record Matched(OrderResult result, int lastSequence) {}
+
+    private List<OrderBookView.Level> levels(OrderBook book, OrderSide side, int depth) {
+        List<OrderBookView.Level> levels = new ArrayList<>(Math.max(depth, 0));
+        for (PriceLevel level : book.getLevels(side)) {
+            if (levels.size() >= depth) {
+                break;
+            }
+            levels.add(new OrderBookView.Level(Money.ofMinor(level.getPrice()),
+                    level.getTotalQuantity(), level.getOrderCount()));
+        }
+        return levels;
+    }
+}
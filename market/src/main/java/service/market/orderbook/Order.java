@@ -0,0 +1,85 @@
+package service.market.orderbook;
+
+/** Order
+ * Purpose:
+ * - A single resting or incoming order inside an OrderBook
+ * - Prices are held as ticks (Money minor units) so matching never touches double arithmetic
+ * Note:
+ * - prev/next link the order into its PriceLevel queue, which makes cancel O(1)
+ */
+public class Order {
+    private final long id;
+    private final int clientId;
+    private final int companyId;
+    private final OrderSide side;
+    private final OrderType type;
+    private final long price;
+    private final int quantity;
+    private int remaining;
+    private int cancelled;
+
+    // intrusive FIFO links, only set while the order rests on a level
+    PriceLevel level;
+    Order prev;
+    Order next;
+
+    public Order(long id, int clientId, int companyId, OrderSide side, OrderType type, long price, int quantity) {
+        this.id = id;
+        this.clientId = clientId;
+        this.companyId = companyId;
+        this.side = side;
+        this.type = type;
+        this.price = price;
+        this.quantity = quantity;
+        this.remaining = quantity;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    public OrderSide getSide() {
+        return side;
+    }
+
+    public OrderType getType() {
+        return type;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public int getFilled() {
+        return quantity - remaining - cancelled;
+    }
+
+    public boolean isFilled() {
+        return getFilled() == quantity;
+    }
+
+    void fill(int quantity) {
+        this.remaining -= quantity;
+    }
+
+    void cancelRemaining() {
+        this.cancelled += remaining;
+        this.remaining = 0;
+    }
+}
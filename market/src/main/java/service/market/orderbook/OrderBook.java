@@ -0,0 +1,155 @@
+package service.market.orderbook;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** OrderBook
+ * Purpose:
+ * - Price-time-priority limit order book for a single company
+ * - Bids are sorted best (highest) first, asks best (lowest) first
+ * - Each price holds a FIFO PriceLevel, so the oldest order at the best price fills first
+ * Threading:
+ * - Not thread-safe; the owner (MatchingEngine) must ensure a single writer per book
+ */
+public class OrderBook {
+    private final int companyId;
+    private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();
+    private final Map<Long, Order> restingOrders = new HashMap<>();
+
+    public OrderBook(int companyId) {
+        this.companyId = companyId;
+    }
+
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    /**
+     * Match an incoming order against the opposite side of the book.
+     * Any LIMIT remainder rests on the book, any MARKET remainder is cancelled.
+     * @param order - incoming order
+     * @param fills - receives one Fill per execution, in execution order
+     */
+    public void submit(Order order, List<Fill> fills) {
+        if (order.getCompanyId() != companyId) {
+            throw new IllegalArgumentException("Order for company " + order.getCompanyId()
+                    + " submitted to book " + companyId);
+        }
+        if (restingOrders.containsKey(order.getId())) {
+            throw new IllegalArgumentException("Duplicate order ID " + order.getId());
+        }
+
+        match(order, fills);
+
+        if (order.getRemaining() == 0) {
+            return;
+        }
+        if (order.getType() == OrderType.LIMIT) {
+            rest(order);
+        } else {
+            order.cancelRemaining();
+        }
+    }
+
+    /**
+     * Remove a resting order from the book.
+     * @return - the cancelled order, or null if it is not resting (unknown or already filled)
+     */
+    public Order cancel(long orderId) {
+        Order order = restingOrders.remove(orderId);
+        if (order == null) {
+            return null;
+        }
+        PriceLevel level = order.level;
+        TreeMap<Long, PriceLevel> side = sideOf(order.getSide());
+        level.remove(order);
+        if (level.isEmpty()) {
+            side.remove(level.getPrice());
+        }
+        order.cancelRemaining();
+        return order;
+    }
+
+    public Order getOrder(long orderId) {
+        return restingOrders.get(orderId);
+    }
+
+    public int getRestingOrderCount() {
+        return restingOrders.size();
+    }
+
+    // best bid/ask price in ticks, or -1 when that side is empty
+    public long getBestBid() {
+        return bids.isEmpty() ? -1 : bids.firstKey();
+    }
+
+    public long getBestAsk() {
+        return asks.isEmpty() ? -1 : asks.firstKey();
+    }
+
+    // price levels of one side, best price first
+    public Collection<PriceLevel> getLevels(OrderSide side) {
+        return Collections.unmodifiableCollection(sideOf(side).values());
+    }
+
+    private void match(Order order, List<Fill> fills) {
+        TreeMap<Long, PriceLevel> opposite = sideOf(order.getSide().opposite());
+
+        while (order.getRemaining() > 0 && !opposite.isEmpty()) {
+            PriceLevel level = opposite.firstEntry().getValue();
+            if (order.getType() == OrderType.LIMIT && !crosses(order, level.getPrice())) {
+                return;
+            }
+
+            Order resting = level.head();
+            while (resting != null && order.getRemaining() > 0) {
+                int quantity = Math.min(order.getRemaining(), resting.getRemaining());
+                resting.fill(quantity);
+                level.reduce(quantity);
+                order.fill(quantity);
+                fills.add(toFill(order, resting, quantity));
+
+                Order next = resting.next;
+                if (resting.getRemaining() == 0) {
+                    level.remove(resting);
+                    restingOrders.remove(resting.getId());
+                }
+                resting = next;
+            }
+
+            if (level.isEmpty()) {
+                opposite.pollFirstEntry();
+            }
+        }
+    }
+
+    private void rest(Order order) {
+        sideOf(order.getSide())
+                .computeIfAbsent(order.getPrice(), PriceLevel::new)
+                .append(order);
+        restingOrders.put(order.getId(), order);
+    }
+
+    private boolean crosses(Order order, long restingPrice) {
+        return order.getSide() == OrderSide.BUY
+                ? order.getPrice() >= restingPrice
+                : order.getPrice() <= restingPrice;
+    }
+
+    private Fill toFill(Order incoming, Order resting, int quantity) {
+        Order buy = incoming.getSide() == OrderSide.BUY ? incoming : resting;
+        Order sell = incoming.getSide() == OrderSide.BUY ? resting : incoming;
+        return new Fill(companyId, buy.getId(), sell.getId(),
+                buy.getClientId(), sell.getClientId(), resting.getPrice(), quantity);
+    }
+
+    private TreeMap<Long, PriceLevel> sideOf(OrderSide side) {
+        return side == OrderSide.BUY ? bids : asks;
+    }
+}
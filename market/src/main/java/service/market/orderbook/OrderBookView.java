@@ -0,0 +1,14 @@
+package service.market.orderbook;
+
+import service.core.Money;
+
+import java.io.Serializable;
+import java.util.List;
+
+/** OrderBookView
+ * - Read-only depth snapshot of an OrderBook, best price first on each side
+ */
+public record OrderBookView(int companyId, List<Level> bids, List<Level> asks) implements Serializable {
+
+    public record Level(Money price, long quantity, int orders) implements Serializable {}
+}
@@ -0,0 +1,14 @@
+package service.market.orderbook;
+
+import service.core.Trade;
+
+import java.io.Serializable;
+import java.util.List;
+
+/** OrderResult
+ * - Outcome of submitting or cancelling an order
+ * - trades holds the submitting client's side of every fill produced by this order
+ */
+public record OrderResult(long orderId, int companyId, OrderStatus status,
+                          int filledQuantity, int remainingQuantity,
+                          List<Trade> trades) implements Serializable {}
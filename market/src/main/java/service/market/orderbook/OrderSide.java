@@ -0,0 +1,10 @@
+package service.market.orderbook;
+
+public enum OrderSide {
+    BUY,
+    SELL;
+
+    public OrderSide opposite() {
+        return this == BUY ? SELL : BUY;
+    }
+}
@@ -0,0 +1,7 @@
+package service.market.orderbook;
+
+public enum OrderStatus {
+    RESTING,          // (remainder) is on the book waiting for a counterparty
+    FILLED,           // fully executed
+    CANCELLED,        // cancelled by the client, or a MARKET order that ran out of liquidity
+}
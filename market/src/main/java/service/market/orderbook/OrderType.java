@@ -0,0 +1,8 @@
+package service.market.orderbook;
+
+// LIMIT orders rest on the book until filled or cancelled
+// MARKET orders take whatever liquidity is available and the remainder is cancelled
+public enum OrderType {
+    LIMIT,
+    MARKET,
+}
@@ -0,0 +1,75 @@
+package service.market.orderbook;
+
+/** PriceLevel
+ * Purpose:
+ * - FIFO queue of resting orders at one price (time priority within a price)
+ * - Keeps the aggregate quantity so depth snapshots do not walk the queue
+ */
+public class PriceLevel {
+    private final long price;
+    private Order head;
+    private Order tail;
+    private long totalQuantity;
+    private int orderCount;
+
+    public PriceLevel(long price) {
+        this.price = price;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    Order head() {
+        return head;
+    }
+
+    void append(Order order) {
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+        totalQuantity += order.getRemaining();
+        orderCount++;
+    }
+
+    void remove(Order order) {
+        if (order.prev == null) {
+            head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        totalQuantity -= order.getRemaining();
+        orderCount--;
+        order.level = null;
+        order.prev = null;
+        order.next = null;
+    }
+
+    // a resting order was partially or fully filled by an incoming order
+    void reduce(int quantity) {
+        totalQuantity -= quantity;
+    }
+}
@@ -0,0 +1,109 @@
+package service.market.sequencer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/** OrderSequencer
+ * Purpose:
+ * - Gives every company ID a total order of mutations without locks
+ * - Companies are sharded across a fixed number of SequencerShards, each with one writer thread
+ * - All mutations of a company (trades, orders, add/remove) must go through execute/submit
+ * Config:
+ * - market.sequencer.shards: number of writer threads (default: available processors)
+ * - market.sequencer.queue-capacity: max queued tasks per shard before submissions are rejected
+ * - market.sequencer.execute-timeout-ms: how long execute waits for its task to start before
+ *   giving up with 503; the task is then dropped, never run late
+ * Metrics (per shard tag):
+ * - market.sequencer.queue.depth, market.sequencer.queue.latency, market.sequencer.task.duration
+ */
+@Service
+public class OrderSequencer {
+    private final SequencerShard[] shards;
+    private final long executeTimeoutNanos;
+
+    public OrderSequencer(@Value("${market.sequencer.shards:0}") int shardCount,
+                          @Value("${market.sequencer.queue-capacity:65536}") int queueCapacity,
+                          @Value("${market.sequencer.execute-timeout-ms:5000}") long executeTimeoutMillis,
+                          MeterRegistry registry) {
+        this.executeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(executeTimeoutMillis);
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        this.shards = new SequencerShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new SequencerShard(i, queueCapacity, registry);
+            shards[i].start();
+        }
+    }
+
+    /**
+     * Queue a task on the company's shard.
+     * @return - future completed by the shard writer with the task's result or exception, or with
+     *           MarketOverloadedException if the sequencer stops first
+     */
+    public <T> CompletableFuture<T> submit(int companyId, Callable<T> task) {
+        return shardFor(companyId).submit(task);
+    }
+
+    /**
+     * Run a task on the company's shard and wait for it.
+     * Runtime exceptions thrown by the task are rethrown as-is.
+     * Calls made from the shard's own writer run inline, so tasks may nest.
+     * @throws service.market.exception.MarketOverloadedException - the shard is full or stopped, or
+     *         did not start the task within market.sequencer.execute-timeout-ms (it then never runs)
+     */
+    public <T> T execute(int companyId, Callable<T> task) {
+        SequencerShard shard = shardFor(companyId);
+        try {
+            if (shard.isWriterThread()) {
+                return task.call();
+            }
+            return shard.call(task, executeTimeoutNanos);
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for sequencer shard", e);
+        } catch (Exception e) {
+            throw propagate(e);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(int companyId) {
+        return Math.floorMod(companyId, shards.length);
+    }
+
+    public int getQueueDepth(int shard) {
+        return shards[shard].getDepth();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (SequencerShard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    private SequencerShard shardFor(int companyId) {
+        return shards[shardOf(companyId)];
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+}
@@ -0,0 +1,192 @@
+package service.market.sequencer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import service.market.exception.MarketOverloadedException;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/** SequencerShard
+ * Purpose:
+ * - One writer thread draining a bounded multi-producer queue of tasks
+ * - Every task submitted to the shard runs on the same thread, in submission order
+ * Hot path:
+ * - Producers only CAS (depth counter + lock-free queue), the writer parks when idle
+ *   and is unparked by the first producer that sees it parked
+ * Note:
+ * - A queued task runs at most once and only if nobody gave up on it: the writer and a caller
+ *   whose wait timed out race to claim it, so a caller told "timed out" knows it never ran
+ * - Once stopped, queued and later submitted tasks fail instead of waiting forever
+ */
+class SequencerShard implements Runnable {
+    private final int index;
+    private final int capacity;
+    private final Queue<Task<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Thread writer;
+    private final Timer queueLatency;
+    private final Timer taskDuration;
+    private volatile boolean parked;
+    private volatile boolean running = true;
+
+    SequencerShard(int index, int capacity, MeterRegistry registry) {
+        this.index = index;
+        this.capacity = capacity;
+        String shard = Integer.toString(index);
+        Gauge.builder("market.sequencer.queue.depth", depth, AtomicInteger::get)
+                .description("Tasks waiting for the shard writer")
+                .tag("shard", shard)
+                .register(registry);
+        this.queueLatency = Timer.builder("market.sequencer.queue.latency")
+                .description("Time a task waits in the shard queue before it runs")
+                .tag("shard", shard)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.taskDuration = Timer.builder("market.sequencer.task.duration")
+                .description("Time the shard writer spends running a task")
+                .tag("shard", shard)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.writer = new Thread(this, "market-sequencer-" + index);
+        this.writer.setDaemon(true);
+    }
+
+    void start() {
+        writer.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+    }
+
+    boolean isWriterThread() {
+        return Thread.currentThread() == writer;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getDepth() {
+        return depth.get();
+    }
+
+    <T> CompletableFuture<T> submit(Callable<T> callable) {
+        return enqueue(callable).future;
+    }
+
+    /**
+     * Queue a task and wait at most timeoutNanos for it to start.
+     * A task that has started is waited for until it finishes: it only touches memory.
+     * @throws MarketOverloadedException - the task did not start in time (and never will)
+     */
+    <T> T call(Callable<T> callable, long timeoutNanos) throws InterruptedException, ExecutionException {
+        Task<T> task = enqueue(callable);
+        try {
+            return task.future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (task.claim()) {
+                task.future.completeExceptionally(new MarketOverloadedException(
+                        "Sequencer shard " + index + " did not get to the task within "
+                                + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"));
+            }
+            return task.future.get();
+        }
+    }
+
+    private <T> Task<T> enqueue(Callable<T> callable) {
+        if (!running) {
+            throw stopped();
+        }
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            throw new MarketOverloadedException("Sequencer shard " + index + " is full (" + capacity + " tasks)");
+        }
+        Task<T> task = new Task<>(callable, System.nanoTime());
+        queue.offer(task);
+        // the writer publishes 'parked' before re-checking the queue, so one of us always sees the other
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+        // stopped while we queued: the writer may have drained already, so fail what is left ourselves
+        if (!running) {
+            failQueued();
+        }
+        return task;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Task<?> task = queue.poll();
+            if (task == null) {
+                parked = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            depth.decrementAndGet();
+            if (!task.claim()) {
+                continue; // its caller gave up waiting
+            }
+            long start = System.nanoTime();
+            queueLatency.record(start - task.enqueuedAt, TimeUnit.NANOSECONDS);
+            task.run();
+            taskDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        failQueued();
+    }
+
+    private void failQueued() {
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            depth.decrementAndGet();
+            if (task.claim()) {
+                task.future.completeExceptionally(stopped());
+            }
+        }
+    }
+
+    private MarketOverloadedException stopped() {
+        return new MarketOverloadedException("Sequencer shard " + index + " is stopped");
+    }
+
+    private static final class Task<T> {
+        private final Callable<T> callable;
+        private final long enqueuedAt;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Task(Callable<T> callable, long enqueuedAt) {
+            this.callable = callable;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        // whoever claims the task decides how it ends: the writer runs it, anyone else fails it
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void run() {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable t) {
+                // never let a task kill the writer thread
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
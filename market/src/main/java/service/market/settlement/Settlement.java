@@ -0,0 +1,182 @@
+package service.market.settlement;
+
+import service.core.Money;
+import service.core.Trade;
+import service.core.tracing.TraceContext;
+import service.market.trade.TradeResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/** Settlement
+ * Purpose:
+ * - One buy or sell order being settled across the Bank and Company services (a saga)
+ * - The order itself (client, company, price, quantity, trade ID) is fixed when it is accepted;
+ *   state, holdId, sharesMoved and failure record how far settlement got, and are what the outbox
+ *   stores on every change
+ * - outcome completes once the saga is SETTLED (with the trade) or COMPENSATED
+ * - correlationId is the ID of the request that placed the order; every step is logged and sent
+ *   under it. It is not stored in the outbox, so a saga resumed after a restart uses settlement-<id>
+ * - trace is the span of the request that placed the order (null outside a traced request); every
+ *   step is traced as its child. Like correlationId it is not stored, so resumed sagas are untraced
+ * Threading:
+ * - Only SettlementCoordinator changes a settlement, one step at a time; state is volatile so
+ *   GET /settlements/{id} sees a recent state from any thread
+ */
+public final class Settlement {
+    public enum Side { BUY, SELL }
+
+    private final long id;
+    private final Side side;
+    private final int clientId;
+    private final int companyId;
+    private final String companyName;
+    private final Money sharePrice;
+    private final int quantity;
+    private final int tradeId;
+    private final long acceptedAt;
+    private final String correlationId;
+    private final TraceContext trace;
+    private final CompletableFuture<TradeResult> outcome = new CompletableFuture<>();
+
+    private volatile SettlementState state;
+    private long holdId;                  // funds hold still to commit or release, 0 = none
+    private boolean sharesMoved;          // shares moved at the company and not moved back
+    private TradeResult.Status failure;   // why the saga is compensating
+    private int attempts;                 // failed tries of the current step
+    private boolean recovered;            // read back from the outbox after a restart
+
+    Settlement(long id, Side side, int clientId, int companyId, String companyName, Money sharePrice,
+               int quantity, int tradeId, long acceptedAt, String correlationId, TraceContext trace) {
+        this.id = id;
+        this.side = side;
+        this.clientId = clientId;
+        this.companyId = companyId;
+        this.companyName = companyName;
+        this.sharePrice = sharePrice;
+        this.quantity = quantity;
+        this.tradeId = tradeId;
+        this.acceptedAt = acceptedAt;
+        this.correlationId = correlationId != null ? correlationId : "settlement-" + id;
+        this.trace = trace;
+        this.state = SettlementState.ACCEPTED;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public int getCompanyId() {
+        return companyId;
+    }
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public Money getSharePrice() {
+        return sharePrice;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    // price times quantity: held and withdrawn for a buy, deposited for a sell
+    public Money getValue() {
+        return sharePrice.times(quantity);
+    }
+
+    public int getTradeId() {
+        return tradeId;
+    }
+
+    public long getAcceptedAt() {
+        return acceptedAt;
+    }
+
+    public SettlementState getState() {
+        return state;
+    }
+
+    public TradeResult.Status getFailure() {
+        return failure;
+    }
+
+    // completes once the saga is SETTLED or COMPENSATED; never completes exceptionally
+    public CompletableFuture<TradeResult> outcome() {
+        return outcome;
+    }
+
+    public SettlementView view() {
+        SettlementState current = state;
+        return new SettlementView(id, side, current, clientId, companyId, sharePrice, quantity, tradeId,
+                current == SettlementState.SETTLED ? toTrade() : null, failure, attempts, acceptedAt);
+    }
+
+    // the ledger entry for this order, as recorded once settled; dated when the order was accepted
+    // at its price, so a trade recorded again after a restart is the same
+    Trade toTrade() {
+        return new Trade(tradeId, clientId, companyId, companyName, sharePrice,
+                side == Side.BUY ? quantity : -quantity, acceptedAt);
+    }
+
+    String getCorrelationId() {
+        return correlationId;
+    }
+
+    TraceContext getTrace() {
+        return trace;
+    }
+
+    long getHoldId() {
+        return holdId;
+    }
+
+    void setHoldId(long holdId) {
+        this.holdId = holdId;
+    }
+
+    boolean isSharesMoved() {
+        return sharesMoved;
+    }
+
+    void setSharesMoved(boolean sharesMoved) {
+        this.sharesMoved = sharesMoved;
+    }
+
+    void setFailure(TradeResult.Status failure) {
+        this.failure = failure;
+    }
+
+    void setState(SettlementState state) {
+        this.state = state;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    int failedAttempt() {
+        return ++attempts;
+    }
+
+    void resetAttempts() {
+        attempts = 0;
+    }
+
+    boolean isRecovered() {
+        return recovered;
+    }
+
+    void setRecovered(boolean recovered) {
+        this.recovered = recovered;
+    }
+}
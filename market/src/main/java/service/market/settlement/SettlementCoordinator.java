@@ -0,0 +1,578 @@
+package service.market.settlement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
+import service.clients.BankClient;
+import service.clients.CompanyClient;
+import service.core.Company;
+import service.core.Money;
+import service.core.Trade;
+import service.core.TradeResponse;
+import service.core.logging.CorrelationId;
+import service.core.tracing.Span;
+import service.core.tracing.TraceContext;
+import service.core.tracing.Tracer;
+import service.dto.BankOperationResult;
+import service.dto.FundsHold;
+import service.market.MarketService;
+import service.market.exception.SettlementNotFoundException;
+import service.market.journal.MarketJournal;
+import service.market.sequencer.OrderSequencer;
+import service.market.trade.TradeMetrics;
+import service.market.trade.TradeResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/** SettlementCoordinator
+ * Purpose:
+ * - Settles buy and sell orders across the Bank and Company services as sagas that survive a
+ *   crash: an order is written to the outbox (ACCEPTED) before it is acknowledged, and every
+ *   later state change is written before the next step is sent
+ *     buy:  ACCEPTED -> hold funds -> RESERVED -> take shares -> SHARES_ALLOCATED -> commit hold -> SETTLED
+ *     sell: ACCEPTED -> return shares -> SHARES_ALLOCATED -> deposit funds -> SETTLED
+ * - A refused step (unknown account, insufficient funds or shares, expired hold) turns the saga
+ *   COMPENSATING: the hold is released and moved shares are moved back, then it is COMPENSATED
+ * - A buy's commit that is not OK is checked against the hold itself (GET /holds/{id}): a hold
+ *   already COMMITTED (by an earlier try whose reply was lost) settles, an ACTIVE one is committed
+ *   again, and only a released, expired or unknown hold compensates
+ * - Any other failure (timeout, 5xx, service down) is retried with exponential backoff until the
+ *   step gets an answer; every call carries an Idempotency-Key made from the saga ID and step, so
+ *   a retry after a lost reply gets the first reply instead of moving money or shares twice
+ * - The trade is recorded in the ledger once the saga's SETTLED state is on disk, under the trade
+ *   ID reserved when the order was accepted; after a restart a settled trade missing from the
+ *   ledger is recorded. The append goes through the company's OrderSequencer shard, like every
+ *   other mutation of the company; the steps before it never touch the shard
+ * Recovery:
+ * - On startup the outbox is read back and every unfinished saga resumes from its last state
+ * - The outbox is compacted on startup and once it grows past compact-bytes; settled sagas are
+ *   only dropped once the market journal has their trades on disk. The next saga ID survives
+ *   compaction, so a restarted market never repeats an idempotency key
+ * Metrics:
+ * - Each step, outbox write and ledger append is timed as a trade stage, and every finished saga
+ *   counts as a fill or a rejection with its end-to-end duration (TradeMetrics)
+ * - The same stages are spans of the trace of the request that placed the order, with each step's
+ *   call to the bank or company as a child span (Tracer), so GET /traces/{traceId} breaks a slow
+ *   order down by stage
+ * Threading:
+ * - Steps run on a small "market-settlement" pool; replies hop back onto it, since writing the
+ *   outbox blocks on fsync
+ * - Each step is sent and its reply handled with the saga's correlation ID in the MDC, so the
+ *   bank and company calls carry the ID of the request that placed the order, as do the log lines
+ * Config:
+ * - market.settlement.dir: outbox directory
+ * - market.settlement.fsync: fsync every state change (off loses sagas on a machine crash)
+ * - market.settlement.threads: settlement pool size
+ * - market.settlement.retry-initial-ms / retry-max-ms: first retry delay, doubled per failed try up to max
+ * - market.settlement.hold-ttl-ms: how long a buy's funds stay held while its shares are allocated
+ * - market.settlement.compact-bytes: outbox size that triggers a compaction
+ * - market.settlement.keep-finished: finished sagas kept for GET /settlements/{id}
+ */
+@Service
+public class SettlementCoordinator {
+    private static final Logger log = LoggerFactory.getLogger(SettlementCoordinator.class);
+
+    private static final long JOURNAL_WAIT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final MarketService market;
+    private final MarketJournal journal;
+    private final OrderSequencer sequencer;
+    private final BankClient bankClient;
+    private final CompanyClient companyClient;
+    private final TradeMetrics metrics;
+    private final Tracer tracer;
+    private final SettlementOutbox outbox;
+    private final int threads;
+    private final long retryInitialMillis;
+    private final long retryMaxMillis;
+    private final long holdTtlMillis;
+    private final long compactBytes;
+    private final int keepFinished;
+
+    private final Map<Long, Settlement> open = new ConcurrentHashMap<>();
+    private final ReentrantLock finishedLock = new ReentrantLock();
+    private final LinkedHashMap<Long, Settlement> finished = new LinkedHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicInteger lastSettledSequence = new AtomicInteger(-1);
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Counter settled;
+    private final Counter compensated;
+    private final Counter retries;
+    private ScheduledThreadPoolExecutor executor;
+
+    public SettlementCoordinator(MarketService market, MarketJournal journal, OrderSequencer sequencer,
+                                 BankClient bankClient, CompanyClient companyClient, TradeMetrics metrics,
+                                 Tracer tracer,
+                                 @Value("${market.settlement.dir:data/settlement}") String directory,
+                                 @Value("${market.settlement.fsync:true}") boolean fsync,
+                                 @Value("${market.settlement.threads:2}") int threads,
+                                 @Value("${market.settlement.retry-initial-ms:100}") long retryInitialMillis,
+                                 @Value("${market.settlement.retry-max-ms:30000}") long retryMaxMillis,
+                                 @Value("${market.settlement.hold-ttl-ms:120000}") long holdTtlMillis,
+                                 @Value("${market.settlement.compact-bytes:67108864}") long compactBytes,
+                                 @Value("${market.settlement.keep-finished:10000}") int keepFinished,
+                                 MeterRegistry registry) {
+        this.market = market;
+        this.journal = journal;
+        this.sequencer = sequencer;
+        this.bankClient = bankClient;
+        this.companyClient = companyClient;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.outbox = new SettlementOutbox(Paths.get(directory), fsync);
+        this.threads = Math.max(1, threads);
+        this.retryInitialMillis = Math.max(1, retryInitialMillis);
+        this.retryMaxMillis = Math.max(this.retryInitialMillis, retryMaxMillis);
+        this.holdTtlMillis = holdTtlMillis;
+        this.compactBytes = compactBytes;
+        this.keepFinished = keepFinished;
+
+        Gauge.builder("market.settlements.open", open, Map::size)
+                .description("Settlement sagas not yet settled or compensated")
+                .register(registry);
+        this.settled = Counter.builder("market.settlements.finished")
+                .description("Settlement sagas finished, by outcome")
+                .tag("outcome", "settled")
+                .register(registry);
+        this.compensated = Counter.builder("market.settlements.finished")
+                .description("Settlement sagas finished, by outcome")
+                .tag("outcome", "compensated")
+                .register(registry);
+        this.retries = Counter.builder("market.settlement.retries")
+                .description("Settlement steps retried after a failure")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, task -> {
+            Thread thread = new Thread(task, "market-settlement-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+
+        // the journal has already replayed the ledger (it is a dependency), so recorded trades can be checked
+        List<Settlement> recovered = outbox.recover();
+        // never reuse an ID: the bank and company may still hold replies under the saga's keys
+        nextId.accumulateAndGet(outbox.getNextSagaId(), Math::max);
+        List<Settlement> resume = new ArrayList<>();
+        for (Settlement saga : recovered) {
+            Trade.advanceCounterPast(saga.getTradeId());
+            if (saga.getState() == SettlementState.SETTLED) {
+                if (journal.isEnabled()) {
+                    recordTrade(saga, true);
+                }
+            } else if (!saga.getState().isFinal()) {
+                open.put(saga.getId(), saga);
+                resume.add(saga);
+            }
+        }
+        compact();
+        log.info("Settlement outbox recovered {} sagas, resuming {}", recovered.size(), resume.size());
+        for (Settlement saga : resume) {
+            executor.execute(() -> advance(saga));
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        // unfinished sagas stay in the outbox and resume on the next start
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        outbox.close();
+    }
+
+    /**
+     * Accept an order for settlement; returns once the order is on disk, before any step runs.
+     * @param quantity - shares bought or sold, positive
+     */
+    public Settlement accept(Settlement.Side side, int clientId, Company company, Money sharePrice, int quantity) {
+        // the trade ID is taken now, so a saga resumed after a restart records the same trade
+        int tradeId = new Trade(clientId, company.getId(), company.getName(), sharePrice, quantity).getId();
+        Settlement saga = new Settlement(nextId.getAndIncrement(), side, clientId, company.getId(), company.getName(),
+                sharePrice, quantity, tradeId, System.currentTimeMillis(), CorrelationId.current(), TraceContext.current());
+        long start = System.nanoTime();
+        try {
+            outbox.append(saga);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record settlement " + saga.getId(), e);
+        }
+        stage(saga, TradeMetrics.ACCEPT, TradeMetrics.OK, start);
+        open.put(saga.getId(), saga);
+        executor.execute(() -> advance(saga));
+        return saga;
+    }
+
+    /**
+     * @throws SettlementNotFoundException - unknown, or finished long enough ago to be forgotten
+     */
+    public Settlement getSettlement(long id) {
+        Settlement saga = open.get(id);
+        if (saga == null) {
+            finishedLock.lock();
+            try {
+                saga = finished.get(id);
+            } finally {
+                finishedLock.unlock();
+            }
+        }
+        if (saga == null) {
+            throw new SettlementNotFoundException("Settlement " + id + " not found");
+        }
+        return saga;
+    }
+
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    // send the step that follows the saga's current state
+    private void advance(Settlement saga) {
+        switch (saga.getState()) {
+            case ACCEPTED -> {
+                if (saga.getSide() == Settlement.Side.BUY) {
+                    call(saga, TradeMetrics.FUNDS_RESERVE,
+                            () -> bankClient.placeHold(saga.getClientId(), saga.getValue(), holdTtlMillis, key(saga, "reserve")),
+                            hold -> {
+                                if (hold.isOk()) {
+                                    saga.setHoldId(hold.holdId());
+                                    moveTo(saga, SettlementState.RESERVED);
+                                } else {
+                                    fail(saga, TradeResult.Status.BANK_REJECTED);
+                                }
+                            },
+                            () -> fail(saga, TradeResult.Status.BANK_REJECTED));
+                } else {
+                    call(saga, TradeMetrics.SHARE_ALLOCATION,
+                            () -> companyClient.sellShares(saga.getCompanyId(), saga.getClientId(), saga.getQuantity(), key(saga, "shares")),
+                            shares -> {
+                                saga.setSharesMoved(true);
+                                moveTo(saga, SettlementState.SHARES_ALLOCATED);
+                            },
+                            () -> fail(saga, TradeResult.Status.COMPANY_FAILED));
+                }
+            }
+            case RESERVED -> call(saga, TradeMetrics.SHARE_ALLOCATION,
+                    () -> companyClient.buyShares(saga.getCompanyId(), saga.getClientId(), saga.getQuantity(), key(saga, "allocate")),
+                    shares -> {
+                        saga.setSharesMoved(true);
+                        moveTo(saga, SettlementState.SHARES_ALLOCATED);
+                    },
+                    () -> fail(saga, TradeResult.Status.COMPANY_FAILED));
+            case SHARES_ALLOCATED -> {
+                boolean buy = saga.getSide() == Settlement.Side.BUY;
+                Supplier<CompletableFuture<BankOperationResult>> funds = buy
+                        ? () -> bankClient.commitHold(saga.getHoldId(), key(saga, "commit"))
+                        : () -> bankClient.deposit(saga.getClientId(), saga.getValue(), key(saga, "credit"));
+                call(saga, buy ? TradeMetrics.FUNDS_WITHDRAW : TradeMetrics.FUNDS_CREDIT, funds,
+                        result -> {
+                            if (result.isOk()) {
+                                settle(saga);
+                            } else if (buy) {
+                                confirmHold(saga);
+                            } else {
+                                fail(saga, TradeResult.Status.BANK_REJECTED);
+                            }
+                        },
+                        buy ? () -> confirmHold(saga) : () -> fail(saga, TradeResult.Status.BANK_REJECTED));
+            }
+            case COMPENSATING -> compensate(saga);
+            case SETTLED, COMPENSATED -> { }
+        }
+    }
+
+    // the funds are taken and the shares moved: nothing is left to undo
+    private void settle(Settlement saga) {
+        saga.setHoldId(0);
+        saga.setSharesMoved(false);
+        moveTo(saga, SettlementState.SETTLED);
+    }
+
+    // a buy's commit was not OK, but an earlier try may have committed the hold and lost the reply
+    // (its idempotency entry gone by the retry), so ask the bank how the hold ended before undoing
+    private void confirmHold(Settlement saga) {
+        call(saga, TradeMetrics.HOLD_CHECK, () -> bankClient.getHold(saga.getHoldId()),
+                hold -> {
+                    FundsHold.State state = hold == null ? null : hold.state();
+                    if (state == FundsHold.State.COMMITTED) {
+                        settle(saga);
+                    } else if (state == FundsHold.State.ACTIVE) {
+                        retry(saga, new IllegalStateException("hold " + saga.getHoldId() + " still active"),
+                                () -> advance(saga));
+                    } else {
+                        if (state == null) {
+                            log.warn("Settlement {}: bank no longer knows hold {}; treating its funds as not taken",
+                                    saga.getId(), saga.getHoldId());
+                        }
+                        // released or expired: the funds are free, so there is nothing left to release
+                        saga.setHoldId(0);
+                        fail(saga, TradeResult.Status.BANK_REJECTED);
+                    }
+                },
+                () -> retry(saga, new IllegalStateException("hold " + saga.getHoldId() + " could not be read"),
+                        () -> advance(saga)));
+    }
+
+    // undo one step at a time, recording each: release the hold, then move the shares back
+    private void compensate(Settlement saga) {
+        if (saga.getHoldId() != 0) {
+            // released, already expired, or never placed: either way the funds are free
+            call(saga, TradeMetrics.RELEASE_HOLD, () -> bankClient.releaseHold(saga.getHoldId(), key(saga, "release")),
+                    release -> {
+                        saga.setHoldId(0);
+                        moveTo(saga, SettlementState.COMPENSATING);
+                    },
+                    () -> {
+                        saga.setHoldId(0);
+                        moveTo(saga, SettlementState.COMPENSATING);
+                    });
+        } else if (saga.isSharesMoved()) {
+            Supplier<CompletableFuture<TradeResponse>> undo = saga.getSide() == Settlement.Side.BUY
+                    ? () -> companyClient.sellShares(saga.getCompanyId(), saga.getClientId(), saga.getQuantity(), key(saga, "return"))
+                    : () -> companyClient.buyShares(saga.getCompanyId(), saga.getClientId(), saga.getQuantity(), key(saga, "return"));
+            call(saga, TradeMetrics.RETURN_SHARES, undo,
+                    shares -> {
+                        saga.setSharesMoved(false);
+                        moveTo(saga, SettlementState.COMPENSATING);
+                    },
+                    () -> {
+                        log.warn("Settlement {}: company {} refused to take back {} shares for client {}; they stay moved",
+                                saga.getId(), saga.getCompanyId(), saga.getQuantity(), saga.getClientId());
+                        saga.setSharesMoved(false);
+                        moveTo(saga, SettlementState.COMPENSATING);
+                    });
+        } else {
+            moveTo(saga, SettlementState.COMPENSATED);
+        }
+    }
+
+    private void fail(Settlement saga, TradeResult.Status reason) {
+        saga.setFailure(reason);
+        boolean nothingToUndo = saga.getHoldId() == 0 && !saga.isSharesMoved();
+        moveTo(saga, nothingToUndo ? SettlementState.COMPENSATED : SettlementState.COMPENSATING);
+    }
+
+    // record the new state, then carry on from it
+    private void moveTo(Settlement saga, SettlementState state) {
+        saga.setState(state);
+        checkpoint(saga);
+    }
+
+    private void checkpoint(Settlement saga) {
+        long start = System.nanoTime();
+        try {
+            outbox.append(saga);
+        } catch (IOException e) {
+            stage(saga, TradeMetrics.CHECKPOINT, TradeMetrics.FAILED, start);
+            retry(saga, e, () -> checkpoint(saga));
+            return;
+        }
+        stage(saga, TradeMetrics.CHECKPOINT, TradeMetrics.OK, start);
+        if (saga.getState() == SettlementState.SETTLED) {
+            recordSettled(saga, false);
+        } else if (saga.getState().isFinal()) {
+            finish(saga);
+        } else {
+            advance(saga);
+        }
+        if (outbox.size() > compactBytes && compacting.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.error("Settlement outbox compaction failed", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Send one step and handle its reply on the settlement pool.
+     * @param stage - the TradeMetrics stage the step is timed as
+     * @param onReply - the service answered (for the bank, possibly with a refusal status)
+     * @param onRefused - the company answered 4xx: the step will never succeed
+     */
+    private <T> void call(Settlement saga, String stage, Supplier<? extends CompletableFuture<T>> step,
+                          Consumer<T> onReply, Runnable onRefused) {
+        long start = System.nanoTime();
+        Span span = tracer.start(stage, Span.Kind.INTERNAL, saga.getTrace());
+        CompletableFuture<T> reply;
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(CorrelationId.MDC_KEY, saga.getCorrelationId());
+             TraceContext.Scope scope = span.activate()) {
+            reply = step.get();
+        } catch (RuntimeException e) {
+            reply = CompletableFuture.failedFuture(e);
+        }
+        reply.whenCompleteAsync((result, error) -> {
+            try (MDC.MDCCloseable ignored = MDC.putCloseable(CorrelationId.MDC_KEY, saga.getCorrelationId());
+                 TraceContext.Scope scope = TraceContext.activate(saga.getTrace())) {
+                if (error == null) {
+                    // the bank answers a refusal with a status rather than an error
+                    boolean refused = result instanceof BankOperationResult bank && !bank.isOk();
+                    endStage(span, stage, refused ? TradeMetrics.REFUSED : TradeMetrics.OK, start);
+                    saga.resetAttempts();
+                    onReply.accept(result);
+                } else if (isRefusal(error)) {
+                    endStage(span, stage, TradeMetrics.REFUSED, start);
+                    saga.resetAttempts();
+                    onRefused.run();
+                } else {
+                    endStage(span, stage, TradeMetrics.FAILED, start);
+                    retry(saga, error, () -> advance(saga));
+                }
+            } catch (RuntimeException e) {
+                // the saga has not moved on (its new state is written last), so the step runs again
+                retry(saga, e, () -> advance(saga));
+            }
+        }, executor);
+    }
+
+    // a stage timed from start until now, as a metric and as a span of the saga's trace
+    private void stage(Settlement saga, String stage, String outcome, long start) {
+        long end = System.nanoTime();
+        metrics.recordStage(stage, outcome, end - start);
+        tracer.record(stage, Span.Kind.INTERNAL, saga.getTrace(), start, end, outcome);
+    }
+
+    private void endStage(Span span, String stage, String outcome, long start) {
+        metrics.recordStage(stage, outcome, System.nanoTime() - start);
+        span.end(outcome);
+    }
+
+    // backoff doubles per failed try, with jitter so retries of many sagas do not line up
+    private void retry(Settlement saga, Throwable error, Runnable action) {
+        int attempt = saga.failedAttempt();
+        long delay = Math.min(retryMaxMillis, retryInitialMillis << Math.min(attempt - 1, 30));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        retries.increment();
+        if (attempt == 1 || attempt % 10 == 0) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            log.warn("Settlement {} {} step failed (attempt {}), retrying in {} ms: {}",
+                    saga.getId(), saga.getState(), attempt, delay, cause.toString());
+        }
+        executor.schedule(action, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(Settlement saga) {
+        open.remove(saga.getId());
+        finishedLock.lock();
+        try {
+            finished.put(saga.getId(), saga);
+            if (finished.size() > keepFinished) {
+                finished.pollFirstEntry();
+            }
+        } finally {
+            finishedLock.unlock();
+        }
+        boolean success = saga.getState() == SettlementState.SETTLED;
+        if (!saga.isRecovered()) {
+            // a recovered saga's time includes the restart, so it would skew the histogram
+            metrics.finished(success, System.currentTimeMillis() - saga.getAcceptedAt());
+        }
+        if (success) {
+            settled.increment();
+            metrics.filled(saga.getSide());
+            saga.outcome().complete(TradeResult.completed(saga.toTrade()));
+        } else {
+            compensated.increment();
+            metrics.rejected(saga.getFailure() == null ? "unknown" : saga.getFailure().name());
+            saga.outcome().complete(TradeResult.of(saga.getFailure()));
+        }
+    }
+
+    // SETTLED is on disk: a crash before the trade reaches the ledger leaves it to start() to record
+    private void recordSettled(Settlement saga, boolean retried) {
+        try {
+            recordTrade(saga, retried || saga.isRecovered());
+        } catch (RuntimeException e) {
+            // e.g. the journal failed after the trade was added to the ledger
+            retry(saga, e, () -> recordSettled(saga, true));
+            return;
+        }
+        finish(saga);
+    }
+
+    /**
+     * Add the saga's trade to the ledger, once.
+     * @param mayBeRecorded - read back from the outbox (it may have been recorded just before the
+     *                        crash) or retried after a failed append: check the ledger first
+     */
+    private void recordTrade(Settlement saga, boolean mayBeRecorded) {
+        if (mayBeRecorded) {
+            for (Trade trade : market.getClientTrades(saga.getClientId())) {
+                if (trade.getId() == saga.getTradeId()) {
+                    // its sequence is not known here; the ledger's last one covers it
+                    lastSettledSequence.accumulateAndGet(market.getTradeLedger().size() - 1, Math::max);
+                    return;
+                }
+            }
+        }
+        long start = System.nanoTime();
+        Trade trade = saga.toTrade();
+        // only the append runs on the company's sequencer shard; the journal is waited for here
+        int sequence = sequencer.execute(saga.getCompanyId(), () -> market.appendTrade(trade));
+        market.awaitTrade(sequence);
+        stage(saga, TradeMetrics.LEDGER_APPEND, TradeMetrics.OK, start);
+        lastSettledSequence.accumulateAndGet(sequence, Math::max);
+    }
+
+    // keep the unfinished sagas; settled ones may go once the journal holds every trade recorded so far
+    private void compact() throws IOException {
+        outbox.compact(() -> {
+            int recorded = lastSettledSequence.get();
+            long deadline = System.nanoTime() + JOURNAL_WAIT_NANOS;
+            while (journal.getDurableSequence() < recorded) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+            return true;
+        }, nextId::get, () -> new ArrayList<>(open.values()));
+    }
+
+    // one key per saga and step: a retried step repeats its key, a different step never does
+    private static String key(Settlement saga, String step) {
+        return "settlement-" + saga.getId() + "-" + step;
+    }
+
+    private static boolean isRefusal(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RestClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status >= 400 && status < 500 && status != 408 && status != 409 && status != 429;
+        }
+        return false;
+    }
+}
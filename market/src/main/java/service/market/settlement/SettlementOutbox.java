@@ -0,0 +1,301 @@
+package service.market.settlement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import service.core.Money;
+import service.market.trade.TradeResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/** SettlementOutbox
+ * Purpose:
+ * - Append-only file of settlement saga states: every state change appends the whole saga, so
+ *   after a crash the last record of each saga says exactly which step to resume from
+ * - recover() reads the file back, keeping the last record per saga; a torn record at the tail
+ *   (crash mid-write) is cut off
+ * - compact() rewrites the file with only the sagas still needed, through a temporary file that
+ *   replaces the old one atomically; it starts with the next saga ID, so IDs of sagas compacted
+ *   away are never handed out again (their idempotency keys may still be known to the bank)
+ * Record layout:
+ * - [int payload length][byte type][payload][int CRC32C of type + payload], as the market journal
+ * - SAGA: long id, byte side, byte state, byte failure (-1 = none), byte shares moved, int client id,
+ *   int company id, long price (cents), int quantity, int trade id, long hold id, long accepted at,
+ *   int name length, name (UTF-8)
+ * - HIGH_WATER: long next saga ID
+ * Threading:
+ * - append() may be called from any thread; with fsync on it returns once its record is on disk,
+ *   and concurrent appends share one fsync (group commit)
+ */
+final class SettlementOutbox {
+    private static final Logger log = LoggerFactory.getLogger(SettlementOutbox.class);
+
+    private static final String FILE = "settlements.log";
+    private static final byte SAGA = 1;
+    private static final byte HIGH_WATER = 2;
+    private static final int HEADER_BYTES = Integer.BYTES + Byte.BYTES;
+    private static final int TRAILER_BYTES = Integer.BYTES;
+    private static final int FIXED_PAYLOAD_BYTES = Long.BYTES + 4 * Byte.BYTES + 2 * Integer.BYTES + Long.BYTES
+            + 2 * Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+    private static final int MAX_NAME_BYTES = 1 << 12;
+
+    private final Path file;
+    private final Path compactFile;
+    private final boolean fsync;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private FileChannel channel;
+    private volatile long written;
+    private volatile long synced;
+    private long nextSagaId = 1;
+
+    SettlementOutbox(Path directory, boolean fsync) {
+        this.file = directory.resolve(FILE);
+        this.compactFile = directory.resolve(FILE + ".compact");
+        this.fsync = fsync;
+    }
+
+    /**
+     * Read the outbox back and open it for appending.
+     * @return - the last recorded state of every saga in the file, in the order they were first seen
+     */
+    List<Settlement> recover() throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.deleteIfExists(compactFile);
+        Map<Long, Settlement> sagas = new LinkedHashMap<>();
+        long valid = 0;
+        if (Files.exists(file)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            CRC32C crc = new CRC32C();
+            while (buffer.remaining() >= HEADER_BYTES + TRAILER_BYTES) {
+                int start = buffer.position();
+                int payloadBytes = buffer.getInt();
+                if (payloadBytes < Long.BYTES || payloadBytes > FIXED_PAYLOAD_BYTES + MAX_NAME_BYTES
+                        || buffer.remaining() < Byte.BYTES + payloadBytes + TRAILER_BYTES) {
+                    break;
+                }
+                byte type = buffer.get();
+                int checksum = buffer.getInt(buffer.position() + payloadBytes);
+                if (checksum(crc, buffer, start + Integer.BYTES, payloadBytes) != checksum) {
+                    break;
+                }
+                if (type == SAGA && payloadBytes >= FIXED_PAYLOAD_BYTES) {
+                    Settlement saga = decode(buffer.slice(buffer.position(), payloadBytes));
+                    sagas.put(saga.getId(), saga);
+                    nextSagaId = Math.max(nextSagaId, saga.getId() + 1);
+                } else if (type == HIGH_WATER && payloadBytes == Long.BYTES) {
+                    nextSagaId = Math.max(nextSagaId, buffer.getLong(buffer.position()));
+                } else {
+                    break;
+                }
+                buffer.position(buffer.position() + payloadBytes + TRAILER_BYTES);
+                valid = buffer.position();
+            }
+            if (valid < buffer.limit()) {
+                log.warn("Settlement outbox: ignoring {} bytes of incomplete records at the end of {}",
+                        buffer.limit() - valid, file);
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(valid);
+        channel.position(valid);
+        written = valid;
+        synced = valid;
+        return new ArrayList<>(sagas.values());
+    }
+
+    // after recover(): above every saga ID the outbox has held, including compacted ones
+    long getNextSagaId() {
+        return nextSagaId;
+    }
+
+    // write the saga's current state; returns once it is on disk (fsync on)
+    void append(Settlement saga) throws IOException {
+        ByteBuffer record = encode(saga, new CRC32C());
+        long end;
+        writeLock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            end = channel.position();
+            written = end;
+        } finally {
+            writeLock.unlock();
+        }
+        if (fsync) {
+            sync(end);
+        }
+    }
+
+    /**
+     * Rewrite the file with only the given sagas. Appends wait while it runs.
+     * @param ready - checked with appends stopped; false skips the compaction
+     * @param nextSagaId - the next saga ID to hand out, read once ready has passed
+     * @param survivors - the sagas to keep, read once ready has passed
+     * @return - whether the file was rewritten
+     */
+    boolean compact(BooleanSupplier ready, LongSupplier nextSagaId, Supplier<Collection<Settlement>> survivors)
+            throws IOException {
+        syncLock.lock();
+        writeLock.lock();
+        try {
+            if (!ready.getAsBoolean()) {
+                return false;
+            }
+            CRC32C crc = new CRC32C();
+            try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer highWater = encodeHighWater(nextSagaId.getAsLong(), crc);
+                while (highWater.hasRemaining()) {
+                    out.write(highWater);
+                }
+                for (Settlement saga : survivors.get()) {
+                    ByteBuffer record = encode(saga, crc);
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(compactFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // the old file if the move failed, so appends carry on either way
+                channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+            }
+            written = channel.position();
+            synced = written;
+            return true;
+        } finally {
+            writeLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    long size() {
+        return written;
+    }
+
+    void close() throws IOException {
+        syncLock.lock();
+        writeLock.lock();
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+            syncLock.unlock();
+        }
+    }
+
+    // group commit: whoever syncs covers every record written so far, so later callers whose
+    // records were included return without another fsync
+    private void sync(long end) throws IOException {
+        if (synced >= end) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (synced >= end) {
+                return;
+            }
+            long target = written;
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private static ByteBuffer encode(Settlement saga, CRC32C crc) {
+        byte[] name = saga.getCompanyName() == null ? new byte[0] : saga.getCompanyName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            byte[] truncated = new byte[MAX_NAME_BYTES];
+            System.arraycopy(name, 0, truncated, 0, MAX_NAME_BYTES);
+            name = truncated;
+        }
+        int payloadBytes = FIXED_PAYLOAD_BYTES + name.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadBytes + TRAILER_BYTES);
+        buffer.putInt(payloadBytes);
+        buffer.put(SAGA);
+        buffer.putLong(saga.getId());
+        buffer.put((byte) saga.getSide().ordinal());
+        buffer.put((byte) saga.getState().ordinal());
+        buffer.put(saga.getFailure() == null ? -1 : (byte) saga.getFailure().ordinal());
+        buffer.put(saga.isSharesMoved() ? (byte) 1 : 0);
+        buffer.putInt(saga.getClientId());
+        buffer.putInt(saga.getCompanyId());
+        buffer.putLong(saga.getSharePrice().getMinorUnits());
+        buffer.putInt(saga.getQuantity());
+        buffer.putInt(saga.getTradeId());
+        buffer.putLong(saga.getHoldId());
+        buffer.putLong(saga.getAcceptedAt());
+        buffer.putInt(name.length);
+        buffer.put(name);
+        buffer.putInt(checksum(crc, buffer, Integer.BYTES, payloadBytes));
+        return buffer.flip();
+    }
+
+    private static ByteBuffer encodeHighWater(long nextSagaId, CRC32C crc) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + Long.BYTES + TRAILER_BYTES);
+        buffer.putInt(Long.BYTES);
+        buffer.put(HIGH_WATER);
+        buffer.putLong(nextSagaId);
+        buffer.putInt(checksum(crc, buffer, Integer.BYTES, Long.BYTES));
+        return buffer.flip();
+    }
+
+    private static Settlement decode(ByteBuffer payload) {
+        long id = payload.getLong();
+        Settlement.Side side = Settlement.Side.values()[payload.get()];
+        SettlementState state = SettlementState.values()[payload.get()];
+        byte failure = payload.get();
+        boolean sharesMoved = payload.get() != 0;
+        int clientId = payload.getInt();
+        int companyId = payload.getInt();
+        Money price = Money.ofMinor(payload.getLong());
+        int quantity = payload.getInt();
+        int tradeId = payload.getInt();
+        long holdId = payload.getLong();
+        long acceptedAt = payload.getLong();
+        byte[] name = new byte[payload.getInt()];
+        payload.get(name);
+
+        Settlement saga = new Settlement(id, side, clientId, companyId, new String(name, StandardCharsets.UTF_8),
+                price, quantity, tradeId, acceptedAt, null, null);
+        saga.setState(state);
+        saga.setFailure(failure < 0 ? null : TradeResult.Status.values()[failure]);
+        saga.setSharesMoved(sharesMoved);
+        saga.setHoldId(holdId);
+        saga.setRecovered(true);
+        return saga;
+    }
+
+    // checksum covers the type byte and the payload
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int typeOffset, int payloadBytes) {
+        crc.reset();
+        crc.update(buffer.slice(typeOffset, Byte.BYTES + payloadBytes));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,18 @@
+package service.market.settlement;
+
+/** SettlementState
+ * - Where a settlement saga is; every change is written to the outbox before the next step runs
+ * - ACCEPTED: the order is recorded, nothing has been asked of the bank or company yet
+ * - RESERVED: buys only, the cost is held on the client's account
+ * - SHARES_ALLOCATED: the shares have moved at the company (taken for a buy, returned for a sell)
+ * - SETTLED: funds moved and the trade is in the ledger (final)
+ * - COMPENSATING: a step was refused; the steps already done are being undone
+ * - COMPENSATED: everything done has been undone (final)
+ */
+public enum SettlementState {
+    ACCEPTED, RESERVED, SHARES_ALLOCATED, SETTLED, COMPENSATING, COMPENSATED;
+
+    public boolean isFinal() {
+        return this == SETTLED || this == COMPENSATED;
+    }
+}
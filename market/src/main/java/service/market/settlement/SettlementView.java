@@ -0,0 +1,14 @@
+package service.market.settlement;
+
+import service.core.Money;
+import service.core.Trade;
+import service.market.trade.TradeResult;
+
+/** SettlementView
+ * - What GET /settlements/{id} (and a 202 from buy/sell) returns about a settlement saga
+ * - tradeId is the ID the trade gets in the ledger; trade is set once SETTLED, failure once COMPENSATING
+ */
+public record SettlementView(long id, Settlement.Side side, SettlementState state, int clientId, int companyId,
+                             Money sharePrice, int quantity, int tradeId, Trade trade, TradeResult.Status failure,
+                             int attempts, long acceptedAt) {
+}
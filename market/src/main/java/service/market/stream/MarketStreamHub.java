@@ -0,0 +1,300 @@
+package service.market.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import service.core.Company;
+import service.core.Trade;
+import service.core.json.JsonCodecs;
+import service.market.MarketListener;
+import service.market.MarketService;
+import service.market.exception.MarketOverloadedException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** MarketStreamHub
+ * Purpose:
+ * - Pushes price updates and trade prints to SSE subscribers (GET /events), so clients stop polling
+ * - A "trade" event is sent for every trade; a "price" event whenever a company's last traded price
+ *   changes, when a company is added, and for every matching company when a client subscribes
+ * Threading:
+ * - Market callbacks only enqueue into the inbox (tradeAdded runs under the ledger lock)
+ * - One fan-out thread serializes each event once and offers it to the matching subscribers' buffers,
+ *   which never blocks; subscribers are indexed by company ID so an event only visits its audience
+ * - A small pool of sender threads drains buffers onto the connections; no thread is held per
+ *   connection (SSE responses are async), and a slow client only fills its own buffer
+ * - Streams are completed on shutdown before the web server starts draining requests, which
+ *   would otherwise wait out its graceful shutdown timeout on them
+ * Config:
+ * - market.stream.buffer-size: events buffered per subscriber
+ * - market.stream.overflow-policy: DROP_OLDEST, DROP_NEWEST or CONFLATE (see OverflowPolicy)
+ * - market.stream.sender-threads: threads writing to connections
+ * - market.stream.max-subscribers: further subscribers are turned away with 503
+ * - market.stream.heartbeat-ms: idle connections get a comment this often, so dead ones are found
+ * - market.stream.timeout-ms: connection lifetime (0 = until the client disconnects)
+ */
+@Service
+public class MarketStreamHub implements MarketListener, SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(MarketStreamHub.class);
+
+    private final MarketService market;
+    private final ObjectWriter tradeWriter;
+    private final ObjectWriter priceWriter;
+    private final int bufferSize;
+    private final OverflowPolicy policy;
+    private final int maxSubscribers;
+    private final long heartbeatMillis;
+    private final long timeoutMillis;
+    private final ExecutorService senders;
+    private final Counter dropped;
+
+    private final BlockingQueue<Object> inbox = new LinkedBlockingQueue<>(); // Trade or PriceUpdate
+    private final Set<StreamSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Set<StreamSubscriber> allCompanies = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Set<StreamSubscriber>> byCompany = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Map<Integer, Long> lastPrices = new HashMap<>(); // fan-out thread only
+    private final Thread fanOut;
+    private volatile boolean running;
+
+    public MarketStreamHub(MarketService market, JsonCodecs jsonCodecs,
+                           @Value("${market.stream.buffer-size:256}") int bufferSize,
+                           @Value("${market.stream.overflow-policy:CONFLATE}") OverflowPolicy policy,
+                           @Value("${market.stream.sender-threads:4}") int senderThreads,
+                           @Value("${market.stream.max-subscribers:10000}") int maxSubscribers,
+                           @Value("${market.stream.heartbeat-ms:15000}") long heartbeatMillis,
+                           @Value("${market.stream.timeout-ms:0}") long timeoutMillis,
+                           MeterRegistry registry) {
+        this.market = market;
+        this.tradeWriter = jsonCodecs.writer(Trade.class);
+        this.priceWriter = jsonCodecs.writer(PriceUpdate.class);
+        this.bufferSize = bufferSize;
+        this.policy = policy;
+        this.maxSubscribers = maxSubscribers;
+        this.heartbeatMillis = Math.max(1, heartbeatMillis);
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger senderNumber = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "market-stream-sender-" + senderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.fanOut = new Thread(this::run, "market-stream-fanout");
+        this.fanOut.setDaemon(true);
+        this.dropped = Counter.builder("market.stream.dropped")
+                .description("Stream events lost because a subscriber's buffer was full")
+                .register(registry);
+        Gauge.builder("market.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open market event streams")
+                .register(registry);
+        Gauge.builder("market.stream.inbox.depth", inbox, BlockingQueue::size)
+                .description("Market events waiting for the fan-out thread")
+                .register(registry);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        fanOut.start();
+        market.addListener(this);
+    }
+
+    // the default phase stops before the web server's graceful shutdown
+    @Override
+    public void stop() {
+        market.removeListener(this);
+        running = false;
+        fanOut.interrupt();
+        try {
+            fanOut.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (StreamSubscriber subscriber : subscribers) {
+            remove(subscriber);
+            subscriber.getEmitter().complete();
+        }
+        senders.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Open a stream for a client.
+     * @param companyIds - companies to stream, or null for every company
+     * @throws MarketOverloadedException - the subscriber limit is reached
+     */
+    public SseEmitter subscribe(Set<Integer> companyIds, boolean prices, boolean trades) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new MarketOverloadedException("Too many market stream subscribers, try again later");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        StreamSubscriber subscriber = new StreamSubscriber(emitter, companyIds, prices, trades,
+                bufferSize, policy, dropped);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+
+        subscribers.add(subscriber);
+        if (companyIds == null) {
+            allCompanies.add(subscriber);
+        } else {
+            for (Integer companyId : companyIds) {
+                byCompany.computeIfAbsent(companyId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+            }
+        }
+
+        // start with the current prices, so the client never needs to poll /company-dtos
+        if (prices) {
+            long now = System.currentTimeMillis();
+            for (Company company : market.getCompanies()) {
+                if (companyIds == null || companyIds.contains(company.getId())) {
+                    deliver(subscriber, priceEvent(new PriceUpdate(company.getId(), company.getSharePrice(), now)));
+                }
+            }
+        }
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @Override
+    public void companyAdded(Company company) {
+        if (subscriberCount.get() > 0) {
+            inbox.offer(new PriceUpdate(company.getId(), company.getSharePrice(), System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void tradeAdded(int sequence, Trade trade) {
+        if (subscriberCount.get() > 0) {
+            inbox.offer(trade);
+        }
+    }
+
+    private void run() {
+        long nextHeartbeat = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        while (running) {
+            try {
+                long wait = nextHeartbeat - System.nanoTime();
+                Object item = wait > 0 ? inbox.poll(wait, TimeUnit.NANOSECONDS) : null;
+                if (item instanceof Trade trade) {
+                    dispatch(trade);
+                } else if (item instanceof PriceUpdate update) {
+                    lastPrices.put(update.companyId(), update.price().getMinorUnits());
+                    publish(priceEvent(update));
+                }
+                if (System.nanoTime() - nextHeartbeat >= 0) {
+                    heartbeat();
+                    nextHeartbeat = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Market stream fan-out failed", e);
+            }
+        }
+    }
+
+    private void dispatch(Trade trade) {
+        publish(new StreamEvent(StreamEvent.TRADE, trade.getCompanyId(), write(tradeWriter, trade)));
+        long price = trade.getSharePrice().getMinorUnits();
+        Long last = lastPrices.put(trade.getCompanyId(), price);
+        if (last == null || last != price) {
+            publish(priceEvent(new PriceUpdate(trade.getCompanyId(), trade.getSharePrice(), trade.getTimestamp())));
+        }
+    }
+
+    private void publish(StreamEvent event) {
+        for (StreamSubscriber subscriber : allCompanies) {
+            deliver(subscriber, event);
+        }
+        Set<StreamSubscriber> audience = byCompany.get(event.companyId());
+        if (audience != null) {
+            for (StreamSubscriber subscriber : audience) {
+                deliver(subscriber, event);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        StreamEvent heartbeat = new StreamEvent(StreamEvent.HEARTBEAT, -1, null);
+        for (StreamSubscriber subscriber : subscribers) {
+            if (subscriber.offerHeartbeat(heartbeat)) {
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    private void deliver(StreamSubscriber subscriber, StreamEvent event) {
+        if (subscriber.wants(event) && subscriber.offer(event)) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void scheduleDrain(StreamSubscriber subscriber) {
+        senders.execute(() -> {
+            if (!subscriber.drain()) {
+                remove(subscriber);
+                try {
+                    subscriber.getEmitter().complete();
+                } catch (RuntimeException e) {
+                    // the connection is already gone
+                }
+            }
+        });
+    }
+
+    private void remove(StreamSubscriber subscriber) {
+        if (!subscriber.close()) {
+            return;
+        }
+        subscribers.remove(subscriber);
+        if (subscriber.getCompanyIds() == null) {
+            allCompanies.remove(subscriber);
+        } else {
+            for (Integer companyId : subscriber.getCompanyIds()) {
+                Set<StreamSubscriber> audience = byCompany.get(companyId);
+                if (audience != null) {
+                    audience.remove(subscriber);
+                }
+            }
+        }
+        subscriberCount.decrementAndGet();
+    }
+
+    private StreamEvent priceEvent(PriceUpdate update) {
+        return new StreamEvent(StreamEvent.PRICE, update.companyId(), write(priceWriter, update));
+    }
+
+    private static String write(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize stream event", e);
+        }
+    }
+}
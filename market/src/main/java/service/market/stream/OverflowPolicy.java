@@ -0,0 +1,14 @@
+package service.market.stream;
+
+/** OverflowPolicy
+ * - What a stream subscriber's buffer does with a new event when it is full
+ * - DROP_OLDEST: evict the oldest buffered event
+ * - DROP_NEWEST: discard the new event
+ * - CONFLATE: a price update replaces any buffered price update for the same company
+ *   (so a slow client always ends up with the latest prices); when still full, evict the oldest
+ */
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    DROP_NEWEST,
+    CONFLATE
+}
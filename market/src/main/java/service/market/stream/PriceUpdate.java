@@ -0,0 +1,8 @@
+package service.market.stream;
+
+import service.core.Money;
+
+/** PriceUpdate
+ * - Payload of a "price" stream event: a company's share price changed (or, on subscribe, its current price)
+ */
+public record PriceUpdate(int companyId, Money price, long timestamp) {}
@@ -0,0 +1,16 @@
+package service.market.stream;
+
+/** StreamEvent
+ * - One event as it is sent to every subscriber; the payload is serialized once, by the fan-out thread
+ * - name is the SSE event name ("price", "trade" or "heartbeat")
+ * - companyId is -1 for events that are not about one company
+ */
+record StreamEvent(String name, int companyId, String json) {
+    static final String PRICE = "price";
+    static final String TRADE = "trade";
+    static final String HEARTBEAT = "heartbeat";
+
+    boolean isPrice() {
+        return PRICE.equals(name);
+    }
+}
@@ -0,0 +1,179 @@
+package service.market.stream;
+
+import io.micrometer.core.instrument.Counter;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** StreamSubscriber
+ * Purpose:
+ * - One SSE connection: its filter, a bounded buffer of events not yet sent, and the emitter
+ * - The fan-out thread only ever offers into the buffer, so a slow client can never hold it up;
+ *   when the buffer is full the OverflowPolicy decides what is lost
+ * - A sender thread drains the buffer, writing up to MAX_BATCH events per flush
+ * Threading:
+ * - The buffer is guarded by this object's lock; scheduled makes sure at most one sender drains it
+ */
+final class StreamSubscriber {
+    private static final int MAX_BATCH = 64;
+
+    private final SseEmitter emitter;
+    private final Set<Integer> companyIds; // null = every company
+    private final boolean prices;
+    private final boolean trades;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Counter dropped;
+
+    private final ArrayDeque<Slot> buffer = new ArrayDeque<>();
+    private final Map<Integer, Slot> pendingPrices = new HashMap<>(); // CONFLATE only: buffered price per company
+    private boolean scheduled;
+    private boolean closed;
+
+    StreamSubscriber(SseEmitter emitter, Set<Integer> companyIds, boolean prices, boolean trades,
+                     int capacity, OverflowPolicy policy, Counter dropped) {
+        this.emitter = emitter;
+        this.companyIds = companyIds;
+        this.prices = prices;
+        this.trades = trades;
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.dropped = dropped;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    // null when the subscriber wants every company
+    Set<Integer> getCompanyIds() {
+        return companyIds;
+    }
+
+    boolean wants(StreamEvent event) {
+        return event.isPrice() ? prices : trades;
+    }
+
+    /**
+     * Buffer an event for sending.
+     * @return - true if the caller must schedule drain() (the buffer was idle)
+     */
+    synchronized boolean offer(StreamEvent event) {
+        if (closed) {
+            return false;
+        }
+        boolean conflate = policy == OverflowPolicy.CONFLATE && event.isPrice();
+        if (conflate) {
+            Slot pending = pendingPrices.get(event.companyId());
+            if (pending != null) {
+                // the client has not seen the older price yet, so it never needs it
+                pending.event = event;
+                return false;
+            }
+        }
+        if (buffer.size() >= capacity) {
+            dropped.increment();
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                return false;
+            }
+            forget(buffer.pollFirst());
+        }
+        Slot slot = new Slot(event);
+        buffer.addLast(slot);
+        if (conflate) {
+            pendingPrices.put(event.companyId(), slot);
+        }
+        return schedule();
+    }
+
+    // a heartbeat is only worth sending when nothing else is waiting to be sent
+    synchronized boolean offerHeartbeat(StreamEvent heartbeat) {
+        if (closed || !buffer.isEmpty()) {
+            return false;
+        }
+        buffer.addLast(new Slot(heartbeat));
+        return schedule();
+    }
+
+    /**
+     * Send everything buffered, in batches.
+     * @return - false if the connection failed and the subscriber must be removed
+     */
+    boolean drain() {
+        while (true) {
+            Set<DataWithMediaType> batch = new LinkedHashSet<>();
+            synchronized (this) {
+                if (closed) {
+                    scheduled = false;
+                    return true;
+                }
+                for (int i = 0; i < MAX_BATCH && !buffer.isEmpty(); i++) {
+                    Slot slot = buffer.pollFirst();
+                    forget(slot);
+                    batch.addAll(toSse(slot.event).build());
+                }
+                if (batch.isEmpty()) {
+                    scheduled = false;
+                    return true;
+                }
+            }
+            try {
+                emitter.send(batch);
+            } catch (IOException | IllegalStateException e) {
+                // client went away (or the emitter already completed)
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stop buffering and sending.
+     * @return - true the first time only
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        buffer.clear();
+        pendingPrices.clear();
+        return true;
+    }
+
+    private boolean schedule() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    private void forget(Slot slot) {
+        if (slot != null && slot.event.isPrice()) {
+            pendingPrices.remove(slot.event.companyId(), slot);
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toSse(StreamEvent event) {
+        if (StreamEvent.HEARTBEAT.equals(event.name())) {
+            return SseEmitter.event().comment(StreamEvent.HEARTBEAT);
+        }
+        return SseEmitter.event().name(event.name()).data(event.json(), MediaType.APPLICATION_JSON);
+    }
+
+    // buffer entry; CONFLATE swaps the event of a buffered price in place, keeping its position
+    private static final class Slot {
+        private StreamEvent event;
+
+        private Slot(StreamEvent event) {
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package service.market.trade;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import service.market.settlement.Settlement;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/** TradeMetrics
+ * Purpose:
+ * - The meters of the buy/sell path, shared by TradeOrchestrator and SettlementCoordinator
+ * - market.trade.stage{stage, outcome}: time spent in each stage of an order, with a percentile
+ *   histogram; the remote stages are timed from sending a step until its reply arrives (one try),
+ *   outcome ok, refused (the service said no) or failed (retried)
+ * - market.settlement.duration{outcome}: from acceptance until settled or compensated
+ * - market.trades.fills{side}: orders settled; market.trades.rejected{reason}: orders turned away
+ *   at admission or compensated
+ * Threading:
+ * - Thread-safe; timers and counters are created once per tag combination
+ */
+@Component
+public class TradeMetrics {
+    // in-process stages
+    public static final String PRICE_LOOKUP = "price_lookup";
+    public static final String ACCEPT = "accept";
+    public static final String CHECKPOINT = "checkpoint";
+    public static final String LEDGER_APPEND = "ledger_append";
+    // remote stages
+    public static final String FUNDS_RESERVE = "funds_reserve";
+    public static final String SHARE_ALLOCATION = "share_allocation";
+    public static final String FUNDS_WITHDRAW = "funds_withdraw";
+    public static final String FUNDS_CREDIT = "funds_credit";
+    public static final String HOLD_CHECK = "hold_check";
+    public static final String RELEASE_HOLD = "release_hold";
+    public static final String RETURN_SHARES = "return_shares";
+
+    public static final String OK = "ok";
+    public static final String REFUSED = "refused";
+    public static final String FAILED = "failed";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> stages = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+    private final Counter buyFills;
+    private final Counter sellFills;
+    private final Timer settledDuration;
+    private final Timer compensatedDuration;
+
+    public TradeMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.buyFills = fills(registry, "buy");
+        this.sellFills = fills(registry, "sell");
+        this.settledDuration = duration(registry, "settled");
+        this.compensatedDuration = duration(registry, "compensated");
+    }
+
+    public void recordStage(String stage, String outcome, long nanos) {
+        stages.computeIfAbsent(stage + '/' + outcome, key -> Timer.builder("market.trade.stage")
+                .description("Time spent in each stage of a buy/sell order")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1_000))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void filled(Settlement.Side side) {
+        (side == Settlement.Side.BUY ? buyFills : sellFills).increment();
+    }
+
+    public void rejected(String reason) {
+        String tag = reason.toLowerCase(Locale.ROOT);
+        rejected.computeIfAbsent(tag, key -> Counter.builder("market.trades.rejected")
+                .description("Buy/sell orders turned away at admission or compensated, by reason")
+                .tag("reason", tag)
+                .register(registry))
+                .increment();
+    }
+
+    // settled = true for SETTLED, false for COMPENSATED
+    public void finished(boolean settled, long millis) {
+        (settled ? settledDuration : compensatedDuration).record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private static Counter fills(MeterRegistry registry, String side) {
+        return Counter.builder("market.trades.fills")
+                .description("Buy/sell orders settled, by side")
+                .tag("side", side)
+                .register(registry);
+    }
+
+    private static Timer duration(MeterRegistry registry, String outcome) {
+        return Timer.builder("market.settlement.duration")
+                .description("Time from accepting an order until its settlement finished")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(registry);
+    }
+}
@@ -0,0 +1,104 @@
+package service.market.trade;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import service.core.Company;
+import service.core.Money;
+import service.market.MarketService;
+import service.market.exception.CompanyNotFoundException;
+import service.market.exception.InvalidOrderException;
+import service.market.exception.MarketOverloadedException;
+import service.market.settlement.Settlement;
+import service.market.settlement.SettlementCoordinator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** TradeOrchestrator
+ * Purpose:
+ * - Accepts a buy or sell at the company's current price and hands it to the
+ *   SettlementCoordinator, which moves the funds and shares across the Bank and Company services
+ *   and records the trade (see SettlementCoordinator for the steps)
+ * - Returns as soon as the order is durably accepted; the caller may wait on the settlement's
+ *   outcome or answer straight away
+ * - Times the price lookup and counts orders it turns away (TradeMetrics)
+ * Config:
+ * - market.trades.max-in-flight: orders accepted but not yet settled or compensated; more are
+ *   rejected with 503
+ */
+@Service
+public class TradeOrchestrator {
+    private final MarketService market;
+    private final SettlementCoordinator settlements;
+    private final TradeMetrics metrics;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public TradeOrchestrator(MarketService market, SettlementCoordinator settlements, TradeMetrics metrics,
+                             @Value("${market.trades.max-in-flight:10000}") int maxInFlight,
+                             MeterRegistry registry) {
+        this.market = market;
+        this.settlements = settlements;
+        this.metrics = metrics;
+        this.maxInFlight = maxInFlight;
+        Gauge.builder("market.trades.in.flight", inFlight, AtomicInteger::get)
+                .description("Buy/sell orders accepted and not yet settled")
+                .register(registry);
+    }
+
+    /**
+     * Buy shares at the company's current price.
+     * @throws InvalidOrderException - quantity is not positive
+     * @throws service.market.exception.CompanyNotFoundException - unknown company
+     * @throws MarketOverloadedException - too many orders in flight
+     */
+    public Settlement buy(int companyId, int clientId, int quantity) {
+        return accept(Settlement.Side.BUY, companyId, clientId, quantity);
+    }
+
+    /**
+     * Sell shares at the company's current price.
+     * @throws InvalidOrderException - quantity is not positive
+     * @throws service.market.exception.CompanyNotFoundException - unknown company
+     * @throws MarketOverloadedException - too many orders in flight
+     */
+    public Settlement sell(int companyId, int clientId, int quantity) {
+        return accept(Settlement.Side.SELL, companyId, clientId, quantity);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private Settlement accept(Settlement.Side side, int companyId, int clientId, int quantity) {
+        if (quantity <= 0) {
+            metrics.rejected("invalid_quantity");
+            throw new InvalidOrderException("Order quantity must be positive");
+        }
+        long start = System.nanoTime();
+        Company company;
+        try {
+            company = market.getCompany(companyId);
+        } catch (CompanyNotFoundException e) {
+            metrics.rejected("unknown_company");
+            throw e;
+        }
+        Money price = company.getSharePrice();
+        metrics.recordStage(TradeMetrics.PRICE_LOOKUP, TradeMetrics.OK, System.nanoTime() - start);
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            metrics.rejected("overloaded");
+            throw new MarketOverloadedException("Too many trades in flight, try again later");
+        }
+        Settlement settlement;
+        try {
+            settlement = settlements.accept(side, clientId, company, price, quantity);
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+        settlement.outcome().whenComplete((result, error) -> inFlight.decrementAndGet());
+        return settlement;
+    }
+}
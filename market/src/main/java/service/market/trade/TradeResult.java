@@ -0,0 +1,21 @@
+package service.market.trade;
+
+import service.core.Trade;
+
+/** TradeResult
+ * - Outcome of a buy or sell settlement; trade is only set when COMPLETED
+ * - BANK_REJECTED: the bank refused the funds step (unknown account, insufficient funds, or the
+ *   funds hold expired before the shares were allocated)
+ * - COMPANY_FAILED: the company service refused the shares step
+ */
+public record TradeResult(Status status, Trade trade) {
+    public enum Status { COMPLETED, BANK_REJECTED, COMPANY_FAILED }
+
+    public static TradeResult completed(Trade trade) {
+        return new TradeResult(Status.COMPLETED, trade);
+    }
+
+    public static TradeResult of(Status status) {
+        return new TradeResult(status, null);
+    }
+}
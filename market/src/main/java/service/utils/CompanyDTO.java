@@ -1,5 +1,7 @@
 package service.utils;
 
+import service.core.Money;
+
 import java.io.Serializable;
 
 /** Data Transfer Object
@@ -12,4 +14,4 @@ import java.io.Serializable;
  */
 
 // implementing serializable is not necessary for record classes (built-in) but doing so for clarity
-public record CompanyDTO(Integer id, String name, Double sharePrice, Integer numShares) implements Serializable {}
\ No newline at end of file
+public record CompanyDTO(Integer id, String name, Money sharePrice, Integer numShares) implements Serializable {}
\ No newline at end of file
@@ -1,5 +1,7 @@
 package service.utils;
 
+import service.core.Money;
+
 import java.io.Serializable;
 
 /** Data Transfer Object
@@ -11,7 +13,7 @@ import java.io.Serializable;
 
 // implementing serializable is not necessary for record classes (built-in) but doing so for clarity
 public record TradeDTO(Integer id, Integer clientId, Integer companyId,
-                       String companyName, Double sharePrice,
+                       String companyName, Money sharePrice,
                        Integer quantityPurchased) implements Serializable {
 //    public static withTime(LocalDateTime timestamp) {
 //
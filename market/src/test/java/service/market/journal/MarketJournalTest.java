@@ -0,0 +1,158 @@
+package service.market.journal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.core.Trade;
+import service.market.MarketService;
+import service.market.exception.JournalFailedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** MarketJournalTest
+ * - Companies and trades written through the journal come back after a restart
+ * - A torn record at the end of a segment (crash mid-write) is cut off; the records before it are
+ *   recovered, and records written after the restart survive the next one
+ * - A failed write stops the journal: the durable sequence stays put and waiting trades fail
+ * - With wait-for-sync, a company change is made in memory without waiting, and waiting for it
+ *   afterwards fails once the journal has
+ */
+class MarketJournalTest {
+    private static final int COMPANY_ID = 2000;
+
+    @TempDir
+    Path root;
+
+    private final List<MarketJournal> started = new ArrayList<>();
+
+    @AfterEach
+    void stopAll() throws InterruptedException {
+        for (MarketJournal journal : started) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void recoversCompaniesAndTradesAfterRestart() throws Exception {
+        Path directory = root.resolve("journal");
+        MarketService market = open(directory, false, 0);
+        market.addCompany(new PublicCompany(COMPANY_ID, "Acme", Money.parse("10.00"), 1.0, 1_000));
+        for (int i = 0; i < 100; i++) {
+            market.addTrade(new Trade(1000 + i % 5, COMPANY_ID, "Acme", Money.parse("10.0" + i % 10), 1 + i));
+        }
+        restart();
+
+        MarketService recovered = open(directory, false, 0);
+        assertEquals("Acme", recovered.getCompany(COMPANY_ID).getName());
+        assertEquals(100, recovered.getTradeLedger().size());
+        assertEquals(describe(market.getTradeLedger().getAll()), describe(recovered.getTradeLedger().getAll()));
+        // the share price comes back from the company's last trade
+        assertEquals(Money.parse("10.09"), recovered.getCompany(COMPANY_ID).getSharePrice());
+    }
+
+    @Test
+    void tornTailIsCutAndLaterRecordsSurvive() throws Exception {
+        Path directory = root.resolve("journal");
+        MarketService market = open(directory, false, 0);
+        market.addCompany(new PublicCompany(COMPANY_ID, "Acme", Money.parse("10.00"), 1.0, 1_000));
+        for (int i = 0; i < 10; i++) {
+            market.addTrade(new Trade(1000, COMPANY_ID, "Acme", Money.parse("10.00"), 1));
+        }
+        restart();
+
+        // a record whose header promises more bytes than made it to disk
+        Path segment = lastSegment(directory);
+        long whole = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(7).putInt(0, 40));
+        }
+
+        MarketService recovered = open(directory, false, 0);
+        assertEquals(10, recovered.getTradeLedger().size());
+        assertEquals(whole, Files.size(segment));
+        recovered.addTrade(new Trade(1001, COMPANY_ID, "Acme", Money.parse("11.00"), 2));
+        restart();
+
+        MarketService again = open(directory, false, 0);
+        assertEquals(11, again.getTradeLedger().size());
+        assertEquals(1001, again.getTradeLedger().get(10).getClientId());
+    }
+
+    @Test
+    void writeFailureStopsTheJournal() throws Exception {
+        Path directory = root.resolve("journal");
+        // a snapshot every 2 trades makes the writer open a new segment after the second
+        MarketService market = open(directory, true, 2);
+        MarketJournal journal = started.get(0);
+        market.addCompany(new PublicCompany(COMPANY_ID, "Acme", Money.parse("10.00"), 1.0, 1_000));
+        market.addTrade(new Trade(1000, COMPANY_ID, "Acme", Money.parse("10.00"), 1));
+        assertEquals(0, journal.getDurableSequence());
+
+        // the directory becomes a file, so that new segment cannot be created
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+        Files.createFile(directory);
+
+        market.addTrade(new Trade(1000, COMPANY_ID, "Acme", Money.parse("10.00"), 1));
+        assertThrows(JournalFailedException.class,
+                () -> market.addTrade(new Trade(1000, COMPANY_ID, "Acme", Money.parse("10.00"), 1)));
+        assertEquals(1, journal.getDurableSequence());
+        assertThrows(JournalFailedException.class,
+                () -> market.addCompany(new PublicCompany(COMPANY_ID + 1, "Beta", Money.parse("1.00"), 1.0, 10)));
+
+        // as on a sequencer shard: the in-memory half returns, the wait after it reports the failure
+        market.dropCompany(COMPANY_ID);
+        assertThrows(JournalFailedException.class, () -> market.awaitCompany(COMPANY_ID));
+    }
+
+    private MarketService open(Path directory, boolean waitForSync, long snapshotEveryTrades) throws IOException {
+        MarketService market = new MarketService();
+        MarketJournal journal = new MarketJournal(market, true, directory.toString(), 0, waitForSync,
+                snapshotEveryTrades, new SimpleMeterRegistry());
+        journal.start();
+        started.add(journal);
+        return market;
+    }
+
+    // stop every open journal, as a shutdown would
+    private void restart() throws InterruptedException {
+        stopAll();
+        started.clear();
+    }
+
+    private static List<String> describe(List<Trade> trades) {
+        return trades.stream()
+                .map(trade -> trade.getId() + " " + trade.getClientId() + " " + trade.getCompanyId() + " "
+                        + trade.getCompanyName() + " " + trade.getSharePrice() + " " + trade.getQuantityPurchased()
+                        + " " + trade.getTimestamp())
+                .toList();
+    }
+
+    private static Path lastSegment(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("journal-"))
+                    .filter(file -> file.toFile().length() > 0)
+                    .sorted()
+                    .reduce((first, second) -> second)
+                    .orElseThrow();
+        }
+    }
+}
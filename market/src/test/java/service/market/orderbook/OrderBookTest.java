@@ -0,0 +1,130 @@
+package service.market.orderbook;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.market.MarketService;
+import service.market.sequencer.OrderSequencer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** OrderBookTest
+ * - An aggressive order fills against the best price first and, within a price, the oldest order
+ *   first, always at the resting order's price; a LIMIT remainder rests, a MARKET remainder does not
+ * - A cancelled order leaves the book and is never filled
+ * - Through the MatchingEngine, each fill is recorded as a buy and a sell trade and the last fill
+ *   price becomes the company's share price
+ */
+class OrderBookTest {
+    private static final int COMPANY_ID = 2000;
+
+    private final OrderBook book = new OrderBook(COMPANY_ID);
+    private long nextOrderId = 1;
+
+    @Test
+    void fillsByPriceThenTime() {
+        Order early = limit(1, OrderSide.SELL, 101, 5);
+        Order late = limit(2, OrderSide.SELL, 101, 5);
+        Order cheap = limit(3, OrderSide.SELL, 100, 5);
+        Order dear = limit(4, OrderSide.SELL, 102, 5);
+        submit(early);
+        submit(late);
+        submit(cheap);
+        submit(dear);
+
+        Order buy = limit(9, OrderSide.BUY, 101, 12);
+        List<Fill> fills = submit(buy);
+
+        assertEquals(3, fills.size());
+        assertFill(fills.get(0), cheap, 100, 5);
+        assertFill(fills.get(1), early, 101, 5);
+        assertFill(fills.get(2), late, 101, 2);
+        assertEquals(3, late.getRemaining());
+        assertEquals(101, book.getBestAsk());
+        // nothing left of the buy, so nothing rests on the bid side
+        assertEquals(0, buy.getRemaining());
+        assertEquals(-1, book.getBestBid());
+        assertEquals(2, book.getRestingOrderCount());
+    }
+
+    @Test
+    void limitRemainderRestsMarketRemainderIsCancelled() {
+        submit(limit(1, OrderSide.SELL, 100, 4));
+
+        Order limitBuy = limit(9, OrderSide.BUY, 100, 10);
+        submit(limitBuy);
+        assertEquals(6, limitBuy.getRemaining());
+        assertEquals(100, book.getBestBid());
+
+        Order marketSell = new Order(nextOrderId++, 8, COMPANY_ID, OrderSide.SELL, OrderType.MARKET, 0, 20);
+        List<Fill> fills = submit(marketSell);
+        assertEquals(1, fills.size());
+        assertFill(fills.get(0), limitBuy, 100, 6);
+        // the 14 shares nobody bid for are cancelled, not rested
+        assertEquals(6, marketSell.getFilled());
+        assertEquals(0, marketSell.getRemaining());
+        assertEquals(-1, book.getBestAsk());
+        assertEquals(0, book.getRestingOrderCount());
+    }
+
+    @Test
+    void cancelledOrderIsNeverFilled() {
+        Order first = limit(1, OrderSide.SELL, 100, 5);
+        Order second = limit(2, OrderSide.SELL, 100, 5);
+        submit(first);
+        submit(second);
+
+        assertEquals(first, book.cancel(first.getId()));
+        assertNull(book.cancel(first.getId()));
+
+        List<Fill> fills = submit(limit(9, OrderSide.BUY, 100, 5));
+        assertEquals(1, fills.size());
+        assertFill(fills.get(0), second, 100, 5);
+        assertEquals(0, book.getRestingOrderCount());
+    }
+
+    @Test
+    void engineRecordsFillsAndMovesThePrice() {
+        MarketService market = new MarketService();
+        OrderSequencer sequencer = new OrderSequencer(1, 1024, 5_000, new SimpleMeterRegistry());
+        try {
+            PublicCompany company = new PublicCompany(COMPANY_ID, "Acme", Money.parse("10.00"), 1.0, 1_000);
+            market.addCompany(company);
+            MatchingEngine engine = new MatchingEngine(market, sequencer);
+
+            OrderResult rested = engine.submit(company, 1, OrderSide.SELL, OrderType.LIMIT, Money.parse("10.50"), 3);
+            assertEquals(OrderStatus.RESTING, rested.status());
+            OrderResult filled = engine.submit(company, 2, OrderSide.BUY, OrderType.MARKET, null, 3);
+
+            assertEquals(OrderStatus.FILLED, filled.status());
+            assertEquals(2, market.getTradeLedger().size());
+            assertEquals(3, market.getClientTrades(2).get(0).getQuantityPurchased());
+            assertEquals(-3, market.getClientTrades(1).get(0).getQuantityPurchased());
+            assertEquals(Money.parse("10.50"), market.getCompany(COMPANY_ID).getSharePrice());
+        } finally {
+            sequencer.shutdown();
+        }
+    }
+
+    private Order limit(int clientId, OrderSide side, long price, int quantity) {
+        return new Order(nextOrderId++, clientId, COMPANY_ID, side, OrderType.LIMIT, price, quantity);
+    }
+
+    private List<Fill> submit(Order order) {
+        List<Fill> fills = new ArrayList<>();
+        book.submit(order, fills);
+        return fills;
+    }
+
+    private static void assertFill(Fill fill, Order resting, long price, int quantity) {
+        long restingId = resting.getSide() == OrderSide.BUY ? fill.buyOrderId() : fill.sellOrderId();
+        assertEquals(resting.getId(), restingId);
+        assertEquals(price, fill.price());
+        assertEquals(quantity, fill.quantity());
+    }
+}
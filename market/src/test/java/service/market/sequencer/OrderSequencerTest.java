@@ -0,0 +1,72 @@
+package service.market.sequencer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import service.market.exception.MarketOverloadedException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** OrderSequencerTest
+ * - execute gives up on a task its shard does not start in time, and that task never runs late
+ * - Stopping the sequencer fails the tasks still queued, and any submitted afterwards
+ */
+class OrderSequencerTest {
+    private static final int COMPANY_ID = 2000;
+
+    private final OrderSequencer sequencer = new OrderSequencer(1, 1024, 100, new SimpleMeterRegistry());
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        sequencer.shutdown();
+    }
+
+    @Test
+    void executeTimesOutAndDropsTheTask() throws Exception {
+        CompletableFuture<Object> blocker = blockShard();
+        AtomicBoolean ran = new AtomicBoolean();
+
+        assertThrows(MarketOverloadedException.class, () -> sequencer.execute(COMPANY_ID, () -> ran.getAndSet(true)));
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        // everything queued before this has been taken off the shard by now
+        assertEquals(1, sequencer.execute(COMPANY_ID, () -> 1));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void shutdownFailsQueuedTasks() throws Exception {
+        blockShard();
+        CompletableFuture<Integer> queued = sequencer.submit(COMPANY_ID, () -> 1);
+
+        sequencer.shutdown();
+        release.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> queued.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(MarketOverloadedException.class, failure.getCause());
+        assertThrows(MarketOverloadedException.class, () -> sequencer.submit(COMPANY_ID, () -> 2));
+    }
+
+    // occupy the only writer until release
+    private CompletableFuture<Object> blockShard() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Object> blocker = sequencer.submit(COMPANY_ID, () -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        started.await(10, TimeUnit.SECONDS);
+        return blocker;
+    }
+}
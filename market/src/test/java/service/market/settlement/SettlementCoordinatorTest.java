@@ -0,0 +1,218 @@
+package service.market.settlement;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import service.clients.BankClient;
+import service.clients.CompanyClient;
+import service.core.Company;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.core.TradeResponse;
+import service.core.tracing.Tracer;
+import service.dto.BankOperationResult;
+import service.dto.BankOperationResult.Status;
+import service.dto.FundsHold;
+import service.market.MarketService;
+import service.market.journal.MarketJournal;
+import service.market.sequencer.OrderSequencer;
+import service.market.trade.TradeMetrics;
+import service.market.trade.TradeResult;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** SettlementCoordinatorTest
+ * - A buy whose commit reply is lost, and whose retried commit the bank no longer recognises,
+ *   settles if the hold turns out COMMITTED and compensates only if it really expired
+ * - The trade reaches the ledger only once the saga's SETTLED state is in the outbox
+ * - A buy whose shares the company refuses is compensated: its hold is released and nothing is
+ *   committed or recorded
+ * - A saga interrupted by a restart resumes from its last recorded state with the same
+ *   idempotency keys: funds are not held twice and the trade is recorded once
+ * - Saga IDs, and so idempotency keys, keep rising across restarts even once compaction has
+ *   dropped every saga from the outbox
+ */
+class SettlementCoordinatorTest {
+    private static final long HOLD_ID = 7;
+    private static final int CLIENT_ID = 1000;
+    private static final Company COMPANY = new PublicCompany(2000, "Acme", Money.parse("10.00"), 1.0, 1_000_000);
+
+    @TempDir
+    Path directory;
+
+    private final MarketService market = spy(new MarketService());
+    private final BankClient bankClient = mock(BankClient.class);
+    private final CompanyClient companyClient = mock(CompanyClient.class);
+    private final OrderSequencer sequencer = new OrderSequencer(1, 1024, 5_000, new SimpleMeterRegistry());
+    private SettlementCoordinator coordinator;
+
+    @BeforeEach
+    void start() throws Exception {
+        coordinator = newCoordinator();
+
+        when(bankClient.placeHold(anyInt(), any(), anyLong(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new BankOperationResult(Status.OK, null, HOLD_ID)));
+        when(companyClient.buyShares(any(), any(), any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new TradeResponse(true, 3, Money.parse("30.00"))));
+        when(companyClient.sellShares(any(), any(), any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new TradeResponse(true, 3, Money.parse("30.00"))));
+        // the first commit goes through at the bank but its reply is lost; by the retry the bank
+        // has forgotten the key, and answers as for a hold it cannot commit
+        when(bankClient.commitHold(eq(HOLD_ID), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new ResourceAccessException("reply lost")))
+                .thenReturn(CompletableFuture.completedFuture(new BankOperationResult(Status.HOLD_NOT_FOUND, null)));
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        coordinator.stop();
+        sequencer.shutdown();
+    }
+
+    @Test
+    void commitOfAlreadyCommittedHoldSettles() throws Exception {
+        when(bankClient.getHold(HOLD_ID)).thenReturn(CompletableFuture.completedFuture(hold(FundsHold.State.COMMITTED)));
+
+        TradeResult result = buy();
+
+        assertEquals(TradeResult.Status.COMPLETED, result.status());
+        assertEquals(1, market.getClientTrades(CLIENT_ID).size());
+        verify(bankClient, never()).releaseHold(anyLong(), anyString());
+        verify(companyClient, never()).sellShares(any(), any(), any(), anyString());
+    }
+
+    @Test
+    void commitOfExpiredHoldCompensates() throws Exception {
+        when(bankClient.getHold(HOLD_ID)).thenReturn(CompletableFuture.completedFuture(hold(FundsHold.State.EXPIRED)));
+
+        TradeResult result = buy();
+
+        assertEquals(TradeResult.Status.BANK_REJECTED, result.status());
+        assertTrue(market.getClientTrades(CLIENT_ID).isEmpty());
+        verify(companyClient).sellShares(eq(COMPANY.getId()), eq(CLIENT_ID), eq(3), anyString());
+    }
+
+    @Test
+    void tradeIsRecordedAfterSettledIsWritten() throws Exception {
+        when(bankClient.getHold(HOLD_ID)).thenReturn(CompletableFuture.completedFuture(hold(FundsHold.State.COMMITTED)));
+        List<SettlementState> onDiskAtAppend = new ArrayList<>();
+        doAnswer(invocation -> {
+            SettlementOutbox reader = new SettlementOutbox(directory, false);
+            for (Settlement saga : reader.recover()) {
+                onDiskAtAppend.add(saga.getState());
+            }
+            reader.close();
+            return invocation.callRealMethod();
+        }).when(market).appendTrade(any());
+
+        assertEquals(TradeResult.Status.COMPLETED, buy().status());
+        assertEquals(List.of(SettlementState.SETTLED), onDiskAtAppend);
+    }
+
+    @Test
+    void refusedAllocationReleasesTheHold() throws Exception {
+        when(companyClient.buyShares(any(), any(), any(), anyString())).thenReturn(CompletableFuture.failedFuture(
+                new RestClientResponseException("not enough shares", 400, "Bad Request", null, null, null)));
+        when(bankClient.releaseHold(eq(HOLD_ID), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new BankOperationResult(Status.OK, null, HOLD_ID)));
+
+        Settlement saga = coordinator.accept(Settlement.Side.BUY, CLIENT_ID, COMPANY, COMPANY.getSharePrice(), 3);
+
+        assertEquals(TradeResult.Status.COMPANY_FAILED, saga.outcome().get(10, TimeUnit.SECONDS).status());
+        assertEquals(SettlementState.COMPENSATED, saga.getState());
+        verify(bankClient).releaseHold(HOLD_ID, "settlement-" + saga.getId() + "-release");
+        verify(bankClient, never()).commitHold(anyLong(), anyString());
+        verify(companyClient, never()).sellShares(any(), any(), any(), anyString());
+        assertTrue(market.getClientTrades(CLIENT_ID).isEmpty());
+    }
+
+    @Test
+    void interruptedSagaResumesAfterRestart() throws Exception {
+        when(bankClient.getHold(HOLD_ID)).thenReturn(CompletableFuture.completedFuture(hold(FundsHold.State.COMMITTED)));
+        // the company never answers before the restart
+        when(companyClient.buyShares(any(), any(), any(), anyString())).thenReturn(new CompletableFuture<>());
+        Settlement saga = coordinator.accept(Settlement.Side.BUY, CLIENT_ID, COMPANY, COMPANY.getSharePrice(), 3);
+        String allocateKey = "settlement-" + saga.getId() + "-allocate";
+        verify(companyClient, timeout(10_000)).buyShares(COMPANY.getId(), CLIENT_ID, 3, allocateKey);
+        assertEquals(SettlementState.RESERVED, saga.getState());
+
+        coordinator.stop();
+        when(companyClient.buyShares(any(), any(), any(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(new TradeResponse(true, 3, Money.parse("30.00"))));
+        coordinator = newCoordinator();
+
+        Settlement resumed = coordinator.getSettlement(saga.getId());
+        assertEquals(TradeResult.Status.COMPLETED, resumed.outcome().get(10, TimeUnit.SECONDS).status());
+        // the hold placed before the restart is the one committed; the allocation is resent as is
+        verify(bankClient).placeHold(anyInt(), any(), anyLong(), anyString());
+        verify(companyClient, times(2)).buyShares(COMPANY.getId(), CLIENT_ID, 3, allocateKey);
+        verify(bankClient, atLeastOnce()).commitHold(HOLD_ID, "settlement-" + saga.getId() + "-commit");
+        assertEquals(1, market.getClientTrades(CLIENT_ID).size());
+        assertEquals(saga.getTradeId(), market.getClientTrades(CLIENT_ID).get(0).getId());
+    }
+
+    @Test
+    void sagaIdsKeepRisingAfterCompaction() throws Exception {
+        when(bankClient.getHold(HOLD_ID)).thenReturn(CompletableFuture.completedFuture(hold(FundsHold.State.COMMITTED)));
+        Settlement first = coordinator.accept(Settlement.Side.BUY, CLIENT_ID, COMPANY, COMPANY.getSharePrice(), 3);
+        assertEquals(TradeResult.Status.COMPLETED, first.outcome().get(10, TimeUnit.SECONDS).status());
+
+        // the first restart compacts the settled saga away, the second recovers an empty outbox
+        coordinator.stop();
+        coordinator = newCoordinator();
+        coordinator.stop();
+        SettlementOutbox reader = new SettlementOutbox(directory, false);
+        assertTrue(reader.recover().isEmpty());
+        reader.close();
+        coordinator = newCoordinator();
+
+        Settlement next = coordinator.accept(Settlement.Side.BUY, CLIENT_ID, COMPANY, COMPANY.getSharePrice(), 3);
+        next.outcome().get(10, TimeUnit.SECONDS);
+        assertTrue(next.getId() > first.getId());
+        verify(bankClient).placeHold(anyInt(), any(), anyLong(), eq("settlement-" + first.getId() + "-reserve"));
+        verify(bankClient).placeHold(anyInt(), any(), anyLong(), eq("settlement-" + next.getId() + "-reserve"));
+    }
+
+    private SettlementCoordinator newCoordinator() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SettlementCoordinator started = new SettlementCoordinator(market, mock(MarketJournal.class), sequencer,
+                bankClient, companyClient, new TradeMetrics(registry), new Tracer(false, 0, 0), directory.toString(),
+                false, 1, 1, 10, 60_000, Long.MAX_VALUE, 100, registry);
+        started.start();
+        return started;
+    }
+
+    private TradeResult buy() throws Exception {
+        Settlement saga = coordinator.accept(Settlement.Side.BUY, CLIENT_ID, COMPANY, COMPANY.getSharePrice(), 3);
+        return saga.outcome().get(10, TimeUnit.SECONDS);
+    }
+
+    private static FundsHold hold(FundsHold.State state) {
+        return new FundsHold(HOLD_ID, CLIENT_ID, Money.parse("30.00"), 0, state);
+    }
+}
@@ -0,0 +1,89 @@
+package service.market.trade;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import service.core.Money;
+import service.core.PublicCompany;
+import service.market.MarketService;
+import service.market.exception.InvalidOrderException;
+import service.market.exception.MarketOverloadedException;
+import service.market.settlement.Settlement;
+import service.market.settlement.SettlementCoordinator;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** TradeOrchestratorTest
+ * - An order for zero or fewer shares is refused before it reaches the settlement outbox
+ * - At most max-in-flight orders are accepted and unsettled at once; more are refused (503) without
+ *   reaching the outbox, and a slot frees up as soon as a settlement finishes or fails to start
+ */
+class TradeOrchestratorTest {
+    private static final int COMPANY_ID = 2000;
+    private static final int CLIENT_ID = 1000;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MarketService market = new MarketService();
+    private final SettlementCoordinator settlements = mock(SettlementCoordinator.class);
+
+    @Test
+    void boundsOrdersInFlight() {
+        market.addCompany(new PublicCompany(COMPANY_ID, "Acme", Money.parse("10.00"), 1.0, 1_000));
+        TradeOrchestrator orchestrator = new TradeOrchestrator(market, settlements, new TradeMetrics(registry), 2, registry);
+        CompletableFuture<TradeResult> first = new CompletableFuture<>();
+        CompletableFuture<TradeResult> second = new CompletableFuture<>();
+        CompletableFuture<TradeResult> third = new CompletableFuture<>();
+        Settlement[] accepted = {settlement(first), settlement(second), settlement(third)};
+        when(settlements.accept(any(), anyInt(), any(), any(), anyInt()))
+                .thenReturn(accepted[0], accepted[1], accepted[2]);
+
+        orchestrator.buy(COMPANY_ID, CLIENT_ID, 1);
+        orchestrator.sell(COMPANY_ID, CLIENT_ID, 1);
+        assertEquals(2, orchestrator.getInFlight());
+        assertThrows(MarketOverloadedException.class, () -> orchestrator.buy(COMPANY_ID, CLIENT_ID, 1));
+        verify(settlements, times(2)).accept(any(), anyInt(), any(), any(), anyInt());
+
+        // a compensated order frees its slot just like a settled one
+        first.complete(new TradeResult(TradeResult.Status.BANK_REJECTED, null));
+        assertEquals(1, orchestrator.getInFlight());
+        orchestrator.buy(COMPANY_ID, CLIENT_ID, 1);
+        assertEquals(2, orchestrator.getInFlight());
+        assertThrows(MarketOverloadedException.class, () -> orchestrator.sell(COMPANY_ID, CLIENT_ID, 1));
+
+        second.complete(new TradeResult(TradeResult.Status.COMPANY_FAILED, null));
+        third.complete(new TradeResult(TradeResult.Status.BANK_REJECTED, null));
+        assertEquals(0, orchestrator.getInFlight());
+
+        // an order the outbox could not take does not keep its slot
+        when(settlements.accept(any(), anyInt(), any(), any(), anyInt()))
+                .thenThrow(new MarketOverloadedException("outbox full"));
+        assertThrows(MarketOverloadedException.class, () -> orchestrator.buy(COMPANY_ID, CLIENT_ID, 1));
+        assertEquals(0, orchestrator.getInFlight());
+    }
+
+    @Test
+    void refusesQuantitiesBelowOne() {
+        market.addCompany(new PublicCompany(COMPANY_ID, "Acme", Money.parse("10.00"), 1.0, 1_000));
+        TradeOrchestrator orchestrator = new TradeOrchestrator(market, settlements, new TradeMetrics(registry), 10, registry);
+
+        assertThrows(InvalidOrderException.class, () -> orchestrator.buy(COMPANY_ID, CLIENT_ID, 0));
+        assertThrows(InvalidOrderException.class, () -> orchestrator.sell(COMPANY_ID, CLIENT_ID, -3));
+
+        verify(settlements, never()).accept(any(), anyInt(), any(), any(), anyInt());
+    }
+
+    private static Settlement settlement(CompletableFuture<TradeResult> outcome) {
+        Settlement settlement = mock(Settlement.class);
+        when(settlement.outcome()).thenReturn(outcome);
+        return settlement;
+    }
+}
@@ -1,43 +1,76 @@
 package service.clients;
 
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.core5.http.ContentType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import service.core.BankAccount;
+import service.core.Money;
+import service.core.http.InterServiceHttpClient;
+import service.core.http.ServiceCallMetrics;
+import service.core.tracing.Tracer;
+import service.core.idempotency.IdempotencyFilter;
+import service.core.wire.WireFormat;
+import service.core.wire.WireFormats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Client for interacting with the Banking Service
+ * Every call is timed and traced per operation (ServiceCallMetrics), and made in the wire format
+ * configured for the bank's URL (WireFormats)
+ * getBalance does not block: it is read when a trade settles, possibly on the market client's
+ * settlement poller, and its future completes on the HTTP client's I/O thread
  */
 @Service
 public class BankServiceClient {
     private final RestTemplate restTemplate;
-    
-    @Value("${services.bank.url:http://localhost:8080}")
-    private String bankServiceUrl;
+    private final ServiceCallMetrics calls;
+    private final String bankServiceUrl;
+    private final InterServiceHttpClient httpClient;
+    private final WireFormats wireFormats;
+    private final WireFormat wire;
     
     /**
      * Constructor with dependency injection
      */
     @Autowired
-    public BankServiceClient(RestTemplateBuilder restTemplateBuilder, ObjectMapper objectMapper) {
+    public BankServiceClient(RestTemplateBuilder restTemplateBuilder,
+                             MappingJackson2HttpMessageConverter jsonConverter,
+                             WireFormats wireFormats,
+                             @Value("${services.bank.url:http://localhost:8080}") String bankServiceUrl,
+                             InterServiceHttpClient httpClient, MeterRegistry registry, Tracer tracer) {
         this.restTemplate = restTemplateBuilder
-            .messageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+            .messageConverters(jsonConverter)
             .build();
+        wireFormats.configure(restTemplate, bankServiceUrl);
+        this.bankServiceUrl = bankServiceUrl;
+        this.httpClient = httpClient;
+        this.wireFormats = wireFormats;
+        this.wire = wireFormats.forUrl(bankServiceUrl);
+        this.calls = new ServiceCallMetrics(registry, tracer, "bank");
     }
     
     /**
      * Create a new bank account for a client
      */
-    public BankAccount createAccount(int clientId, String accountName, double initialFunds) {
+    public BankAccount createAccount(int clientId, String accountName, Money initialFunds) {
         String url = bankServiceUrl + "/accounts";
         
         Map<String, Object> requestPayload = new HashMap<>();
@@ -45,8 +78,8 @@ public class BankServiceClient {
         requestPayload.put("accountName", accountName);
         requestPayload.put("initialFunds", initialFunds);
         
-        ResponseEntity<BankAccount> response = restTemplate.postForEntity(
-            url, requestPayload, BankAccount.class);
+        ResponseEntity<BankAccount> response = calls.record("createAccount", () -> restTemplate.postForEntity(
+            url, requestPayload, BankAccount.class));
         
         if (response.getStatusCode() == HttpStatus.CREATED || 
             response.getStatusCode() == HttpStatus.OK) {
@@ -61,7 +94,8 @@ public class BankServiceClient {
      */
     public BankAccount getAccount(int clientId) {
         String url = bankServiceUrl + "/accounts/" + clientId;
-        ResponseEntity<BankAccount> response = restTemplate.getForEntity(url, BankAccount.class);
+        ResponseEntity<BankAccount> response = calls.record("getAccount",
+            () -> restTemplate.getForEntity(url, BankAccount.class));
         
         if (response.getStatusCode() == HttpStatus.OK) {
             return response.getBody();
@@ -72,14 +106,20 @@ public class BankServiceClient {
     
     /**
      * Deposit funds into a client's account
+     * @param idempotencyKey - sent as Idempotency-Key, so a retried call is not applied twice (may be null)
      */
-    public void depositFunds(int clientId, double amount) {
+    public void depositFunds(int clientId, Money amount, String idempotencyKey) {
         String url = bankServiceUrl + "/accounts/" + clientId + "/deposit";
         
         Map<String, Object> requestPayload = new HashMap<>();
         requestPayload.put("amount", amount);
         
-        ResponseEntity<Void> response = restTemplate.postForEntity(url, requestPayload, Void.class);
+        HttpHeaders headers = new HttpHeaders();
+        if (idempotencyKey != null) {
+            headers.set(IdempotencyFilter.HEADER, idempotencyKey);
+        }
+        ResponseEntity<Void> response = calls.record("deposit", () -> restTemplate.postForEntity(
+            url, new HttpEntity<>(requestPayload, headers), Void.class));
         
         if (response.getStatusCode() != HttpStatus.OK) {
             throw new RuntimeException("Failed to deposit funds: " + response.getStatusCode());
@@ -88,14 +128,20 @@ public class BankServiceClient {
     
     /**
      * Withdraw funds from a client's account
+     * @param idempotencyKey - sent as Idempotency-Key, so a retried call is not applied twice (may be null)
      */
-    public void withdrawFunds(int clientId, double amount) {
+    public void withdrawFunds(int clientId, Money amount, String idempotencyKey) {
         String url = bankServiceUrl + "/accounts/" + clientId + "/withdraw";
         
         Map<String, Object> requestPayload = new HashMap<>();
         requestPayload.put("amount", amount);
         
-        ResponseEntity<Void> response = restTemplate.postForEntity(url, requestPayload, Void.class);
+        HttpHeaders headers = new HttpHeaders();
+        if (idempotencyKey != null) {
+            headers.set(IdempotencyFilter.HEADER, idempotencyKey);
+        }
+        ResponseEntity<Void> response = calls.record("withdraw", () -> restTemplate.postForEntity(
+            url, new HttpEntity<>(requestPayload, headers), Void.class));
         
         if (response.getStatusCode() != HttpStatus.OK) {
             throw new RuntimeException("Failed to withdraw funds: " + response.getStatusCode());
@@ -103,16 +149,27 @@ public class BankServiceClient {
     }
     
     /**
-     * Get the balance of a client's account
+     * Get the balance of a client's account, without blocking
      */
-    public double getBalance(int clientId) {
-        String url = bankServiceUrl + "/accounts/" + clientId + "/balance";
-        ResponseEntity<Double> response = restTemplate.getForEntity(url, Double.class);
-        
-        if (response.getStatusCode() == HttpStatus.OK) {
-            return response.getBody();
+    public CompletableFuture<Money> getBalance(int clientId) {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(bankServiceUrl + "/accounts/" + clientId + "/balance")
+            .setHeader(HttpHeaders.ACCEPT, wire.getAccept())
+            .build();
+        return calls.recordAsync("getBalance", () -> httpClient.execute(request))
+            .thenApply(this::readBalance);
+    }
+    
+    // the reply's format is the bank's choice: normally ours, JSON if it does not speak ours
+    private Money readBalance(SimpleHttpResponse response) {
+        if (response.getCode() != HttpStatus.OK.value()) {
+            throw new RuntimeException("Failed to get balance: " + response.getCode());
+        }
+        ContentType contentType = response.getContentType();
+        WireFormat format = WireFormat.of(contentType != null ? contentType.getMimeType() : null);
+        try {
+            return wireFormats.codecs(format).reader(Money.class).readValue(response.getBodyBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        
-        throw new RuntimeException("Failed to get balance: " + response.getStatusCode());
     }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package service.clients;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import service.core.CompanyDTO;
+import service.core.Money;
+import service.dto.PriceUpdate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/** CompanyCache
+ * Purpose:
+ * - Last-value cache of the market's companies, so reading a share price is a local lookup
+ *   instead of a round trip to the Market Service
+ * - Entries are refreshed in the background from the market's company list; an entry older than
+ *   the staleness bound is never served, it is fetched again instead (a miss)
+ * - Prices are pushed from the market's event stream (GET /events) as they change, so a cached
+ *   price is not left waiting for the next refresh; a pushed price is never overwritten by an
+ *   older fetch
+ * - PriceListeners (the RevaluationEngine) are handed every price the cache takes in, fetched or
+ *   pushed, so nothing else polls the market for prices
+ * Threading:
+ * - Entries are immutable and swapped in a ConcurrentHashMap, so reads take no locks
+ * - One thread ("player-company-refresh") refreshes, another ("player-price-stream") follows the
+ *   price stream and reconnects when it drops
+ * - Listeners are called inside the company's map update, so for one company they see prices in
+ *   the order the cache applied them; they must be quick and must not call back into the cache
+ * Config:
+ * - player.company-cache.max-staleness-ms: oldest entry that may be served
+ * - player.company-cache.refresh-interval-ms: background refresh period (0 = never)
+ * - player.company-cache.push-enabled: follow the market's price stream
+ * - player.company-cache.push-reconnect-ms: wait before reconnecting a dropped stream
+ */
+@Service
+public class CompanyCache {
+    private static final Logger log = LoggerFactory.getLogger(CompanyCache.class);
+
+    public interface PriceListener {
+        void onPrice(int companyId, Money price);
+    }
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final List<PriceListener> listeners = new CopyOnWriteArrayList<>();
+    private final MarketServiceClient marketClient;
+    private final long maxStalenessNanos;
+    private final long refreshIntervalMillis;
+    private final boolean pushEnabled;
+    private final long reconnectMillis;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter pushedPrices;
+    private ScheduledExecutorService refresher;
+    private Thread pushReader;
+    private volatile boolean running = true;
+    private volatile boolean lastRefreshFailed;
+    private volatile boolean lastPushFailed;
+
+    public CompanyCache(MarketServiceClient marketClient,
+                        @Value("${player.company-cache.max-staleness-ms:5000}") long maxStalenessMillis,
+                        @Value("${player.company-cache.refresh-interval-ms:1000}") long refreshIntervalMillis,
+                        @Value("${player.company-cache.push-enabled:true}") boolean pushEnabled,
+                        @Value("${player.company-cache.push-reconnect-ms:2000}") long reconnectMillis,
+                        MeterRegistry registry) {
+        this.marketClient = marketClient;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.pushEnabled = pushEnabled;
+        this.reconnectMillis = Math.max(1, reconnectMillis);
+        this.hits = Counter.builder("player.company.cache.gets").tag("result", "hit")
+                .description("Company lookups served from the cache")
+                .register(registry);
+        this.misses = Counter.builder("player.company.cache.gets").tag("result", "miss")
+                .description("Company lookups fetched from the market (absent or stale)")
+                .register(registry);
+        this.pushedPrices = Counter.builder("player.company.cache.pushed.prices")
+                .description("Price changes received from the market's event stream")
+                .register(registry);
+        Gauge.builder("player.company.cache.size", entries, Map::size)
+                .description("Companies cached")
+                .register(registry);
+        Gauge.builder("player.company.cache.staleness", this, CompanyCache::oldestEntryMillis)
+                .description("Age in milliseconds of the least recently fetched company")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (refreshIntervalMillis > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "player-company-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (pushEnabled) {
+            pushReader = new Thread(this::followPrices, "player-price-stream");
+            pushReader.setDaemon(true);
+            pushReader.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        if (pushReader != null) {
+            pushReader.interrupt();
+        }
+    }
+
+    /**
+     * A company, from the cache unless it is absent or older than the staleness bound.
+     */
+    public CompanyDTO getCompany(int companyId) {
+        Entry entry = entries.get(companyId);
+        if (entry != null && System.nanoTime() - entry.fetchedAt <= maxStalenessNanos) {
+            hits.increment();
+            return entry.company;
+        }
+        misses.increment();
+        long requestedAt = System.nanoTime();
+        CompanyDTO company = marketClient.getCompany(companyId);
+        return store(company, requestedAt).company;
+    }
+
+    public Money getSharePrice(int companyId) {
+        return getCompany(companyId).sharePrice();
+    }
+
+    // called with each company's price on every refresh, fetch and push, changed or not
+    public void addPriceListener(PriceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Fetch every company from the market in one request.
+     */
+    public void refresh() {
+        long requestedAt = System.nanoTime();
+        List<CompanyDTO> companies;
+        try {
+            companies = marketClient.getAllCompanies();
+        } catch (Exception e) {
+            // report once per outage rather than on every refresh
+            if (!lastRefreshFailed) {
+                log.warn("Failed to refresh companies from the market: {}", e.getMessage());
+            }
+            lastRefreshFailed = true;
+            return;
+        }
+        lastRefreshFailed = false;
+        if (companies == null) {
+            return;
+        }
+        for (CompanyDTO company : companies) {
+            if (company.id() != null) {
+                store(company, requestedAt);
+            }
+        }
+    }
+
+    /**
+     * Apply a price pushed by the market. Companies that are not cached are skipped;
+     * the next lookup fetches them whole. Listeners get the price either way.
+     */
+    public void applyPriceUpdate(PriceUpdate update) {
+        long now = System.nanoTime();
+        entries.compute(update.companyId(), (id, entry) -> {
+            notifyListeners(id, update.price());
+            if (entry == null) {
+                return null;
+            }
+            CompanyDTO company = entry.company;
+            return new Entry(new CompanyDTO(company.id(), company.name(), update.price(), company.numShares()),
+                    entry.fetchedAt, now);
+        });
+        pushedPrices.increment();
+    }
+
+    private Entry store(CompanyDTO company, long requestedAt) {
+        return entries.compute(company.id(), (id, cached) -> {
+            Entry stored = new Entry(company, requestedAt, requestedAt);
+            if (cached != null && cached.pricedAt > requestedAt) {
+                // the cached price was pushed after this fetch was sent, so it is the newer one
+                stored = new Entry(new CompanyDTO(company.id(), company.name(), cached.company.sharePrice(),
+                        company.numShares()), requestedAt, cached.pricedAt);
+            }
+            notifyListeners(id, stored.company.sharePrice());
+            return stored;
+        });
+    }
+
+    private void notifyListeners(int companyId, Money price) {
+        if (price == null) {
+            return;
+        }
+        for (PriceListener listener : listeners) {
+            listener.onPrice(companyId, price);
+        }
+    }
+
+    private void followPrices() {
+        while (running) {
+            try {
+                // the market starts every stream with current prices, so nothing missed while
+                // disconnected stays wrong
+                marketClient.streamPriceUpdates(update -> {
+                    lastPushFailed = false;
+                    applyPriceUpdate(update);
+                });
+            } catch (Exception e) {
+                if (!lastPushFailed) {
+                    log.warn("Market price stream unavailable: {}", e.getMessage());
+                }
+                lastPushFailed = true;
+            }
+            try {
+                Thread.sleep(reconnectMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private double oldestEntryMillis() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (Entry entry : entries.values()) {
+            oldest = Math.max(oldest, now - entry.fetchedAt);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(oldest);
+    }
+
+    // fetchedAt: when the request that fetched the company was sent; pricedAt: when its price was
+    // learned (the fetch, or a later push). Both are System.nanoTime().
+    private record Entry(CompanyDTO company, long fetchedAt, long pricedAt) {}
+}
@@ -1,44 +1,118 @@
 package service.clients;
 
+import jakarta.annotation.PreDestroy;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import service.core.Company;
 import service.core.CompanyDTO;
+import service.core.Money;
 import service.core.Trade;
+import service.core.http.InterServiceHttpClient;
+import service.core.http.ServiceCallMetrics;
+import service.core.logging.CorrelationId;
+import service.core.tracing.TraceContext;
+import service.core.tracing.Tracer;
+import service.core.idempotency.IdempotencyFilter;
+import service.core.json.JsonCodecs;
+import service.core.wire.WireFormats;
 import service.dto.BuyRequest;
+import service.dto.PriceUpdate;
 import service.dto.SellRequest;
+import service.dto.SettlementStatus;
+import service.dto.TradePage;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Client for interacting with the Market Service
+ * Every call is timed and traced per operation (ServiceCallMetrics); the long-lived streams are not
+ * buy/sell return a future: complete at once when the market answers with the trade, or, when it
+ * answers 202 (accepted, still settling), once polling the settlement's Location finds it finished;
+ * the polls run on a small pool after a delay (CompletableFuture.delayedExecutor), so no caller's
+ * thread waits for a settlement
+ * Calls are made in the wire format configured for the market's URL (WireFormats); the streams
+ * stay NDJSON and server-sent events
  */
 @Service
 public class MarketServiceClient {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final String SSE_DATA = "data:";
+    private static final long SETTLEMENT_POLL_MS = 100;
+    
     private final RestTemplate restTemplate;
+    private final RestTemplate streamTemplate; // no read timeout: the price stream can sit idle
+    private final JsonCodecs jsonCodecs;
+    private final ServiceCallMetrics calls;
+    private final String marketServiceUrl;
+    private final ExecutorService settlementPoller;
     
-    @Value("${services.market.url:http://localhost:8082}")
-    private String marketServiceUrl;
+    // how long buy/sell wait for an order the market accepted (202) but had not settled yet
+    @Value("${services.market.settlement-wait-ms:30000}")
+    private long settlementWaitMs;
     
     /**
      * Constructor with dependency injection
      */
     @Autowired
-    public MarketServiceClient(RestTemplateBuilder restTemplateBuilder, ObjectMapper objectMapper) {
+    public MarketServiceClient(RestTemplateBuilder restTemplateBuilder,
+                               MappingJackson2HttpMessageConverter jsonConverter, JsonCodecs jsonCodecs,
+                               WireFormats wireFormats,
+                               @Value("${services.market.url:http://localhost:8082}") String marketServiceUrl,
+                               InterServiceHttpClient httpClient, MeterRegistry registry, Tracer tracer,
+                               @Value("${services.market.settlement-poll-threads:2}") int settlementPollThreads) {
         this.restTemplate = restTemplateBuilder
-            .messageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+            .messageConverters(jsonConverter)
             .build();
+        wireFormats.configure(restTemplate, marketServiceUrl);
+        this.marketServiceUrl = marketServiceUrl;
+        // set after build(): the builder's customizers install the ordinary (timed) request factory
+        this.streamTemplate = restTemplateBuilder.build();
+        this.streamTemplate.setRequestFactory(httpClient.streamingRequestFactory());
+        this.jsonCodecs = jsonCodecs;
+        this.calls = new ServiceCallMetrics(registry, tracer, "market");
+        AtomicInteger pollerCount = new AtomicInteger();
+        this.settlementPoller = Executors.newFixedThreadPool(Math.max(1, settlementPollThreads), runnable -> {
+            Thread thread = new Thread(runnable, "player-settlement-poll-" + pollerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void stop() {
+        settlementPoller.shutdownNow();
     }
     
     /**
@@ -53,12 +127,12 @@ public class MarketServiceClient {
      */
     public List<CompanyDTO> getAllCompanies() {
         String url = marketServiceUrl + "/company-dtos";
-        ResponseEntity<List<CompanyDTO>> response = restTemplate.exchange(
+        ResponseEntity<List<CompanyDTO>> response = calls.record("getAllCompanies", () -> restTemplate.exchange(
             url,
             HttpMethod.GET,
             null,
             new ParameterizedTypeReference<List<CompanyDTO>>() {}
-        );
+        ));
         
         if (response.getStatusCode() == HttpStatus.OK) {
             return response.getBody();
@@ -72,7 +146,8 @@ public class MarketServiceClient {
      */
     public CompanyDTO getCompany(int companyId) {
         String url = marketServiceUrl + "/company-dtos/" + companyId;
-        ResponseEntity<CompanyDTO> response = restTemplate.getForEntity(url, CompanyDTO.class);
+        ResponseEntity<CompanyDTO> response = calls.record("getCompany",
+            () -> restTemplate.getForEntity(url, CompanyDTO.class));
         
         if (response.getStatusCode() == HttpStatus.OK) {
             return response.getBody();
@@ -83,85 +158,164 @@ public class MarketServiceClient {
     
     /**
      * Buy shares of a company
+     * @param idempotencyKey - sent as Idempotency-Key, so a retried order is not applied twice (may be null)
+     * @return - the trade once settled; fails if the market refused it or it did not settle in time
      */
-    public Trade buyShares(int clientId, int companyId, int quantity) {
+    public CompletableFuture<Trade> buyShares(int clientId, int companyId, int quantity, String idempotencyKey) {
         String url = marketServiceUrl + "/companies/" + companyId + "/buy";
         
         // Create a proper DTO for the request
         BuyRequest request = new BuyRequest(clientId, quantity);
         
-        ResponseEntity<Trade> response = restTemplate.postForEntity(
-            url, request, Trade.class);
-        
-        if (response.getStatusCode() == HttpStatus.OK) {
-            return response.getBody();
-        }
-        
-        throw new RuntimeException("Failed to buy shares: " + response.getStatusCode());
+        return placeOrder("buyShares", url, request, idempotencyKey, "buy shares");
     }
     
     /**
      * Sell shares of a company
+     * @param idempotencyKey - sent as Idempotency-Key, so a retried order is not applied twice (may be null)
+     * @return - the trade once settled; fails if the market refused it or it did not settle in time
      */
-    public Trade sellShares(int clientId, int companyId, int quantity) {
+    public CompletableFuture<Trade> sellShares(int clientId, int companyId, int quantity, String idempotencyKey) {
         String url = marketServiceUrl + "/companies/" + companyId + "/sell";
         
         // Create a proper DTO for the request
         SellRequest request = new SellRequest(clientId, quantity);
         
-        ResponseEntity<Trade> response = restTemplate.postForEntity(
-            url, request, Trade.class);
+        return placeOrder("sellShares", url, request, idempotencyKey, "sell shares");
+    }
+    
+    // 200 carries the trade; 202 means the market accepted the order but is still settling it, so
+    // its Location is polled until the settlement finishes; the POST itself is made on the caller's thread
+    private CompletableFuture<Trade> placeOrder(String operation, String url, Object request, String idempotencyKey,
+                                                String action) {
+        ResponseEntity<JsonNode> response = calls.record(operation, () -> restTemplate.postForEntity(
+            url, withIdempotencyKey(request, idempotencyKey), JsonNode.class));
         
-        if (response.getStatusCode() == HttpStatus.OK) {
-            return response.getBody();
+        try {
+            if (response.getStatusCode() == HttpStatus.OK) {
+                return CompletableFuture.completedFuture(jsonCodecs.reader(Trade.class).readValue(response.getBody()));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to " + action + ": unreadable trade", e);
+        }
+        URI location = response.getHeaders().getLocation();
+        if (response.getStatusCode() == HttpStatus.ACCEPTED && location != null) {
+            CompletableFuture<Trade> trade = new CompletableFuture<>();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settlementWaitMs);
+            pollSettlement(marketServiceUrl + location, action, deadline, CorrelationId.current(),
+                TraceContext.current(), trade);
+            return trade;
         }
         
-        throw new RuntimeException("Failed to sell shares: " + response.getStatusCode());
+        throw new RuntimeException("Failed to " + action + ": " + response.getStatusCode());
+    }
+    
+    // one GET of the settlement, SETTLEMENT_POLL_MS from now on the poller pool, with the order's
+    // correlation ID and trace; schedules the next until the settlement finishes or the deadline passes
+    private void pollSettlement(String url, String action, long deadline, String correlationId, TraceContext trace,
+                                CompletableFuture<Trade> trade) {
+        CompletableFuture.delayedExecutor(SETTLEMENT_POLL_MS, TimeUnit.MILLISECONDS, settlementPoller).execute(() -> {
+            try (MDC.MDCCloseable ignored = MDC.putCloseable(CorrelationId.MDC_KEY, correlationId);
+                 TraceContext.Scope scope = TraceContext.activate(trace)) {
+                SettlementStatus settlement = calls.record("getSettlement",
+                    () -> restTemplate.getForObject(url, SettlementStatus.class));
+                if ("SETTLED".equals(settlement.state())) {
+                    trade.complete(settlement.trade());
+                } else if ("COMPENSATED".equals(settlement.state())) {
+                    trade.completeExceptionally(new RuntimeException("Failed to " + action + ": " + settlement.failure()));
+                } else if (System.nanoTime() > deadline) {
+                    trade.completeExceptionally(new RuntimeException("Failed to " + action + ": settlement "
+                        + settlement.id() + " still " + settlement.state()));
+                } else {
+                    pollSettlement(url, action, deadline, correlationId, trace, trade);
+                }
+            } catch (RuntimeException e) {
+                trade.completeExceptionally(e);
+            }
+        });
     }
     
     /**
-     * Get trade history for a specific company
+     * Get one page of trade history, optionally filtered by company and time range
+     * (epoch millis, from inclusive, to exclusive). Pass a null cursor for the first page.
      */
-    public List<Trade> getCompanyTradeHistory(int companyId) {
-        String url = marketServiceUrl + "/trades?companyId=" + companyId;
-        ResponseEntity<List<Trade>> response = restTemplate.exchange(
+    public TradePage getTradeHistory(Integer companyId, Long from, Long to, String cursor, Integer limit) {
+        String url = tradesUrl("/trades", companyId, from, to, cursor)
+            .queryParamIfPresent("limit", Optional.ofNullable(limit))
+            .toUriString();
+        ResponseEntity<List<Trade>> response = calls.record("getTradeHistory", () -> restTemplate.exchange(
             url,
             HttpMethod.GET,
             null,
             new ParameterizedTypeReference<List<Trade>>() {}
-        );
+        ));
         
         if (response.getStatusCode() == HttpStatus.OK) {
-            return response.getBody();
+            String nextCursor = response.getHeaders().getFirst(NEXT_CURSOR_HEADER);
+            return new TradePage(response.getBody(), nextCursor);
         }
         
         throw new RuntimeException("Failed to get trade history: " + response.getStatusCode());
     }
     
     /**
-     * Get all trade history
+     * Stream the full (filtered) trade history, one trade at a time, without holding it in memory
      */
-    public List<Trade> getAllTradeHistory() {
-        String url = marketServiceUrl + "/trades";
-        ResponseEntity<List<Trade>> response = restTemplate.exchange(
-            url,
-            HttpMethod.GET,
-            null,
-            new ParameterizedTypeReference<List<Trade>>() {}
-        );
+    public void streamTradeHistory(Integer companyId, Long from, Long to, Consumer<Trade> consumer) {
+        URI uri = tradesUrl("/trades/stream", companyId, from, to, null).build().toUri();
+        ObjectReader reader = jsonCodecs.reader(Trade.class);
         
-        if (response.getStatusCode() == HttpStatus.OK) {
-            return response.getBody();
-        }
-        
-        throw new RuntimeException("Failed to get all trade history: " + response.getStatusCode());
+        restTemplate.execute(uri, HttpMethod.GET,
+            request -> request.getHeaders().setAccept(List.of(NDJSON)),
+            response -> {
+                try (MappingIterator<Trade> trades = reader.readValues(response.getBody())) {
+                    while (trades.hasNextValue()) {
+                        consumer.accept(trades.nextValue());
+                    }
+                }
+                return null;
+            });
+    }
+    
+    private UriComponentsBuilder tradesUrl(String path, Integer companyId, Long from, Long to, String cursor) {
+        return UriComponentsBuilder.fromUriString(marketServiceUrl + path)
+            .queryParamIfPresent("companyId", Optional.ofNullable(companyId))
+            .queryParamIfPresent("from", Optional.ofNullable(from))
+            .queryParamIfPresent("to", Optional.ofNullable(to))
+            .queryParamIfPresent("cursor", Optional.ofNullable(cursor));
     }
     
     /**
-     * Get the current share price for a company
+     * Follow the market's live price updates (GET /events?types=price) until the stream ends.
+     * The market starts the stream with every company's current price. Blocks the calling thread.
      */
-    public double getCompanySharePrice(int companyId) {
-        CompanyDTO company = getCompany(companyId);
-        return company.sharePrice();
+    public void streamPriceUpdates(Consumer<PriceUpdate> consumer) {
+        URI uri = UriComponentsBuilder.fromUriString(marketServiceUrl + "/events")
+            .queryParam("types", "price")
+            .build().toUri();
+        ObjectReader reader = jsonCodecs.reader(PriceUpdate.class);
+        
+        streamTemplate.execute(uri, HttpMethod.GET,
+            request -> request.getHeaders().setAccept(List.of(MediaType.TEXT_EVENT_STREAM)),
+            response -> {
+                BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    // only price events are requested, so every data line is a PriceUpdate
+                    if (line.startsWith(SSE_DATA)) {
+                        consumer.accept(reader.readValue(line.substring(SSE_DATA.length())));
+                    }
+                }
+                return null;
+            });
+    }
+
+    private static HttpEntity<Object> withIdempotencyKey(Object body, String idempotencyKey) {
+        HttpHeaders headers = new HttpHeaders();
+        if (idempotencyKey != null) {
+            headers.set(IdempotencyFilter.HEADER, idempotencyKey);
+        }
+        return new HttpEntity<>(body, headers);
     }
-}
\ No newline at end of file
+}
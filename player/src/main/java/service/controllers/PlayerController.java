@@ -1,42 +1,48 @@
 package service.controllers;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
 
 import service.clients.BankServiceClient;
+import service.clients.CompanyCache;
 import service.clients.MarketServiceClient;
 import service.core.*;
+import service.core.idempotency.IdempotencyFilter;
 import service.services.PlayerService;
 
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * REST Controller for Player Service
  */
 @RestController
 public class PlayerController {
+    private static final Logger log = LoggerFactory.getLogger(PlayerController.class);
+
     private final PlayerService playerService;
     private final BankServiceClient bankClient;
     private final MarketServiceClient marketClient;
-    private final RestTemplate restTemplate; // Create directly
+    private final CompanyCache companyCache;
     
     @Autowired
     public PlayerController(PlayerService playerService, 
                            BankServiceClient bankClient, 
-                           MarketServiceClient marketClient) {
+                           MarketServiceClient marketClient,
+                           CompanyCache companyCache) {
         this.playerService = playerService;
         this.bankClient = bankClient;
         this.marketClient = marketClient;
-        this.restTemplate = new RestTemplate(); // Create RestTemplate directly
+        this.companyCache = companyCache;
     }
     
     @GetMapping(path="/", produces="application/json")
@@ -73,8 +79,8 @@ public class PlayerController {
     public ResponseEntity<Client> registerPlayer(HttpServletRequest request,
                                                 @RequestBody Map<String, Object> registrationData) {
         String name = (String) registrationData.get("name");
-        double initialFunds = registrationData.containsKey("initialFunds") ? 
-                             ((Number) registrationData.get("initialFunds")).doubleValue() : 0.0;
+        Money initialFunds = registrationData.containsKey("initialFunds") ? 
+                             Money.parse(registrationData.get("initialFunds").toString()) : Money.ZERO;
         
         // Generate a unique player ID first
         int playerId = (int) (System.currentTimeMillis() % 100000);
@@ -131,13 +137,13 @@ public class PlayerController {
     }
     
     /**
-     * Get the total value of a player's portfolio
+     * Get the market value of a player's portfolio
      */
     @GetMapping(path="/players/{playerId}/portfolio/value", produces="application/json")
-    public ResponseEntity<Map<String, Double>> getPortfolioValue(@PathVariable Integer playerId) {
-        double portfolioValue = playerService.getPlayerPortfolioValue(playerId);
+    public ResponseEntity<Map<String, Money>> getPortfolioValue(@PathVariable Integer playerId) {
+        Money portfolioValue = playerService.getPlayerPortfolioValue(playerId);
         
-        Map<String, Double> response = new HashMap<>();
+        Map<String, Money> response = new HashMap<>();
         response.put("portfolioValue", portfolioValue);
         
         return ResponseEntity
@@ -151,9 +157,9 @@ public class PlayerController {
     @GetMapping(path="/players/{playerId}/assets", produces="application/json")
     public ResponseEntity<Map<String, Object>> getPlayerAssets(@PathVariable Integer playerId) {
         Client player = playerService.getPlayer(playerId);
-        double bankBalance = player.getBankAccount().getBalance();
-        double portfolioValue = playerService.getPlayerPortfolioValue(playerId);
-        double totalAssets = playerService.getPlayerTotalAssets(playerId);
+        Money bankBalance = player.getBankAccount().getBalance();
+        Money portfolioValue = playerService.getPlayerPortfolioValue(playerId);
+        Money totalAssets = playerService.getPlayerTotalAssets(playerId);
         
         Map<String, Object> response = new HashMap<>();
         response.put("bankBalance", bankBalance);
@@ -167,84 +173,70 @@ public class PlayerController {
     
     /**
      * Buy shares for a player
+     * Answered asynchronously: the request thread is freed while the market settles the order
      */
     @PostMapping(path="/players/{playerId}/buy", consumes="application/json", produces="application/json")
-    public ResponseEntity<Map<String, Object>> buyShares(@PathVariable Integer playerId,
-                                                      @RequestBody Map<String, Object> purchaseData) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> buyShares(@PathVariable Integer playerId,
+                                                      @RequestBody Map<String, Object> purchaseData,
+                                                      @RequestHeader(value = IdempotencyFilter.HEADER, required = false)
+                                                      String idempotencyKey) {
         try {
             int companyId = ((Number) purchaseData.get("companyId")).intValue();
             int quantity = ((Number) purchaseData.get("quantity")).intValue();
             
-            // Get current share price using CompanyDTO instead of Company
-            CompanyDTO company = marketClient.getCompany(companyId);
-            double sharePrice = company.sharePrice();
-            double totalCost = sharePrice * quantity;
+            // Estimate the cost from the local company cache; only used for the funds check,
+            // the portfolio is booked at the price the market executes at
+            CompanyDTO company = companyCache.getCompany(companyId);
+            Money totalCost = company.sharePrice().times(quantity);
             
             // Get player and check bank balance
             Client player = playerService.getPlayer(playerId);
-            double bankBalance = player.getBankAccount().getBalance();
+            Money bankBalance = player.getBankAccount().getBalance();
             
-            if (bankBalance < totalCost) {
+            if (bankBalance.isLessThan(totalCost)) {
                 Map<String, Object> errorResponse = new HashMap<>();
                 errorResponse.put("error", "Insufficient funds");
                 errorResponse.put("available", bankBalance);
                 errorResponse.put("required", totalCost);
                 
-                return ResponseEntity
+                return CompletableFuture.completedFuture(ResponseEntity
                         .status(HttpStatus.BAD_REQUEST)
-                        .body(errorResponse);
+                        .body(errorResponse));
             }
             
-            // Execute trade
-            Trade trade = marketClient.buyShares(playerId, companyId, quantity);
-            
-            // Withdraw funds from bank account
-            bankClient.withdrawFunds(playerId, totalCost);
-            
-            // Update player's portfolio
-            ShareHolding newHolding = new ShareHolding(
-                company.id(),
-                company.name(),
-                totalCost,
-                quantity
-            );
-            player.addShareHolding(newHolding);
-            playerService.updatePlayer(playerId, player);
-            
-            // Create response
-            Map<String, Object> response = new HashMap<>();
-            response.put("trade", trade);
-            response.put("newBalance", player.getBankAccount().getBalance() - totalCost);
-            response.put("portfolioValue", player.getPortfolioValue());
-            
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(response);
+            // Execute trade; the market withdraws the cost from the bank account as it settles
+            // the caller's Idempotency-Key is passed on, so a retry replays the order instead of repeating it
+            return marketClient.buyShares(playerId, companyId, quantity, idempotencyKey)
+                    .thenCompose(trade -> {
+                        // Update player's portfolio at the executed price
+                        ShareHolding newHolding = new ShareHolding(
+                            company.id(),
+                            company.name(),
+                            trade.getSharePrice().times(quantity),
+                            quantity
+                        );
+                        playerService.updatePlayerPortfolio(playerId, newHolding, trade.getSharePrice());
+                        return tradeResponse(playerId, trade);
+                    })
+                    .exceptionally(e -> tradeFailed("buy", playerId, e));
         } catch (Exception e) {
-            e.printStackTrace();
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Failed to buy shares: " + e.getMessage());
-            return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(errorResponse);
+            return CompletableFuture.completedFuture(tradeFailed("buy", playerId, e));
         }
     }
     
     /**
      * Sell shares for a player
+     * Answered asynchronously: the request thread is freed while the market settles the order
      */
     @PostMapping(path="/players/{playerId}/sell", consumes="application/json", produces="application/json")
-    public ResponseEntity<Map<String, Object>> sellShares(@PathVariable Integer playerId,
-                                                      @RequestBody Map<String, Object> saleData) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> sellShares(@PathVariable Integer playerId,
+                                                      @RequestBody Map<String, Object> saleData,
+                                                      @RequestHeader(value = IdempotencyFilter.HEADER, required = false)
+                                                      String idempotencyKey) {
         try {
             int companyId = ((Number) saleData.get("companyId")).intValue();
             int quantity = ((Number) saleData.get("quantity")).intValue();
             
-            // Get current share price using CompanyDTO
-            CompanyDTO company = marketClient.getCompany(companyId);
-            double sharePrice = company.sharePrice();
-            double totalValue = sharePrice * quantity;
-            
             // Get player and check share holdings
             Client player = playerService.getPlayer(playerId);
             int availableShares = player.getShareQuantity(companyId);
@@ -255,38 +247,48 @@ public class PlayerController {
                 errorResponse.put("available", availableShares);
                 errorResponse.put("requested", quantity);
                 
-                return ResponseEntity
+                return CompletableFuture.completedFuture(ResponseEntity
                         .status(HttpStatus.BAD_REQUEST)
-                        .body(errorResponse);
+                        .body(errorResponse));
             }
             
-            // Execute trade
-            Trade trade = marketClient.sellShares(playerId, companyId, quantity);
-            
-            // Deposit funds into bank account
-            bankClient.depositFunds(playerId, totalValue);
-            
-            // Update player's portfolio
-            player.removeShares(companyId, quantity);
-            playerService.updatePlayer(playerId, player);
-            
-            // Create response
+            // Execute trade; the market deposits the sale's value into the bank account as it settles
+            // the caller's Idempotency-Key is passed on, so a retry replays the order instead of repeating it
+            return marketClient.sellShares(playerId, companyId, quantity, idempotencyKey)
+                    .thenCompose(trade -> {
+                        // Update player's portfolio at the executed price
+                        playerService.removePlayerShares(playerId, companyId, quantity, trade.getSharePrice());
+                        return tradeResponse(playerId, trade);
+                    })
+                    .exceptionally(e -> tradeFailed("sell", playerId, e));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(tradeFailed("sell", playerId, e));
+        }
+    }
+    
+    // the settled trade with the player's new balance and portfolio value; the balance is fetched
+    // without blocking, as this may run on the market client's settlement poller
+    private CompletableFuture<ResponseEntity<Map<String, Object>>> tradeResponse(Integer playerId, Trade trade) {
+        return bankClient.getBalance(playerId).thenApply(balance -> {
             Map<String, Object> response = new HashMap<>();
             response.put("trade", trade);
-            response.put("newBalance", player.getBankAccount().getBalance() + totalValue);
-            response.put("portfolioValue", player.getPortfolioValue());
+            response.put("newBalance", balance);
+            response.put("portfolioValue", playerService.getPlayerPortfolioValue(playerId));
             
             return ResponseEntity
                     .status(HttpStatus.OK)
                     .body(response);
-        } catch (Exception e) {
-            e.printStackTrace();
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Failed to sell shares: " + e.getMessage());
-            return ResponseEntity
-                    .status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(errorResponse);
-        }
+        });
+    }
+    
+    private static ResponseEntity<Map<String, Object>> tradeFailed(String action, Integer playerId, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        log.error("Failed to {} shares for player {}", action, playerId, cause);
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Failed to " + action + " shares: " + cause.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(errorResponse);
     }
     
     /**
@@ -294,22 +296,9 @@ public class PlayerController {
      */
     @GetMapping(path="/market/companies", produces="application/json")
     public ResponseEntity<List<CompanyDTO>> getMarketCompanies() {
-        try {
-            String url = marketClient.getMarketServiceUrl() + "/company-dtos";
-            ResponseEntity<List<CompanyDTO>> response = restTemplate.exchange(
-                url,
-                HttpMethod.GET,
-                null,
-                new ParameterizedTypeReference<List<CompanyDTO>>() {}
-            );
-            
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .body(response.getBody());
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw e;
-        }
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(marketClient.getAllCompanies());
     }
     
     /**
@@ -319,6 +308,6 @@ public class PlayerController {
     public ResponseEntity<CompanyDTO> getCompanyInfo(@PathVariable Integer companyId) {
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(marketClient.getCompany(companyId));
+                .body(companyCache.getCompany(companyId));
     }
 }
\ No newline at end of file
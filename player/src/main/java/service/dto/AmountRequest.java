@@ -1,16 +1,18 @@
 package service.dto;
 
+import service.core.Money;
+
 public class AmountRequest {
-    private Double amount;
+    private Money amount;
     
     // Default constructor
     public AmountRequest() {}
     
-    public AmountRequest(Double amount) {
+    public AmountRequest(Money amount) {
         this.amount = amount;
     }
     
     // Getters and setters
-    public Double getAmount() { return amount; }
-    public void setAmount(Double amount) { this.amount = amount; }
+    public Money getAmount() { return amount; }
+    public void setAmount(Money amount) { this.amount = amount; }
 }
\ No newline at end of file
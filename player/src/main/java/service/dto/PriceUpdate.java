@@ -0,0 +1,9 @@
+package service.dto;
+
+import service.core.Money;
+
+/**
+ * A company's new share price, pushed by the market's event stream.
+ * timestamp is epoch millis.
+ */
+public record PriceUpdate(int companyId, Money price, long timestamp) {}
@@ -0,0 +1,13 @@
+package service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import service.core.Trade;
+
+/** SettlementStatus
+ * - The parts of the market's GET /settlements/{id} the player needs: state is one of ACCEPTED,
+ *   RESERVED, SHARES_ALLOCATED, COMPENSATING (still running), SETTLED (trade is set) or
+ *   COMPENSATED (failure says why)
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SettlementStatus(long id, String state, Trade trade, String failure) {
+}
@@ -0,0 +1,11 @@
+package service.dto;
+
+import service.core.Trade;
+
+import java.util.List;
+
+/**
+ * One page of market trade history.
+ * nextCursor is null on the last page, otherwise pass it back to fetch the next one.
+ */
+public record TradePage(List<Trade> trades, String nextCursor) {}
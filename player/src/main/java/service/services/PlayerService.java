@@ -1,7 +1,12 @@
 package service.services;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import service.core.Client;
+import service.core.Money;
 import service.exceptions.PlayerNotFoundException;
 import service.core.ShareHolding;
 
@@ -9,26 +14,49 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service class for managing player-related operations
+ * - Every change to a player's holdings goes through here so the RevaluationEngine
+ *   sees it; portfolio values and total assets are marked to market by the engine
+ * - Reports how many players are registered (player.players)
+ * - A player's holdings change and are reported to the engine under one of POSITION_STRIPES
+ *   ReentrantLocks (by player ID): fills settle on request and settlement-poll threads at once,
+ *   and the engine must see each player's share counts in the order they were applied
  */
 @Service
-public class PlayerService {
+public class PlayerService implements MeterBinder {
+    private static final int POSITION_STRIPES = 64;
+
     private Map<Integer, Client> players;
+    private final RevaluationEngine revaluationEngine;
+    private final ReentrantLock[] positionLocks = new ReentrantLock[POSITION_STRIPES];
     
     /**
      * Constructor with dependency injection
      */
-    public PlayerService(Map<Integer, Client> players) {
+    public PlayerService(Map<Integer, Client> players, RevaluationEngine revaluationEngine) {
         this.players = players;
+        this.revaluationEngine = revaluationEngine;
+        for (int i = 0; i < positionLocks.length; i++) {
+            positionLocks[i] = new ReentrantLock();
+        }
     }
     
     /**
      * Default constructor
      */
-    public PlayerService() {
-        this.players = new ConcurrentHashMap<>();
+    @Autowired
+    public PlayerService(RevaluationEngine revaluationEngine) {
+        this(new ConcurrentHashMap<>(), revaluationEngine);
+    }
+    
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("player.players", players, Map::size)
+                .description("Players registered")
+                .register(registry);
     }
     
     /**
@@ -36,7 +64,15 @@ public class PlayerService {
      */
     public Client registerPlayer(Client player) {
         int playerId = player.getId();
-        players.putIfAbsent(playerId, player);
+        ReentrantLock lock = positionLock(playerId);
+        lock.lock();
+        try {
+            if (players.putIfAbsent(playerId, player) == null) {
+                trackPositions(playerId, player.getPortfolio());
+            }
+        } finally {
+            lock.unlock();
+        }
         return player;
     }
     
@@ -62,10 +98,23 @@ public class PlayerService {
      * Update player information
      */
     public Client updatePlayer(int playerId, Client updatedPlayer) {
-        if (!players.containsKey(playerId)) {
-            throw new PlayerNotFoundException("Player with ID " + playerId + " not found");
+        ReentrantLock lock = positionLock(playerId);
+        lock.lock();
+        try {
+            Client previous = players.replace(playerId, updatedPlayer);
+            if (previous == null) {
+                throw new PlayerNotFoundException("Player with ID " + playerId + " not found");
+            }
+            // the new portfolio replaces the old one, so close positions it no longer has
+            for (ShareHolding holding : previous.getPortfolio()) {
+                if (updatedPlayer.getShareQuantity(holding.getCompanyId()) == 0) {
+                    revaluationEngine.setPosition(playerId, holding.getCompanyId(), 0, null);
+                }
+            }
+            trackPositions(playerId, updatedPlayer.getPortfolio());
+        } finally {
+            lock.unlock();
         }
-        players.put(playerId, updatedPlayer);
         return updatedPlayer;
     }
     
@@ -73,35 +122,89 @@ public class PlayerService {
      * Remove a player from the system
      */
     public void removePlayer(int playerId) {
-        if (!players.containsKey(playerId)) {
-            throw new PlayerNotFoundException("Player with ID " + playerId + " not found");
+        ReentrantLock lock = positionLock(playerId);
+        lock.lock();
+        try {
+            Client player = players.remove(playerId);
+            if (player == null) {
+                throw new PlayerNotFoundException("Player with ID " + playerId + " not found");
+            }
+            for (ShareHolding holding : player.getPortfolio()) {
+                revaluationEngine.setPosition(playerId, holding.getCompanyId(), 0, null);
+            }
+            revaluationEngine.removePlayer(playerId);
+        } finally {
+            lock.unlock();
         }
-        players.remove(playerId);
     }
     
     /**
      * Update a player's portfolio with a new share holding
      */
     public Client updatePlayerPortfolio(int playerId, ShareHolding shareHolding) {
-        Client player = getPlayer(playerId);
-        player.addShareHolding(shareHolding);
-        return player;
+        return updatePlayerPortfolio(playerId, shareHolding, null);
     }
     
     /**
-     * Calculate and return the total portfolio value for a player
+     * Update a player's portfolio with shares bought at sharePrice
      */
-    public double getPlayerPortfolioValue(int playerId) {
-        Client player = getPlayer(playerId);
-        return player.getPortfolioValue();
+    public Client updatePlayerPortfolio(int playerId, ShareHolding shareHolding, Money sharePrice) {
+        ReentrantLock lock = positionLock(playerId);
+        lock.lock();
+        try {
+            Client player = getPlayer(playerId);
+            player.addShareHolding(shareHolding);
+            int companyId = shareHolding.getCompanyId();
+            revaluationEngine.setPosition(playerId, companyId, player.getShareQuantity(companyId), sharePrice);
+            return player;
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
-     * Calculate and return the total assets for a player (bank balance + portfolio value)
+     * Remove shares sold at sharePrice from a player's portfolio
      */
-    public double getPlayerTotalAssets(int playerId) {
+    public Client removePlayerShares(int playerId, int companyId, int quantity, Money sharePrice) {
+        ReentrantLock lock = positionLock(playerId);
+        lock.lock();
+        try {
+            Client player = getPlayer(playerId);
+            player.removeShares(companyId, quantity);
+            revaluationEngine.setPosition(playerId, companyId, player.getShareQuantity(companyId), sharePrice);
+            return player;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Return the market value of a player's portfolio (current prices, not cost)
+     */
+    public Money getPlayerPortfolioValue(int playerId) {
+        getPlayer(playerId);
+        return revaluationEngine.getMarketValue(playerId);
+    }
+    
+    /**
+     * Return the total assets for a player (bank balance + portfolio market value)
+     */
+    public Money getPlayerTotalAssets(int playerId) {
         Client player = getPlayer(playerId);
-        player.updateTotalAssets();
-        return player.getTotalAssets();
+        return player.getBankAccount().getBalance().plus(revaluationEngine.getMarketValue(playerId));
+    }
+    
+    private ReentrantLock positionLock(int playerId) {
+        return positionLocks[Math.floorMod(playerId, POSITION_STRIPES)];
+    }
+
+    // report every holding to the engine, priced at its average cost until the market price is known
+    private void trackPositions(int playerId, List<ShareHolding> portfolio) {
+        for (ShareHolding holding : portfolio) {
+            Money averageCost = holding.getQuantity() > 0
+                    ? Money.ofMinor(holding.getValue().getMinorUnits() / holding.getQuantity())
+                    : null;
+            revaluationEngine.setPosition(playerId, holding.getCompanyId(), holding.getQuantity(), averageCost);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package service.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Service;
+import service.clients.CompanyCache;
+import service.core.Money;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** RevaluationEngine
+ * Purpose:
+ * - Keeps every player's portfolio marked to market, so a portfolio's value is a map lookup
+ * - Holds a local price table, fed by the CompanyCache with every price it fetches or is pushed
+ *   (see player.company-cache.*); the engine makes no market calls of its own
+ * - Keeps a reverse index from company ID to the players holding it (and how many shares),
+ *   so a price change only revalues the holders of that company, by quantity * price change
+ * Threading:
+ * - Each company's price and holders are guarded by that company's quote lock; a position change
+ *   and a price change for the same company never interleave, so no move is counted twice or lost
+ * - Quote locks are ReentrantLocks rather than monitors, so a virtual thread waiting on one
+ *   does not pin its carrier thread
+ * - Player values are AtomicLongs (minor units), since one player's holdings span many companies
+ */
+@Service
+public class RevaluationEngine {
+    private final Map<Integer, Quote> quotes = new ConcurrentHashMap<>(); // company ID -> price and holders
+    private final Map<Integer, AtomicLong> marketValues = new ConcurrentHashMap<>(); // player ID -> value
+    private final CompanyCache companyCache;
+
+    public RevaluationEngine(CompanyCache companyCache) {
+        this.companyCache = companyCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        companyCache.addPriceListener(this::updatePrice);
+    }
+
+    /**
+     * Set a company's price and revalue only the players holding it.
+     */
+    public void updatePrice(int companyId, Money price) {
+        Quote quote = quoteFor(companyId);
+        quote.lock.lock();
+        try {
+            long newPrice = price.getMinorUnits();
+            long change = Money.minusMinor(newPrice, quote.price);
+            quote.price = newPrice;
+            quote.known = true;
+            if (change == 0) {
+                return;
+            }
+            for (Map.Entry<Integer, Integer> holder : quote.holders.entrySet()) {
+                valueOf(holder.getKey()).addAndGet(Money.timesMinor(change, holder.getValue()));
+            }
+        } finally {
+            quote.lock.unlock();
+        }
+    }
+
+    /**
+     * Record a player's new share count in a company (0 when the position is closed).
+     * @param lastPrice - used as the company's price if the engine has not seen one yet (may be null)
+     */
+    public void setPosition(int playerId, int companyId, int quantity, Money lastPrice) {
+        Quote quote = quoteFor(companyId);
+        quote.lock.lock();
+        try {
+            if (!quote.known && lastPrice != null) {
+                quote.price = lastPrice.getMinorUnits();
+                quote.known = true;
+            }
+            Integer previous = quantity > 0 ? quote.holders.put(playerId, quantity) : quote.holders.remove(playerId);
+            long change = (long) Math.max(quantity, 0) - (previous == null ? 0 : previous);
+            if (change != 0) {
+                valueOf(playerId).addAndGet(Money.timesMinor(change, quote.price));
+            }
+        } finally {
+            quote.lock.unlock();
+        }
+    }
+
+    /**
+     * Drop a player; every position they hold must already have been closed with setPosition.
+     */
+    public void removePlayer(int playerId) {
+        marketValues.remove(playerId);
+    }
+
+    // current market value of the player's holdings
+    public Money getMarketValue(int playerId) {
+        AtomicLong value = marketValues.get(playerId);
+        return value == null ? Money.ZERO : Money.ofMinor(value.get());
+    }
+
+    // the engine's price for a company, or null if it has not seen one
+    public Money getPrice(int companyId) {
+        Quote quote = quotes.get(companyId);
+        if (quote == null) {
+            return null;
+        }
+        quote.lock.lock();
+        try {
+            return quote.known ? Money.ofMinor(quote.price) : null;
+        } finally {
+            quote.lock.unlock();
+        }
+    }
+
+    private Quote quoteFor(int companyId) {
+        return quotes.computeIfAbsent(companyId, id -> new Quote());
+    }
+
+    private AtomicLong valueOf(int playerId) {
+        return marketValues.computeIfAbsent(playerId, id -> new AtomicLong());
+    }
+
+    // one company's price (minor units) and its holders (player ID -> shares), guarded by the quote's lock
+    private static final class Quote {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long price;
+        private boolean known;
+        private final Map<Integer, Integer> holders = new HashMap<>();
+    }
+}